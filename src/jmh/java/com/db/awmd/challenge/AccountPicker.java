@@ -0,0 +1,51 @@
+package com.db.awmd.challenge;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account indexes either uniformly or Zipf-distributed, where index 0 is the hottest account.
+ */
+class AccountPicker {
+
+  private final int accounts;
+
+  private final double[] cumulative;
+
+  /**
+   * A {@code skew} of 0 picks uniformly, otherwise the k-th account is picked with a probability proportional to
+   * 1 / k^skew.
+   */
+  AccountPicker(int accounts, double skew) {
+    this.accounts = accounts;
+    if (skew == 0) {
+      this.cumulative = null;
+      return;
+    }
+    this.cumulative = new double[accounts];
+    double sum = 0;
+    for (int k = 0; k < accounts; k++) {
+      sum += 1 / Math.pow(k + 1, skew);
+      cumulative[k] = sum;
+    }
+    for (int k = 0; k < accounts; k++) {
+      cumulative[k] /= sum;
+    }
+  }
+
+  int next() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (cumulative == null)
+      return random.nextInt(accounts);
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(index < 0 ? -index - 1 : index, accounts - 1);
+  }
+
+  /**
+   * Picks a second account different from {@code first}.
+   */
+  int nextOther(int first) {
+    int other = next();
+    return other != first ? other : (first + 1) % accounts;
+  }
+}
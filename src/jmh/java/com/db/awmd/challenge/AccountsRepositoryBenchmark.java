@@ -0,0 +1,86 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.FixedPointAccountsRepository;
+import com.db.awmd.challenge.repository.PartitionedAccountsRepository;
+import com.db.awmd.challenge.repository.TieredAccountsRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+
+@State(Scope.Benchmark)
+public class AccountsRepositoryBenchmark {
+
+  private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+  @Param({"in-memory", "fixed-point", "partitioned", "tiered"})
+  public String repository;
+
+  @Param({"16", "100000"})
+  public int accounts;
+
+  private AccountsRepository accountsRepository;
+
+  private String[] accountIds;
+
+  private AccountPicker picker;
+
+  @Setup
+  public void createAccounts() {
+    accountsRepository = create(repository);
+    accountIds = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      accountIds[i] = "Id-" + i;
+      accountsRepository.createAccount(new Account(accountIds[i], OPENING_BALANCE));
+    }
+    picker = new AccountPicker(accounts, 0);
+  }
+
+  @TearDown
+  public void shutdown() throws InterruptedException {
+    if (accountsRepository instanceof PartitionedAccountsRepository)
+      ((PartitionedAccountsRepository) accountsRepository).shutdown();
+    if (accountsRepository instanceof TieredAccountsRepository)
+      ((TieredAccountsRepository) accountsRepository).shutdown();
+  }
+
+  @Benchmark
+  public Account debit() {
+    return accountsRepository.debitAccount(accountIds[picker.next()], AMOUNT);
+  }
+
+  @Benchmark
+  public Account credit() {
+    return accountsRepository.creditAccount(accountIds[picker.next()], AMOUNT);
+  }
+
+  @Benchmark
+  public Account get() {
+    return accountsRepository.getAccount(accountIds[picker.next()]);
+  }
+
+  static AccountsRepository create(String repository) {
+    switch (repository) {
+      case "in-memory":
+        return new AccountsRepositoryInMemory();
+      case "fixed-point":
+        return new FixedPointAccountsRepository(2);
+      case "partitioned":
+        return new PartitionedAccountsRepository(0);
+      case "tiered":
+        // with 100000 accounts most of them live on disk and every access to one of those promotes it
+        return new TieredAccountsRepository("build/tiered-benchmark", 10_000, 64 << 20, 10, 8, 100);
+      default:
+        throw new IllegalArgumentException("Unknown repository " + repository);
+    }
+  }
+}
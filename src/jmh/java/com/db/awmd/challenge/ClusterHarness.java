@@ -0,0 +1,242 @@
+package com.db.awmd.challenge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts a cluster of service processes on this machine, spreads accounts over them, fires transfers between random
+ * accounts at random nodes from several threads and then checks that no money was created or lost: once every node
+ * reports no pending cross-shard transfer, the balances of all nodes must add up to what was imported.
+ * <pre>
+ * ./gradlew clusterTest -PclusterTestArgs="--nodes 3 --duration 30 --threads 16"
+ * </pre>
+ * Options: {@code --nodes}, {@code --base-port} of the first node's API, {@code --accounts} and their opening
+ * {@code --balance}, {@code --duration} in seconds, {@code --threads} sending transfers, the largest transfer
+ * {@code --max-amount} and {@code --jvm-args} for the node processes. Node logs go to {@code build/cluster/}.
+ */
+public class ClusterHarness {
+
+  private static final int TIMEOUT_MILLIS = 30_000;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private final Map<String, String> options;
+
+  private final List<String> urls = new ArrayList<>();
+
+  private final List<Process> processes = new ArrayList<>();
+
+  ClusterHarness(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    options.put("nodes", "3");
+    options.put("base-port", "18180");
+    options.put("accounts", "1000");
+    options.put("balance", "1000");
+    options.put("duration", "20");
+    options.put("threads", "8");
+    options.put("max-amount", "50");
+    options.put("jvm-args", "");
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2)))
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    ClusterHarness harness = new ClusterHarness(options);
+    boolean conserved;
+    try {
+      conserved = harness.run();
+    } finally {
+      harness.stopNodes();
+    }
+    System.exit(conserved ? 0 : 1);
+  }
+
+  boolean run() throws Exception {
+    startNodes();
+    int accounts = Integer.parseInt(options.get("accounts"));
+    BigDecimal balance = new BigDecimal(options.get("balance"));
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < accounts; i++) {
+      body.append("{\"accountId\":\"Cluster-").append(i).append("\",\"balance\":").append(balance).append("}\n");
+    }
+    Response imported = request("POST", urls.get(0) + "/v1/accounts/import", "application/x-ndjson", body.toString());
+    System.out.println("Imported accounts through " + urls.get(0) + ": " + imported.body);
+    BigDecimal expected = balance.multiply(BigDecimal.valueOf(accounts));
+
+    Map<Integer, LongAdder> outcomes = runTransfers(accounts);
+    System.out.println("Transfers by response status: " + outcomes);
+
+    awaitNothingPending();
+    BigDecimal total = BigDecimal.ZERO;
+    for (String url : urls) {
+      JsonNode node = mapper.readTree(request("GET", url + "/v1/accounts/total-balance", null, null).body);
+      System.out.println(url + " holds " + node);
+      total = total.add(node.get("totalBalance").decimalValue());
+    }
+    boolean conserved = total.compareTo(expected) == 0;
+    System.out.println((conserved ? "Money conserved: " : "MONEY NOT CONSERVED: ") + total + " held, " + expected
+            + " imported");
+    return conserved;
+  }
+
+  private void startNodes() throws Exception {
+    int nodes = Integer.parseInt(options.get("nodes"));
+    int basePort = Integer.parseInt(options.get("base-port"));
+    List<String> clusterArgs = new ArrayList<>();
+    clusterArgs.add("--cluster.enabled=true");
+    for (int i = 0; i < nodes; i++) {
+      urls.add("http://localhost:" + (basePort + i));
+      clusterArgs.add("--cluster.nodes.node-" + i + "=" + urls.get(i));
+    }
+    File logs = Paths.get("build", "cluster").toFile();
+    logs.mkdirs();
+    for (int i = 0; i < nodes; i++) {
+      List<String> command = new ArrayList<>();
+      command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+      command.addAll(Arrays.asList(options.get("jvm-args").trim().split("\\s+")));
+      command.removeIf(String::isEmpty);
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add("com.db.awmd.challenge.DevChallengeApplication");
+      command.add("--server.port=" + (basePort + i));
+      command.add("--cluster.node-id=node-" + i);
+      command.addAll(clusterArgs);
+      File log = new File(logs, "node-" + i + ".log");
+      processes.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+    }
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+    for (String url : urls) {
+      while (request("GET", url + "/v1/cluster", null, null).status != 200) {
+        if (System.nanoTime() > deadline)
+          throw new IllegalStateException("Node " + url + " did not start, see build/cluster");
+        Thread.sleep(500);
+      }
+    }
+    System.out.println("Started " + nodes + " nodes: " + urls);
+  }
+
+  private Map<Integer, LongAdder> runTransfers(int accounts) throws InterruptedException {
+    Map<Integer, LongAdder> outcomes = new ConcurrentSkipListMap<>();
+    int threads = Integer.parseInt(options.get("threads"));
+    int maxAmount = Integer.parseInt(options.get("max-amount"));
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+    ExecutorService senders = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      senders.execute(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+          int from = random.nextInt(accounts);
+          int to = random.nextInt(accounts);
+          String amount = BigDecimal.valueOf(1 + random.nextInt(maxAmount * 100), 2).toPlainString();
+          String transfer = "{\"fromAccountId\":\"Cluster-" + from + "\",\"toAccountId\":\"Cluster-" + to
+                  + "\",\"amount\":" + amount + "}";
+          int status = request("PUT", urls.get(random.nextInt(urls.size())) + "/v1/transfer", "application/json",
+                  transfer).status;
+          outcomes.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+      });
+    }
+    senders.shutdown();
+    senders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    return outcomes;
+  }
+
+  private void awaitNothingPending() throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+    while (true) {
+      long pending = 0;
+      for (String url : urls) {
+        JsonNode status = mapper.readTree(request("GET", url + "/v1/cluster", null, null).body);
+        pending += status.get("pendingDebits").asLong() + status.get("pendingCredits").asLong();
+      }
+      if (pending == 0)
+        return;
+      if (System.nanoTime() > deadline)
+        throw new IllegalStateException(pending + " cross-shard transfers still pending");
+      Thread.sleep(500);
+    }
+  }
+
+  private void stopNodes() throws InterruptedException {
+    for (Process process : processes) {
+      process.destroy();
+    }
+    for (Process process : processes) {
+      process.waitFor(30, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Returns status 0 if no response arrived.
+   */
+  private static Response request(String method, String url, String contentType, String body) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod(method);
+      connection.setConnectTimeout(TIMEOUT_MILLIS);
+      connection.setReadTimeout(TIMEOUT_MILLIS);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      int status = connection.getResponseCode();
+      return new Response(status, readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream()));
+    } catch (IOException ex) {
+      return new Response(0, ex.toString());
+    }
+  }
+
+  private static String readFully(InputStream in) throws IOException {
+    if (in == null)
+      return "";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream stream = in) {
+      byte[] buffer = new byte[4096];
+      for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+        bytes.write(buffer, 0, read);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static final class Response {
+
+    private final int status;
+
+    private final String body;
+
+    private Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.db.awmd.challenge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a running service with {@code PUT /v1/transfer} and {@code GET /v1/accounts/{id}} requests that arrive at a
+ * fixed rate whether or not the earlier ones have been answered, the way independent clients do. A closed-loop driver
+ * waits for each response before sending the next request, so when the service stalls it stops sending and the stall
+ * shows up in one sample instead of in every request that would have arrived meanwhile. Here a request that cannot
+ * be sent on time waits for a free connection, and its latency counts from when it was due.
+ * <p>
+ * The report, written as JSON so that the reports of two versions can be diffed, lists per request type the achieved
+ * rate, the responses by status class and the latency percentiles both from the due time and from the send time.
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--rate 2000 --duration 60 --skew 1.1 --read-ratio 0.8 --label v1.2"
+ * </pre>
+ * Options: {@code --url} of the service, {@code --rate} requests per second, {@code --duration} and {@code --warmup}
+ * in seconds, {@code --accounts} to spread the requests over, Zipf {@code --skew} (0 for uniform),
+ * {@code --read-ratio} of reads among all requests, {@code --connections} sending in parallel, transfer
+ * {@code --amount}, {@code --setup false} to skip importing the accounts with {@code --balance}, {@code --label} and
+ * {@code --report} file.
+ */
+public class LoadGenerator {
+
+  private static final String ACCOUNT_PREFIX = "Load-";
+
+  private static final int TIMEOUT_MILLIS = 30_000;
+
+  private final Map<String, String> options;
+
+  private final String url;
+
+  private final int rate;
+
+  private final long durationNanos;
+
+  private final long warmupNanos;
+
+  private final int accounts;
+
+  private final double readRatio;
+
+  private final int connections;
+
+  private final String amount;
+
+  private final AccountPicker picker;
+
+  private final OperationStats transfers = new OperationStats();
+
+  private final OperationStats reads = new OperationStats();
+
+  LoadGenerator(Map<String, String> options) {
+    this.options = options;
+    this.url = options.get("url");
+    this.rate = Integer.parseInt(options.get("rate"));
+    this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+    this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+    this.accounts = Integer.parseInt(options.get("accounts"));
+    this.readRatio = Double.parseDouble(options.get("read-ratio"));
+    this.connections = Integer.parseInt(options.get("connections"));
+    this.amount = options.get("amount");
+    this.picker = new AccountPicker(accounts, Double.parseDouble(options.get("skew")));
+    if (rate <= 0 || accounts < 2 || connections <= 0)
+      throw new IllegalArgumentException("Rate and connections must be positive and there must be two accounts");
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    options.put("url", "http://localhost:18080");
+    options.put("rate", "1000");
+    options.put("duration", "30");
+    options.put("warmup", "5");
+    options.put("accounts", "10000");
+    options.put("skew", "0");
+    options.put("read-ratio", "0.5");
+    options.put("connections", "64");
+    options.put("amount", "0.01");
+    options.put("setup", "true");
+    options.put("balance", "1000000");
+    options.put("label", "run");
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2)) && !args[i].equals("--report"))
+        throw new IllegalArgumentException("Unknown option " + args[i]);
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    options.putIfAbsent("report", "build/reports/loadtest/" + options.get("label") + ".json");
+    // HttpURLConnection keeps only 5 idle connections per host by default
+    System.setProperty("http.maxConnections", options.get("connections"));
+
+    new LoadGenerator(options).run();
+  }
+
+  void run() throws Exception {
+    if (Boolean.parseBoolean(options.get("setup")))
+      importAccounts(options.get("balance"));
+
+    ThreadPoolExecutor senders = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
+    senders.prestartAllCoreThreads();
+    Instant startedAt = Instant.now();
+    long start = System.nanoTime();
+    long measuredFrom = start + warmupNanos;
+    long end = measuredFrom + durationNanos;
+    int maxBacklog = 0;
+    for (long i = 0; ; i++) {
+      long due = start + (long) (i * 1e9 / rate);
+      if (due >= end)
+        break;
+      for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      boolean read = ThreadLocalRandom.current().nextDouble() < readRatio;
+      OperationStats stats = due < measuredFrom ? null : read ? reads : transfers;
+      senders.execute(() -> send(read, due, stats));
+      maxBacklog = Math.max(maxBacklog, senders.getQueue().size());
+    }
+    senders.shutdown();
+    senders.awaitTermination(TIMEOUT_MILLIS + 1000, TimeUnit.MILLISECONDS);
+
+    writeReport(startedAt, maxBacklog);
+  }
+
+  private void send(boolean read, long due, OperationStats stats) {
+    int from = picker.next();
+    long sent = System.nanoTime();
+    int status;
+    if (read) {
+      status = request("GET", "/v1/accounts/" + ACCOUNT_PREFIX + from, null);
+    } else {
+      int to = picker.nextOther(from);
+      status = request("PUT", "/v1/transfer", "{\"fromAccountId\":\"" + ACCOUNT_PREFIX + from
+              + "\",\"toAccountId\":\"" + ACCOUNT_PREFIX + to + "\",\"amount\":" + amount + "}");
+    }
+    if (stats != null)
+      stats.record(due, sent, System.nanoTime(), status);
+  }
+
+  /**
+   * Returns the response status, 0 if the request failed without one. The response body is read to the end so the
+   * connection can be reused.
+   */
+  private int request(String method, String path, String body) {
+    try {
+      HttpURLConnection connection = open(method, path);
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      int status = connection.getResponseCode();
+      readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+      return status;
+    } catch (IOException ex) {
+      return 0;
+    }
+  }
+
+  private void importAccounts(String balance) throws IOException {
+    HttpURLConnection connection = open("POST", "/v1/accounts/import");
+    connection.setDoOutput(true);
+    connection.setChunkedStreamingMode(1 << 16);
+    connection.setRequestProperty("Content-Type", "application/x-ndjson");
+    OutputStream body = connection.getOutputStream();
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8))) {
+      for (int i = 0; i < accounts; i++) {
+        out.write("{\"accountId\":\"" + ACCOUNT_PREFIX + i + "\",\"balance\":" + balance + "}\n");
+      }
+    }
+    int status = connection.getResponseCode();
+    String summary = readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+    if (status >= 400)
+      throw new IOException("Importing the accounts failed with " + status + ": " + summary);
+    System.out.println("Imported accounts: " + summary);
+  }
+
+  private HttpURLConnection open(String method, String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    return connection;
+  }
+
+  private static String readFully(InputStream in) throws IOException {
+    if (in == null)
+      return "";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream stream = in) {
+      byte[] buffer = new byte[4096];
+      for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+        bytes.write(buffer, 0, read);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private void writeReport(Instant startedAt, int maxBacklog) throws IOException {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("label", options.get("label"));
+    report.put("startedAt", startedAt.toString());
+    report.put("options", options);
+    report.put("maxBacklog", maxBacklog);
+    report.put("transfer", transfers.report(durationNanos));
+    report.put("read", reads.report(durationNanos));
+
+    ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    Path path = Paths.get(options.get("report"));
+    if (path.getParent() != null)
+      Files.createDirectories(path.getParent());
+    mapper.writeValue(path.toFile(), report);
+    System.out.println(mapper.writeValueAsString(report));
+    System.out.println("Report written to " + path.toAbsolutePath());
+  }
+}
@@ -0,0 +1,76 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcomes and latencies of one kind of request during a load test. Each response is recorded twice: measured from
+ * the moment the request was due according to the arrival schedule, which includes the time it waited behind slower
+ * requests and is the latency a client arriving at that moment would have seen, and measured from the moment it was
+ * actually sent, which is what a closed-loop client reports and hides that waiting.
+ */
+class OperationStats {
+
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9", "p99.99", "max"};
+
+  private final LatencyHistogram latency = LatencyHistogram.cumulative();
+
+  private final LatencyHistogram serviceTime = LatencyHistogram.cumulative();
+
+  private final LongAdder successful = new LongAdder();
+
+  private final LongAdder clientErrors = new LongAdder();
+
+  private final LongAdder serverErrors = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * {@code status} is the HTTP status of the response, or 0 when no response arrived.
+   */
+  void record(long dueNanos, long sentNanos, long doneNanos, int status) {
+    if (status == 0) {
+      failed.increment();
+    } else {
+      if (status < 400)
+        successful.increment();
+      else if (status < 500)
+        clientErrors.increment();
+      else
+        serverErrors.increment();
+    }
+    latency.record(doneNanos - dueNanos);
+    serviceTime.record(doneNanos - sentNanos);
+  }
+
+  Map<String, Object> report(long measuredNanos) {
+    long requests = successful.sum() + clientErrors.sum() + serverErrors.sum() + failed.sum();
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("requests", requests);
+    report.put("ratePerSecond", measuredNanos == 0 ? 0 : requests * TimeUnit.SECONDS.toNanos(1) / measuredNanos);
+    Map<String, Long> responses = new LinkedHashMap<>();
+    responses.put("successful", successful.sum());
+    responses.put("clientErrors", clientErrors.sum());
+    responses.put("serverErrors", serverErrors.sum());
+    responses.put("failed", failed.sum());
+    report.put("responses", responses);
+    report.put("latencyMicros", percentiles(latency));
+    report.put("serviceTimeMicros", percentiles(serviceTime));
+    return report;
+  }
+
+  private static Map<String, Long> percentiles(LatencyHistogram histogram) {
+    long[] values = histogram.countAndPercentiles(PERCENTILES);
+    Map<String, Long> percentiles = new LinkedHashMap<>();
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      percentiles.put(PERCENTILE_NAMES[i], TimeUnit.NANOSECONDS.toMicros(values[i + 1]));
+    }
+    return percentiles;
+  }
+}
@@ -0,0 +1,51 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.TransferDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes {@link TransferDto} with an {@link ObjectMapper} configured the way Spring MVC configures the one
+ * behind the transfer endpoint.
+ */
+@State(Scope.Benchmark)
+public class TransferDtoBindingBenchmark {
+
+  private ObjectReader reader;
+
+  private ObjectWriter writer;
+
+  private byte[] json;
+
+  private TransferDto transfer;
+
+  @Setup
+  public void createMapper() {
+    ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    reader = objectMapper.readerFor(TransferDto.class);
+    writer = objectMapper.writerFor(TransferDto.class);
+    json = "{\"fromAccountId\":\"Id-123\",\"toAccountId\":\"Id-456\",\"amount\":\"1000.25\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    transfer = new TransferDto("Id-123", "Id-456", new BigDecimal("1000.25"));
+  }
+
+  @Benchmark
+  public TransferDto read() throws IOException {
+    return reader.readValue(json);
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    return writer.writeValueAsBytes(transfer);
+  }
+}
@@ -0,0 +1,95 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.CreditFailedException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.PartitionedAccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationDispatchProperties;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.TransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.validation.Validation;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Transfers through {@link TransferService} with notifications sent inline to a service that does nothing, so the
+ * numbers cover the repository update, the ledger and the formatting of the notifications.
+ */
+@State(Scope.Benchmark)
+public class TransferServiceBenchmark {
+
+  private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000000");
+
+  private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+  @Param({"in-memory", "fixed-point", "partitioned"})
+  public String repository;
+
+  @Param({"16", "100000"})
+  public int accounts;
+
+  /**
+   * 0 for uniform access, 1.1 concentrates most transfers on a few hot accounts.
+   */
+  @Param({"0", "1.1"})
+  public double skew;
+
+  private AccountsRepository accountsRepository;
+
+  private NotificationDispatcher notificationDispatcher;
+
+  private TransactionLedger ledger;
+
+  private TransferService transferService;
+
+  private String[] accountIds;
+
+  private AccountPicker picker;
+
+  @Setup
+  public void createAccounts() {
+    accountsRepository = AccountsRepositoryBenchmark.create(repository);
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setAsync(false);
+    notificationDispatcher = new NotificationDispatcher((account, description) -> { }, properties);
+    ledger = new TransactionLedger("build/ledger", 256, 1_000_000);
+    transferService = new TransferService(new AccountsService(accountsRepository), notificationDispatcher,
+            Validation.buildDefaultValidatorFactory().getValidator(), new TransferMetrics(true, 10, 6, 8), ledger);
+    accountIds = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      accountIds[i] = "Id-" + i;
+      accountsRepository.createAccount(new Account(accountIds[i], OPENING_BALANCE));
+    }
+    picker = new AccountPicker(accounts, skew);
+  }
+
+  @TearDown
+  public void shutdown() throws InterruptedException, IOException {
+    notificationDispatcher.shutdown();
+    ledger.close();
+    if (accountsRepository instanceof PartitionedAccountsRepository)
+      ((PartitionedAccountsRepository) accountsRepository).shutdown();
+  }
+
+  @Benchmark
+  public boolean transfer() throws CreditFailedException {
+    int from = picker.next();
+    try {
+      transferService.transfer(accountIds[from], accountIds[picker.nextOther(from)], AMOUNT);
+      return true;
+    } catch (InsufficientFundsException e) {
+      return false;
+    }
+  }
+}
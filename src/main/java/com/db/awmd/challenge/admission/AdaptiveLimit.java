@@ -0,0 +1,145 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrency limit that follows the latency of the requests it admits. Latencies are averaged over windows of
+ * requests; after each window the limit is scaled by the gradient between the long-term average latency and the
+ * window's, so it holds while latency holds, and shrinks, by at most half per window, as soon as requests start to
+ * queue up inside the service. Each window also adds the square root of the limit as headroom, which lets the limit
+ * grow while latency stays flat, but only while the traffic actually fills at least half of it.
+ * <p>
+ * Requests beyond the limit are not queued: {@link #tryAcquire()} refuses them at once.
+ */
+public class AdaptiveLimit {
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final double tolerance;
+
+  private final double smoothing;
+
+  private final int windowSamples;
+
+  private final long windowNanos;
+
+  private final int longWindows;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final LongAdder admitted = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private volatile int limit;
+
+  private double estimate;
+
+  private double longLatency;
+
+  private long windowStart = System.nanoTime();
+
+  private int samples;
+
+  private long latencySum;
+
+  private int maxInFlight;
+
+  public AdaptiveLimit(AdmissionProperties.Limit properties) {
+    if (properties.getMinLimit() < 1 || properties.getMaxLimit() < properties.getMinLimit())
+      throw new IllegalArgumentException("Limits must satisfy 1 <= min-limit <= max-limit");
+    this.minLimit = properties.getMinLimit();
+    this.maxLimit = properties.getMaxLimit();
+    this.tolerance = properties.getTolerance();
+    this.smoothing = properties.getSmoothing();
+    this.windowSamples = Math.max(1, properties.getWindowSamples());
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(properties.getWindowMillis());
+    this.longWindows = Math.max(1, properties.getLongWindows());
+    this.estimate = clamp(properties.getInitialLimit());
+    this.limit = (int) estimate;
+  }
+
+  /**
+   * Returns the number of requests in flight including this one, or -1 if the limit is reached and the request has
+   * to be refused. An admitted request must be {@link #release released}.
+   */
+  public int tryAcquire() {
+    for (;;) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        rejected.increment();
+        return -1;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        admitted.increment();
+        return current + 1;
+      }
+    }
+  }
+
+  /**
+   * {@code inFlight} is what {@link #tryAcquire()} returned for the request.
+   */
+  public void release(long latencyNanos, int inFlight) {
+    this.inFlight.decrementAndGet();
+    sample(latencyNanos, inFlight);
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getAdmitted() {
+    return admitted.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public synchronized long getLongLatencyMicros() {
+    return TimeUnit.NANOSECONDS.toMicros((long) longLatency);
+  }
+
+  private synchronized void sample(long latencyNanos, int inFlight) {
+    samples++;
+    latencySum += latencyNanos;
+    maxInFlight = Math.max(maxInFlight, inFlight);
+    long now = System.nanoTime();
+    if (samples < windowSamples || now - windowStart < windowNanos)
+      return;
+
+    double shortLatency = Math.max(1, latencySum / (double) samples);
+    if (longLatency == 0) {
+      longLatency = shortLatency;
+    } else {
+      longLatency += (shortLatency - longLatency) / longWindows;
+      // a spike drags the long-term average up for a long time; once latency is back well below it, forget faster
+      if (longLatency > 2 * shortLatency)
+        longLatency *= 0.95;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+    double target = estimate * gradient + Math.sqrt(estimate);
+    if (maxInFlight < estimate / 2)
+      target = Math.min(target, estimate);
+    estimate = clamp(estimate * (1 - smoothing) + target * smoothing);
+    limit = (int) estimate;
+
+    windowStart = now;
+    samples = 0;
+    latencySum = 0;
+    maxInFlight = 0;
+  }
+
+  private double clamp(double value) {
+    return Math.max(minLimit, Math.min(maxLimit, value));
+  }
+}
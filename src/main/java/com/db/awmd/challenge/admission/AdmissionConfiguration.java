@@ -0,0 +1,40 @@
+package com.db.awmd.challenge.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/**
+ * Puts the admission limits in front of the accounts and transfer endpoints. Bulk imports and exports run for seconds
+ * and would teach the limits nothing about ordinary requests, and asynchronous transfers are already bounded by the
+ * queue of their stage, so these are left out.
+ */
+@Configuration
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionConfiguration extends WebMvcConfigurerAdapter {
+
+  private final AdmissionProperties properties;
+
+  @Autowired
+  public AdmissionConfiguration(AdmissionProperties properties) {
+    this.properties = properties;
+  }
+
+  @Bean
+  public AdmissionControl admissionControl() {
+    return new AdmissionControl(properties);
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new AdmissionInterceptor(admissionControl(), properties.getRejectionStatus(),
+            properties.getRetryAfterSeconds()))
+            .addPathPatterns("/v1/accounts/**", "/v1/transfer/**")
+            .excludePathPatterns("/v1/accounts/import", "/v1/accounts/export", "/v1/transfer/async");
+  }
+}
@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.admission;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The separate limits of reads and writes, so that a burst of slow transfers cannot take the budget of balance reads
+ * and the other way round.
+ */
+public class AdmissionControl implements PublicMetrics {
+
+  private final AdaptiveLimit reads;
+
+  private final AdaptiveLimit writes;
+
+  public AdmissionControl(AdmissionProperties properties) {
+    this.reads = new AdaptiveLimit(properties.getReads());
+    this.writes = new AdaptiveLimit(properties.getWrites());
+  }
+
+  public AdaptiveLimit limitFor(String method) {
+    return "GET".equals(method) || "HEAD".equals(method) ? reads : writes;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>(10);
+    add(metrics, "admission.reads", reads);
+    add(metrics, "admission.writes", writes);
+    return metrics;
+  }
+
+  private static void add(List<Metric<?>> metrics, String prefix, AdaptiveLimit limit) {
+    metrics.add(new Metric<>(prefix + ".limit", limit.getLimit()));
+    metrics.add(new Metric<>(prefix + ".in-flight", limit.getInFlight()));
+    metrics.add(new Metric<>(prefix + ".admitted", limit.getAdmitted()));
+    metrics.add(new Metric<>(prefix + ".rejected", limit.getRejected()));
+    metrics.add(new Metric<>(prefix + ".latency.long.micros", limit.getLongLatencyMicros()));
+  }
+}
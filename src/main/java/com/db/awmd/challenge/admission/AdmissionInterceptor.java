@@ -0,0 +1,85 @@
+package com.db.awmd.challenge.admission;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admits a request only while its limit has room and answers the rest at once, before they take a request thread for
+ * longer than it takes to refuse them. The latency fed back to the limit runs from admission to the completed
+ * response, including the time spent writing it.
+ * <p>
+ * A request handled asynchronously, such as a streamed transfer history, passes through twice: its permit is taken on
+ * the first dispatch and given back when the asynchronous dispatch completes.
+ */
+public class AdmissionInterceptor extends HandlerInterceptorAdapter implements AsyncHandlerInterceptor {
+
+  private static final String ADMISSION = AdmissionInterceptor.class.getName() + ".admission";
+
+  private final AdmissionControl control;
+
+  private final int rejectionStatus;
+
+  private final int retryAfterSeconds;
+
+  public AdmissionInterceptor(AdmissionControl control, int rejectionStatus, int retryAfterSeconds) {
+    this.control = control;
+    this.rejectionStatus = rejectionStatus;
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+          throws IOException {
+    if (request.getDispatcherType() == DispatcherType.ASYNC)
+      return true;
+    AdaptiveLimit limit = control.limitFor(request.getMethod());
+    int inFlight = limit.tryAcquire();
+    if (inFlight < 0) {
+      response.setStatus(rejectionStatus);
+      response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+      response.setContentType("text/plain");
+      response.getWriter().write("Too many requests in progress, retry later");
+      return false;
+    }
+    request.setAttribute(ADMISSION, new Admission(limit, inFlight, System.nanoTime()));
+    return true;
+  }
+
+  /**
+   * Keeps the permit while the response is produced asynchronously.
+   */
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                             Object handler) {
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                              Exception ex) {
+    Admission admission = (Admission) request.getAttribute(ADMISSION);
+    if (admission != null) {
+      request.removeAttribute(ADMISSION);
+      admission.limit.release(System.nanoTime() - admission.startNanos, admission.inFlight);
+    }
+  }
+
+  private static final class Admission {
+
+    private final AdaptiveLimit limit;
+
+    private final int inFlight;
+
+    private final long startNanos;
+
+    private Admission(AdaptiveLimit limit, int inFlight, long startNanos) {
+      this.limit = limit;
+      this.inFlight = inFlight;
+      this.startNanos = startNanos;
+    }
+  }
+}
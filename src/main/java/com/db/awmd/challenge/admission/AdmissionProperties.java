@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+  private boolean enabled = true;
+
+  /**
+   * 503 tells clients the service is overloaded, 429 that they should slow down.
+   */
+  private int rejectionStatus = 503;
+
+  private int retryAfterSeconds = 1;
+
+  private Limit reads = new Limit();
+
+  private Limit writes = new Limit();
+
+  @Data
+  public static class Limit {
+
+    private int initialLimit = 64;
+
+    private int minLimit = 8;
+
+    private int maxLimit = 512;
+
+    /**
+     * How far the recent average latency may rise above the long-term one before the limit shrinks.
+     */
+    private double tolerance = 1.5;
+
+    /**
+     * Share of the new estimate taken over after each window.
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * A window closes once it has this many samples and lasted window-millis.
+     */
+    private int windowSamples = 100;
+
+    private long windowMillis = 100;
+
+    /**
+     * Number of windows the long-term latency is averaged over.
+     */
+    private int longWindows = 600;
+  }
+}
@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.audit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+@ConditionalOnProperty(name = "audit.enabled", havingValue = "true")
+@EnableConfigurationProperties(AuditProperties.class)
+public class AuditConfiguration {
+
+  @Bean(destroyMethod = "close")
+  public MappedAuditRing auditTrail(AuditProperties properties) {
+    return MappedAuditRing.open(Paths.get(properties.getFile()), properties.getCapacity());
+  }
+}
@@ -0,0 +1,15 @@
+package com.db.awmd.challenge.audit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+
+  private boolean enabled = false;
+
+  private String file = "audit/transfers.ring";
+
+  private int capacity = 1 << 20;
+}
@@ -0,0 +1,123 @@
+package com.db.awmd.challenge.audit;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AuditException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.db.awmd.challenge.audit.MappedAuditRing.AMOUNT_TOO_LARGE;
+import static com.db.awmd.challenge.audit.MappedAuditRing.FAILED;
+import static com.db.awmd.challenge.audit.MappedAuditRing.FLAGS;
+import static com.db.awmd.challenge.audit.MappedAuditRing.FROM_ID;
+import static com.db.awmd.challenge.audit.MappedAuditRing.FROM_LENGTH;
+import static com.db.awmd.challenge.audit.MappedAuditRing.FROM_TRUNCATED;
+import static com.db.awmd.challenge.audit.MappedAuditRing.MAGIC;
+import static com.db.awmd.challenge.audit.MappedAuditRing.OUTCOME;
+import static com.db.awmd.challenge.audit.MappedAuditRing.RECORD_SIZE;
+import static com.db.awmd.challenge.audit.MappedAuditRing.SCALE;
+import static com.db.awmd.challenge.audit.MappedAuditRing.SEQUENCE;
+import static com.db.awmd.challenge.audit.MappedAuditRing.TIMESTAMP;
+import static com.db.awmd.challenge.audit.MappedAuditRing.TO_ID;
+import static com.db.awmd.challenge.audit.MappedAuditRing.TO_LENGTH;
+import static com.db.awmd.challenge.audit.MappedAuditRing.TO_TRUNCATED;
+import static com.db.awmd.challenge.audit.MappedAuditRing.UNSCALED;
+import static com.db.awmd.challenge.audit.MappedAuditRing.VERSION;
+import static com.db.awmd.challenge.audit.MappedAuditRing.offsetOf;
+
+/**
+ * Decodes a {@link MappedAuditRing} file, also while the service is still writing to it, and prints its records
+ * oldest first, one line each:
+ * <pre>
+ * ./gradlew auditRead -PauditFile=audit/transfers.ring -PauditSince=4711
+ * </pre>
+ * {@code auditSince} skips the records up to and including that sequence number, e.g. the last one printed before.
+ */
+public class AuditReader {
+
+  private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: AuditReader <audit file> [<print records after this sequence number>]");
+      System.exit(2);
+    }
+    long since = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    for (AuditRecord record : read(Paths.get(args[0]))) {
+      if (record.getSequence() > since)
+        System.out.println(record);
+    }
+  }
+
+  /**
+   * Returns the records in the file in sequence order, skipping slots being written while they are read.
+   */
+  public static List<AuditRecord> read(Path file) {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new AuditException("Could not read audit file " + file, e);
+    }
+    checkHeader(buffer, file);
+    int capacity = buffer.getInt(12);
+    List<AuditRecord> records = new ArrayList<>();
+    for (int slot = 0; slot < capacity; slot++) {
+      AuditRecord record = decode(buffer, offsetOf(slot));
+      if (record != null)
+        records.add(record);
+    }
+    records.sort(Comparator.comparingLong(AuditRecord::getSequence));
+    return records;
+  }
+
+  static void checkHeader(ByteBuffer buffer, Path file) {
+    if (buffer.capacity() < RECORD_SIZE || buffer.getInt(0) != MAGIC)
+      throw new AuditException(file + " is not an audit file");
+    if (buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE)
+      throw new AuditException("Audit file " + file + " has version " + buffer.getInt(4) + " and records of "
+              + buffer.getInt(8) + " bytes, expected version " + VERSION + " and " + RECORD_SIZE + " bytes");
+    if (buffer.capacity() < offsetOf(buffer.getInt(12)))
+      throw new AuditException("Audit file " + file + " is shorter than its capacity");
+  }
+
+  private static AuditRecord decode(ByteBuffer buffer, int base) {
+    long sequence = buffer.getLong(base + SEQUENCE);
+    if (sequence <= 0)
+      return null;
+    long millis = buffer.getLong(base + TIMESTAMP);
+    long unscaled = buffer.getLong(base + UNSCALED);
+    short scale = buffer.getShort(base + SCALE);
+    byte outcome = buffer.get(base + OUTCOME);
+    byte flags = buffer.get(base + FLAGS);
+    String from = id(buffer, base + FROM_ID, buffer.get(base + FROM_LENGTH), (flags & FROM_TRUNCATED) != 0);
+    String to = id(buffer, base + TO_ID, buffer.get(base + TO_LENGTH), (flags & TO_TRUNCATED) != 0);
+    if (buffer.getLong(base + SEQUENCE) != sequence)
+      return null;
+
+    BigDecimal amount = (flags & AMOUNT_TOO_LARGE) != 0 ? null : BigDecimal.valueOf(unscaled, scale);
+    String outcomeName = outcome == FAILED ? "FAILED"
+            : outcome > 0 && outcome <= STATUSES.length ? STATUSES[outcome - 1].name() : "UNKNOWN-" + outcome;
+    return new AuditRecord(sequence, Instant.ofEpochMilli(millis), from, to, amount, outcomeName);
+  }
+
+  private static String id(ByteBuffer buffer, int offset, byte length, boolean truncated) {
+    byte[] bytes = new byte[Math.min(length & 0xFF, MappedAuditRing.ID_BYTES)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    String id = new String(bytes, StandardCharsets.UTF_8);
+    return truncated ? id + "..." : id;
+  }
+}
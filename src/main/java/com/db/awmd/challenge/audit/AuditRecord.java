@@ -0,0 +1,37 @@
+package com.db.awmd.challenge.audit;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+public class AuditRecord {
+
+  private final long sequence;
+
+  private final Instant timestamp;
+
+  /**
+   * Ids longer than a record's id field end in {@code "..."}.
+   */
+  private final String fromAccountId;
+
+  private final String toAccountId;
+
+  /**
+   * {@code null} if the amount had more digits than a record holds.
+   */
+  private final BigDecimal amount;
+
+  /**
+   * The name of the {@link com.db.awmd.challenge.domain.TransferStatus}, or {@code FAILED}.
+   */
+  private final String outcome;
+
+  @Override
+  public String toString() {
+    return sequence + " " + timestamp + " " + fromAccountId + " -> " + toAccountId + " "
+            + (amount == null ? "?" : amount.toPlainString()) + " " + outcome;
+  }
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.audit;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Structured record of every transfer attempt and its outcome, written on the request thread in place of a log line.
+ */
+public interface AuditTrail {
+
+  AuditTrail NONE = new AuditTrail() {
+    @Override
+    public void transfer(String fromAccountId, String toAccountId, BigDecimal amount, TransferStatus outcome) {
+    }
+
+    @Override
+    public void transferFailed(String fromAccountId, String toAccountId, BigDecimal amount) {
+    }
+  };
+
+  void transfer(String fromAccountId, String toAccountId, BigDecimal amount, TransferStatus outcome);
+
+  /**
+   * Records a transfer that failed for a reason none of the {@link TransferStatus} values describe.
+   */
+  void transferFailed(String fromAccountId, String toAccountId, BigDecimal amount);
+}
@@ -0,0 +1,210 @@
+package com.db.awmd.challenge.audit;
+
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AuditException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Audit trail kept as fixed-size binary records in a memory-mapped file used as a ring, so the oldest records are
+ * overwritten once {@code capacity} records have been written. Writers claim a sequence number from an atomic counter
+ * and fill the slot it maps to with absolute puts, without a lock and without allocating, except for the 32 byte
+ * {@link java.math.BigInteger} that {@link BigDecimal#unscaledValue()} returns for amounts with a fractional part.
+ * <p>
+ * The file starts with a header of one record's size: {@code [int magic][int version][int record size][int
+ * capacity]}. Each record is
+ * <pre>
+ *   0  long  sequence, 1 for the first record; 0 for a free slot, -1 while being written
+ *   8  long  epoch millis
+ *  16  long  unscaled amount
+ *  24  short amount scale
+ *  26  byte  outcome: 0 failed, otherwise the ordinal of the {@link TransferStatus} plus one
+ *  27  byte  flags: amount too large, from id truncated, to id truncated
+ *  28  byte  from id length
+ *  29  byte  to id length
+ *  32  48 bytes from id, UTF-8
+ *  80  48 bytes to id, UTF-8
+ * </pre>
+ * The sequence is written last, so {@link AuditReader} accepts a record only if it reads the same sequence before and
+ * after its fields. Records reach the page cache immediately and survive a crash of the process; they are forced to
+ * disk only on {@link #close()}.
+ */
+public class MappedAuditRing implements AuditTrail, AutoCloseable {
+
+  static final int MAGIC = 0x41554454;
+  static final int VERSION = 1;
+  static final int RECORD_SIZE = 128;
+  static final int ID_BYTES = 48;
+
+  static final int SEQUENCE = 0;
+  static final int TIMESTAMP = 8;
+  static final int UNSCALED = 16;
+  static final int SCALE = 24;
+  static final int OUTCOME = 26;
+  static final int FLAGS = 27;
+  static final int FROM_LENGTH = 28;
+  static final int TO_LENGTH = 29;
+  static final int FROM_ID = 32;
+  static final int TO_ID = 80;
+
+  static final byte AMOUNT_TOO_LARGE = 1;
+  static final byte FROM_TRUNCATED = 2;
+  static final byte TO_TRUNCATED = 4;
+
+  static final byte FAILED = 0;
+
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE - 1;
+
+  private final MappedByteBuffer buffer;
+
+  private final int capacity;
+
+  private final AtomicLong sequence;
+
+  private volatile boolean closed;
+
+  private MappedAuditRing(MappedByteBuffer buffer, int capacity, long lastSequence) {
+    this.buffer = buffer;
+    this.capacity = capacity;
+    this.sequence = new AtomicLong(lastSequence);
+  }
+
+  /**
+   * Opens the ring file, creating it if needed, and continues after the newest record in it.
+   */
+  public static MappedAuditRing open(Path file, int capacity) {
+    if (capacity < 1 || capacity > MAX_CAPACITY)
+      throw new IllegalArgumentException(
+              "Audit capacity must be between 1 and " + MAX_CAPACITY + " but was " + capacity);
+    try {
+      if (file.getParent() != null)
+        Files.createDirectories(file.getParent());
+      MappedByteBuffer buffer;
+      try (FileChannel channel = FileChannel.open(file,
+              StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        boolean created = channel.size() == 0;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) (capacity + 1) * RECORD_SIZE);
+        if (created) {
+          buffer.putInt(0, MAGIC);
+          buffer.putInt(4, VERSION);
+          buffer.putInt(8, RECORD_SIZE);
+          buffer.putInt(12, capacity);
+        } else {
+          AuditReader.checkHeader(buffer, file);
+          if (buffer.getInt(12) != capacity)
+            throw new AuditException("Audit file " + file + " has a capacity of " + buffer.getInt(12)
+                    + " records, not " + capacity);
+        }
+      }
+      long last = 0;
+      for (int slot = 0; slot < capacity; slot++) {
+        last = Math.max(last, buffer.getLong(offsetOf(slot) + SEQUENCE));
+      }
+      return new MappedAuditRing(buffer, capacity, last);
+    } catch (IOException e) {
+      throw new AuditException("Could not open audit file " + file, e);
+    }
+  }
+
+  @Override
+  public void transfer(String fromAccountId, String toAccountId, BigDecimal amount, TransferStatus outcome) {
+    write(fromAccountId, toAccountId, amount, (byte) (outcome.ordinal() + 1));
+  }
+
+  @Override
+  public void transferFailed(String fromAccountId, String toAccountId, BigDecimal amount) {
+    write(fromAccountId, toAccountId, amount, FAILED);
+  }
+
+  long lastSequence() {
+    return sequence.get();
+  }
+
+  private void write(String fromAccountId, String toAccountId, BigDecimal amount, byte outcome) {
+    if (closed)
+      return;
+    long seq = sequence.incrementAndGet();
+    int base = offsetOf((int) ((seq - 1) % capacity));
+    buffer.putLong(base + SEQUENCE, -1);
+    buffer.putLong(base + TIMESTAMP, System.currentTimeMillis());
+    byte flags = 0;
+    if (amount.precision() <= 18 && amount.scale() == (short) amount.scale()) {
+      buffer.putLong(base + UNSCALED, amount.scale() == 0 ? amount.longValue() : amount.unscaledValue().longValue());
+      buffer.putShort(base + SCALE, (short) amount.scale());
+    } else {
+      buffer.putLong(base + UNSCALED, 0);
+      buffer.putShort(base + SCALE, (short) 0);
+      flags |= AMOUNT_TOO_LARGE;
+    }
+    buffer.put(base + OUTCOME, outcome);
+    int fromLength = putId(base + FROM_ID, fromAccountId);
+    int toLength = putId(base + TO_ID, toAccountId);
+    if (fromLength < 0)
+      flags |= FROM_TRUNCATED;
+    if (toLength < 0)
+      flags |= TO_TRUNCATED;
+    buffer.put(base + FROM_LENGTH, (byte) (fromLength < 0 ? ~fromLength : fromLength));
+    buffer.put(base + TO_LENGTH, (byte) (toLength < 0 ? ~toLength : toLength));
+    buffer.put(base + FLAGS, flags);
+    buffer.putLong(base + SEQUENCE, seq);
+  }
+
+  /**
+   * Encodes the id as UTF-8 straight into the record and returns the number of bytes written, or its complement if
+   * the rest of the id did not fit. Unpaired surrogates are written as {@code '?'}.
+   */
+  private int putId(int offset, String id) {
+    int length = 0;
+    for (int i = 0; i < id.length(); i++) {
+      int c = id.charAt(i);
+      int bytes;
+      if (Character.isHighSurrogate((char) c) && i + 1 < id.length() && Character.isLowSurrogate(id.charAt(i + 1))) {
+        c = Character.toCodePoint((char) c, id.charAt(i + 1));
+        bytes = 4;
+      } else if (Character.isSurrogate((char) c)) {
+        c = '?';
+        bytes = 1;
+      } else {
+        bytes = c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+      }
+      if (length + bytes > ID_BYTES)
+        return ~length;
+      int at = offset + length;
+      if (bytes == 1) {
+        buffer.put(at, (byte) c);
+      } else if (bytes == 2) {
+        buffer.put(at, (byte) (0xC0 | c >> 6));
+        buffer.put(at + 1, (byte) (0x80 | c & 0x3F));
+      } else if (bytes == 3) {
+        buffer.put(at, (byte) (0xE0 | c >> 12));
+        buffer.put(at + 1, (byte) (0x80 | c >> 6 & 0x3F));
+        buffer.put(at + 2, (byte) (0x80 | c & 0x3F));
+      } else {
+        buffer.put(at, (byte) (0xF0 | c >> 18));
+        buffer.put(at + 1, (byte) (0x80 | c >> 12 & 0x3F));
+        buffer.put(at + 2, (byte) (0x80 | c >> 6 & 0x3F));
+        buffer.put(at + 3, (byte) (0x80 | c & 0x3F));
+        i++;
+      }
+      length += bytes;
+    }
+    return length;
+  }
+
+  static int offsetOf(int slot) {
+    return (slot + 1) * RECORD_SIZE;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    buffer.force();
+  }
+}
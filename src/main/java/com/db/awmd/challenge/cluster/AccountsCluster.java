@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The other nodes holding accounts. {@link #NONE} is a single node that holds all of them.
+ */
+public interface AccountsCluster {
+
+  AccountsCluster NONE = new AccountsCluster() {
+    @Override
+    public boolean isLocal(String accountId) {
+      return true;
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+      throw new IllegalStateException("Not clustered");
+    }
+
+    @Override
+    public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+      throw new IllegalStateException("Not clustered");
+    }
+
+    @Override
+    public TransferStatus forwardTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+      throw new IllegalStateException("Not clustered");
+    }
+
+    @Override
+    public TransferResult transferOut(String fromAccountId, String toAccountId, BigDecimal amount) {
+      throw new IllegalStateException("Not clustered");
+    }
+  };
+
+  boolean isLocal(String accountId);
+
+  /**
+   * Reads an account owned by another node.
+   */
+  Account getAccount(String accountId) throws AccountNotFoundException;
+
+  /**
+   * Creates accounts owned by other nodes, each on its owner.
+   */
+  List<CreateAccountStatus> createAccounts(List<Account> accounts);
+
+  /**
+   * Has the node owning the source account run the transfer and returns its outcome.
+   */
+  TransferStatus forwardTransfer(String fromAccountId, String toAccountId, BigDecimal amount);
+
+  /**
+   * Moves the amount from a local account to an account owned by another node, atomically.
+   */
+  TransferResult transferOut(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException;
+}
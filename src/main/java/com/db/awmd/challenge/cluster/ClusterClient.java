@@ -0,0 +1,41 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.ClusterException;
+
+import java.util.List;
+
+/**
+ * Calls to other nodes of the cluster, each of which acts on that node's own accounts only. Any failure to get an
+ * answer is thrown as a {@link ClusterException}; the request may or may not have been applied.
+ */
+public interface ClusterClient {
+
+  Account getAccount(String nodeId, String accountId) throws AccountNotFoundException;
+
+  List<CreateAccountStatus> createAccounts(String nodeId, List<Account> accounts);
+
+  /**
+   * Runs the transfer on the node owning its source account.
+   */
+  TransferStatus transfer(String nodeId, TransferDto transfer);
+
+  /**
+   * Returns {@link TransferStatus#OK} once the node has recorded the credit to apply on commit,
+   * {@link TransferStatus#ACCOUNT_NOT_FOUND} or {@link TransferStatus#ABORTED} if it refuses it.
+   */
+  TransferStatus prepare(String nodeId, PreparedCredit credit);
+
+  /**
+   * Applies the prepared credit and returns the credited account; committing again has no further effect.
+   */
+  Account commit(String nodeId, String transactionId);
+
+  void abort(String nodeId, String transactionId);
+
+  Decision decision(String nodeId, String transactionId);
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@EnableConfigurationProperties(ClusterProperties.class)
+public class ClusterConfiguration {
+
+  @Bean
+  public ClusterClient clusterClient(ClusterProperties properties) {
+    return new HttpClusterClient(properties.getNodes(), properties.getRequestTimeoutMillis());
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "close")
+  public CrossShardTransfers crossShardTransfers(ClusterProperties properties, AccountsRepository repository,
+                                                 TransactionLedger ledger, ClusterClient client) {
+    return new CrossShardTransfers(properties.getNodeId(), repository, ledger, client,
+            properties.getResolveAfterMillis(), properties.getRetentionMillis());
+  }
+
+  @Bean
+  public ShardedAccountsCluster accountsCluster(ClusterProperties properties, ClusterClient client,
+                                                CrossShardTransfers transfers) {
+    HashRing ring = new HashRing(properties.getNodes().keySet(), properties.getVirtualNodes());
+    return new ShardedAccountsCluster(properties.getNodeId(), properties.getNodes().keySet(), ring, client,
+            transfers);
+  }
+}
@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+  private boolean enabled = false;
+
+  /**
+   * This node's key in {@link #nodes}.
+   */
+  private String nodeId = "node-1";
+
+  /**
+   * Every node of the cluster, this one included, by id with the base URL of its API. All nodes must be given the same
+   * map, since it decides which node owns an account.
+   */
+  private Map<String, String> nodes = new LinkedHashMap<>();
+
+  private int virtualNodes = 128;
+
+  private int requestTimeoutMillis = 5000;
+
+  /**
+   * How long a prepared credit waits for the coordinator's commit or abort before asking it for the decision.
+   */
+  private long resolveAfterMillis = 10000;
+
+  /**
+   * How long decisions and aborted transactions are remembered for late questions and late prepares.
+   */
+  private long retentionMillis = 600000;
+}
@@ -0,0 +1,343 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.ClusterException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-phase transfers between accounts owned by different nodes. The node owning the source account coordinates:
+ * <ol>
+ *   <li>it debits the source account, which fails the transfer right away if the funds are missing, and records the
+ *   transaction as {@link Decision#PENDING};</li>
+ *   <li>it asks the target node to prepare the credit, which that node records without applying it;</li>
+ *   <li>if the target node prepared, it decides {@link Decision#COMMITTED} and tells the target node to apply the
+ *   credit; otherwise, also when the target node did not answer, it decides {@link Decision#ABORTED}, tells the target
+ *   node to drop the credit and puts the amount back on the source account.</li>
+ * </ol>
+ * The decision is taken once and only here, so the credit is applied if and only if the debit stays. A commit that
+ * is not confirmed is resent by the coordinator until the target node acknowledges it, and the decision is kept until
+ * then. The target node also asks the coordinator for the decision of any credit still prepared after
+ * {@code resolveAfterMillis}. A transaction of the coordinator's current run that it no longer knows was aborted or its
+ * commit acknowledged, so it counts as aborted; one of an earlier run is answered {@link Decision#PENDING} and its
+ * credit stays prepared. Between the debit and the credit the amount is in flight and reported by
+ * {@link #pendingDebits()} and {@link #pendingCredits()}. The node owning an account records its leg in its ledger.
+ * <p>
+ * Decisions are kept in memory only: after a coordinator restarts, credits it had prepared elsewhere stay pending
+ * until an operator resolves them.
+ */
+@Slf4j
+public class CrossShardTransfers implements AutoCloseable {
+
+  private final String nodeId;
+
+  private final AccountsRepository repository;
+
+  private final TransactionLedger ledger;
+
+  private final ClusterClient client;
+
+  private final long resolveAfterMillis;
+
+  private final long retentionMillis;
+
+  private final String transactionPrefix;
+
+  private final AtomicLong transactionCounter = new AtomicLong();
+
+  private final Map<String, Transaction> transactions = new ConcurrentHashMap<>();
+
+  private final Map<String, Prepared> prepared = new ConcurrentHashMap<>();
+
+  private final Map<String, Long> aborted = new ConcurrentHashMap<>();
+
+  private final Map<String, Committed> committed = new ConcurrentHashMap<>();
+
+  private ScheduledExecutorService resolver;
+
+  public CrossShardTransfers(String nodeId, AccountsRepository repository, TransactionLedger ledger,
+                             ClusterClient client, long resolveAfterMillis, long retentionMillis) {
+    this.nodeId = nodeId;
+    this.repository = repository;
+    this.ledger = ledger;
+    this.client = client;
+    this.resolveAfterMillis = resolveAfterMillis;
+    this.retentionMillis = retentionMillis;
+    this.transactionPrefix = nodeId + "-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+  }
+
+  public void start() {
+    resolver = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "cross-shard-resolver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(1, resolveAfterMillis / 2);
+    resolver.scheduleWithFixedDelay(this::resolveQuietly, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Moves the amount from the local source account to the target account on {@code targetNode}. Throws
+   * {@link AccountNotFoundException} for the target account if its node does not know it, and a
+   * {@link ClusterException} if its node could not be reached; in both cases the source account is not changed. Once
+   * the transfer is committed it succeeds, but the target account is {@code null} if the target node has not confirmed
+   * the credit yet.
+   */
+  public TransferResult transfer(String fromAccountId, String toAccountId, String targetNode, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException {
+    Account from = repository.debitAccount(fromAccountId, amount);
+    String transactionId = transactionPrefix + transactionCounter.incrementAndGet();
+    Transaction transaction = new Transaction(targetNode, amount);
+    transactions.put(transactionId, transaction);
+
+    TransferStatus vote;
+    ClusterException failure = null;
+    try {
+      vote = client.prepare(targetNode, new PreparedCredit(transactionId, nodeId, fromAccountId, toAccountId, amount));
+    } catch (ClusterException ex) {
+      vote = TransferStatus.ABORTED;
+      failure = ex;
+    }
+
+    if (vote == TransferStatus.OK) {
+      transaction.decide(Decision.COMMITTED);
+      Account to = null;
+      try {
+        to = client.commit(targetNode, transactionId);
+        transaction.acknowledged();
+      } catch (ClusterException ex) {
+        log.warn("Commit of {} not confirmed by node {}, it will be resent: {}", transactionId, targetNode,
+                ex.getMessage());
+      }
+      return new TransferResult(from, to);
+    }
+
+    transaction.decide(Decision.ABORTED);
+    try {
+      client.abort(targetNode, transactionId);
+    } catch (ClusterException ex) {
+      log.debug("Abort of {} not confirmed by node {}", transactionId, targetNode, ex);
+    }
+    repository.creditAccount(fromAccountId, amount);
+    if (vote == TransferStatus.ACCOUNT_NOT_FOUND)
+      throw new AccountNotFoundException(toAccountId, "AccountId " + toAccountId + " does not exist or is invalid");
+    if (failure != null)
+      throw failure;
+    throw new ClusterException("Node " + targetNode + " refused transaction " + transactionId + ": " + vote);
+  }
+
+  /**
+   * Records the credit for the target account, which must be local, to be applied when the coordinator commits.
+   */
+  public TransferStatus prepare(PreparedCredit credit) {
+    if (aborted.containsKey(credit.getTransactionId()))
+      return TransferStatus.ABORTED;
+    try {
+      repository.getAccount(credit.getAccountId());
+    } catch (AccountNotFoundException ex) {
+      return TransferStatus.ACCOUNT_NOT_FOUND;
+    }
+    prepared.putIfAbsent(credit.getTransactionId(), new Prepared(credit, System.currentTimeMillis()));
+    return TransferStatus.OK;
+  }
+
+  /**
+   * Applies the prepared credit. Of concurrent or repeated commits only the first applies it; the others return the
+   * credited account as long as the commit is retained, and fail for a transaction that was never prepared.
+   */
+  public Account commit(String transactionId) {
+    Prepared credit = prepared.remove(transactionId);
+    if (credit != null)
+      return apply(transactionId, credit);
+    Committed done = committed.get(transactionId);
+    if (done == null)
+      throw new ClusterException("No credit prepared for transaction " + transactionId);
+    return repository.getAccount(done.accountId);
+  }
+
+  public void abort(String transactionId) {
+    aborted.put(transactionId, System.currentTimeMillis());
+    prepared.remove(transactionId);
+  }
+
+  /**
+   * A committed transaction is kept until its commit has been acknowledged, so an unknown transaction of this run was
+   * never committed, or its credit has been applied already.
+   */
+  public Decision decision(String transactionId) {
+    Transaction transaction = transactions.get(transactionId);
+    if (transaction != null)
+      return transaction.decision;
+    return transactionId.startsWith(transactionPrefix) ? Decision.ABORTED : Decision.PENDING;
+  }
+
+  /**
+   * The transfers coordinated here that have debited their source account and not been decided yet.
+   */
+  public InFlight pendingDebits() {
+    long count = 0;
+    BigDecimal amount = BigDecimal.ZERO;
+    for (Transaction transaction : transactions.values()) {
+      if (transaction.decision == Decision.PENDING) {
+        count++;
+        amount = amount.add(transaction.amount);
+      }
+    }
+    return new InFlight(count, amount);
+  }
+
+  /**
+   * The credits prepared here and neither committed nor aborted yet.
+   */
+  public InFlight pendingCredits() {
+    long count = 0;
+    BigDecimal amount = BigDecimal.ZERO;
+    for (Prepared credit : prepared.values()) {
+      count++;
+      amount = amount.add(credit.credit.getAmount());
+    }
+    return new InFlight(count, amount);
+  }
+
+  /**
+   * Resends the commits not acknowledged yet, asks the coordinators of credits prepared longer than
+   * {@code resolveAfterMillis} ago for their decision and applies it, and forgets acknowledged commits, aborts and
+   * applied credits older than the retention.
+   */
+  public void resolve() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, Transaction> entry : transactions.entrySet()) {
+      Transaction transaction = entry.getValue();
+      if (transaction.decision != Decision.COMMITTED || transaction.acknowledgedAt != 0)
+        continue;
+      try {
+        client.commit(transaction.targetNode, entry.getKey());
+        transaction.acknowledged();
+        log.info("Commit of {} confirmed by node {}", entry.getKey(), transaction.targetNode);
+      } catch (ClusterException ex) {
+        log.warn("Could not resend commit of {} to node {}: {}", entry.getKey(), transaction.targetNode,
+                ex.getMessage());
+      }
+    }
+    for (Map.Entry<String, Prepared> entry : prepared.entrySet()) {
+      Prepared credit = entry.getValue();
+      if (now - credit.preparedAt < resolveAfterMillis)
+        continue;
+      String transactionId = entry.getKey();
+      Decision decision;
+      try {
+        decision = client.decision(credit.credit.getCoordinator(), transactionId);
+      } catch (ClusterException ex) {
+        log.warn("Could not resolve {} with node {}: {}", transactionId, credit.credit.getCoordinator(),
+                ex.getMessage());
+        continue;
+      }
+      if (decision == Decision.COMMITTED && prepared.remove(transactionId, credit)) {
+        apply(transactionId, credit);
+        log.info("Applied credit of {} after asking node {}", transactionId, credit.credit.getCoordinator());
+      } else if (decision == Decision.ABORTED) {
+        abort(transactionId);
+        log.info("Dropped credit of {} after asking node {}", transactionId, credit.credit.getCoordinator());
+      }
+    }
+    transactions.values().removeIf(transaction -> transaction.decision == Decision.ABORTED
+            && now - transaction.decidedAt > retentionMillis
+            || transaction.acknowledgedAt != 0 && now - transaction.acknowledgedAt > retentionMillis);
+    aborted.values().removeIf(abortedAt -> now - abortedAt > retentionMillis);
+    committed.values().removeIf(done -> now - done.committedAt > retentionMillis);
+  }
+
+  private Account apply(String transactionId, Prepared credit) {
+    Account account = repository.creditAccount(credit.credit.getAccountId(), credit.credit.getAmount());
+    committed.put(transactionId, new Committed(credit.credit.getAccountId(), System.currentTimeMillis()));
+    ledger.recordCredit(credit.credit.getAccountId(), credit.credit.getFromAccountId(), credit.credit.getAmount());
+    return account;
+  }
+
+  private void resolveQuietly() {
+    try {
+      resolve();
+    } catch (RuntimeException ex) {
+      log.error("Resolving prepared credits failed", ex);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (resolver != null)
+      resolver.shutdownNow();
+  }
+
+  @Data
+  public static class InFlight {
+
+    private final long count;
+
+    private final BigDecimal amount;
+  }
+
+  private static final class Transaction {
+
+    private final String targetNode;
+
+    private final BigDecimal amount;
+
+    private volatile Decision decision = Decision.PENDING;
+
+    private volatile long decidedAt;
+
+    private volatile long acknowledgedAt;
+
+    private Transaction(String targetNode, BigDecimal amount) {
+      this.targetNode = targetNode;
+      this.amount = amount;
+    }
+
+    private void decide(Decision decision) {
+      this.decidedAt = System.currentTimeMillis();
+      this.decision = decision;
+    }
+
+    private void acknowledged() {
+      this.acknowledgedAt = System.currentTimeMillis();
+    }
+  }
+
+  private static final class Committed {
+
+    private final String accountId;
+
+    private final long committedAt;
+
+    private Committed(String accountId, long committedAt) {
+      this.accountId = accountId;
+      this.committedAt = committedAt;
+    }
+  }
+
+  private static final class Prepared {
+
+    private final PreparedCredit credit;
+
+    private final long preparedAt;
+
+    private Prepared(PreparedCredit credit, long preparedAt) {
+      this.credit = credit;
+      this.preparedAt = preparedAt;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.cluster;
+
+/**
+ * The coordinator's outcome of a cross-shard transfer. A transaction of its current run that the coordinator does not
+ * know, because it never started or was forgotten, counts as {@link #ABORTED}; one of an earlier run stays
+ * {@link #PENDING}, since the coordinator cannot tell whether it committed.
+ */
+public enum Decision {
+  PENDING, COMMITTED, ABORTED
+}
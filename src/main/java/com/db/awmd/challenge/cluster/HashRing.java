@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.cluster;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Consistent hashing of account ids onto nodes. Each node is placed at {@code virtualNodes} points of a 64-bit ring
+ * and owns the ids hashing to the arc ending at each of its points, so adding or removing a node only moves the ids of
+ * the arcs it gains or loses, and the arcs are spread evenly enough that every node gets a similar share.
+ */
+public final class HashRing {
+
+  private final long[] points;
+
+  private final String[] owners;
+
+  public HashRing(Collection<String> nodeIds, int virtualNodes) {
+    if (nodeIds.isEmpty() || virtualNodes < 1)
+      throw new IllegalArgumentException("A ring needs at least one node and one virtual node per node");
+    int size = nodeIds.size() * virtualNodes;
+    long[] hashes = new long[size];
+    String[] nodes = new String[size];
+    int i = 0;
+    for (String nodeId : nodeIds) {
+      for (int v = 0; v < virtualNodes; v++) {
+        hashes[i] = hash(nodeId + "#" + v);
+        nodes[i] = nodeId;
+        i++;
+      }
+    }
+    Integer[] order = new Integer[size];
+    for (int j = 0; j < size; j++) {
+      order[j] = j;
+    }
+    Arrays.sort(order, (a, b) -> {
+      int byHash = Long.compare(hashes[a], hashes[b]);
+      return byHash != 0 ? byHash : nodes[a].compareTo(nodes[b]);
+    });
+    this.points = new long[size];
+    this.owners = new String[size];
+    for (int j = 0; j < size; j++) {
+      points[j] = hashes[order[j]];
+      owners[j] = nodes[order[j]];
+    }
+  }
+
+  public String ownerOf(String accountId) {
+    int index = Arrays.binarySearch(points, hash(accountId));
+    if (index < 0)
+      index = -index - 1;
+    return owners[index == points.length ? 0 : index];
+  }
+
+  /**
+   * FNV-1a over the chars, finished with the MurmurHash3 mix so that ids differing only in their last characters
+   * spread over the whole ring.
+   */
+  static long hash(String key) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      h ^= key.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.ClusterException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Talks to the {@code /v1/cluster} endpoints of the other nodes over HTTP, reusing kept-alive connections.
+ */
+public class HttpClusterClient implements ClusterClient {
+
+  private final Map<String, String> nodes;
+
+  private final RestTemplate restTemplate;
+
+  public HttpClusterClient(Map<String, String> nodes, int timeoutMillis) {
+    this.nodes = nodes;
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(timeoutMillis);
+    requestFactory.setReadTimeout(timeoutMillis);
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  @Override
+  public Account getAccount(String nodeId, String accountId) {
+    try {
+      return call(nodeId, () -> restTemplate.getForObject(url(nodeId, "/accounts/{id}"), Account.class, accountId));
+    } catch (ClusterException ex) {
+      if (ex.getCause() instanceof HttpStatusCodeException
+              && ((HttpStatusCodeException) ex.getCause()).getStatusCode() == HttpStatus.NOT_FOUND)
+        throw new AccountNotFoundException(accountId, "AccountId " + accountId + " does not exist or is invalid");
+      throw ex;
+    }
+  }
+
+  @Override
+  public List<CreateAccountStatus> createAccounts(String nodeId, List<Account> accounts) {
+    return Arrays.asList(call(nodeId,
+            () -> restTemplate.postForObject(url(nodeId, "/accounts"), accounts, CreateAccountStatus[].class)));
+  }
+
+  @Override
+  public TransferStatus transfer(String nodeId, TransferDto transfer) {
+    return call(nodeId, () -> restTemplate.postForObject(url(nodeId, "/transfer"), transfer, TransferStatus.class));
+  }
+
+  @Override
+  public TransferStatus prepare(String nodeId, PreparedCredit credit) {
+    return call(nodeId, () -> restTemplate.postForObject(url(nodeId, "/prepare"), credit, TransferStatus.class));
+  }
+
+  @Override
+  public Account commit(String nodeId, String transactionId) {
+    return call(nodeId,
+            () -> restTemplate.postForObject(url(nodeId, "/commit/{id}"), null, Account.class, transactionId));
+  }
+
+  @Override
+  public void abort(String nodeId, String transactionId) {
+    call(nodeId, () -> restTemplate.postForObject(url(nodeId, "/abort/{id}"), null, String.class, transactionId));
+  }
+
+  @Override
+  public Decision decision(String nodeId, String transactionId) {
+    return call(nodeId,
+            () -> restTemplate.getForObject(url(nodeId, "/decisions/{id}"), Decision.class, transactionId));
+  }
+
+  private String url(String nodeId, String path) {
+    String base = nodes.get(nodeId);
+    if (base == null)
+      throw new ClusterException("Unknown node " + nodeId);
+    return base + "/v1/cluster" + path;
+  }
+
+  private static <T> T call(String nodeId, Supplier<T> request) {
+    try {
+      return request.get();
+    } catch (RestClientException ex) {
+      throw new ClusterException("Request to node " + nodeId + " failed: " + ex.getMessage(), ex);
+    }
+  }
+}
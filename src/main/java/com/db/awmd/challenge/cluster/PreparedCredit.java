@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.cluster;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * The credit leg of a cross-shard transfer, sent by the coordinator, which has already debited the source account, to
+ * the node owning the target account.
+ */
+@Data
+public class PreparedCredit {
+
+  private final String transactionId;
+
+  private final String coordinator;
+
+  private final String fromAccountId;
+
+  private final String accountId;
+
+  private final BigDecimal amount;
+}
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ClusterStatus;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accounts spread over the nodes of a {@link HashRing}, each node owning the accounts whose ids hash to its arcs.
+ */
+public class ShardedAccountsCluster implements AccountsCluster, PublicMetrics {
+
+  private final String nodeId;
+
+  private final HashRing ring;
+
+  private final ClusterClient client;
+
+  private final CrossShardTransfers transfers;
+
+  private final Collection<String> nodeIds;
+
+  public ShardedAccountsCluster(String nodeId, Collection<String> nodeIds, HashRing ring, ClusterClient client,
+                                CrossShardTransfers transfers) {
+    if (!nodeIds.contains(nodeId))
+      throw new IllegalArgumentException("Node " + nodeId + " is not one of the cluster nodes " + nodeIds);
+    this.nodeId = nodeId;
+    this.nodeIds = nodeIds;
+    this.ring = ring;
+    this.client = client;
+    this.transfers = transfers;
+  }
+
+  @Override
+  public boolean isLocal(String accountId) {
+    return ring.ownerOf(accountId).equals(nodeId);
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return client.getAccount(ring.ownerOf(accountId), accountId);
+  }
+
+  /**
+   * Sends one request per owning node and puts the statuses back in the order of the accounts.
+   */
+  @Override
+  public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+    Map<String, List<Integer>> indexesByNode = new LinkedHashMap<>();
+    for (int i = 0; i < accounts.size(); i++) {
+      indexesByNode.computeIfAbsent(ring.ownerOf(accounts.get(i).getAccountId()), node -> new ArrayList<>()).add(i);
+    }
+    CreateAccountStatus[] statuses = new CreateAccountStatus[accounts.size()];
+    indexesByNode.forEach((node, indexes) -> {
+      List<Account> batch = new ArrayList<>(indexes.size());
+      indexes.forEach(i -> batch.add(accounts.get(i)));
+      List<CreateAccountStatus> created = client.createAccounts(node, batch);
+      for (int i = 0; i < indexes.size(); i++) {
+        statuses[indexes.get(i)] = created.get(i);
+      }
+    });
+    return Arrays.asList(statuses);
+  }
+
+  @Override
+  public TransferStatus forwardTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    return client.transfer(ring.ownerOf(fromAccountId), new TransferDto(fromAccountId, toAccountId, amount));
+  }
+
+  @Override
+  public TransferResult transferOut(String fromAccountId, String toAccountId, BigDecimal amount) {
+    return transfers.transfer(fromAccountId, toAccountId, ring.ownerOf(toAccountId), amount);
+  }
+
+  public ClusterStatus status() {
+    CrossShardTransfers.InFlight debits = transfers.pendingDebits();
+    CrossShardTransfers.InFlight credits = transfers.pendingCredits();
+    return new ClusterStatus(nodeId, new ArrayList<>(nodeIds), debits.getCount(), debits.getAmount(),
+            credits.getCount(), credits.getAmount());
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    ClusterStatus status = status();
+    return Arrays.asList(
+            new Metric<>("cluster.transfers.pending-debits", status.getPendingDebits()),
+            new Metric<>("cluster.transfers.pending-credits", status.getPendingCredits()));
+  }
+}
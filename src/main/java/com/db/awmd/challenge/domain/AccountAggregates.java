@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+public class AccountAggregates {
+
+  private final long accounts;
+
+  private final BigDecimal totalBalance;
+
+  /**
+   * Number of accounts per balance range, keyed by the range's bound, e.g. {@code "<100"} for 10 up to 100.
+   */
+  private final Map<String, Long> balanceDistribution;
+
+  /**
+   * Operations whose balance changes did not add up to what they were meant to move; should always be 0.
+   */
+  private final long conservationViolations;
+}
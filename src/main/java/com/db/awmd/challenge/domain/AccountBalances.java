@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Accounts read from one snapshot, so no transfer between them is seen on one side only.
+ */
+@Data
+public class AccountBalances {
+
+  private final List<Account> accounts;
+
+  private final List<String> notFound;
+}
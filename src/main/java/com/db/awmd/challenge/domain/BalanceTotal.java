@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class BalanceTotal {
+
+  private final long accounts;
+
+  private final BigDecimal totalBalance;
+}
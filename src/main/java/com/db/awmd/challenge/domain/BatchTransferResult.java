@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferResult {
+
+  private final int applied;
+
+  private final List<TransferStatus> results;
+}
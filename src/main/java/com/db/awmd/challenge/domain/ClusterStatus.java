@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+public class ClusterStatus {
+
+  private final String nodeId;
+
+  private final List<String> nodes;
+
+  /**
+   * Cross-shard transfers coordinated here whose source account has been debited and that are not decided yet.
+   */
+  private final long pendingDebits;
+
+  private final BigDecimal pendingDebitAmount;
+
+  /**
+   * Credits prepared here for cross-shard transfers and not yet committed or aborted.
+   */
+  private final long pendingCredits;
+
+  private final BigDecimal pendingCreditAmount;
+}
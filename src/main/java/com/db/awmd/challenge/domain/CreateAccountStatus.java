@@ -0,0 +1,7 @@
+package com.db.awmd.challenge.domain;
+
+public enum CreateAccountStatus {
+  CREATED,
+  DUPLICATE,
+  AMOUNT_OUT_OF_RANGE
+}
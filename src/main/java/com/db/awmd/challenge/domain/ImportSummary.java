@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ImportSummary {
+
+  private final long created;
+
+  private final long duplicates;
+
+  private final long rejected;
+
+  /**
+   * The first duplicates and rejects, one line each; the counts above cover all of them.
+   */
+  private final List<String> problems;
+}
@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One leg of a transfer as seen from one account. Sequences number the entries of an account from 0.
+ */
+@Data
+public class LedgerEntry {
+
+  public enum Type {
+    DEBIT,
+    CREDIT
+  }
+
+  private final long sequence;
+
+  private final long timestamp;
+
+  private final Type type;
+
+  private final String counterpartyId;
+
+  private final BigDecimal amount;
+}
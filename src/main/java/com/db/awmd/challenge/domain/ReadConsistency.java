@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.domain;
+
+public enum ReadConsistency {
+  /**
+   * Every account is read as it is at the moment it is visited; transfers applied meanwhile may be seen half.
+   */
+  WEAK,
+  /**
+   * Every account is read as it was at one instant, so each transfer is seen either completely or not at all.
+   */
+  SNAPSHOT
+}
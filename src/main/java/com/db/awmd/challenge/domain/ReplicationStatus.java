@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ReplicationStatus {
+
+  private final String role;
+
+  /**
+   * CONNECTING, SYNCING or STREAMING on a follower, SERVING on a primary.
+   */
+  private final String state;
+
+  /**
+   * The last change appended on a primary, the last change applied on a follower.
+   */
+  private final long sequence;
+
+  /**
+   * How many changes a follower has received or been told of but not yet applied; the largest such lag among the
+   * followers of a primary, by their acknowledgements.
+   */
+  private final long lagRecords;
+
+  /**
+   * How long ago the oldest change of the last batch a follower applied had been applied on the primary.
+   */
+  private final long lagMillis;
+
+  private final List<Follower> followers;
+
+  @Data
+  public static class Follower {
+
+    private final String address;
+
+    private final long acknowledgedSequence;
+
+    private final long lagRecords;
+  }
+}
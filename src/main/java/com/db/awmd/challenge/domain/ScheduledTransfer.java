@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * A transfer to run at {@code nextExecution} (epoch millis) and, if {@code intervalMillis} is positive, every interval
+ * after that.
+ */
+@Data
+public class ScheduledTransfer {
+
+  private final String id;
+
+  private final String fromAccountId;
+
+  private final String toAccountId;
+
+  private final BigDecimal amount;
+
+  private final long nextExecution;
+
+  private final long intervalMillis;
+}
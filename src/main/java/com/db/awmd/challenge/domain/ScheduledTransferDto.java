@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+
+@Data
+public class ScheduledTransferDto {
+
+  @NotNull
+  @NotEmpty
+  private final String fromAccountId;
+
+  @NotNull
+  @NotEmpty
+  private final String toAccountId;
+
+  @NotNull
+  @Min(value = 0, message = "Transfer amount must be positive")
+  private final BigDecimal amount;
+
+  @NotNull
+  @Min(0)
+  private final Long executeAt;
+
+  @Min(0)
+  private final long intervalMillis;
+
+}
@@ -0,0 +1,31 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+@Data
+public class TransferResult {
+
+  private final TransferStatus status;
+
+  private final Account from;
+
+  private final Account to;
+
+  public TransferResult(Account from, Account to) {
+    this(TransferStatus.OK, from, to);
+  }
+
+  private TransferResult(TransferStatus status, Account from, Account to) {
+    this.status = status;
+    this.from = from;
+    this.to = to;
+  }
+
+  public static TransferResult rejected(TransferStatus status) {
+    return new TransferResult(status, null, null);
+  }
+
+  public boolean isApplied() {
+    return status == TransferStatus.OK;
+  }
+}
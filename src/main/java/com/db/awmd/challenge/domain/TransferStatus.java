@@ -0,0 +1,10 @@
+package com.db.awmd.challenge.domain;
+
+public enum TransferStatus {
+  OK,
+  INVALID,
+  ACCOUNT_NOT_FOUND,
+  INSUFFICIENT_FUNDS,
+  AMOUNT_OUT_OF_RANGE,
+  ABORTED
+}
@@ -1,7 +1,18 @@
 package com.db.awmd.challenge.exception;
 
+import lombok.Getter;
+
 public class AccountNotFoundException extends RuntimeException {
+
+  @Getter
+  private final String accountId;
+
   public AccountNotFoundException(String message) {
+    this(null, message);
+  }
+
+  public AccountNotFoundException(String accountId, String message) {
     super(message);
+    this.accountId = accountId;
   }
 }
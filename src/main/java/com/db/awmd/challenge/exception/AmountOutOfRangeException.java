@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class AmountOutOfRangeException extends RuntimeException {
+
+  public AmountOutOfRangeException(String message) {
+    super(message);
+  }
+}
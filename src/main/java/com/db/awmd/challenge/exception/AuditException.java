@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+public class AuditException extends RuntimeException {
+
+  public AuditException(String message) {
+    super(message);
+  }
+
+  public AuditException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+public class ClusterException extends RuntimeException {
+
+  public ClusterException(String message) {
+    super(message);
+  }
+
+  public ClusterException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
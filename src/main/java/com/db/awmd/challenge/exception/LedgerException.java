@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class LedgerException extends RuntimeException {
+
+  public LedgerException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class TieredStoreException extends RuntimeException {
+
+  public TieredStoreException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
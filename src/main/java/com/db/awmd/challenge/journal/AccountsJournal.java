@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.journal;
+
+import java.math.BigDecimal;
+
+/**
+ * Write side of the account journal. Every append returns the journal position just after the record, which the
+ * caller hands to {@link #awaitDurable(long)} once it has released its locks, so that concurrent writers can share one
+ * flush.
+ */
+public interface AccountsJournal {
+
+  AccountsJournal NONE = new AccountsJournal() {
+    @Override
+    public long appendCreate(String accountId, BigDecimal balance) {
+      return 0;
+    }
+
+    @Override
+    public long appendDebit(String accountId, BigDecimal amount) {
+      return 0;
+    }
+
+    @Override
+    public long appendCredit(String accountId, BigDecimal amount) {
+      return 0;
+    }
+
+    @Override
+    public long appendTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+      return 0;
+    }
+
+    @Override
+    public long appendClear() {
+      return 0;
+    }
+
+    @Override
+    public void awaitDurable(long position) {
+    }
+
+    @Override
+    public long position() {
+      return 0;
+    }
+  };
+
+  long appendCreate(String accountId, BigDecimal balance);
+
+  long appendDebit(String accountId, BigDecimal amount);
+
+  long appendCredit(String accountId, BigDecimal amount);
+
+  long appendTransfer(String fromAccountId, String toAccountId, BigDecimal amount);
+
+  long appendClear();
+
+  void awaitDurable(long position);
+
+  /**
+   * The position just after the last appended record. Read while holding an account's lock, it is at or after the end
+   * of every record for that account appended so far and at or before the start of any later one.
+   */
+  long position();
+}
@@ -0,0 +1,120 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rebuilds all balances from the newest readable snapshot plus the journal written after it. A snapshot is taken while
+ * transfers carry on, so each account's balance was read at its own journal position; a journal record changes an
+ * account only if it starts at or after that position.
+ */
+@Slf4j
+public class AccountsRecovery implements JournalVisitor {
+
+  private final Map<String, RecoveredAccount> accounts = new ConcurrentHashMap<>();
+
+  @Getter
+  private long snapshotPosition;
+
+  @Getter
+  private long snapshotAccounts;
+
+  @Getter
+  private long replayedRecords;
+
+  /**
+   * Loads the snapshot and journal found in {@code directory} into {@code repository}, which must be empty and must
+   * not have a journal attached yet.
+   */
+  public void recover(Path directory, MappedFileJournal journal, AccountsRepository repository) {
+    loadLatestSnapshot(directory);
+    journal.replay(snapshotPosition, this);
+    accounts.entrySet().parallelStream().forEach(entry ->
+            repository.createAccount(new Account(entry.getKey(), entry.getValue().balance)));
+    log.info("Recovered {} accounts from snapshot at position {} and {} journal records",
+            accounts.size(), snapshotPosition, replayedRecords);
+  }
+
+  @Override
+  public void onCreate(long position, String accountId, BigDecimal balance) {
+    replayedRecords++;
+    RecoveredAccount existing = accounts.get(accountId);
+    if (existing == null || existing.snapshotPosition <= position)
+      accounts.put(accountId, new RecoveredAccount(balance, 0));
+  }
+
+  @Override
+  public void onDebit(long position, String accountId, BigDecimal amount) {
+    replayedRecords++;
+    apply(position, accountId, amount.negate());
+  }
+
+  @Override
+  public void onCredit(long position, String accountId, BigDecimal amount) {
+    replayedRecords++;
+    apply(position, accountId, amount);
+  }
+
+  @Override
+  public void onTransfer(long position, String fromAccountId, String toAccountId, BigDecimal amount) {
+    replayedRecords++;
+    apply(position, fromAccountId, amount.negate());
+    apply(position, toAccountId, amount);
+  }
+
+  @Override
+  public void onClear(long position) {
+    replayedRecords++;
+    accounts.values().removeIf(account -> account.snapshotPosition <= position);
+  }
+
+  private void apply(long position, String accountId, BigDecimal delta) {
+    RecoveredAccount account = accounts.get(accountId);
+    if (account == null)
+      throw new JournalException("Journal record at position " + position + " refers to unknown account " + accountId);
+    if (account.snapshotPosition <= position)
+      account.balance = account.balance.add(delta);
+  }
+
+  private void loadLatestSnapshot(Path directory) {
+    List<Long> positions;
+    try {
+      positions = SnapshotFile.coveredPositions(directory);
+    } catch (IOException e) {
+      throw new JournalException("Could not list snapshots in " + directory, e);
+    }
+    for (int i = positions.size() - 1; i >= 0; i--) {
+      try {
+        snapshotAccounts = SnapshotFile.read(SnapshotFile.path(directory, positions.get(i)),
+                (accountId, balance, position) -> accounts.put(accountId, new RecoveredAccount(balance, position)));
+        snapshotPosition = positions.get(i);
+        return;
+      } catch (JournalException e) {
+        log.warn("Skipping unreadable snapshot at position {}", positions.get(i), e);
+        accounts.clear();
+      }
+    }
+  }
+
+  private static class RecoveredAccount {
+
+    private BigDecimal balance;
+
+    private final long snapshotPosition;
+
+    RecoveredAccount(BigDecimal balance, long snapshotPosition) {
+      this.balance = balance;
+      this.snapshotPosition = snapshotPosition;
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.journal;
+
+public enum Durability {
+  /**
+   * A write returns once the flush covering it has completed. Writers arriving within one commit interval share
+   * a single flush.
+   */
+  SYNC,
+  /**
+   * A write returns as soon as it is in the mapped file. The flusher forces it to disk within one commit interval,
+   * so a crash of the machine can lose up to that interval of writes.
+   */
+  ASYNC
+}
@@ -0,0 +1,50 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+@EnableConfigurationProperties(JournalProperties.class)
+public class JournalConfiguration {
+
+  @Bean(destroyMethod = "close")
+  public MappedFileJournal accountsJournal(JournalProperties properties, AccountsRepositoryInMemory repository,
+                                           GaugeService gaugeService) {
+    Path directory = Paths.get(properties.getDirectory());
+    long start = System.nanoTime();
+    MappedFileJournal journal = MappedFileJournal.open(directory,
+            properties.getSegmentSize(), properties.getDurability(), properties.getCommitIntervalMillis());
+
+    AccountsRecovery recovery = new AccountsRecovery();
+    recovery.recover(directory, journal, repository);
+    repository.attachJournal(journal);
+
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    gaugeService.submit("accounts.recovery.millis", millis);
+    gaugeService.submit("accounts.recovery.snapshot-accounts", recovery.getSnapshotAccounts());
+    gaugeService.submit("accounts.recovery.replayed-records", recovery.getReplayedRecords());
+    log.info("Recovered accounts from {} in {} ms", directory, millis);
+    return journal;
+  }
+
+  @Bean(destroyMethod = "close")
+  public Snapshotter snapshotter(JournalProperties properties, AccountsRepositoryInMemory repository,
+                                 MappedFileJournal journal, GaugeService gaugeService) {
+    Snapshotter snapshotter = new Snapshotter(Paths.get(properties.getDirectory()), repository, journal,
+            properties.getSnapshotsRetained(), properties.getSnapshotChunkSize(), gaugeService);
+    if (properties.getSnapshotIntervalMillis() > 0)
+      snapshotter.start(properties.getSnapshotIntervalMillis());
+    return snapshotter;
+  }
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.journal;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "accounts.journal")
+public class JournalProperties {
+
+  private boolean enabled = false;
+
+  private String directory = "journal";
+
+  private long segmentSize = 64L * 1024 * 1024;
+
+  private Durability durability = Durability.SYNC;
+
+  private long commitIntervalMillis = 2;
+
+  private long snapshotIntervalMillis = 0;
+
+  private int snapshotsRetained = 2;
+
+  private int snapshotChunkSize = 4096;
+}
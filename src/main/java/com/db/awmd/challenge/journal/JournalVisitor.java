@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.journal;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives journal records in journal order. {@code position} is the journal position at which the record starts.
+ */
+public interface JournalVisitor {
+
+  void onCreate(long position, String accountId, BigDecimal balance);
+
+  void onDebit(long position, String accountId, BigDecimal amount);
+
+  void onCredit(long position, String accountId, BigDecimal amount);
+
+  void onTransfer(long position, String fromAccountId, String toAccountId, BigDecimal amount);
+
+  void onClear(long position);
+}
@@ -0,0 +1,427 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static com.db.awmd.challenge.journal.RecordCodec.amountSize;
+import static com.db.awmd.challenge.journal.RecordCodec.getAmount;
+import static com.db.awmd.challenge.journal.RecordCodec.getId;
+import static com.db.awmd.challenge.journal.RecordCodec.idSize;
+import static com.db.awmd.challenge.journal.RecordCodec.putAmount;
+import static com.db.awmd.challenge.journal.RecordCodec.putId;
+import static com.db.awmd.challenge.journal.RecordCodec.unscaled;
+import static com.db.awmd.challenge.journal.RecordCodec.utf8;
+
+/**
+ * Append-only journal of account changes kept in fixed size, memory-mapped segment files. A segment is named after the
+ * journal position of its first byte, so positions grow monotonically across segments.
+ * <p>
+ * Each record is {@code [int length][int crc32][payload]} and is followed by a zero length that marks the end of the
+ * journal until the next record overwrites it. Appends are serialised on the journal and only copy bytes into the
+ * mapping; a single flusher thread forces the mapping to disk, covering every record appended since the previous
+ * flush.
+ */
+@Slf4j
+public class MappedFileJournal implements AccountsJournal, AutoCloseable {
+
+  static final String SEGMENT_SUFFIX = ".journal";
+
+  private static final int HEADER_SIZE = 8;
+  private static final int END_MARKER_SIZE = 4;
+
+  private static final byte CREATE = 1;
+  private static final byte DEBIT = 2;
+  private static final byte CREDIT = 3;
+  private static final byte TRANSFER = 4;
+  private static final byte CLEAR = 5;
+
+  private final Path directory;
+
+  private final long segmentSize;
+
+  private final Durability durability;
+
+  private final long commitIntervalMillis;
+
+  private final CRC32 crc = new CRC32();
+
+  private final ReentrantLock flushLock = new ReentrantLock();
+
+  private final Condition flushRequestedCondition = flushLock.newCondition();
+
+  private final Condition flushedCondition = flushLock.newCondition();
+
+  private final Thread flusher;
+
+  private MappedByteBuffer segment;
+
+  private long segmentBase;
+
+  private volatile long writePosition;
+
+  private volatile long durablePosition;
+
+  private volatile boolean flushRequested;
+
+  private volatile boolean closed;
+
+  private MappedFileJournal(Path directory, long segmentSize, Durability durability, long commitIntervalMillis)
+          throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.durability = durability;
+    this.commitIntervalMillis = commitIntervalMillis;
+
+    Files.createDirectories(directory);
+    List<Long> bases = segmentBases(directory);
+    if (bases.isEmpty()) {
+      openSegment(0);
+    } else {
+      long lastBase = bases.get(bases.size() - 1);
+      openSegment(lastBase);
+      segment.position(validLength(segment));
+      segment.putInt(segment.position(), 0);
+    }
+    this.writePosition = segmentBase + segment.position();
+    this.durablePosition = writePosition;
+
+    this.flusher = new Thread(this::flushLoop, "journal-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  public static MappedFileJournal open(Path directory, long segmentSize, Durability durability,
+                                       long commitIntervalMillis) {
+    if (segmentSize < 1024 || segmentSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Segment size must be between 1KB and 2GB but was " + segmentSize);
+    try {
+      return new MappedFileJournal(directory, segmentSize, durability, commitIntervalMillis);
+    } catch (IOException e) {
+      throw new JournalException("Could not open journal in " + directory, e);
+    }
+  }
+
+  @Override
+  public synchronized long appendCreate(String accountId, BigDecimal balance) {
+    byte[] id = utf8(accountId);
+    byte[] unscaled = unscaled(balance);
+    ByteBuffer record = reserve(1 + idSize(id) + amountSize(unscaled));
+    record.put(CREATE);
+    putId(record, id);
+    putAmount(record, unscaled, balance.scale());
+    return commit(record);
+  }
+
+  @Override
+  public synchronized long appendDebit(String accountId, BigDecimal amount) {
+    return appendLeg(DEBIT, accountId, amount);
+  }
+
+  @Override
+  public synchronized long appendCredit(String accountId, BigDecimal amount) {
+    return appendLeg(CREDIT, accountId, amount);
+  }
+
+  @Override
+  public synchronized long appendTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    byte[] from = utf8(fromAccountId);
+    byte[] to = utf8(toAccountId);
+    byte[] unscaled = unscaled(amount);
+    ByteBuffer record = reserve(1 + idSize(from) + idSize(to) + amountSize(unscaled));
+    record.put(TRANSFER);
+    putId(record, from);
+    putId(record, to);
+    putAmount(record, unscaled, amount.scale());
+    return commit(record);
+  }
+
+  @Override
+  public synchronized long appendClear() {
+    ByteBuffer record = reserve(1);
+    record.put(CLEAR);
+    return commit(record);
+  }
+
+  @Override
+  public void awaitDurable(long position) {
+    if (durability == Durability.ASYNC)
+      return;
+    flushLock.lock();
+    try {
+      while (durablePosition < position) {
+        if (closed)
+          throw new JournalException("Journal was closed before position " + position + " became durable");
+        if (!flushRequested) {
+          flushRequested = true;
+          flushRequestedCondition.signal();
+        }
+        flushedCondition.awaitUninterruptibly();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  @Override
+  public long position() {
+    return writePosition;
+  }
+
+  public void replay(JournalVisitor visitor) {
+    replay(0, visitor);
+  }
+
+  /**
+   * Reads every record starting at or after {@code fromPosition}, stopping at the end marker or at the first record
+   * whose checksum does not match, which is what a write torn by a crash leaves behind.
+   */
+  public void replay(long fromPosition, JournalVisitor visitor) {
+    try {
+      List<Long> bases = segmentBases(directory);
+      for (int i = 0; i < bases.size(); i++) {
+        long base = bases.get(i);
+        if (i + 1 < bases.size() && bases.get(i + 1) <= fromPosition)
+          continue;
+        try (FileChannel channel = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+          ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+          int end = validLength(buffer);
+          while (buffer.position() < end) {
+            long position = base + buffer.position();
+            int length = buffer.getInt();
+            buffer.getInt();
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            buffer.position(buffer.position() + length);
+            if (position >= fromPosition)
+              dispatch(position, payload, visitor);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new JournalException("Could not replay journal in " + directory, e);
+    }
+  }
+
+  /**
+   * Deletes the segments that end at or before {@code position}, once a snapshot covers everything up to it. The
+   * segment being written to is never deleted.
+   */
+  public int deleteSegmentsBefore(long position) {
+    int deleted = 0;
+    try {
+      List<Long> bases = segmentBases(directory);
+      for (int i = 0; i + 1 < bases.size() && bases.get(i + 1) <= position; i++) {
+        Files.deleteIfExists(segmentPath(bases.get(i)));
+        deleted++;
+      }
+    } catch (IOException e) {
+      throw new JournalException("Could not delete journal segments in " + directory, e);
+    }
+    return deleted;
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+      segment.force();
+    }
+    flushLock.lock();
+    try {
+      durablePosition = writePosition;
+      flushedCondition.signalAll();
+      flushRequestedCondition.signal();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private long appendLeg(byte type, String accountId, BigDecimal amount) {
+    byte[] id = utf8(accountId);
+    byte[] unscaled = unscaled(amount);
+    ByteBuffer record = reserve(1 + idSize(id) + amountSize(unscaled));
+    record.put(type);
+    putId(record, id);
+    putAmount(record, unscaled, amount.scale());
+    return commit(record);
+  }
+
+  private ByteBuffer reserve(int payloadSize) {
+    if (closed)
+      throw new JournalException("Journal is closed");
+    int recordSize = HEADER_SIZE + payloadSize;
+    if (recordSize + END_MARKER_SIZE > segment.capacity())
+      throw new JournalException("Record of " + recordSize + " bytes does not fit in a journal segment");
+    if (segment.remaining() < recordSize + END_MARKER_SIZE)
+      rollSegment();
+    ByteBuffer record = segment.slice();
+    record.limit(recordSize);
+    record.position(HEADER_SIZE);
+    return record;
+  }
+
+  private long commit(ByteBuffer record) {
+    int length = record.position() - HEADER_SIZE;
+    crc.reset();
+    ByteBuffer payload = record.duplicate();
+    payload.flip();
+    payload.position(HEADER_SIZE);
+    crc.update(payload);
+    record.putInt(4, (int) crc.getValue());
+    record.putInt(0, length);
+
+    int end = segment.position() + record.position();
+    segment.putInt(end, 0);
+    segment.position(end);
+    writePosition = segmentBase + end;
+    return writePosition;
+  }
+
+  private void rollSegment() {
+    segment.force();
+    long nextBase = segmentBase + segment.capacity();
+    try {
+      openSegment(nextBase);
+    } catch (IOException e) {
+      throw new JournalException("Could not create journal segment " + segmentPath(nextBase), e);
+    }
+    writePosition = nextBase;
+  }
+
+  private void openSegment(long base) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentPath(base),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentSize));
+    }
+    segmentBase = base;
+  }
+
+  private void flushLoop() {
+    while (!closed) {
+      flushLock.lock();
+      try {
+        if (!flushRequested)
+          flushRequestedCondition.await(Math.max(commitIntervalMillis, 1), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        flushLock.unlock();
+      }
+      if (flushRequested && commitIntervalMillis > 0)
+        sleepUninterruptibly(commitIntervalMillis);
+      flush();
+    }
+  }
+
+  /**
+   * Forces everything appended so far and releases the writers waiting for it. Writers that appended while the
+   * previous force was running are all covered by this one.
+   */
+  private void flush() {
+    MappedByteBuffer current;
+    long target;
+    synchronized (this) {
+      if (closed)
+        return;
+      current = segment;
+      target = writePosition;
+    }
+    if (target > durablePosition)
+      current.force();
+    flushLock.lock();
+    try {
+      durablePosition = Math.max(durablePosition, target);
+      flushRequested = false;
+      flushedCondition.signalAll();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private static void sleepUninterruptibly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void dispatch(long position, ByteBuffer payload, JournalVisitor visitor) {
+    byte type = payload.get();
+    switch (type) {
+      case CREATE:
+        visitor.onCreate(position, getId(payload), getAmount(payload));
+        break;
+      case DEBIT:
+        visitor.onDebit(position, getId(payload), getAmount(payload));
+        break;
+      case CREDIT:
+        visitor.onCredit(position, getId(payload), getAmount(payload));
+        break;
+      case TRANSFER:
+        visitor.onTransfer(position, getId(payload), getId(payload), getAmount(payload));
+        break;
+      case CLEAR:
+        visitor.onClear(position);
+        break;
+      default:
+        throw new JournalException("Unknown journal record type " + type);
+    }
+  }
+
+  private int validLength(ByteBuffer buffer) {
+    CRC32 checksum = new CRC32();
+    int position = 0;
+    while (position + HEADER_SIZE <= buffer.limit()) {
+      int length = buffer.getInt(position);
+      if (length <= 0 || position + HEADER_SIZE + length > buffer.limit())
+        break;
+      ByteBuffer payload = buffer.duplicate();
+      payload.position(position + HEADER_SIZE);
+      payload.limit(position + HEADER_SIZE + length);
+      checksum.reset();
+      checksum.update(payload);
+      if ((int) checksum.getValue() != buffer.getInt(position + 4)) {
+        log.warn("Journal record at offset {} is incomplete, ignoring it and everything after it", position);
+        break;
+      }
+      position += HEADER_SIZE + length;
+    }
+    return position;
+  }
+
+  private Path segmentPath(long base) {
+    return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+  }
+
+  static List<Long> segmentBases(Path directory) throws IOException {
+    List<Long> bases = new ArrayList<>();
+    try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : segments) {
+        String name = segment.getFileName().toString();
+        bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    Collections.sort(bases);
+    return bases;
+  }
+}
@@ -0,0 +1,64 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of account ids and amounts shared by journal records and snapshot files: ids as a short length
+ * and UTF-8 bytes, amounts as an int scale, a short length and the two's complement unscaled value.
+ */
+final class RecordCodec {
+
+  private RecordCodec() {
+  }
+
+  static byte[] utf8(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > Short.MAX_VALUE)
+      throw new JournalException("Account id is too long for the journal");
+    return bytes;
+  }
+
+  static byte[] unscaled(BigDecimal amount) {
+    byte[] bytes = amount.unscaledValue().toByteArray();
+    if (bytes.length > Short.MAX_VALUE)
+      throw new JournalException("Amount " + amount + " is too large for the journal");
+    return bytes;
+  }
+
+  static int idSize(byte[] id) {
+    return 2 + id.length;
+  }
+
+  static int amountSize(byte[] unscaled) {
+    return 4 + 2 + unscaled.length;
+  }
+
+  static void putId(ByteBuffer buffer, byte[] id) {
+    buffer.putShort((short) id.length);
+    buffer.put(id);
+  }
+
+  static void putAmount(ByteBuffer buffer, byte[] unscaled, int scale) {
+    buffer.putInt(scale);
+    buffer.putShort((short) unscaled.length);
+    buffer.put(unscaled);
+  }
+
+  static String getId(ByteBuffer buffer) {
+    byte[] id = new byte[buffer.getShort()];
+    buffer.get(id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+  static BigDecimal getAmount(ByteBuffer buffer) {
+    int scale = buffer.getInt();
+    byte[] unscaled = new byte[buffer.getShort()];
+    buffer.get(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+}
@@ -0,0 +1,218 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.db.awmd.challenge.journal.RecordCodec.amountSize;
+import static com.db.awmd.challenge.journal.RecordCodec.getAmount;
+import static com.db.awmd.challenge.journal.RecordCodec.getId;
+import static com.db.awmd.challenge.journal.RecordCodec.idSize;
+import static com.db.awmd.challenge.journal.RecordCodec.putAmount;
+import static com.db.awmd.challenge.journal.RecordCodec.putId;
+import static com.db.awmd.challenge.journal.RecordCodec.unscaled;
+import static com.db.awmd.challenge.journal.RecordCodec.utf8;
+
+/**
+ * Binary image of all balances, named after the journal position it covers. The file is a fixed header followed by
+ * independently decodable chunks of {@code [int length][int count][entries]}, so it can be loaded in parallel. Each
+ * entry carries the journal position read together with the balance; journal records for that account starting
+ * before it are already reflected in the balance.
+ */
+final class SnapshotFile {
+
+  static final String SUFFIX = ".snapshot";
+
+  private static final int MAGIC = 0x534e4150;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+  private static final int CHUNK_HEADER_SIZE = 8;
+
+  interface EntryConsumer {
+    void accept(String accountId, BigDecimal balance, long position);
+  }
+
+  private SnapshotFile() {
+  }
+
+  static Path path(Path directory, long coveredPosition) {
+    return directory.resolve(String.format("%020d%s", coveredPosition, SUFFIX));
+  }
+
+  static List<Long> coveredPositions(Path directory) throws IOException {
+    List<Long> positions = new ArrayList<>();
+    try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path snapshot : snapshots) {
+        String name = snapshot.getFileName().toString();
+        positions.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+      }
+    }
+    Collections.sort(positions);
+    return positions;
+  }
+
+  /**
+   * Decodes all chunks of the snapshot in parallel and returns the number of entries read.
+   */
+  static long read(Path file, EntryConsumer consumer) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        throw new JournalException("Snapshot " + file + " has an unknown format");
+      buffer.getLong();
+      long accounts = buffer.getLong();
+      int chunkCount = buffer.getInt();
+
+      int[] chunkOffsets = new int[chunkCount];
+      int offset = HEADER_SIZE;
+      for (int i = 0; i < chunkCount; i++) {
+        if (offset + CHUNK_HEADER_SIZE > buffer.limit())
+          throw new JournalException("Snapshot " + file + " is truncated");
+        chunkOffsets[i] = offset;
+        offset += CHUNK_HEADER_SIZE + buffer.getInt(offset);
+      }
+      if (offset != buffer.limit())
+        throw new JournalException("Snapshot " + file + " is truncated");
+
+      IntStream.range(0, chunkCount).parallel().forEach(i -> {
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.position(chunkOffsets[i]);
+        int length = chunk.getInt();
+        int count = chunk.getInt();
+        chunk.limit(chunk.position() + length);
+        for (int entry = 0; entry < count; entry++) {
+          consumer.accept(getId(chunk), getAmount(chunk), chunk.getLong());
+        }
+      });
+      return accounts;
+    } catch (IOException e) {
+      throw new JournalException("Could not read snapshot " + file, e);
+    }
+  }
+
+  static class Writer implements AutoCloseable {
+
+    private final Path target;
+
+    private final Path temporary;
+
+    private final FileChannel channel;
+
+    private final long coveredPosition;
+
+    private final int chunkSize;
+
+    private ByteBuffer chunk = ByteBuffer.allocate(1024 * 1024);
+
+    private int chunkEntries;
+
+    private int chunkCount;
+
+    private long accounts;
+
+    private boolean committed;
+
+    Writer(Path directory, long coveredPosition, int chunkSize) {
+      this.target = path(directory, coveredPosition);
+      this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+      this.coveredPosition = coveredPosition;
+      this.chunkSize = chunkSize;
+      try {
+        this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_SIZE);
+      } catch (IOException e) {
+        throw new JournalException("Could not create snapshot " + temporary, e);
+      }
+      chunk.position(CHUNK_HEADER_SIZE);
+    }
+
+    void add(String accountId, BigDecimal balance, long position) {
+      byte[] id = utf8(accountId);
+      byte[] unscaled = unscaled(balance);
+      int size = idSize(id) + amountSize(unscaled) + 8;
+      if (chunk.remaining() < size) {
+        flushChunk();
+        if (chunk.remaining() < size)
+          chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + size);
+        chunk.position(CHUNK_HEADER_SIZE);
+      }
+      putId(chunk, id);
+      putAmount(chunk, unscaled, balance.scale());
+      chunk.putLong(position);
+      accounts++;
+      if (++chunkEntries == chunkSize)
+        flushChunk();
+    }
+
+    /**
+     * Writes the header, forces the file and moves it to its final name, so a snapshot is either complete or absent.
+     */
+    Path commit() {
+      flushChunk();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putLong(coveredPosition).putLong(accounts).putInt(chunkCount);
+      header.flip();
+      try {
+        channel.write(header, 0);
+        channel.force(true);
+        channel.close();
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        throw new JournalException("Could not write snapshot " + target, e);
+      }
+      committed = true;
+      return target;
+    }
+
+    long getAccounts() {
+      return accounts;
+    }
+
+    @Override
+    public void close() {
+      if (committed)
+        return;
+      try {
+        channel.close();
+        Files.deleteIfExists(temporary);
+      } catch (IOException e) {
+        throw new JournalException("Could not discard snapshot " + temporary, e);
+      }
+    }
+
+    private void flushChunk() {
+      if (chunkEntries == 0) {
+        chunk.clear();
+        chunk.position(CHUNK_HEADER_SIZE);
+        return;
+      }
+      chunk.putInt(0, chunk.position() - CHUNK_HEADER_SIZE);
+      chunk.putInt(4, chunkEntries);
+      chunk.flip();
+      try {
+        while (chunk.hasRemaining()) {
+          channel.write(chunk);
+        }
+      } catch (IOException e) {
+        throw new JournalException("Could not write snapshot " + temporary, e);
+      }
+      chunkCount++;
+      chunkEntries = 0;
+      chunk.clear();
+      chunk.position(CHUNK_HEADER_SIZE);
+    }
+  }
+}
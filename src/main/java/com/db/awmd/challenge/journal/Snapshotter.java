@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a snapshot of all balances without stopping transfers, then drops the snapshots and journal
+ * segments that are no longer needed to recover.
+ */
+@Slf4j
+public class Snapshotter implements AutoCloseable {
+
+  private final Path directory;
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final MappedFileJournal journal;
+
+  private final int snapshotsRetained;
+
+  private final int chunkSize;
+
+  private final GaugeService gaugeService;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "snapshotter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public Snapshotter(Path directory, AccountsRepositoryInMemory repository, MappedFileJournal journal,
+                     int snapshotsRetained, int chunkSize, GaugeService gaugeService) {
+    if (snapshotsRetained < 1)
+      throw new IllegalArgumentException("At least one snapshot must be retained");
+    this.directory = directory;
+    this.repository = repository;
+    this.journal = journal;
+    this.snapshotsRetained = snapshotsRetained;
+    this.chunkSize = chunkSize;
+    this.gaugeService = gaugeService;
+  }
+
+  public void start(long intervalMillis) {
+    scheduler.scheduleWithFixedDelay(() -> {
+      try {
+        takeSnapshot();
+      } catch (RuntimeException e) {
+        log.error("Snapshot failed, the journal is kept until the next one succeeds", e);
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * The journal position is read before the first account is visited, so every record before it is reflected in
+   * every account of the snapshot and replay can start there.
+   */
+  public Path takeSnapshot() {
+    long start = System.nanoTime();
+    long coveredPosition = journal.position();
+    Path snapshot;
+    long accounts;
+    try (SnapshotFile.Writer writer = new SnapshotFile.Writer(directory, coveredPosition, chunkSize)) {
+      repository.forEachAccountWithJournalPosition((account, position) ->
+              writer.add(account.getAccountId(), account.getBalance(), position));
+      snapshot = writer.commit();
+      accounts = writer.getAccounts();
+    }
+    int deletedSegments = pruneOlderFiles();
+
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    gaugeService.submit("accounts.snapshot.millis", millis);
+    gaugeService.submit("accounts.snapshot.accounts", accounts);
+    log.info("Wrote snapshot {} with {} accounts in {} ms, deleted {} journal segments",
+            snapshot.getFileName(), accounts, millis, deletedSegments);
+    return snapshot;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private int pruneOlderFiles() {
+    try {
+      List<Long> positions = SnapshotFile.coveredPositions(directory);
+      int obsolete = Math.max(0, positions.size() - snapshotsRetained);
+      for (int i = 0; i < obsolete; i++) {
+        Files.deleteIfExists(SnapshotFile.path(directory, positions.get(i)));
+      }
+      return journal.deleteSegmentsBefore(positions.get(obsolete));
+    } catch (IOException e) {
+      throw new JournalException("Could not delete obsolete snapshots in " + directory, e);
+    }
+  }
+}
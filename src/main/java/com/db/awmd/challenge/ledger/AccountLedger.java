@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.ledger;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.exception.LedgerException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The entries of one account, in chunks of {@code chunkSize}. Appends are serialised per account; reads take no lock
+ * and see every entry published through {@link #size}. Full chunks can be swapped for their location in the spill
+ * file and are then read back from disk on demand.
+ */
+final class AccountLedger {
+
+  private final int chunkSize;
+
+  private final Supplier<LedgerSpillFile> spillFile;
+
+  /**
+   * Each element is a {@link LedgerChunk} or a {@link SpilledChunk}.
+   */
+  private volatile Object[] chunks = new Object[1];
+
+  private volatile long size;
+
+  AccountLedger(int chunkSize, Supplier<LedgerSpillFile> spillFile) {
+    this.chunkSize = chunkSize;
+    this.spillFile = spillFile;
+  }
+
+  long size() {
+    return size;
+  }
+
+  /**
+   * Returns the chunk if this append filled it, otherwise {@code null}.
+   */
+  synchronized LedgerChunk append(long timestamp, LedgerEntry.Type type, String counterpartyId, BigDecimal amount) {
+    long sequence = size;
+    int index = (int) (sequence / chunkSize);
+    Object[] current = chunks;
+    if (index == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+      chunks = current;
+    }
+    if (current[index] == null)
+      current[index] = new LedgerChunk(sequence, chunkSize);
+    LedgerChunk chunk = (LedgerChunk) current[index];
+    chunk.append(timestamp, type, counterpartyId, amount);
+    size = sequence + 1;
+    return chunk.isFull() ? chunk : null;
+  }
+
+  /**
+   * Replaces the full chunk with its location in the spill file. Readers still holding the chunk keep reading it.
+   */
+  synchronized void spilled(LedgerChunk chunk, long position, int length) {
+    chunks[(int) (chunk.firstSequence() / chunkSize)] = new SpilledChunk(position, length);
+  }
+
+  /**
+   * Passes up to {@code limit} entries with a sequence below {@code before} to the consumer, newest first, and
+   * returns the sequence of the oldest one passed.
+   */
+  long readBackwards(long before, int limit, Consumer<LedgerEntry> consumer) {
+    long end = Math.min(before, size);
+    Object[] current = chunks;
+    LedgerChunk chunk = null;
+    int chunkIndex = -1;
+    long sequence = end;
+    while (sequence > 0 && end - sequence < limit) {
+      sequence--;
+      int index = (int) (sequence / chunkSize);
+      if (index != chunkIndex) {
+        chunk = load(current[index]);
+        chunkIndex = index;
+      }
+      consumer.accept(chunk.get((int) (sequence % chunkSize)));
+    }
+    return sequence;
+  }
+
+  private LedgerChunk load(Object chunk) {
+    if (chunk instanceof LedgerChunk)
+      return (LedgerChunk) chunk;
+    SpilledChunk spilled = (SpilledChunk) chunk;
+    try {
+      return LedgerChunk.decode(spillFile.get().read(spilled.position, spilled.length));
+    } catch (IOException e) {
+      throw new LedgerException("Could not decode spilled ledger chunk", e);
+    }
+  }
+
+  private static final class SpilledChunk {
+
+    private final long position;
+
+    private final int length;
+
+    SpilledChunk(long position, int length) {
+      this.position = position;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.db.awmd.challenge.ledger;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Up to {@code capacity} consecutive entries of one account in parallel primitive arrays. Amounts whose unscaled
+ * value fits a {@code long} are kept as unscaled value and scale; only larger ones are kept as {@link BigDecimal}.
+ * The arrays start small and grow to the capacity, so an account with few entries takes little memory.
+ * <p>
+ * Written by one thread at a time; readers must only look at entries published through {@link AccountLedger}'s size.
+ */
+final class LedgerChunk {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private static final byte LARGE_AMOUNT = Byte.MIN_VALUE;
+
+  private static final LedgerEntry.Type[] TYPES = LedgerEntry.Type.values();
+
+  private final long firstSequence;
+
+  private final int capacity;
+
+  private long[] timestamps;
+
+  private byte[] types;
+
+  private String[] counterparties;
+
+  private long[] unscaledAmounts;
+
+  private byte[] scales;
+
+  private BigDecimal[] largeAmounts;
+
+  private int size;
+
+  LedgerChunk(long firstSequence, int capacity) {
+    this(firstSequence, capacity, Math.min(INITIAL_CAPACITY, capacity));
+  }
+
+  private LedgerChunk(long firstSequence, int capacity, int allocated) {
+    this.firstSequence = firstSequence;
+    this.capacity = capacity;
+    this.timestamps = new long[allocated];
+    this.types = new byte[allocated];
+    this.counterparties = new String[allocated];
+    this.unscaledAmounts = new long[allocated];
+    this.scales = new byte[allocated];
+  }
+
+  long firstSequence() {
+    return firstSequence;
+  }
+
+  boolean isFull() {
+    return size == capacity;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void append(long timestamp, LedgerEntry.Type type, String counterpartyId, BigDecimal amount) {
+    if (size == timestamps.length)
+      grow();
+    timestamps[size] = timestamp;
+    types[size] = (byte) type.ordinal();
+    counterparties[size] = counterpartyId;
+    if (amount.scale() > Byte.MIN_VALUE && amount.scale() <= Byte.MAX_VALUE && amount.unscaledValue().bitLength() < 64) {
+      unscaledAmounts[size] = amount.unscaledValue().longValue();
+      scales[size] = (byte) amount.scale();
+    } else {
+      if (largeAmounts == null)
+        largeAmounts = new BigDecimal[capacity];
+      largeAmounts[size] = amount;
+      scales[size] = LARGE_AMOUNT;
+    }
+    size++;
+  }
+
+  LedgerEntry get(int index) {
+    BigDecimal amount = scales[index] == LARGE_AMOUNT ? largeAmounts[index]
+            : BigDecimal.valueOf(unscaledAmounts[index], scales[index]);
+    return new LedgerEntry(firstSequence + index, timestamps[index], TYPES[types[index]], counterparties[index], amount);
+  }
+
+  byte[] encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 32);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeLong(firstSequence);
+      out.writeInt(capacity);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        LedgerEntry entry = get(i);
+        out.writeLong(entry.getTimestamp());
+        out.writeByte(types[i]);
+        out.writeUTF(entry.getCounterpartyId());
+        out.writeUTF(entry.getAmount().toString());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not encode ledger chunk", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static LedgerChunk decode(byte[] encoded) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+      long firstSequence = in.readLong();
+      int capacity = in.readInt();
+      int size = in.readInt();
+      LedgerChunk chunk = new LedgerChunk(firstSequence, capacity, size);
+      for (int i = 0; i < size; i++) {
+        long timestamp = in.readLong();
+        LedgerEntry.Type type = TYPES[in.readByte()];
+        chunk.append(timestamp, type, in.readUTF(), new BigDecimal(in.readUTF()));
+      }
+      return chunk;
+    }
+  }
+
+  /**
+   * Replaces the arrays before the size that publishes the new entry is written, so readers that see the new size
+   * also see the arrays holding it.
+   */
+  private void grow() {
+    int allocated = Math.min(capacity, timestamps.length * 2);
+    timestamps = Arrays.copyOf(timestamps, allocated);
+    types = Arrays.copyOf(types, allocated);
+    counterparties = Arrays.copyOf(counterparties, allocated);
+    unscaledAmounts = Arrays.copyOf(unscaledAmounts, allocated);
+    scales = Arrays.copyOf(scales, allocated);
+  }
+}
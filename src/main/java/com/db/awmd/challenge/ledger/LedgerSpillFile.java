@@ -0,0 +1,69 @@
+package com.db.awmd.challenge.ledger;
+
+import com.db.awmd.challenge.exception.LedgerException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file that takes full ledger chunks out of memory. It only lives as long as the process: it is truncated
+ * when opened, and nothing is forced to disk.
+ */
+final class LedgerSpillFile implements AutoCloseable {
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  private long end;
+
+  LedgerSpillFile(Path path) {
+    this.path = path;
+    try {
+      Files.createDirectories(path.toAbsolutePath().getParent());
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new LedgerException("Could not open ledger spill file " + path, e);
+    }
+  }
+
+  /**
+   * Returns the position of the written bytes. Writers must not call this concurrently.
+   */
+  long write(byte[] bytes) {
+    long position = end;
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+    } catch (IOException e) {
+      throw new LedgerException("Could not write to ledger spill file " + path, e);
+    }
+    end += bytes.length;
+    return position;
+  }
+
+  byte[] read(long position, int length) {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0)
+          throw new IOException("Unexpected end of file");
+      }
+    } catch (IOException e) {
+      throw new LedgerException("Could not read from ledger spill file " + path, e);
+    }
+    return buffer.array();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
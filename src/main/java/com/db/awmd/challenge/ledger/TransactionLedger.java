@@ -0,0 +1,174 @@
+package com.db.awmd.challenge.ledger;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Append-only history of the transfer legs of every account. Each account has its own {@link AccountLedger}, so
+ * recording a transfer only serialises with other transfers of the same accounts.
+ * <p>
+ * At most {@code maxResidentEntries} entries are kept in memory, as far as full chunks allow: beyond that the oldest
+ * full chunks are moved to a spill file in {@code directory}, by whichever thread gets there first, and read back
+ * from it when a page needs them. The ledger is not durable; it starts empty on every start.
+ */
+@Component
+public class TransactionLedger implements PublicMetrics {
+
+  private static final String SPILL_FILE = "ledger.spill";
+
+  private final Path spillPath;
+
+  private final int chunkSize;
+
+  private final long maxResidentEntries;
+
+  private final Map<String, AccountLedger> ledgers = new ConcurrentHashMap<>();
+
+  private final Queue<FullChunk> fullChunks = new ConcurrentLinkedQueue<>();
+
+  private final LongAdder residentEntries = new LongAdder();
+
+  private final LongAdder spilledChunks = new LongAdder();
+
+  private final ReentrantLock spillLock = new ReentrantLock();
+
+  private volatile LedgerSpillFile spillFile;
+
+  @Autowired
+  public TransactionLedger(@Value("${ledger.directory:ledger}") String directory,
+                           @Value("${ledger.chunk-size:256}") int chunkSize,
+                           @Value("${ledger.max-resident-entries:1000000}") long maxResidentEntries) {
+    if (chunkSize <= 0)
+      throw new IllegalArgumentException("Chunk size must be positive but was " + chunkSize);
+    this.spillPath = Paths.get(directory).resolve(SPILL_FILE);
+    this.chunkSize = chunkSize;
+    this.maxResidentEntries = maxResidentEntries;
+  }
+
+  public void recordTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    long timestamp = System.currentTimeMillis();
+    boolean filled = append(fromAccountId, LedgerEntry.Type.DEBIT, toAccountId, amount, timestamp);
+    filled |= append(toAccountId, LedgerEntry.Type.CREDIT, fromAccountId, amount, timestamp);
+    spillIfFilled(filled);
+  }
+
+  /**
+   * Records only the source leg, for a transfer to an account whose history another node keeps.
+   */
+  public void recordDebit(String fromAccountId, String toAccountId, BigDecimal amount) {
+    spillIfFilled(append(fromAccountId, LedgerEntry.Type.DEBIT, toAccountId, amount, System.currentTimeMillis()));
+  }
+
+  /**
+   * Records only the target leg, for a transfer from an account whose history another node keeps.
+   */
+  public void recordCredit(String toAccountId, String fromAccountId, BigDecimal amount) {
+    spillIfFilled(append(toAccountId, LedgerEntry.Type.CREDIT, fromAccountId, amount, System.currentTimeMillis()));
+  }
+
+  /**
+   * Passes up to {@code limit} entries of the account with a sequence below {@code before} to the consumer, newest
+   * first. Returns the sequence to pass as {@code before} for the next page, 0 when there are no older entries.
+   */
+  public long readPage(String accountId, long before, int limit, Consumer<LedgerEntry> consumer) {
+    AccountLedger ledger = ledgers.get(accountId);
+    if (ledger == null)
+      return 0;
+    return ledger.readBackwards(before, limit, consumer);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+            new Metric<>("ledger.accounts", ledgers.size()),
+            new Metric<>("ledger.resident-entries", residentEntries.sum()),
+            new Metric<>("ledger.spilled-chunks", spilledChunks.sum()));
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    if (spillFile != null)
+      spillFile.close();
+  }
+
+  private boolean append(String accountId, LedgerEntry.Type type, String counterpartyId, BigDecimal amount,
+                         long timestamp) {
+    AccountLedger ledger = ledgers.get(accountId);
+    if (ledger == null)
+      ledger = ledgers.computeIfAbsent(accountId, id -> new AccountLedger(chunkSize, this::spillFile));
+    LedgerChunk full = ledger.append(timestamp, type, counterpartyId, amount);
+    residentEntries.increment();
+    if (full == null)
+      return false;
+    fullChunks.add(new FullChunk(ledger, full));
+    return true;
+  }
+
+  private void spillIfFilled(boolean filled) {
+    // only full chunks can be spilled, so the budget is checked when one fills up
+    if (filled && residentEntries.sum() > maxResidentEntries)
+      spillOldest();
+  }
+
+  private void spillOldest() {
+    if (!spillLock.tryLock())
+      return;
+    try {
+      while (residentEntries.sum() > maxResidentEntries) {
+        FullChunk oldest = fullChunks.poll();
+        if (oldest == null)
+          return;
+        byte[] encoded = oldest.chunk.encode();
+        long position = spillFile().write(encoded);
+        oldest.ledger.spilled(oldest.chunk, position, encoded.length);
+        residentEntries.add(-oldest.chunk.size());
+        spilledChunks.increment();
+      }
+    } finally {
+      spillLock.unlock();
+    }
+  }
+
+  private LedgerSpillFile spillFile() {
+    LedgerSpillFile file = spillFile;
+    if (file == null) {
+      synchronized (this) {
+        if (spillFile == null)
+          spillFile = new LedgerSpillFile(spillPath);
+        file = spillFile;
+      }
+    }
+    return file;
+  }
+
+  private static final class FullChunk {
+
+    private final AccountLedger ledger;
+
+    private final LedgerChunk chunk;
+
+    FullChunk(AccountLedger ledger, LedgerChunk chunk) {
+      this.ledger = ledger;
+      this.chunk = chunk;
+    }
+  }
+}
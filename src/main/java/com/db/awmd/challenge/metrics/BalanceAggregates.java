@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.metrics;
+
+import com.db.awmd.challenge.domain.AccountAggregates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bank-wide figures kept up to date by the repository on every change, so reading them does not scan the accounts:
+ * the number of accounts, the total balance and how many accounts hold a balance of each order of magnitude.
+ * <p>
+ * Every operation also reports the change it was meant to make next to the change it actually made to the balances,
+ * which checks on each transfer that it moved money without creating or destroying any. A mismatch is logged and
+ * counted as a conservation violation.
+ * <p>
+ * Balances arrive either as {@link BigDecimal} or, from the fixed point repository, as {@code long} minor units at the
+ * scale set with {@link #setUnitScale(int)}.
+ */
+@Component
+@Slf4j
+public class BalanceAggregates implements PublicMetrics {
+
+  public static final BalanceAggregates NONE = new BalanceAggregates(false);
+
+  private static final int MAGNITUDES = 10;
+
+  private final boolean enabled;
+
+  private final LongAdder accounts = new LongAdder();
+
+  private final DecimalAdder total = new DecimalAdder();
+
+  private final LongAdder totalUnits = new LongAdder();
+
+  private volatile int unitScale;
+
+  private volatile long unitsPerWhole = 1;
+
+  /**
+   * Bucket 0 counts balances below 1, bucket {@code n} those with {@code n} digits before the decimal point and the
+   * last bucket all larger ones.
+   */
+  private final LongAdder[] magnitudes = new LongAdder[MAGNITUDES + 1];
+
+  private final LongAdder violations = new LongAdder();
+
+  @Autowired
+  public BalanceAggregates(@Value("${accounts.aggregates.enabled:true}") boolean enabled) {
+    this.enabled = enabled;
+    for (int i = 0; i < magnitudes.length; i++) {
+      magnitudes[i] = new LongAdder();
+    }
+  }
+
+  public void setUnitScale(int scale) {
+    this.unitScale = scale;
+    this.unitsPerWhole = BigDecimal.ONE.movePointRight(scale).longValueExact();
+  }
+
+  public void created(BigDecimal balance) {
+    if (!enabled)
+      return;
+    accounts.increment();
+    total.add(balance);
+    magnitudes[magnitudeOf(balance)].increment();
+  }
+
+  public void createdUnits(long units) {
+    if (!enabled)
+      return;
+    accounts.increment();
+    totalUnits.add(units);
+    magnitudes[magnitudeOfUnits(units)].increment();
+  }
+
+  /**
+   * Moves the account between the magnitude buckets and returns the change of its balance, to be summed up for
+   * {@link #applied(String, BigDecimal, BigDecimal)}.
+   */
+  public BigDecimal moved(BigDecimal before, BigDecimal after) {
+    if (!enabled)
+      return BigDecimal.ZERO;
+    move(magnitudeOf(before), magnitudeOf(after));
+    return after.subtract(before);
+  }
+
+  public long movedUnits(long before, long after) {
+    if (!enabled)
+      return 0;
+    move(magnitudeOfUnits(before), magnitudeOfUnits(after));
+    return after - before;
+  }
+
+  /**
+   * The magnitude bucket of a balance, for an account whose balance is not summed up on every change and which is
+   * therefore moved between buckets with {@link #moveMagnitude(int, int)} when it is.
+   */
+  public int magnitudeOf(BigDecimal balance) {
+    if (balance.signum() <= 0)
+      return 0;
+    return Math.max(0, Math.min(MAGNITUDES, balance.precision() - balance.scale()));
+  }
+
+  public void moveMagnitude(int from, int to) {
+    if (enabled)
+      move(from, to);
+  }
+
+  /**
+   * Records that {@code operation} changed the balances by {@code change} in total while it was meant to change them
+   * by {@code expected}: zero for a transfer, the amount for a credit.
+   */
+  public void applied(String operation, BigDecimal change, BigDecimal expected) {
+    if (!enabled)
+      return;
+    if (change.signum() != 0)
+      total.add(change);
+    if (change.compareTo(expected) != 0)
+      violated(operation, change, expected);
+  }
+
+  public void appliedUnits(String operation, long change, long expected) {
+    if (!enabled)
+      return;
+    if (change != 0)
+      totalUnits.add(change);
+    if (change != expected)
+      violated(operation, BigDecimal.valueOf(change, unitScale), BigDecimal.valueOf(expected, unitScale));
+  }
+
+  public void cleared() {
+    accounts.reset();
+    total.reset();
+    totalUnits.reset();
+    for (LongAdder magnitude : magnitudes) {
+      magnitude.reset();
+    }
+  }
+
+  /**
+   * Adds up the striped counters, which are only eventually consistent: a change made meanwhile may be seen in part.
+   * Moving an account between magnitude buckets decrements one counter before it increments the other, so the
+   * distribution can briefly miss that account, and the counters need not agree with each other at any one instant.
+   */
+  public AccountAggregates current() {
+    Map<String, Long> distribution = new LinkedHashMap<>();
+    for (int i = 0; i < magnitudes.length; i++) {
+      distribution.put(bucketName(i), magnitudes[i].sum());
+    }
+    return new AccountAggregates(accounts.sum(), totalBalance(), distribution, violations.sum());
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    if (!enabled)
+      return metrics;
+    metrics.add(new Metric<>("accounts.aggregates.count", accounts.sum()));
+    metrics.add(new Metric<>("accounts.aggregates.total-balance", totalBalance()));
+    metrics.add(new Metric<>("accounts.aggregates.conservation-violations", violations.sum()));
+    return metrics;
+  }
+
+  private BigDecimal totalBalance() {
+    return total.sum().add(BigDecimal.valueOf(totalUnits.sum(), unitScale));
+  }
+
+  private void move(int from, int to) {
+    if (from != to) {
+      magnitudes[from].decrement();
+      magnitudes[to].increment();
+    }
+  }
+
+  private void violated(String operation, BigDecimal change, BigDecimal expected) {
+    violations.increment();
+    log.error("Conservation violated by {}: balances changed by {} instead of {}", operation, change, expected);
+  }
+
+  private int magnitudeOfUnits(long units) {
+    long whole = units / unitsPerWhole;
+    int digits = 0;
+    while (whole > 0 && digits < MAGNITUDES) {
+      whole /= 10;
+      digits++;
+    }
+    return digits;
+  }
+
+  private static String bucketName(int magnitude) {
+    if (magnitude == MAGNITUDES)
+      return ">=" + BigDecimal.ONE.movePointRight(MAGNITUDES - 1).toPlainString();
+    return "<" + BigDecimal.ONE.movePointRight(magnitude).toPlainString();
+  }
+}
@@ -0,0 +1,48 @@
+package com.db.awmd.challenge.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An exact {@link BigDecimal} sum updated from many threads in the manner of a
+ * {@link java.util.concurrent.atomic.LongAdder}: each thread adds to one of several cells picked by its id, so threads
+ * rarely compete for a cell, and {@link #sum()} adds up the cells.
+ */
+final class DecimalAdder {
+
+  private final AtomicReferenceArray<BigDecimal> cells;
+
+  private final int mask;
+
+  DecimalAdder() {
+    int cells = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+    this.cells = new AtomicReferenceArray<>(cells);
+    for (int i = 0; i < cells; i++) {
+      this.cells.set(i, BigDecimal.ZERO);
+    }
+    this.mask = cells - 1;
+  }
+
+  void add(BigDecimal value) {
+    long id = Thread.currentThread().getId();
+    int cell = (int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16 & mask;
+    BigDecimal current;
+    do {
+      current = cells.get(cell);
+    } while (!cells.compareAndSet(cell, current, current.add(value)));
+  }
+
+  BigDecimal sum() {
+    BigDecimal sum = BigDecimal.ZERO;
+    for (int i = 0; i < cells.length(); i++) {
+      sum = sum.add(cells.get(i));
+    }
+    return sum;
+  }
+
+  void reset() {
+    for (int i = 0; i < cells.length(); i++) {
+      cells.set(i, BigDecimal.ZERO);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond latencies over a rolling window, in the spirit of HdrHistogram: values below 64
+ * are counted exactly, larger values in 32 buckets per power of two, i.e. within about 3%. Recording only increments
+ * a preallocated counter and does not allocate.
+ * <p>
+ * The window is made of {@code windows} consecutive intervals of {@code windowNanos} each; the interval that falls
+ * out of the window is cleared by the first recording that needs its slot. Recordings racing with that clear can be
+ * lost, which is accepted for a monitoring histogram.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int LINEAR = 2 * SUB_COUNT;
+  private static final int BUCKETS = LINEAR + (62 - SUB_BITS - 1) * SUB_COUNT + SUB_COUNT;
+
+  private final long windowNanos;
+
+  private final AtomicLongArray[] slots;
+
+  private final AtomicLongArray slotIntervals;
+
+  public LatencyHistogram(long windowNanos, int windows) {
+    if (windowNanos <= 0 || windows <= 0)
+      throw new IllegalArgumentException("Window length and count must be positive");
+    this.windowNanos = windowNanos;
+    this.slots = new AtomicLongArray[windows];
+    for (int i = 0; i < windows; i++) {
+      slots[i] = new AtomicLongArray(BUCKETS);
+    }
+    this.slotIntervals = new AtomicLongArray(windows);
+    for (int i = 0; i < windows; i++) {
+      slotIntervals.set(i, Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * A histogram whose only window never ends, so it counts every value recorded, e.g. over a whole load test.
+   */
+  public static LatencyHistogram cumulative() {
+    return new LatencyHistogram(Long.MAX_VALUE, 1);
+  }
+
+  public void record(long nanos) {
+    long interval = System.nanoTime() / windowNanos;
+    int slot = (int) Math.floorMod(interval, (long) slots.length);
+    long slotInterval = slotIntervals.get(slot);
+    if (slotInterval != interval && slotIntervals.compareAndSet(slot, slotInterval, interval)) {
+      AtomicLongArray counts = slots[slot];
+      for (int i = 0; i < BUCKETS; i++) {
+        counts.lazySet(i, 0);
+      }
+    }
+    slots[slot].incrementAndGet(bucketOf(Math.max(0, nanos)));
+  }
+
+  /**
+   * Returns the number of values recorded within the window followed by the requested percentiles (0 to 100), in
+   * nanoseconds.
+   */
+  public long[] countAndPercentiles(double... percentiles) {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    long interval = System.nanoTime() / windowNanos;
+    for (int slot = 0; slot < slots.length; slot++) {
+      if (slotIntervals.get(slot) <= interval - slots.length)
+        continue;
+      for (int i = 0; i < BUCKETS; i++) {
+        long count = slots[slot].get(i);
+        counts[i] += count;
+        total += count;
+      }
+    }
+
+    long[] result = new long[percentiles.length + 1];
+    result[0] = total;
+    for (int p = 0; p < percentiles.length; p++) {
+      long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS && total > 0; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          result[p + 1] = valueOf(i);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  static int bucketOf(long value) {
+    if (value < LINEAR)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    return LINEAR + (exponent - SUB_BITS - 1) * SUB_COUNT + (int) ((value >>> (exponent - SUB_BITS)) - SUB_COUNT);
+  }
+
+  /**
+   * The middle of the bucket's range.
+   */
+  static long valueOf(int bucket) {
+    if (bucket < LINEAR)
+      return bucket;
+    int exponent = (bucket - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+    long sub = (bucket - LINEAR) % SUB_COUNT + SUB_COUNT;
+    long width = 1L << (exponent - SUB_BITS);
+    return sub * width + width / 2;
+  }
+}
@@ -0,0 +1,176 @@
+package com.db.awmd.challenge.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where transfer time goes, published on {@code /metrics}. Every stage of a transfer has its own
+ * {@link LatencyHistogram}, reported as count and p50/p99/p99.9 in microseconds over the rolling window. Outcome
+ * counters are totals since startup.
+ * <p>
+ * Contended lock acquisitions are recorded in the {@link Stage#LOCK_WAIT} histogram; one in
+ * {@code contentionSampleRate} of them is also attributed to the accounts involved, and the most contended accounts
+ * of the current window are reported.
+ */
+@Component
+public class TransferMetrics implements PublicMetrics {
+
+  public static final TransferMetrics NONE = new TransferMetrics(false, 1, 1, 1);
+
+  private static final int MAX_SAMPLED_ACCOUNTS = 1024;
+
+  private static final int REPORTED_ACCOUNTS = 10;
+
+  public enum Stage {
+    BINDING("binding"),
+    LOGGING("logging"),
+    REPOSITORY("repository"),
+    LOCK_WAIT("lock-wait"),
+    NOTIFICATION("notification"),
+    REQUEST("request");
+
+    private final String metricName;
+
+    Stage(String metricName) {
+      this.metricName = metricName;
+    }
+  }
+
+  private final boolean enabled;
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  private final LongAdder completed = new LongAdder();
+
+  private final LongAdder insufficientFunds = new LongAdder();
+
+  private final LongAdder accountNotFound = new LongAdder();
+
+  private final LongAdder refunds = new LongAdder();
+
+  private final LongAdder contended = new LongAdder();
+
+  private final int contentionSampleRate;
+
+  private final long contentionWindowNanos;
+
+  private final AtomicLong contentionWindowStart = new AtomicLong(System.nanoTime());
+
+  private final Map<String, LongAdder> contentionSamples = new ConcurrentHashMap<>();
+
+  @Autowired
+  public TransferMetrics(@Value("${transfers.metrics.enabled:true}") boolean enabled,
+                         @Value("${transfers.metrics.window-seconds:10}") int windowSeconds,
+                         @Value("${transfers.metrics.windows:6}") int windows,
+                         @Value("${transfers.metrics.contention-sample-rate:8}") int contentionSampleRate) {
+    this.enabled = enabled;
+    this.contentionSampleRate = Math.max(1, contentionSampleRate);
+    long windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+    this.contentionWindowNanos = windowNanos * windows;
+    if (enabled) {
+      for (Stage stage : Stage.values()) {
+        histograms[stage.ordinal()] = new LatencyHistogram(windowNanos, windows);
+      }
+    }
+  }
+
+  /**
+   * Start time to pass to {@link #record(Stage, long)}.
+   */
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  public void record(Stage stage, long startNanos) {
+    if (enabled)
+      histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+  }
+
+  public void completed() {
+    completed.increment();
+  }
+
+  public void insufficientFunds() {
+    insufficientFunds.increment();
+  }
+
+  public void accountNotFound() {
+    accountNotFound.increment();
+  }
+
+  public void refund() {
+    refunds.increment();
+  }
+
+  /**
+   * A lock acquisition for a change to the given accounts had to wait {@code waitNanos}.
+   */
+  public void lockContended(String firstAccountId, String secondAccountId, long waitNanos) {
+    if (!enabled)
+      return;
+    contended.increment();
+    histograms[Stage.LOCK_WAIT.ordinal()].record(waitNanos);
+    if (ThreadLocalRandom.current().nextInt(contentionSampleRate) != 0)
+      return;
+    long now = System.nanoTime();
+    long windowStart = contentionWindowStart.get();
+    if (now - windowStart > contentionWindowNanos && contentionWindowStart.compareAndSet(windowStart, now))
+      contentionSamples.clear();
+    sample(firstAccountId);
+    if (secondAccountId != null && !secondAccountId.equals(firstAccountId))
+      sample(secondAccountId);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("transfers.completed", completed.sum()));
+    metrics.add(new Metric<>("transfers.insufficient-funds", insufficientFunds.sum()));
+    metrics.add(new Metric<>("transfers.account-not-found", accountNotFound.sum()));
+    metrics.add(new Metric<>("transfers.refunds", refunds.sum()));
+    metrics.add(new Metric<>("transfers.lock-contended", contended.sum()));
+    if (!enabled)
+      return metrics;
+
+    for (Stage stage : Stage.values()) {
+      long[] values = histograms[stage.ordinal()].countAndPercentiles(50, 99, 99.9);
+      String prefix = "transfers.latency." + stage.metricName;
+      metrics.add(new Metric<>(prefix + ".count", values[0]));
+      metrics.add(new Metric<>(prefix + ".p50", toMicros(values[1])));
+      metrics.add(new Metric<>(prefix + ".p99", toMicros(values[2])));
+      metrics.add(new Metric<>(prefix + ".p999", toMicros(values[3])));
+    }
+    contentionSamples.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+            .limit(REPORTED_ACCOUNTS)
+            .forEach(e -> metrics.add(new Metric<>("transfers.contention.account." + e.getKey(), e.getValue().sum())));
+    return metrics;
+  }
+
+  private void sample(String accountId) {
+    LongAdder samples = contentionSamples.get(accountId);
+    if (samples == null) {
+      if (contentionSamples.size() >= MAX_SAMPLED_ACCOUNTS)
+        return;
+      samples = contentionSamples.computeIfAbsent(accountId, id -> new LongAdder());
+    }
+    samples.increment();
+  }
+
+  private static double toMicros(long nanos) {
+    return nanos / 1000.0;
+  }
+}
@@ -0,0 +1,188 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsSnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The primary's side of one follower connection. A sender thread first streams a snapshot of all accounts, cut at a
+ * sequence number, then the changes queued since in frames of up to {@code batchSize}, flushing whenever the queue
+ * runs dry rather than after every frame and never waiting for an acknowledgement. A second thread reads the
+ * acknowledgements. A follower whose queue fills up is disconnected; it reconnects and starts over from a snapshot.
+ */
+@Slf4j
+class FollowerSession implements AutoCloseable {
+
+  private static final long HEARTBEAT_MILLIS = 1000;
+
+  private final Socket socket;
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final ReplicationLog replicationLog;
+
+  private final int batchSize;
+
+  private final BlockingQueue<ReplicatedChange> queue;
+
+  private final Consumer<FollowerSession> onClose;
+
+  private final String address;
+
+  private volatile long acknowledgedSequence;
+
+  private volatile boolean closed;
+
+  private Thread sender;
+
+  FollowerSession(Socket socket, AccountsRepositoryInMemory repository, ReplicationLog replicationLog, int batchSize,
+                  int queueCapacity, Consumer<FollowerSession> onClose) {
+    this.socket = socket;
+    this.repository = repository;
+    this.replicationLog = replicationLog;
+    this.batchSize = batchSize;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.onClose = onClose;
+    this.address = socket.getRemoteSocketAddress().toString();
+  }
+
+  void start() {
+    sender = new Thread(this::send, "replication-sender-" + address);
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  String getAddress() {
+    return address;
+  }
+
+  long getAcknowledgedSequence() {
+    return acknowledgedSequence;
+  }
+
+  /**
+   * Called by the {@link ReplicationLog} under its lock, so it must not block.
+   */
+  void offer(ReplicatedChange change) {
+    if (!queue.offer(change) && !closed) {
+      log.warn("Disconnecting follower {}, which is more than {} changes behind", address, queue.size());
+      close();
+    }
+  }
+
+  private void send() {
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+      long cut = sendSnapshot(out);
+      log.info("Sent follower {} a snapshot at sequence {}", address, cut);
+      Thread reader = new Thread(this::readAcknowledgements, "replication-acks-" + address);
+      reader.setDaemon(true);
+      reader.start();
+      stream(out);
+    } catch (IOException | UncheckedIOException ex) {
+      if (!closed)
+        log.warn("Lost follower {}: {}", address, ex.toString());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      close();
+    }
+  }
+
+  private long sendSnapshot(DataOutputStream out) throws IOException {
+    long[] cut = new long[1];
+    try (AccountsSnapshot snapshot = repository.openSnapshot(() -> cut[0] = replicationLog.subscribe(this))) {
+      acknowledgedSequence = cut[0];
+      out.writeByte(ReplicationProtocol.SNAPSHOT);
+      out.writeLong(cut[0]);
+      List<Account> chunk = new ArrayList<>(batchSize);
+      snapshot.forEach(account -> {
+        chunk.add(account);
+        if (chunk.size() == batchSize)
+          writeAccounts(out, chunk);
+      });
+      writeAccounts(out, chunk);
+    }
+    out.writeByte(ReplicationProtocol.SNAPSHOT_END);
+    out.flush();
+    return cut[0];
+  }
+
+  private static void writeAccounts(DataOutputStream out, List<Account> chunk) {
+    if (chunk.isEmpty())
+      return;
+    try {
+      out.writeByte(ReplicationProtocol.ACCOUNTS);
+      out.writeInt(chunk.size());
+      for (Account account : chunk) {
+        out.writeUTF(account.getAccountId());
+        ReplicationProtocol.writeAmount(out, account.getBalance());
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    chunk.clear();
+  }
+
+  private void stream(DataOutputStream out) throws IOException, InterruptedException {
+    List<ReplicatedChange> batch = new ArrayList<>(batchSize);
+    while (!closed) {
+      ReplicatedChange first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+      if (first != null) {
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+      }
+      ReplicationProtocol.writeChanges(out, replicationLog.sequence(), batch);
+      batch.clear();
+      if (queue.isEmpty())
+        out.flush();
+    }
+  }
+
+  private void readAcknowledgements() {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (!closed) {
+        acknowledgedSequence = in.readLong();
+      }
+    } catch (IOException ex) {
+      if (!closed)
+        log.warn("Lost follower {}: {}", address, ex.toString());
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+    }
+    replicationLog.unsubscribe(this);
+    try {
+      socket.close();
+    } catch (IOException ex) {
+      log.debug("Could not close the connection to follower {}", address, ex);
+    }
+    if (sender != null)
+      sender.interrupt();
+    onClose.accept(this);
+  }
+}
@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.replication;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers {@code 503} to every request that would change accounts on a follower, and to reads while it syncs.
+ */
+class ReadOnlyFollowerInterceptor extends HandlerInterceptorAdapter {
+
+  private final ReplicationManager manager;
+
+  ReadOnlyFollowerInterceptor(ReplicationManager manager) {
+    this.manager = manager;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+          throws IOException {
+    boolean read = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    if (read ? manager.acceptsReads() : manager.acceptsWrites())
+      return true;
+    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+    response.setContentType("text/plain");
+    response.getWriter().write(read ? "Follower is syncing with the primary" : "Follower is read-only");
+    return false;
+  }
+}
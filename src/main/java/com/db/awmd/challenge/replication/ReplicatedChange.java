@@ -0,0 +1,36 @@
+package com.db.awmd.challenge.replication;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One change applied by the primary, numbered in the order it was appended to the {@link ReplicationLog}.
+ */
+@Data
+class ReplicatedChange {
+
+  static final byte CREATE = 1;
+  static final byte DEBIT = 2;
+  static final byte CREDIT = 3;
+  static final byte TRANSFER = 4;
+  static final byte CLEAR = 5;
+
+  private final long sequence;
+
+  private final long appendedMillis;
+
+  private final byte type;
+
+  private final String accountId;
+
+  /**
+   * The account credited by a transfer, {@code null} for other changes.
+   */
+  private final String toAccountId;
+
+  /**
+   * The amount moved, or the opening balance of a created account; {@code null} for a clear.
+   */
+  private final BigDecimal amount;
+}
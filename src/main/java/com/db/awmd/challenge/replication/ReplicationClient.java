@@ -0,0 +1,210 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The follower's side of replication: connects to the primary, replaces the repository's accounts with the snapshot
+ * it sends and applies the changes that follow through the repository, in sequence order. When the connection is lost
+ * it keeps the accounts as they are, so they can still be read, and reconnects after {@code reconnectMillis}.
+ */
+@Slf4j
+public class ReplicationClient implements AutoCloseable {
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+  public enum State {
+    CONNECTING, SYNCING, STREAMING
+  }
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final String host;
+
+  private final int port;
+
+  private final long reconnectMillis;
+
+  private volatile State state = State.CONNECTING;
+
+  private volatile long appliedSequence;
+
+  private volatile long headSequence;
+
+  private volatile long lagMillis;
+
+  private volatile Socket socket;
+
+  private volatile boolean closed;
+
+  private Thread thread;
+
+  public ReplicationClient(AccountsRepositoryInMemory repository, String host, int port, long reconnectMillis) {
+    this.repository = repository;
+    this.host = host;
+    this.port = port;
+    this.reconnectMillis = reconnectMillis;
+  }
+
+  public void start() {
+    thread = new Thread(this::run, "replication-client");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  public long getLagRecords() {
+    return Math.max(0, headSequence - appliedSequence);
+  }
+
+  public long getLagMillis() {
+    return lagMillis;
+  }
+
+  private void run() {
+    while (!closed) {
+      try (Socket connection = new Socket()) {
+        socket = connection;
+        connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        connection.setTcpNoDelay(true);
+        log.info("Replicating from {}:{}", host, port);
+        follow(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16)),
+                new DataOutputStream(new BufferedOutputStream(connection.getOutputStream())));
+      } catch (IOException | RuntimeException ex) {
+        if (!closed)
+          log.warn("Replication from {}:{} interrupted: {}", host, port, ex.toString());
+      }
+      state = State.CONNECTING;
+      if (!closed)
+        pause();
+    }
+  }
+
+  private void follow(DataInputStream in, DataOutputStream out) throws IOException {
+    expect(in.readByte(), ReplicationProtocol.SNAPSHOT);
+    state = State.SYNCING;
+    long cut = in.readLong();
+    repository.clearAccounts();
+    long accounts = 0;
+    for (byte frame = in.readByte(); frame != ReplicationProtocol.SNAPSHOT_END; frame = in.readByte()) {
+      expect(frame, ReplicationProtocol.ACCOUNTS);
+      int count = in.readInt();
+      List<Account> chunk = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        chunk.add(new Account(in.readUTF(), ReplicationProtocol.readAmount(in)));
+      }
+      repository.createAccounts(chunk);
+      accounts += count;
+    }
+    appliedSequence = cut;
+    headSequence = cut;
+    state = State.STREAMING;
+    acknowledge(out);
+    log.info("Synced {} accounts from {}:{} at sequence {}", accounts, host, port, cut);
+
+    while (!closed) {
+      expect(in.readByte(), ReplicationProtocol.CHANGES);
+      long head = in.readLong();
+      long first = in.readLong();
+      int count = in.readInt();
+      if (count > 0 && first != appliedSequence + 1)
+        throw new ReplicationException("Expected change " + (appliedSequence + 1) + " but got " + first);
+      long oldestMillis = 0;
+      for (int i = 0; i < count; i++) {
+        ReplicatedChange change = ReplicationProtocol.readChange(in, first + i);
+        apply(change);
+        appliedSequence = change.getSequence();
+        if (i == 0)
+          oldestMillis = change.getAppendedMillis();
+      }
+      headSequence = head;
+      if (count > 0)
+        lagMillis = Math.max(0, System.currentTimeMillis() - oldestMillis);
+      else if (appliedSequence >= head)
+        lagMillis = 0;
+      if (in.available() == 0)
+        acknowledge(out);
+    }
+  }
+
+  private void apply(ReplicatedChange change) {
+    switch (change.getType()) {
+      case ReplicatedChange.CREATE:
+        repository.createAccount(new Account(change.getAccountId(), change.getAmount()));
+        break;
+      case ReplicatedChange.DEBIT:
+        repository.debitAccount(change.getAccountId(), change.getAmount());
+        break;
+      case ReplicatedChange.CREDIT:
+        repository.creditAccount(change.getAccountId(), change.getAmount());
+        break;
+      case ReplicatedChange.TRANSFER:
+        repository.transfer(change.getAccountId(), change.getToAccountId(), change.getAmount());
+        break;
+      default:
+        repository.clearAccounts();
+    }
+  }
+
+  private void acknowledge(DataOutputStream out) throws IOException {
+    out.writeLong(appliedSequence);
+    out.flush();
+  }
+
+  private static void expect(byte frame, byte expected) {
+    if (frame != expected)
+      throw new ReplicationException("Expected frame " + expected + " but got " + frame);
+  }
+
+  private void pause() {
+    try {
+      TimeUnit.MILLISECONDS.sleep(reconnectMillis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      closed = true;
+    }
+  }
+
+  /**
+   * Stops replicating and waits until no change is being applied any more.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Socket connection = socket;
+    try {
+      if (connection != null)
+        connection.close();
+    } catch (IOException ex) {
+      log.debug("Could not close the connection to the primary", ex);
+    }
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
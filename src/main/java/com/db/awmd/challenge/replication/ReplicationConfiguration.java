@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.journal.AccountsJournal;
+import com.db.awmd.challenge.journal.MappedFileJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Configuration
+@ConditionalOnExpression("!'${accounts.replication.role:none}'.equalsIgnoreCase('none')")
+@EnableConfigurationProperties(ReplicationProperties.class)
+public class ReplicationConfiguration extends WebMvcConfigurerAdapter {
+
+  private final ReplicationProperties properties;
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final ObjectProvider<MappedFileJournal> journal;
+
+  @Autowired
+  public ReplicationConfiguration(ReplicationProperties properties, AccountsRepositoryInMemory repository,
+                                  ObjectProvider<MappedFileJournal> journal) {
+    this.properties = properties;
+    this.repository = repository;
+    this.journal = journal;
+  }
+
+  /**
+   * Resolving the journal first also recovers the repository from it, before a primary starts shipping changes.
+   */
+  @Bean(initMethod = "start", destroyMethod = "close")
+  public ReplicationManager replicationManager() {
+    MappedFileJournal recovered = journal.getIfAvailable();
+    return new ReplicationManager(repository, recovered != null ? recovered : AccountsJournal.NONE, properties);
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new ReadOnlyFollowerInterceptor(replicationManager()))
+            .addPathPatterns("/v1/**")
+            .excludePathPatterns("/v1/replication/**");
+  }
+}
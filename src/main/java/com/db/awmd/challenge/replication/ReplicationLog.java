@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.journal.AccountsJournal;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Journal of the primary: passes every record on to the journal it wraps, numbers it and hands it to the queue of each
+ * connected follower. The repository appends while holding the locks of the accounts changed, so the order of the
+ * sequence numbers is an order in which a follower can apply the changes and reach the same balances, with every
+ * debit finding the funds it found on the primary.
+ */
+public class ReplicationLog implements AccountsJournal {
+
+  private final AccountsJournal journal;
+
+  private final List<FollowerSession> sessions = new CopyOnWriteArrayList<>();
+
+  private volatile long sequence;
+
+  public ReplicationLog(AccountsJournal journal) {
+    this.journal = journal;
+  }
+
+  @Override
+  public synchronized long appendCreate(String accountId, BigDecimal balance) {
+    long position = journal.appendCreate(accountId, balance);
+    publish(ReplicatedChange.CREATE, accountId, null, balance);
+    return position;
+  }
+
+  @Override
+  public synchronized long appendDebit(String accountId, BigDecimal amount) {
+    long position = journal.appendDebit(accountId, amount);
+    publish(ReplicatedChange.DEBIT, accountId, null, amount);
+    return position;
+  }
+
+  @Override
+  public synchronized long appendCredit(String accountId, BigDecimal amount) {
+    long position = journal.appendCredit(accountId, amount);
+    publish(ReplicatedChange.CREDIT, accountId, null, amount);
+    return position;
+  }
+
+  @Override
+  public synchronized long appendTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+    long position = journal.appendTransfer(fromAccountId, toAccountId, amount);
+    publish(ReplicatedChange.TRANSFER, fromAccountId, toAccountId, amount);
+    return position;
+  }
+
+  @Override
+  public synchronized long appendClear() {
+    long position = journal.appendClear();
+    publish(ReplicatedChange.CLEAR, "", null, null);
+    return position;
+  }
+
+  /**
+   * Replication does not wait for followers: a change is acknowledged once the wrapped journal has it.
+   */
+  @Override
+  public void awaitDurable(long position) {
+    journal.awaitDurable(position);
+  }
+
+  @Override
+  public long position() {
+    return journal.position();
+  }
+
+  /**
+   * The sequence number of the last change appended.
+   */
+  public long sequence() {
+    return sequence;
+  }
+
+  /**
+   * Starts queueing changes for the session and returns the sequence number of the last change it will not get.
+   */
+  synchronized long subscribe(FollowerSession session) {
+    sessions.add(session);
+    return sequence;
+  }
+
+  void unsubscribe(FollowerSession session) {
+    sessions.remove(session);
+  }
+
+  private void publish(byte type, String accountId, String toAccountId, BigDecimal amount) {
+    long next = sequence + 1;
+    sequence = next;
+    if (sessions.isEmpty())
+      return;
+    ReplicatedChange change = new ReplicatedChange(next, System.currentTimeMillis(), type, accountId, toAccountId,
+            amount);
+    for (FollowerSession session : sessions) {
+      session.offer(change);
+    }
+  }
+}
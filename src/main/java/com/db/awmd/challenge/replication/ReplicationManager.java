@@ -0,0 +1,136 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.journal.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs this node as the primary or as a follower of the configured primary, and promotes a follower. Promotion does
+ * not fence the old primary: stop it, or make sure it is gone, before promoting one of its followers.
+ */
+@Slf4j
+public class ReplicationManager implements PublicMetrics, AutoCloseable {
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final AccountsJournal journal;
+
+  private final ReplicationProperties properties;
+
+  private volatile ReplicationRole role;
+
+  private ReplicationLog replicationLog;
+
+  private ReplicationServer server;
+
+  private ReplicationClient client;
+
+  /**
+   * {@code journal} is the journal already attached to the repository, which a primary keeps writing to.
+   */
+  public ReplicationManager(AccountsRepositoryInMemory repository, AccountsJournal journal,
+                            ReplicationProperties properties) {
+    this.repository = repository;
+    this.journal = journal;
+    this.properties = properties;
+    this.role = properties.getRole();
+  }
+
+  public synchronized void start() {
+    if (role == ReplicationRole.PRIMARY) {
+      serve();
+    } else if (role == ReplicationRole.FOLLOWER) {
+      String primary = properties.getPrimary();
+      int colon = primary.lastIndexOf(':');
+      if (colon < 0)
+        throw new ReplicationException("The primary must be given as host:port but was " + primary);
+      client = new ReplicationClient(repository, primary.substring(0, colon),
+              Integer.parseInt(primary.substring(colon + 1)), properties.getReconnectMillis());
+      client.start();
+    }
+  }
+
+  /**
+   * Stops following the primary, keeping the changes applied so far, and starts accepting writes and followers.
+   */
+  public synchronized ReplicationStatus promote() {
+    if (role != ReplicationRole.FOLLOWER)
+      throw new ReplicationException("Only a follower can be promoted, this node is " + role);
+    client.close();
+    log.info("Promoting to primary at sequence {}", client.getAppliedSequence());
+    serve();
+    return status();
+  }
+
+  private void serve() {
+    replicationLog = new ReplicationLog(journal);
+    repository.attachJournal(replicationLog);
+    server = new ReplicationServer(repository, replicationLog, properties.getBatchSize(),
+            properties.getFollowerQueueCapacity());
+    server.start(properties.getPort());
+    role = ReplicationRole.PRIMARY;
+  }
+
+  public ReplicationRole getRole() {
+    return role;
+  }
+
+  /**
+   * The port followers connect to, once this node is a primary.
+   */
+  public synchronized int getPort() {
+    if (server == null)
+      throw new ReplicationException("Not accepting followers, this node is " + role);
+    return server.getPort();
+  }
+
+  /**
+   * A follower only serves reads, and none while it is replacing its accounts with a snapshot of the primary's.
+   */
+  public boolean acceptsWrites() {
+    return role != ReplicationRole.FOLLOWER;
+  }
+
+  public boolean acceptsReads() {
+    return role != ReplicationRole.FOLLOWER || client.getState() != ReplicationClient.State.SYNCING;
+  }
+
+  public synchronized ReplicationStatus status() {
+    if (role == ReplicationRole.FOLLOWER) {
+      return new ReplicationStatus(role.name(), client.getState().name(), client.getAppliedSequence(),
+              client.getLagRecords(), client.getLagMillis(), Collections.emptyList());
+    }
+    if (server == null)
+      return new ReplicationStatus(role.name(), "SERVING", 0, 0, 0, Collections.emptyList());
+    List<ReplicationStatus.Follower> followers = server.followers();
+    long lag = followers.stream().mapToLong(ReplicationStatus.Follower::getLagRecords).max().orElse(0);
+    return new ReplicationStatus(role.name(), "SERVING", replicationLog.sequence(), lag, 0, followers);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    ReplicationStatus status = status();
+    return Arrays.asList(
+            new Metric<>("replication.sequence", status.getSequence()),
+            new Metric<>("replication.lag.records", status.getLagRecords()),
+            new Metric<>("replication.lag.millis", status.getLagMillis()),
+            new Metric<>("replication.followers", status.getFollowers().size()));
+  }
+
+  @Override
+  public synchronized void close() {
+    if (client != null)
+      client.close();
+    if (server != null)
+      server.close();
+  }
+}
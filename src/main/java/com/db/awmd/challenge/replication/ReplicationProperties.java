@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.replication;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "accounts.replication")
+public class ReplicationProperties {
+
+  private ReplicationRole role = ReplicationRole.NONE;
+
+  /**
+   * Where a primary, or a follower once promoted, accepts followers.
+   */
+  private int port = 18090;
+
+  /**
+   * The {@code host:port} a follower replicates from.
+   */
+  private String primary = "localhost:18090";
+
+  private int batchSize = 1024;
+
+  private int followerQueueCapacity = 1 << 20;
+
+  private long reconnectMillis = 1000;
+}
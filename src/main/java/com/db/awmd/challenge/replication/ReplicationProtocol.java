@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.exception.ReplicationException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Frames exchanged over a replication connection. The primary sends
+ * <pre>
+ *   SNAPSHOT       [long sequence the snapshot was cut at]
+ *   ACCOUNTS       [int count] count x ([utf account id][amount balance])
+ *   SNAPSHOT_END
+ *   CHANGES        [long head sequence][long first sequence][int count] count x change
+ * </pre>
+ * where a change is {@code [byte type][long epoch millis appended][utf account id]}, then {@code [utf to account
+ * id]} for a transfer and {@code [amount]} for anything but a clear, and an amount is {@code [int scale][short
+ * length][unscaled bytes]}. A {@code CHANGES} frame without changes is a heartbeat. The follower answers with
+ * {@code [long applied sequence]} acknowledgements whenever it has caught up with what it received, without the
+ * primary ever waiting for them.
+ */
+final class ReplicationProtocol {
+
+  static final byte SNAPSHOT = 1;
+  static final byte ACCOUNTS = 2;
+  static final byte SNAPSHOT_END = 3;
+  static final byte CHANGES = 4;
+
+  private ReplicationProtocol() {
+  }
+
+  static void writeChanges(DataOutputStream out, long head, List<ReplicatedChange> changes) throws IOException {
+    out.writeByte(CHANGES);
+    out.writeLong(head);
+    out.writeLong(changes.isEmpty() ? head + 1 : changes.get(0).getSequence());
+    out.writeInt(changes.size());
+    for (ReplicatedChange change : changes) {
+      out.writeByte(change.getType());
+      out.writeLong(change.getAppendedMillis());
+      out.writeUTF(change.getAccountId());
+      if (change.getType() == ReplicatedChange.TRANSFER)
+        out.writeUTF(change.getToAccountId());
+      if (change.getType() != ReplicatedChange.CLEAR)
+        writeAmount(out, change.getAmount());
+    }
+  }
+
+  static ReplicatedChange readChange(DataInputStream in, long sequence) throws IOException {
+    byte type = in.readByte();
+    if (type < ReplicatedChange.CREATE || type > ReplicatedChange.CLEAR)
+      throw new ReplicationException("Unknown change type " + type + " at sequence " + sequence);
+    long appendedMillis = in.readLong();
+    String accountId = in.readUTF();
+    String toAccountId = type == ReplicatedChange.TRANSFER ? in.readUTF() : null;
+    BigDecimal amount = type == ReplicatedChange.CLEAR ? null : readAmount(in);
+    return new ReplicatedChange(sequence, appendedMillis, type, accountId, toAccountId, amount);
+  }
+
+  static void writeAmount(DataOutputStream out, BigDecimal amount) throws IOException {
+    byte[] unscaled = amount.unscaledValue().toByteArray();
+    out.writeInt(amount.scale());
+    out.writeShort(unscaled.length);
+    out.write(unscaled);
+  }
+
+  static BigDecimal readAmount(DataInputStream in) throws IOException {
+    int scale = in.readInt();
+    byte[] unscaled = new byte[in.readUnsignedShort()];
+    in.readFully(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+}
@@ -0,0 +1,5 @@
+package com.db.awmd.challenge.replication;
+
+public enum ReplicationRole {
+  NONE, PRIMARY, FOLLOWER
+}
@@ -0,0 +1,99 @@
+package com.db.awmd.challenge.replication;
+
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Accepts followers on a TCP port and runs a {@link FollowerSession} for each of them.
+ */
+@Slf4j
+public class ReplicationServer implements AutoCloseable {
+
+  private final AccountsRepositoryInMemory repository;
+
+  private final ReplicationLog replicationLog;
+
+  private final int batchSize;
+
+  private final int queueCapacity;
+
+  private final List<FollowerSession> sessions = new CopyOnWriteArrayList<>();
+
+  private ServerSocket serverSocket;
+
+  public ReplicationServer(AccountsRepositoryInMemory repository, ReplicationLog replicationLog, int batchSize,
+                           int queueCapacity) {
+    if (batchSize < 1 || queueCapacity < 1)
+      throw new IllegalArgumentException("Batch size and queue capacity must be positive");
+    this.repository = repository;
+    this.replicationLog = replicationLog;
+    this.batchSize = batchSize;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Listens on the given port, any free one if it is 0.
+   */
+  public void start(int port) {
+    try {
+      serverSocket = new ServerSocket();
+      serverSocket.setReuseAddress(true);
+      serverSocket.bind(new InetSocketAddress(port));
+    } catch (IOException ex) {
+      throw new ReplicationException("Could not listen for followers on port " + port, ex);
+    }
+    Thread acceptor = new Thread(this::accept, "replication-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    log.info("Accepting followers on port {}", getPort());
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public List<ReplicationStatus.Follower> followers() {
+    long head = replicationLog.sequence();
+    return sessions.stream()
+            .map(session -> new ReplicationStatus.Follower(session.getAddress(), session.getAcknowledgedSequence(),
+                    head - session.getAcknowledgedSequence()))
+            .collect(Collectors.toList());
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        FollowerSession session = new FollowerSession(socket, repository, replicationLog, batchSize, queueCapacity,
+                sessions::remove);
+        sessions.add(session);
+        log.info("Follower {} connected", session.getAddress());
+        session.start();
+      } catch (IOException ex) {
+        if (!serverSocket.isClosed())
+          log.warn("Could not accept a follower: {}", ex.toString());
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      serverSocket.close();
+    } catch (IOException ex) {
+      log.debug("Could not close the replication port", ex);
+    }
+    sessions.forEach(FollowerSession::close);
+  }
+}
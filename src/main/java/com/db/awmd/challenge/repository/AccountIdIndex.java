@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Maps account ids to dense {@code int} slots without keeping a {@link String}, a map node or a boxed
+ * {@link Integer} per account. Each id is appended to large byte chunks as a record of its UTF-8 length, its slot and
+ * its bytes, in slot order. An open addressing table with linear probing holds the id's hash and the record's arena
+ * offset in one {@code long} per used bucket, so a lookup reads one bucket and, when the hashes match, one record.
+ * Per account this costs the id's bytes plus about 30 bytes instead of the hundred or so of a
+ * {@code ConcurrentHashMap<String, Integer>} entry.
+ * <p>
+ * Lookups take no lock: a record is written completely before its offset is published in the table, and a grown
+ * table is filled before it replaces the old one. Ids are added one at a time under the index's monitor.
+ */
+final class AccountIdIndex {
+
+  private static final int ARENA_CHUNK_BITS = 20;
+  private static final int ARENA_CHUNK_SIZE = 1 << ARENA_CHUNK_BITS;
+  private static final int ARENA_CHUNK_MASK = ARENA_CHUNK_SIZE - 1;
+  private static final int MAX_ARENA_CHUNKS = (1 << (32 - ARENA_CHUNK_BITS)) - 1;
+  private static final int HEADER_BYTES = 6;
+  private static final int MAX_ID_BYTES = 0xFFFF - 1;
+  private static final int INITIAL_TABLE_SIZE = 1024;
+
+  private final byte[][] arena = new byte[MAX_ARENA_CHUNKS][];
+
+  private int arenaChunk = -1;
+
+  private int arenaPosition = ARENA_CHUNK_SIZE;
+
+  private volatile AtomicLongArray table = new AtomicLongArray(INITIAL_TABLE_SIZE);
+
+  private volatile int size;
+
+  /**
+   * Returns the slot of the id, -1 if it is not in the index.
+   */
+  int get(String accountId) {
+    return find(table, accountId, accountId.hashCode());
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Gives the id the next free slot and returns it, or returns -1 if the id already has one. {@code initializer}
+   * runs with the new slot before any reader can find it.
+   */
+  synchronized int add(String accountId, IntConsumer initializer) {
+    int hash = accountId.hashCode();
+    AtomicLongArray current = table;
+    if (find(current, accountId, hash) >= 0)
+      return -1;
+    int slot = size;
+    if (slot == Integer.MAX_VALUE)
+      throw new IllegalStateException("Account id index is full");
+    byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_ID_BYTES)
+      throw new IllegalArgumentException("Account id is longer than " + MAX_ID_BYTES + " bytes");
+
+    int offset = append(slot, bytes);
+    initializer.accept(slot);
+
+    if (2 * (slot + 1) > current.length()) {
+      current = grow(current);
+      table = current;
+    }
+    // offset + 1, so that no entry is 0, which marks a free bucket
+    insert(current, (long) hash << 32 | (offset + 1) & 0xFFFFFFFFL);
+    size = slot + 1;
+    return slot;
+  }
+
+  /**
+   * Visits the ids of the first {@code slots} slots in slot order, decoding each into a new {@link String}.
+   */
+  void forEach(int slots, ObjIntConsumer<String> consumer) {
+    int limit = Math.min(slots, size);
+    int chunk = 0;
+    int position = 0;
+    for (int slot = 0; slot < limit; slot++) {
+      if (position + HEADER_BYTES > ARENA_CHUNK_SIZE || lengthAt(arena[chunk], position) == 0) {
+        chunk++;
+        position = 0;
+      }
+      byte[] bytes = arena[chunk];
+      int length = lengthAt(bytes, position) - 1;
+      consumer.accept(new String(bytes, position + HEADER_BYTES, length, StandardCharsets.UTF_8), slot);
+      position += HEADER_BYTES + length;
+    }
+  }
+
+  synchronized void clear() {
+    table = new AtomicLongArray(INITIAL_TABLE_SIZE);
+    size = 0;
+    arenaChunk = -1;
+    arenaPosition = ARENA_CHUNK_SIZE;
+  }
+
+  private int find(AtomicLongArray table, String accountId, int hash) {
+    int mask = table.length() - 1;
+    for (int bucket = spread(hash) & mask; ; bucket = (bucket + 1) & mask) {
+      long entry = table.get(bucket);
+      if (entry == 0)
+        return -1;
+      if ((int) (entry >>> 32) == hash) {
+        int slot = slotIfMatches((int) entry - 1, accountId);
+        if (slot >= 0)
+          return slot;
+      }
+    }
+  }
+
+  private static void insert(AtomicLongArray table, long entry) {
+    int mask = table.length() - 1;
+    int bucket = spread((int) (entry >>> 32)) & mask;
+    while (table.get(bucket) != 0) {
+      bucket = (bucket + 1) & mask;
+    }
+    table.set(bucket, entry);
+  }
+
+  private static AtomicLongArray grow(AtomicLongArray current) {
+    AtomicLongArray grown = new AtomicLongArray(current.length() * 2);
+    for (int bucket = 0; bucket < current.length(); bucket++) {
+      long entry = current.get(bucket);
+      if (entry != 0)
+        insert(grown, entry);
+    }
+    return grown;
+  }
+
+  /**
+   * Writes the record {@code [length + 1: 2 bytes][slot: 4 bytes][id bytes]} and returns its offset: chunk index in
+   * the upper bits, position in the chunk in the lower ones. A chunk whose remaining space is too small for the next
+   * record is ended with a zero length, so {@link #forEach} knows to move on.
+   */
+  private int append(int slot, byte[] bytes) {
+    if (arenaPosition + HEADER_BYTES + bytes.length > ARENA_CHUNK_SIZE) {
+      if (arenaChunk + 1 >= MAX_ARENA_CHUNKS)
+        throw new IllegalStateException("Account id index is full");
+      if (arenaChunk >= 0 && arenaPosition + HEADER_BYTES <= ARENA_CHUNK_SIZE) {
+        arena[arenaChunk][arenaPosition] = 0;
+        arena[arenaChunk][arenaPosition + 1] = 0;
+      }
+      arenaChunk++;
+      if (arena[arenaChunk] == null)
+        arena[arenaChunk] = new byte[ARENA_CHUNK_SIZE];
+      arenaPosition = 0;
+    }
+    byte[] chunk = arena[arenaChunk];
+    int position = arenaPosition;
+    chunk[position] = (byte) ((bytes.length + 1) >>> 8);
+    chunk[position + 1] = (byte) (bytes.length + 1);
+    chunk[position + 2] = (byte) (slot >>> 24);
+    chunk[position + 3] = (byte) (slot >>> 16);
+    chunk[position + 4] = (byte) (slot >>> 8);
+    chunk[position + 5] = (byte) slot;
+    System.arraycopy(bytes, 0, chunk, position + HEADER_BYTES, bytes.length);
+    arenaPosition += HEADER_BYTES + bytes.length;
+    return arenaChunk << ARENA_CHUNK_BITS | position;
+  }
+
+  /**
+   * Compares ASCII ids byte by byte without encoding them; only ids with other characters are encoded to compare.
+   */
+  private int slotIfMatches(int offset, String accountId) {
+    byte[] chunk = arena[offset >>> ARENA_CHUNK_BITS];
+    int position = offset & ARENA_CHUNK_MASK;
+    int length = lengthAt(chunk, position) - 1;
+    int start = position + HEADER_BYTES;
+    int chars = accountId.length();
+    if (chars > length)
+      return -1;
+    for (int i = 0; i < chars; i++) {
+      char c = accountId.charAt(i);
+      if (c >= 0x80) {
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        return Arrays.equals(Arrays.copyOfRange(chunk, start, start + length), bytes) ? slotAt(chunk, position) : -1;
+      }
+      if (chunk[start + i] != (byte) c)
+        return -1;
+    }
+    return chars == length ? slotAt(chunk, position) : -1;
+  }
+
+  private static int lengthAt(byte[] chunk, int position) {
+    return (chunk[position] & 0xFF) << 8 | chunk[position + 1] & 0xFF;
+  }
+
+  private static int slotAt(byte[] chunk, int position) {
+    return (chunk[position + 2] & 0xFF) << 24 | (chunk[position + 3] & 0xFF) << 16
+            | (chunk[position + 4] & 0xFF) << 8 | chunk[position + 5] & 0xFF;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -1,21 +1,56 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Creates the accounts whose ids are not taken yet and reports the outcome of each by status instead of by exception.
+   */
+  List<CreateAccountStatus> createAccounts(List<Account> accounts);
+
   Account getAccount(String accountId) throws AccountNotFoundException;
 
   void clearAccounts();
 
+  /**
+   * Visits every account without taking a lock. Each balance is current when its account is visited, so transfers
+   * applied during the walk can be seen on one account and not yet on the other.
+   */
+  void forEachAccount(Consumer<Account> consumer);
+
+  /**
+   * Opens a snapshot of all balances. Writers are held off only for the moment it takes to open it.
+   */
+  AccountsSnapshot openSnapshot();
+
   Account debitAccount(String accountId, BigDecimal amount) throws InsufficientFundsException, AccountNotFoundException;
 
   Account creditAccount(String accountId, BigDecimal amount) throws AccountNotFoundException;
+
+  /**
+   * Debits {@code fromAccountId} and credits {@code toAccountId} in one critical section, so either both legs are
+   * applied or neither is.
+   */
+  TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException;
+
+  /**
+   * Applies the transfers in order while holding the lock of every account involved, taken once for the whole batch.
+   * Rejected transfers are reported by status instead of by exception. When {@code atomic} is set, the first
+   * rejection aborts the batch and no balance is changed.
+   */
+  List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic);
 }
@@ -1,60 +1,644 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.journal.AccountsJournal;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+import java.util.function.UnaryOperator;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
+  private static final int LOCK_STRIPES = 1024;
+
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
 
+  private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+  private final PreImages<String, Account> preImages = new PreImages<>();
+
+  private final Map<String, StripedBalance> striped = new ConcurrentHashMap<>();
+
+  private final PreImages<Cell, BigDecimal> cellPreImages = new PreImages<>();
+
+  private volatile Set<String> stripedAccountIds = Collections.emptySet();
+
+  private int cellsPerStripedAccount = 1;
+
+  private volatile AccountsJournal journal = AccountsJournal.NONE;
+
+  private TransferMetrics metrics = TransferMetrics.NONE;
+
+  private BalanceAggregates aggregates = BalanceAggregates.NONE;
+
+  /**
+   * Records every change from now on in the given journal. Each change is appended while the account locks are held,
+   * so the journal order of changes to one account is the order in which they were applied.
+   */
+  public void attachJournal(AccountsJournal journal) {
+    this.journal = journal;
+  }
+
+  @Autowired
+  public void setTransferMetrics(TransferMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Autowired
+  public void setBalanceAggregates(BalanceAggregates aggregates) {
+    this.aggregates = aggregates;
+  }
+
+  /**
+   * Splits the balance of each of the given hot accounts into {@code cells} parts, each guarded by a lock stripe of its
+   * own, so that credits to the account from different threads do not queue up on one lock. Debits, transfers out of
+   * the account and balance reads add up all parts. Applies to the accounts created from then on.
+   */
+  @Autowired
+  public void setStripedAccounts(@Value("${accounts.striped.ids:}") String[] accountIds,
+                                 @Value("${accounts.striped.cells:8}") int cells) {
+    if (cells < 1 || cells > LOCK_STRIPES)
+      throw new IllegalArgumentException("Cells per striped account must be between 1 and " + LOCK_STRIPES);
+    this.cellsPerStripedAccount = cells;
+    this.stripedAccountIds = accountIds.length == 0 ? Collections.emptySet()
+            : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(accountIds)));
+  }
+
   @Override
   public void createAccount(Account account) throws DuplicateAccountIdException {
-    Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
-    if (previousAccount != null) {
-      throw new DuplicateAccountIdException(
-              "Account id " + account.getAccountId() + " already exists!");
+    int stripe = locks.stripeOf(account.getAccountId());
+    long position;
+    locks.lock(stripe);
+    try {
+      if (exists(account.getAccountId())) {
+        throw new DuplicateAccountIdException(
+                "Account id " + account.getAccountId() + " already exists!");
+      }
+      position = journal.appendCreate(account.getAccountId(), account.getBalance());
+      insert(account);
+    } finally {
+      locks.unlock(stripe);
     }
+    journal.awaitDurable(position);
+  }
+
+  /**
+   * Takes each account's stripe on its own, so the import never holds more than one lock, and waits for the journal
+   * once for the whole list.
+   */
+  @Override
+  public List<CreateAccountStatus> createAccounts(List<Account> newAccounts) {
+    List<CreateAccountStatus> statuses = new ArrayList<>(newAccounts.size());
+    long position = 0;
+    for (Account account : newAccounts) {
+      int stripe = locks.stripeOf(account.getAccountId());
+      locks.lock(stripe);
+      try {
+        if (exists(account.getAccountId())) {
+          statuses.add(CreateAccountStatus.DUPLICATE);
+          continue;
+        }
+        position = journal.appendCreate(account.getAccountId(), account.getBalance());
+        insert(account);
+        statuses.add(CreateAccountStatus.CREATED);
+      } finally {
+        locks.unlock(stripe);
+      }
+    }
+    journal.awaitDurable(position);
+    return statuses;
   }
 
   @Override
   public Account getAccount(String accountId) {
     Account account = accounts.get(accountId);
-    if (account == null)
-      throw new AccountNotFoundException("AccountId " + accountId + " does not exist or is invalid");
-    return account;
+    if (account != null)
+      return account;
+    StripedBalance hot = hot(accountId);
+    if (hot == null)
+      throw accountNotFound(accountId);
+    return new Account(accountId, hot.sum());
   }
 
   @Override
   public void clearAccounts() {
+    long position = journal.appendClear();
     accounts.clear();
+    striped.clear();
+    aggregates.cleared();
+    journal.awaitDurable(position);
   }
 
   @Override
   public Account debitAccount(String accountId, BigDecimal amount) throws InsufficientFundsException, AccountNotFoundException {
-    return performThreadSafeUpdate(accountId, (id, acc) -> debit(acc, amount));
+    StripedBalance hot = hot(accountId);
+    if (hot != null)
+      return debitStriped(accountId, hot, amount);
+    return performThreadSafeUpdate(accountId, acc -> debit(acc, amount), amount.negate(),
+            () -> journal.appendDebit(accountId, amount));
   }
 
   @Override
   public Account creditAccount(String accountId, BigDecimal amount) throws AccountNotFoundException {
-    return performThreadSafeUpdate(accountId, (id, acc) -> credit(amount, acc));
+    StripedBalance hot = hot(accountId);
+    if (hot != null)
+      return creditStriped(accountId, hot, amount);
+    return performThreadSafeUpdate(accountId, acc -> credit(amount, acc), amount,
+            () -> journal.appendCredit(accountId, amount));
+  }
+
+  @Override
+  public TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException {
+    StripedBalance fromHot = hot(fromAccountId);
+    StripedBalance toHot = hot(toAccountId);
+    if (fromHot != null || toHot != null)
+      return transferStriped(fromAccountId, fromHot, toAccountId, toHot, amount);
+    int fromStripe = locks.stripeOf(fromAccountId);
+    int toStripe = locks.stripeOf(toAccountId);
+    TransferResult result;
+    long position;
+    long waited = locks.lockBoth(fromStripe, toStripe);
+    try {
+      Account from = getAccount(fromAccountId);
+      Account updatedFrom = debit(from, amount);
+      Account to = fromAccountId.equals(toAccountId) ? updatedFrom : getAccount(toAccountId);
+      Account updatedTo = credit(amount, to);
+      position = journal.appendTransfer(fromAccountId, toAccountId, amount);
+      publish(fromAccountId, updatedFrom);
+      publish(toAccountId, updatedTo);
+      aggregates.applied("transfer", aggregates.moved(from.getBalance(), updatedFrom.getBalance())
+              .add(aggregates.moved(to.getBalance(), updatedTo.getBalance())), BigDecimal.ZERO);
+      result = new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+    } finally {
+      locks.unlockBoth(fromStripe, toStripe);
+    }
+    recordContention(fromAccountId, toAccountId, waited);
+    journal.awaitDurable(position);
+    return result;
   }
 
-  private Account performThreadSafeUpdate(String accountId, BiFunction<String, Account, Account> updateFunction) throws AccountNotFoundException {
-    Account account = accounts.computeIfPresent(accountId, updateFunction);
-    if (account == null)
-      throw new AccountNotFoundException("AccountId " + accountId + " does not exist or is invalid");
+  @Override
+  public List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic) {
+    int[] stripes = new int[transfers.size() * 2];
+    for (int i = 0; i < transfers.size(); i++) {
+      stripes[2 * i] = locks.stripeOf(transfers.get(i).getFromAccountId());
+      stripes[2 * i + 1] = locks.stripeOf(transfers.get(i).getToAccountId());
+    }
+    if (!stripedAccountIds.isEmpty())
+      stripes = withStripedCells(stripes, transfers);
+    stripes = StripedLocks.sortedDistinct(stripes);
+
+    List<TransferResult> results = new ArrayList<>(transfers.size());
+    long position = 0;
+    locks.lockAll(stripes);
+    try {
+      Map<String, Account> updated = new HashMap<>();
+      for (TransferDto transfer : transfers) {
+        TransferResult result = applyTransfer(transfer, updated);
+        results.add(result);
+        if (atomic && !result.isApplied())
+          return BatchResults.abort(results, transfers.size());
+      }
+      for (int i = 0; i < transfers.size(); i++) {
+        if (results.get(i).isApplied()) {
+          TransferDto transfer = transfers.get(i);
+          position = journal.appendTransfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+        }
+      }
+      BigDecimal change = BigDecimal.ZERO;
+      for (Account account : updated.values()) {
+        StripedBalance hot = hot(account.getAccountId());
+        if (hot != null) {
+          change = change.add(setCells(account.getAccountId(), hot, account.getBalance()));
+          continue;
+        }
+        change = change.add(aggregates.moved(accounts.get(account.getAccountId()).getBalance(), account.getBalance()));
+        publish(account.getAccountId(), account);
+      }
+      aggregates.applied("transfer batch", change, BigDecimal.ZERO);
+    } finally {
+      locks.unlockAll(stripes);
+    }
+    journal.awaitDurable(position);
+    return results;
+  }
+
+  private TransferResult applyTransfer(TransferDto transfer, Map<String, Account> updated) {
+    String fromAccountId = transfer.getFromAccountId();
+    String toAccountId = transfer.getToAccountId();
+    Account from = updated.containsKey(fromAccountId) ? updated.get(fromAccountId) : liveAccount(fromAccountId);
+    if (from == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    BigDecimal fromBalance = from.getBalance().subtract(transfer.getAmount());
+    if (!isBalanceGreaterThanZero(fromBalance))
+      return TransferResult.rejected(TransferStatus.INSUFFICIENT_FUNDS);
+    Account updatedFrom = new Account(fromAccountId, fromBalance);
+    Account to = fromAccountId.equals(toAccountId) ? updatedFrom
+            : updated.containsKey(toAccountId) ? updated.get(toAccountId) : liveAccount(toAccountId);
+    if (to == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    Account updatedTo = credit(transfer.getAmount(), to);
+    updated.put(fromAccountId, updatedFrom);
+    updated.put(toAccountId, updatedTo);
+    return new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> consumer) {
+    accounts.values().forEach(consumer);
+    striped.forEach((accountId, hot) -> consumer.accept(new Account(accountId, hot.sum())));
+  }
+
+  /**
+   * Holds every lock stripe while the snapshot is registered, so no transfer is half applied at that instant.
+   */
+  @Override
+  public AccountsSnapshot openSnapshot() {
+    return openSnapshot(() -> {
+    });
+  }
+
+  /**
+   * Opens a snapshot and runs {@code atOpen} at its instant, while no change is in progress, so that it can note how
+   * far the attached journal had got: the snapshot reflects every record appended before and none appended after.
+   */
+  public AccountsSnapshot openSnapshot(Runnable atOpen) {
+    PreImages.Snapshot<String, Account> snapshot;
+    PreImages.Snapshot<Cell, BigDecimal> cellSnapshot;
+    locks.lockEvery();
+    try {
+      snapshot = preImages.open();
+      cellSnapshot = cellPreImages.open();
+      atOpen.run();
+    } finally {
+      locks.unlockEvery();
+    }
+    return new AccountsSnapshot() {
+      @Override
+      public Account get(String accountId) {
+        Account live = accounts.get(accountId);
+        Account account = snapshot.resolve(accountId, live);
+        if (account == null) {
+          StripedBalance hot = hot(accountId);
+          if (hot != null)
+            return resolveStriped(cellSnapshot, accountId, hot);
+        }
+        return account;
+      }
+
+      @Override
+      public void forEach(Consumer<Account> consumer) {
+        for (Map.Entry<String, Account> entry : accounts.entrySet()) {
+          Account account = snapshot.resolve(entry.getKey(), entry.getValue());
+          if (account != null)
+            consumer.accept(account);
+        }
+        for (Map.Entry<String, StripedBalance> entry : striped.entrySet()) {
+          Account account = resolveStriped(cellSnapshot, entry.getKey(), entry.getValue());
+          if (account != null)
+            consumer.accept(account);
+        }
+      }
+
+      @Override
+      public void close() {
+        preImages.close(snapshot);
+        cellPreImages.close(cellSnapshot);
+      }
+    };
+  }
+
+  /**
+   * Visits every account together with the journal position read while holding its lock: journal records for the
+   * account that start before that position are reflected in the balance visited, later ones are not.
+   */
+  public void forEachAccountWithJournalPosition(ObjLongConsumer<Account> consumer) {
+    for (String accountId : accounts.keySet()) {
+      int stripe = locks.stripeOf(accountId);
+      Account account;
+      long position;
+      locks.lock(stripe);
+      try {
+        account = accounts.get(accountId);
+        position = journal.position();
+      } finally {
+        locks.unlock(stripe);
+      }
+      if (account != null)
+        consumer.accept(account, position);
+    }
+    for (Map.Entry<String, StripedBalance> entry : striped.entrySet()) {
+      StripedBalance hot = entry.getValue();
+      BigDecimal balance;
+      long position;
+      locks.lockAll(hot.sortedStripes());
+      try {
+        balance = hot.sum();
+        position = journal.position();
+      } finally {
+        locks.unlockAll(hot.sortedStripes());
+      }
+      consumer.accept(new Account(entry.getKey(), balance), position);
+    }
+  }
+
+  /**
+   * Credits one cell, the one of the calling thread, so concurrent credits to the account mostly take different locks.
+   */
+  private Account creditStriped(String accountId, StripedBalance hot, BigDecimal amount) {
+    int cell = hot.cellForCurrentThread();
+    int stripe = hot.stripeOf(cell);
+    Account account;
+    long position;
+    long waited = locks.lock(stripe);
+    try {
+      position = journal.appendCredit(accountId, amount);
+      aggregates.applied("credit", addToCell(accountId, hot, cell, amount), amount);
+      account = new Account(accountId, raiseMagnitude(hot));
+    } finally {
+      locks.unlock(stripe);
+    }
+    recordContention(accountId, null, waited);
+    journal.awaitDurable(position);
     return account;
   }
 
+  /**
+   * Holds every cell of the account, so the overdraft check sees the whole balance and may borrow from any cell.
+   */
+  private Account debitStriped(String accountId, StripedBalance hot, BigDecimal amount) {
+    Account account;
+    long position;
+    long waited = locks.lockAll(hot.sortedStripes());
+    try {
+      BigDecimal balance = hot.sum();
+      if (!isBalanceGreaterThanZero(balance.subtract(amount)))
+        throw new InsufficientFundsException("Overdrafts are not supported");
+      position = journal.appendDebit(accountId, amount);
+      aggregates.applied("debit", takeFromCells(accountId, hot, balance, amount), amount.negate());
+      account = new Account(accountId, hot.sum());
+    } finally {
+      locks.unlockAll(hot.sortedStripes());
+    }
+    recordContention(accountId, null, waited);
+    journal.awaitDurable(position);
+    return account;
+  }
+
+  /**
+   * Like {@link #transfer(String, String, BigDecimal)}, but takes every cell of a striped source account and one cell
+   * of a striped target account.
+   */
+  private TransferResult transferStriped(String fromAccountId, StripedBalance fromHot,
+                                         String toAccountId, StripedBalance toHot, BigDecimal amount) {
+    int toCell = toHot == null ? -1 : toHot.cellForCurrentThread();
+    int[] fromStripes = fromHot == null ? new int[] {locks.stripeOf(fromAccountId)} : fromHot.sortedStripes();
+    int[] stripes = Arrays.copyOf(fromStripes, fromStripes.length + 1);
+    stripes[fromStripes.length] = toHot == null ? locks.stripeOf(toAccountId) : toHot.stripeOf(toCell);
+    stripes = StripedLocks.sortedDistinct(stripes);
+
+    TransferResult result;
+    long position;
+    long waited = locks.lockAll(stripes);
+    try {
+      Account from = fromHot == null ? getAccount(fromAccountId) : new Account(fromAccountId, fromHot.sum());
+      Account updatedFrom = debit(from, amount);
+      Account to = toHot != null || fromAccountId.equals(toAccountId) ? null : getAccount(toAccountId);
+      position = journal.appendTransfer(fromAccountId, toAccountId, amount);
+
+      BigDecimal change;
+      if (fromHot == null) {
+        change = aggregates.moved(from.getBalance(), updatedFrom.getBalance());
+        publish(fromAccountId, updatedFrom);
+      } else {
+        change = takeFromCells(fromAccountId, fromHot, from.getBalance(), amount);
+      }
+      Account updatedTo;
+      if (toHot == null) {
+        Account current = to == null ? updatedFrom : to;
+        updatedTo = credit(amount, current);
+        change = change.add(aggregates.moved(current.getBalance(), updatedTo.getBalance()));
+        publish(toAccountId, updatedTo);
+      } else {
+        change = change.add(addToCell(toAccountId, toHot, toCell, amount));
+        updatedTo = new Account(toAccountId, raiseMagnitude(toHot));
+      }
+      aggregates.applied("transfer", change, BigDecimal.ZERO);
+      result = new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo
+              : fromHot == null ? updatedFrom : new Account(fromAccountId, fromHot.sum()), updatedTo);
+    } finally {
+      locks.unlockAll(stripes);
+    }
+    recordContention(fromAccountId, toAccountId, waited);
+    journal.awaitDurable(position);
+    return result;
+  }
+
+  /**
+   * Adds the stripes of every cell of the striped accounts among the transfers.
+   */
+  private int[] withStripedCells(int[] stripes, List<TransferDto> transfers) {
+    int[] all = stripes;
+    int count = stripes.length;
+    for (TransferDto transfer : transfers) {
+      for (String accountId : new String[] {transfer.getFromAccountId(), transfer.getToAccountId()}) {
+        StripedBalance hot = hot(accountId);
+        if (hot == null)
+          continue;
+        if (count + hot.cells() > all.length)
+          all = Arrays.copyOf(all, Math.max(2 * all.length, count + hot.cells()));
+        for (int cell = 0; cell < hot.cells(); cell++) {
+          all[count++] = hot.stripeOf(cell);
+        }
+      }
+    }
+    return all == stripes ? stripes : Arrays.copyOf(all, count);
+  }
+
+  /**
+   * The caller holds the cell's stripe. Returns the change of the balance for the aggregates.
+   */
+  private BigDecimal addToCell(String accountId, StripedBalance hot, int cell, BigDecimal amount) {
+    BigDecimal before = hot.cell(cell);
+    if (cellPreImages.anyOpen())
+      cellPreImages.beforeWrite(new Cell(accountId, cell), before);
+    hot.add(cell, amount);
+    return hot.cell(cell).subtract(before);
+  }
+
+  /**
+   * The caller holds every cell's stripe and has checked that {@code balance}, the current sum, covers the amount.
+   */
+  private BigDecimal takeFromCells(String accountId, StripedBalance hot, BigDecimal balance, BigDecimal amount) {
+    preserveCells(accountId, hot);
+    hot.take(amount);
+    BigDecimal updated = hot.sum();
+    settleMagnitude(hot, updated);
+    return updated.subtract(balance);
+  }
+
+  private BigDecimal setCells(String accountId, StripedBalance hot, BigDecimal balance) {
+    BigDecimal before = hot.sum();
+    preserveCells(accountId, hot);
+    hot.set(balance);
+    settleMagnitude(hot, balance);
+    return balance.subtract(before);
+  }
+
+  private void preserveCells(String accountId, StripedBalance hot) {
+    if (cellPreImages.anyOpen()) {
+      for (int cell = 0; cell < hot.cells(); cell++) {
+        cellPreImages.beforeWrite(new Cell(accountId, cell), hot.cell(cell));
+      }
+    }
+  }
+
+  /**
+   * Credits only ever raise the magnitude bucket of the account, and read the other cells without their locks, so the
+   * bucket can lag behind until the next debit sets it from the exact sum. Returns the sum read.
+   */
+  private BigDecimal raiseMagnitude(StripedBalance hot) {
+    BigDecimal balance = hot.sum();
+    int magnitude = aggregates.magnitudeOf(balance);
+    if (magnitude > hot.magnitude) {
+      synchronized (hot) {
+        if (magnitude > hot.magnitude) {
+          aggregates.moveMagnitude(hot.magnitude, magnitude);
+          hot.magnitude = magnitude;
+        }
+      }
+    }
+    return balance;
+  }
+
+  private void settleMagnitude(StripedBalance hot, BigDecimal balance) {
+    int magnitude = aggregates.magnitudeOf(balance);
+    synchronized (hot) {
+      aggregates.moveMagnitude(hot.magnitude, magnitude);
+      hot.magnitude = magnitude;
+    }
+  }
+
+  private Account resolveStriped(PreImages.Snapshot<Cell, BigDecimal> snapshot, String accountId,
+                                 StripedBalance hot) {
+    BigDecimal balance = BigDecimal.ZERO;
+    for (int cell = 0; cell < hot.cells(); cell++) {
+      BigDecimal value = snapshot.resolve(new Cell(accountId, cell), hot.cell(cell));
+      if (value == null)
+        return null;
+      balance = balance.add(value);
+    }
+    return new Account(accountId, balance);
+  }
+
+  private boolean exists(String accountId) {
+    return accounts.containsKey(accountId) || hot(accountId) != null;
+  }
+
+  /**
+   * Adds the new account while the caller holds its stripe, which is also the stripe of the first cell of a striped
+   * account; its other cells cannot be reached before it is in the map.
+   */
+  private void insert(Account account) {
+    String accountId = account.getAccountId();
+    if (stripedAccountIds.contains(accountId)) {
+      int[] stripes = new int[cellsPerStripedAccount];
+      for (int cell = 0; cell < stripes.length; cell++) {
+        stripes[cell] = (locks.stripeOf(accountId) + cell) & (LOCK_STRIPES - 1);
+        if (cellPreImages.anyOpen())
+          cellPreImages.beforeWrite(new Cell(accountId, cell), null);
+      }
+      StripedBalance hot = new StripedBalance(stripes, account.getBalance());
+      hot.magnitude = aggregates.magnitudeOf(account.getBalance());
+      striped.put(accountId, hot);
+    } else {
+      publish(accountId, account);
+    }
+    aggregates.created(account.getBalance());
+  }
+
+  private StripedBalance hot(String accountId) {
+    return stripedAccountIds.isEmpty() ? null : striped.get(accountId);
+  }
+
+  private Account liveAccount(String accountId) {
+    Account account = accounts.get(accountId);
+    if (account == null) {
+      StripedBalance hot = hot(accountId);
+      if (hot != null)
+        return new Account(accountId, hot.sum());
+    }
+    return account;
+  }
+
+  private Account performThreadSafeUpdate(String accountId, UnaryOperator<Account> updateFunction,
+                                          BigDecimal expectedChange, LongSupplier journalAppend)
+          throws AccountNotFoundException {
+    int stripe = locks.stripeOf(accountId);
+    Account account;
+    long position;
+    long waited = locks.lock(stripe);
+    try {
+      Account current = getAccount(accountId);
+      account = updateFunction.apply(current);
+      position = journalAppend.getAsLong();
+      publish(accountId, account);
+      aggregates.applied(expectedChange.signum() < 0 ? "debit" : "credit",
+              aggregates.moved(current.getBalance(), account.getBalance()), expectedChange);
+    } finally {
+      locks.unlock(stripe);
+    }
+    recordContention(accountId, null, waited);
+    journal.awaitDurable(position);
+    return account;
+  }
+
+  /**
+   * Replaces the account while the caller holds its stripe, keeping the old version for the open snapshots.
+   */
+  private void publish(String accountId, Account account) {
+    if (preImages.anyOpen())
+      preImages.beforeWrite(accountId, accounts.get(accountId));
+    accounts.put(accountId, account);
+  }
+
+  private void recordContention(String firstAccountId, String secondAccountId, long waited) {
+    if (waited > 0)
+      metrics.lockContended(firstAccountId, secondAccountId, waited);
+  }
+
+  private AccountNotFoundException accountNotFound(String accountId) {
+    return new AccountNotFoundException(accountId, "AccountId " + accountId + " does not exist or is invalid");
+  }
+
   private Account debit(Account acc, BigDecimal amount) {
     BigDecimal balance = acc.getBalance().subtract(amount);
     if (isBalanceGreaterThanZero(balance)) {
@@ -70,4 +654,12 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
   private Account credit(BigDecimal amount, Account acc) {
     return new Account(acc.getAccountId(), acc.getBalance().add(amount));
   }
-}
\ No newline at end of file
+
+  @Data
+  private static final class Cell {
+
+    private final String accountId;
+
+    private final int cell;
+  }
+}
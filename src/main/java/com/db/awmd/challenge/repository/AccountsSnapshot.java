@@ -0,0 +1,23 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+import java.util.function.Consumer;
+
+/**
+ * The balances of all accounts at the instant the snapshot was opened. Transfers carry on while it is open; the
+ * repository keeps the old balance of every account changed since, so a snapshot should be closed as soon as it has
+ * been read.
+ */
+public interface AccountsSnapshot extends AutoCloseable {
+
+  /**
+   * Returns the account as it was when the snapshot was opened, {@code null} if it did not exist then.
+   */
+  Account get(String accountId);
+
+  void forEach(Consumer<Account> consumer);
+
+  @Override
+  void close();
+}
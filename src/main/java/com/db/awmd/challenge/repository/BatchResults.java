@@ -0,0 +1,30 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class BatchResults {
+
+  private static final TransferResult ABORTED = TransferResult.rejected(TransferStatus.ABORTED);
+
+  private BatchResults() {
+  }
+
+  /**
+   * Turns the results of an atomic batch that hit a rejection into the final outcome: the rejection keeps its status,
+   * every other transfer, applied or not yet attempted, is reported as aborted.
+   */
+  static List<TransferResult> abort(List<TransferResult> results, int batchSize) {
+    List<TransferResult> aborted = new ArrayList<>(batchSize);
+    for (TransferResult result : results) {
+      aborted.add(result.isApplied() ? ABORTED : result);
+    }
+    while (aborted.size() < batchSize) {
+      aborted.add(ABORTED);
+    }
+    return aborted;
+  }
+}
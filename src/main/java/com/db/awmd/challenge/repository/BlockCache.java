@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used data blocks of the sorted runs, bounded by their total size. Blocks are never changed once
+ * written and each run has its own id, so a cached block cannot go stale; the blocks of a deleted run simply age out.
+ */
+final class BlockCache {
+
+  private final long capacityBytes;
+
+  private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(256, 0.75f, true);
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private long sizeBytes;
+
+  BlockCache(long capacityBytes) {
+    if (capacityBytes < 0)
+      throw new IllegalArgumentException("Block cache size must not be negative but was " + capacityBytes);
+    this.capacityBytes = capacityBytes;
+  }
+
+  /**
+   * Reads the block from the run on a miss, outside the cache's monitor, so two threads missing the same block may
+   * both read it.
+   */
+  byte[] get(SortedRun run, int block) {
+    Long key = run.getId() << 32 | block;
+    synchronized (this) {
+      byte[] cached = blocks.get(key);
+      if (cached != null) {
+        hits.increment();
+        return cached;
+      }
+    }
+    misses.increment();
+    byte[] read = run.readBlock(block);
+    if (read.length <= capacityBytes)
+      put(key, read);
+    return read;
+  }
+
+  long hits() {
+    return hits.sum();
+  }
+
+  long misses() {
+    return misses.sum();
+  }
+
+  synchronized void clear() {
+    blocks.clear();
+    sizeBytes = 0;
+  }
+
+  private synchronized void put(Long key, byte[] block) {
+    byte[] replaced = blocks.put(key, block);
+    sizeBytes += block.length - (replaced == null ? 0 : replaced.length);
+    Iterator<Map.Entry<Long, byte[]>> eldest = blocks.entrySet().iterator();
+    while (sizeBytes > capacityBytes && eldest.hasNext()) {
+      sizeBytes -= eldest.next().getValue().length;
+      eldest.remove();
+    }
+  }
+}
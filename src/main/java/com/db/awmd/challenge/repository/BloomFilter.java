@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.repository;
+
+/**
+ * Answers whether an account id may be in a sorted run, so that looking up an id that is in none of the runs costs a
+ * few hash probes instead of a block read per run. With {@code bitsPerKey} bits per id a filter is wrong about one in
+ * {@code 0.6185^bitsPerKey} absent ids, about one in a hundred with 10 bits; it is never wrong about a present one.
+ */
+final class BloomFilter {
+
+  private final long[] words;
+
+  private final long bits;
+
+  private final int hashes;
+
+  BloomFilter(long expectedKeys, int bitsPerKey) {
+    if (bitsPerKey < 1)
+      throw new IllegalArgumentException("Bloom filter bits per key must be positive but was " + bitsPerKey);
+    long wanted = Math.max(64, expectedKeys * bitsPerKey);
+    this.words = new long[(int) Math.min(Integer.MAX_VALUE - 8, (wanted + 63) >>> 6)];
+    this.bits = (long) words.length << 6;
+    this.hashes = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2))));
+  }
+
+  void add(String key) {
+    long hash = hash(key);
+    for (int i = 0; i < hashes; i++) {
+      long bit = bitOf(hash, i);
+      words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  boolean mightContain(String key) {
+    long hash = hash(key);
+    for (int i = 0; i < hashes; i++) {
+      long bit = bitOf(hash, i);
+      if ((words[(int) (bit >>> 6)] & 1L << bit) == 0)
+        return false;
+    }
+    return true;
+  }
+
+  long sizeInBytes() {
+    return (long) words.length * 8;
+  }
+
+  /**
+   * Derives the probes from the two halves of one 64-bit hash, which spreads them as well as independent hashes do.
+   */
+  private long bitOf(long hash, int probe) {
+    long combined = (int) hash + probe * (long) (int) (hash >>> 32);
+    return (combined & Long.MAX_VALUE) % bits;
+  }
+
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ hash >>> 33;
+  }
+}
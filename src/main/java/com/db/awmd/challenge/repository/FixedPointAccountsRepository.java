@@ -0,0 +1,398 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every balance as a {@code long} count of minor units (balance * 10^scale) in chunked primitive arrays.
+ * Account ids are resolved once to a slot through a compact {@link AccountIdIndex}; debits and credits then update the
+ * slot in place under the slot's lock stripe, so the store itself does not allocate per update and keeps no object per
+ * account. {@link Account} objects are only built when a balance leaves the repository.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "fixed-point")
+public class FixedPointAccountsRepository implements AccountsRepository {
+
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int MAX_CHUNKS = 1 << (31 - CHUNK_BITS);
+  private static final int MAX_SCALE = 18;
+  private static final int LOCK_STRIPES = 1024;
+
+  private final int scale;
+
+  private final long unitsPerWhole;
+
+  private final AccountIdIndex slots = new AccountIdIndex();
+
+  private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+  private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+  private final PreImages<Integer, Long> preImages = new PreImages<>();
+
+  private TransferMetrics metrics = TransferMetrics.NONE;
+
+  private BalanceAggregates aggregates = BalanceAggregates.NONE;
+
+  @Autowired
+  public FixedPointAccountsRepository(@Value("${accounts.fixed-point.scale:2}") int scale) {
+    if (scale < 0 || scale > MAX_SCALE)
+      throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE + " but was " + scale);
+    this.scale = scale;
+    this.unitsPerWhole = BigDecimal.ONE.movePointRight(scale).longValueExact();
+  }
+
+  @Autowired
+  public void setTransferMetrics(TransferMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Autowired
+  public void setBalanceAggregates(BalanceAggregates aggregates) {
+    aggregates.setUnitScale(scale);
+    this.aggregates = aggregates;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    long units = toUnits(account.getBalance());
+    if (slots.add(account.getAccountId(), slot -> initializeSlot(slot, units)) < 0) {
+      throw new DuplicateAccountIdException(
+              "Account id " + account.getAccountId() + " already exists!");
+    }
+    aggregates.createdUnits(units);
+  }
+
+  @Override
+  public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+    List<CreateAccountStatus> statuses = new ArrayList<>(accounts.size());
+    for (Account account : accounts) {
+      long units;
+      try {
+        units = toUnits(account.getBalance());
+      } catch (AmountOutOfRangeException e) {
+        statuses.add(CreateAccountStatus.AMOUNT_OUT_OF_RANGE);
+        continue;
+      }
+      if (slots.add(account.getAccountId(), slot -> initializeSlot(slot, units)) < 0) {
+        statuses.add(CreateAccountStatus.DUPLICATE);
+        continue;
+      }
+      aggregates.createdUnits(units);
+      statuses.add(CreateAccountStatus.CREATED);
+    }
+    return statuses;
+  }
+
+  @Override
+  public Account getAccount(String accountId) throws AccountNotFoundException {
+    return toAccount(accountId, balanceOf(slotOf(accountId)));
+  }
+
+  @Override
+  public void clearAccounts() {
+    slots.clear();
+    aggregates.cleared();
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> consumer) {
+    slots.forEach(Integer.MAX_VALUE, (accountId, slot) -> consumer.accept(toAccount(accountId, balanceOf(slot))));
+  }
+
+  /**
+   * Accounts are created without the stripe locks, so the snapshot leaves out every slot allocated after it was
+   * opened instead of relying on pre-images for them.
+   */
+  @Override
+  public AccountsSnapshot openSnapshot() {
+    PreImages.Snapshot<Integer, Long> snapshot;
+    int allocated;
+    locks.lockEvery();
+    try {
+      snapshot = preImages.open();
+      allocated = slots.size();
+    } finally {
+      locks.unlockEvery();
+    }
+    return new AccountsSnapshot() {
+      @Override
+      public Account get(String accountId) {
+        int slot = slots.get(accountId);
+        if (slot < 0 || slot >= allocated)
+          return null;
+        return toAccount(accountId, snapshot.resolve(slot, balanceOf(slot)));
+      }
+
+      @Override
+      public void forEach(Consumer<Account> consumer) {
+        slots.forEach(allocated, (accountId, slot) ->
+                consumer.accept(toAccount(accountId, snapshot.resolve(slot, balanceOf(slot)))));
+      }
+
+      @Override
+      public void close() {
+        preImages.close(snapshot);
+      }
+    };
+  }
+
+  @Override
+  public Account debitAccount(String accountId, BigDecimal amount) throws InsufficientFundsException, AccountNotFoundException {
+    int slot = slotOf(accountId);
+    long units = toUnits(amount);
+    int stripe = locks.stripeOf(slot);
+    long waited = locks.lock(stripe);
+    Account account;
+    try {
+      account = toAccount(accountId, debit(slot, units));
+    } finally {
+      locks.unlock(stripe);
+    }
+    recordContention(accountId, null, waited);
+    return account;
+  }
+
+  @Override
+  public Account creditAccount(String accountId, BigDecimal amount) throws AccountNotFoundException {
+    int slot = slotOf(accountId);
+    long units = toUnits(amount);
+    int stripe = locks.stripeOf(slot);
+    long waited = locks.lock(stripe);
+    Account account;
+    try {
+      account = toAccount(accountId, credit(slot, units));
+    } finally {
+      locks.unlock(stripe);
+    }
+    recordContention(accountId, null, waited);
+    return account;
+  }
+
+  @Override
+  public TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException {
+    int fromSlot = slotOf(fromAccountId);
+    long units = toUnits(amount);
+    int fromStripe = locks.stripeOf(fromSlot);
+    int toSlot = slotOf(toAccountId);
+    int toStripe = locks.stripeOf(toSlot);
+    long waited = locks.lockBoth(fromStripe, toStripe);
+    TransferResult result;
+    try {
+      long fromBalance = balanceOf(fromSlot);
+      long updatedFrom = subtract(fromBalance, units);
+      if (updatedFrom <= 0)
+        throw new InsufficientFundsException("Overdrafts are not supported");
+      long toBalance = fromSlot == toSlot ? updatedFrom : balanceOf(toSlot);
+      long updatedTo = add(toBalance, units);
+      setBalance(fromSlot, updatedFrom);
+      setBalance(toSlot, updatedTo);
+      aggregates.appliedUnits("transfer",
+              aggregates.movedUnits(fromBalance, updatedFrom) + aggregates.movedUnits(toBalance, updatedTo), 0);
+      result = new TransferResult(
+              toAccount(fromAccountId, fromSlot == toSlot ? updatedTo : updatedFrom), toAccount(toAccountId, updatedTo));
+    } finally {
+      locks.unlockBoth(fromStripe, toStripe);
+    }
+    recordContention(fromAccountId, toAccountId, waited);
+    return result;
+  }
+
+  @Override
+  public List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic) {
+    int size = transfers.size();
+    int[] fromSlots = new int[size];
+    int[] toSlots = new int[size];
+    long[] units = new long[size];
+    TransferStatus[] rejections = new TransferStatus[size];
+    int[] resolvedSlots = new int[size * 2];
+    int resolved = 0;
+    for (int i = 0; i < size; i++) {
+      rejections[i] = resolve(transfers.get(i), i, fromSlots, toSlots, units);
+      if (rejections[i] == null) {
+        resolvedSlots[resolved++] = fromSlots[i];
+        resolvedSlots[resolved++] = toSlots[i];
+      }
+    }
+
+    int[] touched = StripedLocks.sortedDistinct(Arrays.copyOf(resolvedSlots, resolved));
+    int[] stripes = new int[touched.length];
+    for (int i = 0; i < touched.length; i++) {
+      stripes[i] = locks.stripeOf(touched[i]);
+    }
+    stripes = StripedLocks.sortedDistinct(stripes);
+
+    locks.lockAll(stripes);
+    try {
+      long[] balances = new long[touched.length];
+      for (int i = 0; i < touched.length; i++) {
+        balances[i] = balanceOf(touched[i]);
+      }
+      List<TransferResult> results = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        TransferResult result = rejections[i] != null ? TransferResult.rejected(rejections[i])
+                : applyTransfer(transfers.get(i), Arrays.binarySearch(touched, fromSlots[i]),
+                Arrays.binarySearch(touched, toSlots[i]), units[i], balances);
+        results.add(result);
+        if (atomic && !result.isApplied())
+          return BatchResults.abort(results, size);
+      }
+      long change = 0;
+      for (int i = 0; i < touched.length; i++) {
+        change += aggregates.movedUnits(balanceOf(touched[i]), balances[i]);
+        setBalance(touched[i], balances[i]);
+      }
+      aggregates.appliedUnits("transfer batch", change, 0);
+      return results;
+    } finally {
+      locks.unlockAll(stripes);
+    }
+  }
+
+  private void recordContention(String firstAccountId, String secondAccountId, long waited) {
+    if (waited > 0)
+      metrics.lockContended(firstAccountId, secondAccountId, waited);
+  }
+
+  private TransferStatus resolve(TransferDto transfer, int index, int[] fromSlots, int[] toSlots, long[] units) {
+    int fromSlot = slots.get(transfer.getFromAccountId());
+    int toSlot = slots.get(transfer.getToAccountId());
+    if (fromSlot < 0 || toSlot < 0)
+      return TransferStatus.ACCOUNT_NOT_FOUND;
+    try {
+      units[index] = toUnits(transfer.getAmount());
+    } catch (AmountOutOfRangeException e) {
+      return TransferStatus.AMOUNT_OUT_OF_RANGE;
+    }
+    fromSlots[index] = fromSlot;
+    toSlots[index] = toSlot;
+    return null;
+  }
+
+  private TransferResult applyTransfer(TransferDto transfer, int from, int to, long units, long[] balances) {
+    long updatedFrom;
+    long updatedTo;
+    try {
+      updatedFrom = subtract(balances[from], units);
+      updatedTo = add(from == to ? updatedFrom : balances[to], units);
+    } catch (AmountOutOfRangeException e) {
+      return TransferResult.rejected(TransferStatus.AMOUNT_OUT_OF_RANGE);
+    }
+    if (updatedFrom <= 0)
+      return TransferResult.rejected(TransferStatus.INSUFFICIENT_FUNDS);
+    balances[from] = updatedFrom;
+    balances[to] = updatedTo;
+    return new TransferResult(toAccount(transfer.getFromAccountId(), from == to ? updatedTo : updatedFrom),
+            toAccount(transfer.getToAccountId(), updatedTo));
+  }
+
+  private long debit(int slot, long units) {
+    long balance = balanceOf(slot);
+    long updated = subtract(balance, units);
+    if (updated <= 0)
+      throw new InsufficientFundsException("Overdrafts are not supported");
+    setBalance(slot, updated);
+    aggregates.appliedUnits("debit", aggregates.movedUnits(balance, updated), -units);
+    return updated;
+  }
+
+  private long credit(int slot, long units) {
+    long balance = balanceOf(slot);
+    long updated = add(balance, units);
+    setBalance(slot, updated);
+    aggregates.appliedUnits("credit", aggregates.movedUnits(balance, updated), units);
+    return updated;
+  }
+
+  private long balanceOf(int slot) {
+    return chunkOf(slot).get(slot & CHUNK_MASK);
+  }
+
+  /**
+   * Must be called holding the slot's stripe; keeps the old balance for the open snapshots.
+   */
+  private void setBalance(int slot, long units) {
+    AtomicLongArray chunk = chunkOf(slot);
+    if (preImages.anyOpen())
+      preImages.beforeWrite(slot, chunk.get(slot & CHUNK_MASK));
+    chunk.set(slot & CHUNK_MASK, units);
+  }
+
+  private int slotOf(String accountId) {
+    int slot = slots.get(accountId);
+    if (slot < 0)
+      throw new AccountNotFoundException(accountId, "AccountId " + accountId + " does not exist or is invalid");
+    return slot;
+  }
+
+  /**
+   * Runs under the index's monitor, before the new slot can be looked up.
+   */
+  private void initializeSlot(int slot, long units) {
+    if (slot >>> CHUNK_BITS >= MAX_CHUNKS)
+      throw new IllegalStateException("Fixed point account store is full");
+    int chunkIndex = slot >>> CHUNK_BITS;
+    if (chunks.get(chunkIndex) == null)
+      chunks.set(chunkIndex, new AtomicLongArray(CHUNK_SIZE));
+    chunkOf(slot).set(slot & CHUNK_MASK, units);
+  }
+
+  private AtomicLongArray chunkOf(int slot) {
+    return chunks.get(slot >>> CHUNK_BITS);
+  }
+
+  private long toUnits(BigDecimal amount) {
+    try {
+      if (amount.scale() == 0)
+        return Math.multiplyExact(amount.longValueExact(), unitsPerWhole);
+      return amount.setScale(scale).unscaledValue().longValueExact();
+    } catch (ArithmeticException e) {
+      throw new AmountOutOfRangeException(
+              "Amount " + amount + " cannot be stored with " + scale + " decimal places");
+    }
+  }
+
+  private Account toAccount(String accountId, long units) {
+    return new Account(accountId, BigDecimal.valueOf(units, scale));
+  }
+
+  private long add(long balance, long units) {
+    try {
+      return Math.addExact(balance, units);
+    } catch (ArithmeticException e) {
+      throw new AmountOutOfRangeException("Balance would overflow the fixed point range");
+    }
+  }
+
+  private long subtract(long balance, long units) {
+    try {
+      return Math.subtractExact(balance, units);
+    } catch (ArithmeticException e) {
+      throw new AmountOutOfRangeException("Balance would overflow the fixed point range");
+    }
+  }
+}
@@ -0,0 +1,479 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hash-partitions the accounts onto a fixed number of single-threaded event loops. Only a partition's loop changes
+ * its accounts, so updates take no locks; other threads read the published balances directly.
+ * <p>
+ * A transfer between two accounts of one partition is a single task on that loop. A transfer across partitions is
+ * two tasks: the source loop debits and, once the debit is applied, itself hands the credit to the target loop. Each
+ * leg is applied exactly once by the loop that owns it, independent of the calling thread. Between the two legs the
+ * amount is in flight and visible on neither account; a snapshot therefore waits for the transfers in flight to land
+ * before it parks the loops, and new ones wait for it.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "partitioned")
+public class PartitionedAccountsRepository implements AccountsRepository {
+
+  private final Partition[] partitions;
+
+  private final PreImages<String, Account> preImages = new PreImages<>();
+
+  /**
+   * Held shared by every transfer across partitions from before its debit until its credit or refund, which may be
+   * on another thread, and exclusively while a snapshot is opened.
+   */
+  private final StampedLock inFlight = new StampedLock();
+
+  private TransferMetrics metrics = TransferMetrics.NONE;
+
+  private BalanceAggregates aggregates = BalanceAggregates.NONE;
+
+  @Autowired
+  public PartitionedAccountsRepository(@Value("${accounts.partitioned.partitions:0}") int partitions) {
+    if (partitions < 0)
+      throw new IllegalArgumentException("Partitions must not be negative but was " + partitions);
+    int count = partitions == 0 ? Runtime.getRuntime().availableProcessors() : partitions;
+    this.partitions = new Partition[count];
+    for (int i = 0; i < count; i++) {
+      this.partitions[i] = new Partition(i);
+    }
+  }
+
+  @Autowired
+  public void setTransferMetrics(TransferMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Autowired
+  public void setBalanceAggregates(BalanceAggregates aggregates) {
+    this.aggregates = aggregates;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    Partition partition = partitionOf(account.getAccountId());
+    call(partition, () -> {
+      if (partition.accounts.containsKey(account.getAccountId())) {
+        throw new DuplicateAccountIdException(
+                "Account id " + account.getAccountId() + " already exists!");
+      }
+      aggregates.created(account.getBalance());
+      return put(partition, account);
+    });
+  }
+
+  /**
+   * Hands each partition its share of the accounts as one task, so the partitions create them in parallel.
+   */
+  @Override
+  public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+    List<List<Integer>> indexesByPartition = new ArrayList<>(partitions.length);
+    for (int i = 0; i < partitions.length; i++) {
+      indexesByPartition.add(new ArrayList<>());
+    }
+    for (int i = 0; i < accounts.size(); i++) {
+      indexesByPartition.get(partitionOf(accounts.get(i).getAccountId()).index).add(i);
+    }
+
+    CreateAccountStatus[] statuses = new CreateAccountStatus[accounts.size()];
+    List<CompletableFuture<Void>> created = new ArrayList<>(partitions.length);
+    for (Partition partition : partitions) {
+      List<Integer> indexes = indexesByPartition.get(partition.index);
+      if (indexes.isEmpty())
+        continue;
+      created.add(CompletableFuture.runAsync(() -> {
+        for (int index : indexes) {
+          Account account = accounts.get(index);
+          if (partition.accounts.containsKey(account.getAccountId())) {
+            statuses[index] = CreateAccountStatus.DUPLICATE;
+          } else {
+            put(partition, account);
+            aggregates.created(account.getBalance());
+            statuses[index] = CreateAccountStatus.CREATED;
+          }
+        }
+      }, partition.loop));
+    }
+    for (CompletableFuture<Void> future : created) {
+      join(future);
+    }
+    return Arrays.asList(statuses);
+  }
+
+  @Override
+  public Account getAccount(String accountId) throws AccountNotFoundException {
+    return get(partitionOf(accountId), accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    List<CompletableFuture<Void>> cleared = new ArrayList<>(partitions.length);
+    for (Partition partition : partitions) {
+      cleared.add(CompletableFuture.runAsync(partition.accounts::clear, partition.loop));
+    }
+    for (CompletableFuture<Void> future : cleared) {
+      join(future);
+    }
+    aggregates.cleared();
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> consumer) {
+    for (Partition partition : partitions) {
+      partition.accounts.values().forEach(consumer);
+    }
+  }
+
+  /**
+   * Lets the transfers across partitions that have debited their source credit their target, then parks every loop
+   * while the snapshot is registered, the same way a batch across partitions does.
+   */
+  @Override
+  public AccountsSnapshot openSnapshot() {
+    PreImages.Snapshot<String, Account> snapshot;
+    long drained = inFlight.writeLock();
+    List<CountDownLatch> parked = new ArrayList<>(partitions.length);
+    try {
+      for (Partition partition : partitions) {
+        parked.add(park(partition));
+      }
+      snapshot = preImages.open();
+    } finally {
+      for (CountDownLatch release : parked) {
+        release.countDown();
+      }
+      inFlight.unlockWrite(drained);
+    }
+    return new AccountsSnapshot() {
+      @Override
+      public Account get(String accountId) {
+        Account live = partitionOf(accountId).accounts.get(accountId);
+        return snapshot.resolve(accountId, live);
+      }
+
+      @Override
+      public void forEach(Consumer<Account> consumer) {
+        for (Partition partition : partitions) {
+          for (Map.Entry<String, Account> entry : partition.accounts.entrySet()) {
+            Account account = snapshot.resolve(entry.getKey(), entry.getValue());
+            if (account != null)
+              consumer.accept(account);
+          }
+        }
+      }
+
+      @Override
+      public void close() {
+        preImages.close(snapshot);
+      }
+    };
+  }
+
+  @Override
+  public Account debitAccount(String accountId, BigDecimal amount) throws InsufficientFundsException, AccountNotFoundException {
+    Partition partition = partitionOf(accountId);
+    return call(partition, () -> update(partition, "debit", debit(get(partition, accountId), amount), amount.negate()));
+  }
+
+  @Override
+  public Account creditAccount(String accountId, BigDecimal amount) throws AccountNotFoundException {
+    Partition partition = partitionOf(accountId);
+    return call(partition, () -> update(partition, "credit", credit(amount, get(partition, accountId)), amount));
+  }
+
+  @Override
+  public TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException {
+    Partition source = partitionOf(fromAccountId);
+    Partition target = partitionOf(toAccountId);
+    if (source == target)
+      return call(source, () -> transferWithin(source, fromAccountId, toAccountId, amount));
+
+    getAccount(fromAccountId);
+    getAccount(toAccountId);
+    CompletableFuture<TransferResult> result = new CompletableFuture<>();
+    long stamp = inFlight.readLock();
+    try {
+      source.loop.execute(() -> {
+        Account updatedFrom;
+        try {
+          updatedFrom = update(source, "transfer debit", debit(get(source, fromAccountId), amount), amount.negate());
+        } catch (RuntimeException e) {
+          inFlight.unlockRead(stamp);
+          result.completeExceptionally(e);
+          return;
+        }
+        target.loop.execute(() -> {
+          Account to = target.accounts.get(toAccountId);
+          if (to != null) {
+            Account updatedTo = update(target, "transfer credit", credit(amount, to), amount);
+            inFlight.unlockRead(stamp);
+            result.complete(new TransferResult(updatedFrom, updatedTo));
+            return;
+          }
+          // the target was cleared after it was checked, the debit goes back to the source
+          source.loop.execute(() -> {
+            Account from = source.accounts.get(fromAccountId);
+            if (from != null)
+              update(source, "refund", credit(amount, from), amount);
+            inFlight.unlockRead(stamp);
+            metrics.refund();
+            result.completeExceptionally(accountNotFound(toAccountId));
+          });
+        });
+      });
+    } catch (RuntimeException e) {
+      // the source loop has been shut down and never saw the transfer
+      inFlight.unlockRead(stamp);
+      throw e;
+    }
+    return join(result);
+  }
+
+  /**
+   * A batch within one partition runs as one task on its loop. A batch spanning partitions parks the loops of all of
+   * them, in ascending partition order so that two such batches cannot wait for each other, and is applied by the
+   * calling thread while they are parked.
+   */
+  @Override
+  public List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic) {
+    int[] involved = new int[transfers.size() * 2];
+    for (int i = 0; i < transfers.size(); i++) {
+      involved[2 * i] = partitionOf(transfers.get(i).getFromAccountId()).index;
+      involved[2 * i + 1] = partitionOf(transfers.get(i).getToAccountId()).index;
+    }
+    involved = StripedLocks.sortedDistinct(involved);
+    if (involved.length == 1)
+      return call(partitions[involved[0]], () -> applyBatch(transfers, atomic));
+
+    List<CountDownLatch> parked = new ArrayList<>(involved.length);
+    try {
+      for (int index : involved) {
+        parked.add(park(partitions[index]));
+      }
+      return applyBatch(transfers, atomic);
+    } finally {
+      for (CountDownLatch release : parked) {
+        release.countDown();
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    for (Partition partition : partitions) {
+      partition.loop.shutdown();
+    }
+    for (Partition partition : partitions) {
+      partition.loop.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private TransferResult transferWithin(Partition partition, String fromAccountId, String toAccountId, BigDecimal amount) {
+    Account from = get(partition, fromAccountId);
+    Account updatedFrom = debit(from, amount);
+    Account to = fromAccountId.equals(toAccountId) ? updatedFrom : get(partition, toAccountId);
+    Account updatedTo = credit(amount, to);
+    put(partition, updatedFrom);
+    put(partition, updatedTo);
+    aggregates.applied("transfer", aggregates.moved(from.getBalance(), updatedFrom.getBalance())
+            .add(aggregates.moved(to.getBalance(), updatedTo.getBalance())), BigDecimal.ZERO);
+    return new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+  }
+
+  private List<TransferResult> applyBatch(List<TransferDto> transfers, boolean atomic) {
+    List<TransferResult> results = new ArrayList<>(transfers.size());
+    Map<String, Account> updated = new HashMap<>();
+    for (TransferDto transfer : transfers) {
+      TransferResult result = applyTransfer(transfer, updated);
+      results.add(result);
+      if (atomic && !result.isApplied())
+        return BatchResults.abort(results, transfers.size());
+    }
+    BigDecimal change = BigDecimal.ZERO;
+    for (Account account : updated.values()) {
+      Partition partition = partitionOf(account.getAccountId());
+      Account current = partition.accounts.get(account.getAccountId());
+      change = change.add(aggregates.moved(current.getBalance(), account.getBalance()));
+      put(partition, account);
+    }
+    aggregates.applied("transfer batch", change, BigDecimal.ZERO);
+    return results;
+  }
+
+  private TransferResult applyTransfer(TransferDto transfer, Map<String, Account> updated) {
+    String fromAccountId = transfer.getFromAccountId();
+    String toAccountId = transfer.getToAccountId();
+    Account from = current(fromAccountId, updated);
+    if (from == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    BigDecimal fromBalance = from.getBalance().subtract(transfer.getAmount());
+    if (!isBalanceGreaterThanZero(fromBalance))
+      return TransferResult.rejected(TransferStatus.INSUFFICIENT_FUNDS);
+    Account updatedFrom = new Account(fromAccountId, fromBalance);
+    Account to = fromAccountId.equals(toAccountId) ? updatedFrom : current(toAccountId, updated);
+    if (to == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    Account updatedTo = credit(transfer.getAmount(), to);
+    updated.put(fromAccountId, updatedFrom);
+    updated.put(toAccountId, updatedTo);
+    return new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+  }
+
+  private Account current(String accountId, Map<String, Account> updated) {
+    Account account = updated.get(accountId);
+    return account != null ? account : partitionOf(accountId).accounts.get(accountId);
+  }
+
+  /**
+   * Blocks the partition's loop until the returned latch is released; returns once the loop is blocked.
+   */
+  private CountDownLatch park(Partition partition) {
+    CountDownLatch parked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    partition.loop.execute(() -> {
+      parked.countDown();
+      awaitUninterruptibly(release);
+    });
+    awaitUninterruptibly(parked);
+    return release;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  private Partition partitionOf(String accountId) {
+    int hash = accountId.hashCode();
+    return partitions[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % partitions.length];
+  }
+
+  private static <T> T call(Partition partition, Supplier<T> task) {
+    return join(CompletableFuture.supplyAsync(task, partition.loop));
+  }
+
+  /**
+   * Waits for the loop's answer and rethrows its exception as is, so callers see the same exceptions as from the
+   * other repositories.
+   */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  private Account get(Partition partition, String accountId) {
+    Account account = partition.accounts.get(accountId);
+    if (account == null)
+      throw accountNotFound(accountId);
+    return account;
+  }
+
+  /**
+   * Puts a changed balance that was meant to move by {@code expectedChange}; runs on the partition's loop.
+   */
+  private Account update(Partition partition, String operation, Account account, BigDecimal expectedChange) {
+    Account current = partition.accounts.get(account.getAccountId());
+    put(partition, account);
+    aggregates.applied(operation, aggregates.moved(current.getBalance(), account.getBalance()), expectedChange);
+    return account;
+  }
+
+  /**
+   * Must run on the partition's loop or while it is parked; keeps the old version for the open snapshots.
+   */
+  private Account put(Partition partition, Account account) {
+    if (preImages.anyOpen())
+      preImages.beforeWrite(account.getAccountId(), partition.accounts.get(account.getAccountId()));
+    partition.accounts.put(account.getAccountId(), account);
+    return account;
+  }
+
+  private AccountNotFoundException accountNotFound(String accountId) {
+    return new AccountNotFoundException(accountId, "AccountId " + accountId + " does not exist or is invalid");
+  }
+
+  private Account debit(Account acc, BigDecimal amount) {
+    BigDecimal balance = acc.getBalance().subtract(amount);
+    if (isBalanceGreaterThanZero(balance)) {
+      return new Account(acc.getAccountId(), balance);
+    }
+    throw new InsufficientFundsException("Overdrafts are not supported");
+  }
+
+  private boolean isBalanceGreaterThanZero(BigDecimal balance) {
+    return balance.compareTo(BigDecimal.ZERO) > 0;
+  }
+
+  private Account credit(BigDecimal amount, Account acc) {
+    return new Account(acc.getAccountId(), acc.getBalance().add(amount));
+  }
+
+  private static final class Partition {
+
+    private final int index;
+
+    /**
+     * Written only by {@link #loop}, read by any thread.
+     */
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final ExecutorService loop;
+
+    Partition(int index) {
+      this.index = index;
+      this.loop = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "accounts-partition-" + index);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the values open snapshots still need after writers have moved on. A snapshot is opened while every writer is
+ * held off; from then on each writer hands the value it is about to overwrite to {@link #beforeWrite} before
+ * publishing the new one. Only the first value per key is kept, which is the value the key had when the snapshot was
+ * opened, so a snapshot holds a copy of the entries changed while it is open and nothing else.
+ */
+final class PreImages<K, V> {
+
+  private static final Object ABSENT = new Object();
+
+  private volatile List<Snapshot<K, V>> open = Collections.emptyList();
+
+  /**
+   * Must be called while no writer is between its {@link #beforeWrite} and publishing its value.
+   */
+  synchronized Snapshot<K, V> open() {
+    Snapshot<K, V> snapshot = new Snapshot<>();
+    List<Snapshot<K, V>> opened = new ArrayList<>(open);
+    opened.add(snapshot);
+    open = opened;
+    return snapshot;
+  }
+
+  synchronized void close(Snapshot<K, V> snapshot) {
+    List<Snapshot<K, V>> opened = new ArrayList<>(open);
+    opened.remove(snapshot);
+    open = opened.isEmpty() ? Collections.<Snapshot<K, V>>emptyList() : opened;
+  }
+
+  boolean anyOpen() {
+    return !open.isEmpty();
+  }
+
+  /**
+   * Called by the writer of {@code key}, with {@code current} {@code null} when the key is being created.
+   */
+  void beforeWrite(K key, V current) {
+    List<Snapshot<K, V>> snapshots = open;
+    for (int i = 0; i < snapshots.size(); i++) {
+      snapshots.get(i).values.putIfAbsent(key, current == null ? ABSENT : current);
+    }
+  }
+
+  static final class Snapshot<K, V> {
+
+    private final ConcurrentHashMap<K, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the value {@code key} had when the snapshot was opened, or {@code null} if it did not exist then.
+     * {@code live} must have been read before calling this: a writer keeps the old value before it publishes a new
+     * one, so either {@code live} is still the value of the snapshot or the old value is found here.
+     */
+    @SuppressWarnings("unchecked")
+    V resolve(K key, V live) {
+      Object kept = values.get(key);
+      if (kept == null)
+        return live;
+      return kept == ABSENT ? null : (V) kept;
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.exception.TieredStoreException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable file of account balances sorted by account id, written once by {@link Writer} and deleted when it is
+ * merged into a larger run. The file holds only data blocks of about {@link #BLOCK_SIZE} bytes, each a sequence of
+ * <pre>
+ *   int   id length
+ *   bytes id, UTF-8
+ *   int   balance scale
+ *   int   unscaled length
+ *   bytes unscaled balance, two's complement
+ * </pre>
+ * The first id of every block and the {@link BloomFilter} of all ids stay on the heap, so a lookup reads at most one
+ * block. Nothing is forced to disk: the runs only live as long as the process.
+ * <p>
+ * Readers {@link #retain()} the run around each read; once it has been {@link #retire() retired} the file is closed
+ * and deleted after the last reader has released it.
+ */
+final class SortedRun {
+
+  static final int BLOCK_SIZE = 4096;
+
+  private final long id;
+
+  private final Path file;
+
+  private final FileChannel channel;
+
+  private final String[] firstKeys;
+
+  private final long[] blockStarts;
+
+  private final long entries;
+
+  private final BloomFilter bloom;
+
+  private final AtomicInteger references = new AtomicInteger(1);
+
+  private SortedRun(long id, Path file, FileChannel channel, String[] firstKeys, long[] blockStarts, long entries,
+                    BloomFilter bloom) {
+    this.id = id;
+    this.file = file;
+    this.channel = channel;
+    this.firstKeys = firstKeys;
+    this.blockStarts = blockStarts;
+    this.entries = entries;
+    this.bloom = bloom;
+  }
+
+  long getId() {
+    return id;
+  }
+
+  long entries() {
+    return entries;
+  }
+
+  long sizeInBytes() {
+    return blockStarts[blockStarts.length - 1];
+  }
+
+  boolean mightContain(String accountId) {
+    return bloom.mightContain(accountId);
+  }
+
+  /**
+   * Returns the balance stored for the account, {@code null} if the run has none. The caller has retained the run.
+   */
+  BigDecimal get(String accountId, BlockCache cache) {
+    int block = Arrays.binarySearch(firstKeys, accountId);
+    if (block < 0)
+      block = -block - 2;
+    if (block < 0)
+      return null;
+    byte[] key = accountId.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.wrap(cache.get(this, block));
+    while (buffer.hasRemaining()) {
+      int keyLength = buffer.getInt();
+      int at = buffer.position();
+      buffer.position(at + keyLength);
+      if (keyLength == key.length && regionEquals(buffer.array(), at, key))
+        return readBalance(buffer);
+      skipBalance(buffer);
+    }
+    return null;
+  }
+
+  /**
+   * Returns {@code false} once the run has been retired and closed; the caller then has to look at the current runs.
+   */
+  boolean retain() {
+    for (;;) {
+      int current = references.get();
+      if (current == 0)
+        return false;
+      if (references.compareAndSet(current, current + 1))
+        return true;
+    }
+  }
+
+  void release() {
+    if (references.decrementAndGet() == 0)
+      delete();
+  }
+
+  /**
+   * Drops the run's own reference, so it is deleted as soon as no reader holds it any more.
+   */
+  void retire() {
+    release();
+  }
+
+  byte[] readBlock(int block) {
+    ByteBuffer buffer = ByteBuffer.allocate((int) (blockStarts[block + 1] - blockStarts[block]));
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, blockStarts[block] + buffer.position()) < 0)
+          throw new IOException("Unexpected end of file");
+      }
+    } catch (IOException e) {
+      throw new TieredStoreException("Could not read block " + block + " of sorted run " + file, e);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Visits the accounts of all runs in id order, each once with the balance of the newest run holding it. The caller
+   * has retained every run. Blocks are read straight from the files, so a full scan does not evict the cached ones.
+   */
+  static void merge(List<SortedRun> newestFirst, BiConsumer<String, BigDecimal> consumer) {
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, newestFirst.size()),
+            Comparator.comparing((Cursor cursor) -> cursor.key).thenComparingInt(cursor -> cursor.age));
+    for (int age = 0; age < newestFirst.size(); age++) {
+      Cursor cursor = newestFirst.get(age).new Cursor(age);
+      if (cursor.next())
+        cursors.add(cursor);
+    }
+    while (!cursors.isEmpty()) {
+      Cursor newest = cursors.poll();
+      consumer.accept(newest.key, newest.balance);
+      while (!cursors.isEmpty() && cursors.peek().key.equals(newest.key)) {
+        Cursor older = cursors.poll();
+        if (older.next())
+          cursors.add(older);
+      }
+      if (newest.next())
+        cursors.add(newest);
+    }
+  }
+
+  private void delete() {
+    try {
+      channel.close();
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw new TieredStoreException("Could not delete sorted run " + file, e);
+    }
+  }
+
+  private static boolean regionEquals(byte[] bytes, int offset, byte[] key) {
+    for (int i = 0; i < key.length; i++) {
+      if (bytes[offset + i] != key[i])
+        return false;
+    }
+    return true;
+  }
+
+  private static BigDecimal readBalance(ByteBuffer buffer) {
+    int scale = buffer.getInt();
+    byte[] unscaled = new byte[buffer.getInt()];
+    buffer.get(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  private static void skipBalance(ByteBuffer buffer) {
+    buffer.getInt();
+    int length = buffer.getInt();
+    buffer.position(buffer.position() + length);
+  }
+
+  private final class Cursor {
+
+    private final int age;
+
+    private int block = -1;
+
+    private ByteBuffer buffer;
+
+    private String key;
+
+    private BigDecimal balance;
+
+    private Cursor(int age) {
+      this.age = age;
+    }
+
+    boolean next() {
+      while (buffer == null || !buffer.hasRemaining()) {
+        if (++block >= firstKeys.length)
+          return false;
+        buffer = ByteBuffer.wrap(readBlock(block));
+      }
+      int keyLength = buffer.getInt();
+      key = new String(buffer.array(), buffer.position(), keyLength, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + keyLength);
+      balance = readBalance(buffer);
+      return true;
+    }
+  }
+
+  /**
+   * Writes a run from accounts added in ascending id order. Not thread-safe.
+   */
+  static final class Writer implements AutoCloseable {
+
+    private final long id;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final BloomFilter bloom;
+
+    private final List<String> firstKeys = new ArrayList<>();
+
+    private long[] blockStarts = new long[16];
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(2 * BLOCK_SIZE);
+
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream(64);
+
+    private final DataOutputStream entryOut = new DataOutputStream(entry);
+
+    private String lastKey;
+
+    private long entries;
+
+    private long end;
+
+    private boolean finished;
+
+    /**
+     * {@code expectedEntries} sizes the bloom filter; adding more only raises its false positive rate.
+     */
+    Writer(long id, Path file, long expectedEntries, int bloomBitsPerKey) {
+      this.id = id;
+      this.file = file;
+      this.bloom = new BloomFilter(expectedEntries, bloomBitsPerKey);
+      try {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        throw new TieredStoreException("Could not create sorted run " + file, e);
+      }
+    }
+
+    void add(String accountId, BigDecimal balance) {
+      if (lastKey != null && accountId.compareTo(lastKey) <= 0)
+        throw new IllegalArgumentException("Account " + accountId + " is not after " + lastKey);
+      entry.reset();
+      try {
+        byte[] key = accountId.getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = balance.unscaledValue().toByteArray();
+        entryOut.writeInt(key.length);
+        entryOut.write(key);
+        entryOut.writeInt(balance.scale());
+        entryOut.writeInt(unscaled.length);
+        entryOut.write(unscaled);
+        if (block.size() > 0 && block.size() + entry.size() > BLOCK_SIZE)
+          flushBlock();
+        if (block.size() == 0)
+          firstKeys.add(accountId);
+        entry.writeTo(block);
+      } catch (IOException e) {
+        throw new TieredStoreException("Could not write sorted run " + file, e);
+      }
+      bloom.add(accountId);
+      lastKey = accountId;
+      entries++;
+    }
+
+    SortedRun finish() {
+      try {
+        if (block.size() > 0)
+          flushBlock();
+      } catch (IOException e) {
+        throw new TieredStoreException("Could not write sorted run " + file, e);
+      }
+      finished = true;
+      long[] starts = Arrays.copyOf(blockStarts, firstKeys.size() + 1);
+      starts[firstKeys.size()] = end;
+      return new SortedRun(id, file, channel, firstKeys.toArray(new String[0]), starts, entries, bloom);
+    }
+
+    /**
+     * Deletes the file unless the run was finished.
+     */
+    @Override
+    public void close() {
+      if (finished)
+        return;
+      try {
+        channel.close();
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        throw new TieredStoreException("Could not delete sorted run " + file, e);
+      }
+    }
+
+    private void flushBlock() throws IOException {
+      int index = firstKeys.size() - 1;
+      if (index >= blockStarts.length)
+        blockStarts = Arrays.copyOf(blockStarts, 2 * blockStarts.length);
+      blockStarts[index] = end;
+      ByteBuffer buffer = ByteBuffer.wrap(block.toByteArray());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, end + buffer.position());
+      }
+      end += buffer.capacity();
+      block.reset();
+    }
+  }
+}
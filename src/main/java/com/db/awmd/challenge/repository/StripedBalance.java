@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.repository;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The balance of a hot account split over several cells, in the manner of a
+ * {@link java.util.concurrent.atomic.LongAdder}. Each cell is guarded by a lock stripe of its own, so credits landing
+ * in different cells do not wait for each other. A debit holds the stripes of all cells, so it sees the whole balance
+ * and can borrow from every cell. The cells are readable without a lock; their sum is then only as current as a
+ * {@code LongAdder}'s.
+ */
+final class StripedBalance {
+
+  private final AtomicReferenceArray<BigDecimal> cells;
+
+  private final int[] stripes;
+
+  private final int[] sortedStripes;
+
+  /**
+   * The magnitude bucket the account is counted in by the aggregates; changed under this object's monitor.
+   */
+  volatile int magnitude;
+
+  StripedBalance(int[] stripes, BigDecimal balance) {
+    this.stripes = stripes;
+    this.sortedStripes = StripedLocks.sortedDistinct(stripes);
+    this.cells = new AtomicReferenceArray<>(stripes.length);
+    cells.set(0, balance);
+    for (int i = 1; i < stripes.length; i++) {
+      cells.set(i, BigDecimal.ZERO);
+    }
+  }
+
+  int cells() {
+    return stripes.length;
+  }
+
+  /**
+   * The cell the current thread credits, so that threads crediting concurrently mostly use different cells.
+   */
+  int cellForCurrentThread() {
+    long id = Thread.currentThread().getId();
+    return ((int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16) % stripes.length;
+  }
+
+  int stripeOf(int cell) {
+    return stripes[cell];
+  }
+
+  int[] sortedStripes() {
+    return sortedStripes;
+  }
+
+  BigDecimal cell(int cell) {
+    return cells.get(cell);
+  }
+
+  BigDecimal sum() {
+    BigDecimal sum = BigDecimal.ZERO;
+    for (int i = 0; i < stripes.length; i++) {
+      sum = sum.add(cells.get(i));
+    }
+    return sum;
+  }
+
+  /**
+   * The caller holds the cell's stripe.
+   */
+  void add(int cell, BigDecimal amount) {
+    cells.set(cell, cells.get(cell).add(amount));
+  }
+
+  /**
+   * Takes {@code amount} from the cells, emptying one after the other. The caller holds every stripe and has checked
+   * that the sum covers the amount.
+   */
+  void take(BigDecimal amount) {
+    BigDecimal remaining = amount;
+    for (int i = 0; i < stripes.length && remaining.signum() > 0; i++) {
+      BigDecimal cell = cells.get(i);
+      if (cell.signum() <= 0)
+        continue;
+      BigDecimal taken = cell.min(remaining);
+      cells.set(i, cell.subtract(taken));
+      remaining = remaining.subtract(taken);
+    }
+    if (remaining.signum() > 0)
+      throw new IllegalStateException("Cells do not cover " + amount);
+  }
+
+  /**
+   * Puts the whole balance into the first cell. The caller holds every stripe. The other cells are emptied first, so a
+   * {@link #sum()} without the locks sees either the new balance or less than the old one, never more than both.
+   */
+  void set(BigDecimal balance) {
+    Objects.requireNonNull(balance);
+    for (int i = 1; i < stripes.length; i++) {
+      cells.set(i, BigDecimal.ZERO);
+    }
+    cells.set(0, balance);
+  }
+}
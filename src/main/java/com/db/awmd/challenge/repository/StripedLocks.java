@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.repository;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+class StripedLocks {
+
+  private final ReentrantLock[] locks;
+
+  private final int mask;
+
+  StripedLocks(int stripes) {
+    if (Integer.bitCount(stripes) != 1)
+      throw new IllegalArgumentException("Number of stripes must be a power of two but was " + stripes);
+    this.locks = new ReentrantLock[stripes];
+    for (int i = 0; i < stripes; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    this.mask = stripes - 1;
+  }
+
+  int stripeOf(Object key) {
+    return stripeOf(key.hashCode());
+  }
+
+  int stripeOf(int hash) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  /**
+   * Returns how long the caller had to wait for the stripe, 0 when it was free.
+   */
+  long lock(int stripe) {
+    ReentrantLock lock = locks[stripe];
+    if (lock.tryLock())
+      return 0;
+    long start = System.nanoTime();
+    lock.lock();
+    return Math.max(1, System.nanoTime() - start);
+  }
+
+  void unlock(int stripe) {
+    locks[stripe].unlock();
+  }
+
+  /**
+   * Always takes the lower stripe first so that two transfers in opposite directions cannot deadlock.
+   */
+  long lockBoth(int first, int second) {
+    if (first == second)
+      return lock(first);
+    return lock(Math.min(first, second)) + lock(Math.max(first, second));
+  }
+
+  void unlockBoth(int first, int second) {
+    unlock(first);
+    if (first != second)
+      unlock(second);
+  }
+
+  /**
+   * Returns a sorted copy of the given stripes without duplicates, ready for {@link #lockAll(int[])}.
+   */
+  static int[] sortedDistinct(int[] stripes) {
+    if (stripes.length == 0)
+      return stripes;
+    int[] sorted = stripes.clone();
+    Arrays.sort(sorted);
+    int distinct = 1;
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i] != sorted[distinct - 1])
+        sorted[distinct++] = sorted[i];
+    }
+    return Arrays.copyOf(sorted, distinct);
+  }
+
+  /**
+   * Takes every stripe once, in ascending order, which is the same order {@link #lockBoth(int, int)} uses.
+   */
+  long lockAll(int[] sortedDistinctStripes) {
+    long waited = 0;
+    for (int stripe : sortedDistinctStripes) {
+      waited += lock(stripe);
+    }
+    return waited;
+  }
+
+  void unlockAll(int[] sortedDistinctStripes) {
+    for (int i = sortedDistinctStripes.length - 1; i >= 0; i--) {
+      unlock(sortedDistinctStripes[i]);
+    }
+  }
+
+  /**
+   * Takes every stripe in ascending order, which blocks every writer until {@link #unlockEvery()}.
+   */
+  void lockEvery() {
+    for (int stripe = 0; stripe < locks.length; stripe++) {
+      locks[stripe].lock();
+    }
+  }
+
+  void unlockEvery() {
+    for (int stripe = locks.length - 1; stripe >= 0; stripe--) {
+      locks[stripe].unlock();
+    }
+  }
+}
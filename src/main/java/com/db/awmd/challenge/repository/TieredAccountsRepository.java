@@ -0,0 +1,707 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.TieredStoreException;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the recently used accounts on the heap and the rest in {@link SortedRun sorted runs} on disk, so the heap
+ * holds about {@code maxHotAccounts} accounts however many there are. Every read or change of a cold account first
+ * promotes it to the hot tier under its lock stripe; a background pass demotes the least recently used accounts once
+ * there are more than {@code maxHotAccounts}, by writing them to a new run and then dropping those not touched since.
+ * Runs are never changed: the newest run holding an account wins, and once there are more than {@code maxRuns} they
+ * are merged into one. Each run's bloom filter is kept on the heap, so looking up an unknown account id reads no disk.
+ * <p>
+ * The disk only extends the heap: the directory is emptied on startup, and the journal and replication work with the
+ * {@code in-memory} repository only.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "tiered")
+public class TieredAccountsRepository implements AccountsRepository, PublicMetrics {
+
+  private static final int LOCK_STRIPES = 1024;
+
+  private static final String RUN_PREFIX = "run-";
+
+  private static final String RUN_SUFFIX = ".sst";
+
+  private final Path directory;
+
+  private final int maxHotAccounts;
+
+  private final int bloomBitsPerKey;
+
+  private final int maxRuns;
+
+  private final Map<String, Hot> hot = new ConcurrentHashMap<>();
+
+  private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+  private final PreImages<String, Account> preImages = new PreImages<>();
+
+  private final BlockCache cache;
+
+  /**
+   * Newest first. Replaced, never changed, and only under this object's monitor.
+   */
+  private volatile List<SortedRun> runs = Collections.emptyList();
+
+  private volatile long epoch;
+
+  private long nextRunId;
+
+  private final LongAdder promotions = new LongAdder();
+
+  private final LongAdder demotions = new LongAdder();
+
+  private final LongAdder bloomRejections = new LongAdder();
+
+  private final ScheduledExecutorService demoter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "account-demoter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private TransferMetrics metrics = TransferMetrics.NONE;
+
+  private BalanceAggregates aggregates = BalanceAggregates.NONE;
+
+  /**
+   * A {@code demoteIntervalMillis} of 0 leaves demotion to {@link #demote()}.
+   */
+  @Autowired
+  public TieredAccountsRepository(@Value("${accounts.tiered.directory:tiered}") String directory,
+                                  @Value("${accounts.tiered.max-hot-accounts:1000000}") int maxHotAccounts,
+                                  @Value("${accounts.tiered.block-cache-bytes:67108864}") long blockCacheBytes,
+                                  @Value("${accounts.tiered.bloom-bits-per-key:10}") int bloomBitsPerKey,
+                                  @Value("${accounts.tiered.max-runs:8}") int maxRuns,
+                                  @Value("${accounts.tiered.demote-interval-millis:1000}") long demoteIntervalMillis) {
+    if (maxHotAccounts < 1 || maxRuns < 1 || demoteIntervalMillis < 0)
+      throw new IllegalArgumentException("Hot accounts and runs must be positive and the interval not negative");
+    this.directory = Paths.get(directory);
+    this.maxHotAccounts = maxHotAccounts;
+    this.bloomBitsPerKey = bloomBitsPerKey;
+    this.maxRuns = maxRuns;
+    this.cache = new BlockCache(blockCacheBytes);
+    deleteRuns();
+    if (demoteIntervalMillis > 0) {
+      demoter.scheduleWithFixedDelay(() -> {
+        try {
+          demote();
+        } catch (RuntimeException e) {
+          log.error("Demoting accounts failed, retrying in {} ms", demoteIntervalMillis, e);
+        }
+      }, demoteIntervalMillis, demoteIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Autowired
+  public void setTransferMetrics(TransferMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Autowired
+  public void setBalanceAggregates(BalanceAggregates aggregates) {
+    this.aggregates = aggregates;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    int stripe = locks.stripeOf(account.getAccountId());
+    locks.lock(stripe);
+    try {
+      if (exists(account.getAccountId())) {
+        throw new DuplicateAccountIdException(
+                "Account id " + account.getAccountId() + " already exists!");
+      }
+      insert(account);
+    } finally {
+      locks.unlock(stripe);
+    }
+  }
+
+  @Override
+  public List<CreateAccountStatus> createAccounts(List<Account> newAccounts) {
+    List<CreateAccountStatus> statuses = new ArrayList<>(newAccounts.size());
+    for (Account account : newAccounts) {
+      int stripe = locks.stripeOf(account.getAccountId());
+      locks.lock(stripe);
+      try {
+        if (exists(account.getAccountId())) {
+          statuses.add(CreateAccountStatus.DUPLICATE);
+          continue;
+        }
+        insert(account);
+        statuses.add(CreateAccountStatus.CREATED);
+      } finally {
+        locks.unlock(stripe);
+      }
+    }
+    return statuses;
+  }
+
+  @Override
+  public Account getAccount(String accountId) throws AccountNotFoundException {
+    Hot entry = hot.get(accountId);
+    if (entry == null) {
+      int stripe = locks.stripeOf(accountId);
+      locks.lock(stripe);
+      try {
+        entry = promote(accountId);
+      } finally {
+        locks.unlock(stripe);
+      }
+      if (entry == null)
+        throw accountNotFound(accountId);
+    }
+    touch(entry);
+    return entry.account;
+  }
+
+  /**
+   * Holds off demotion and compaction, which would otherwise bring back runs written before the clear, and every
+   * writer, which could otherwise promote an account from a run that is being dropped.
+   */
+  @Override
+  public synchronized void clearAccounts() {
+    locks.lockEvery();
+    try {
+      hot.clear();
+      List<SortedRun> cleared = runs;
+      runs = Collections.emptyList();
+      cleared.forEach(SortedRun::retire);
+      cache.clear();
+      aggregates.cleared();
+    } finally {
+      locks.unlockEvery();
+    }
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> consumer) {
+    visitTiers((accountId, entry) -> consumer.accept(entry.account),
+            (accountId, balance) -> consumer.accept(live(accountId, balance)));
+  }
+
+  /**
+   * Demotion moves an account to a run published before the account leaves the hot tier, and promotion leaves the
+   * cold copy in place, so walking the hot tier and then the runs published by then meets every account at least once;
+   * the ids met in the hot tier are skipped in the runs.
+   */
+  @Override
+  public AccountsSnapshot openSnapshot() {
+    PreImages.Snapshot<String, Account> snapshot;
+    locks.lockEvery();
+    try {
+      snapshot = preImages.open();
+    } finally {
+      locks.unlockEvery();
+    }
+    return new AccountsSnapshot() {
+      @Override
+      public Account get(String accountId) {
+        Hot entry = hot.get(accountId);
+        Account live = entry != null ? entry.account : cold(accountId);
+        return snapshot.resolve(accountId, live);
+      }
+
+      @Override
+      public void forEach(Consumer<Account> consumer) {
+        visitTiers((accountId, entry) -> accept(snapshot.resolve(accountId, entry.account), consumer),
+                (accountId, balance) -> accept(snapshot.resolve(accountId, live(accountId, balance)), consumer));
+      }
+
+      @Override
+      public void close() {
+        preImages.close(snapshot);
+      }
+    };
+  }
+
+  @Override
+  public Account debitAccount(String accountId, BigDecimal amount) throws InsufficientFundsException, AccountNotFoundException {
+    return performThreadSafeUpdate(accountId, acc -> debit(acc, amount), amount.negate());
+  }
+
+  @Override
+  public Account creditAccount(String accountId, BigDecimal amount) throws AccountNotFoundException {
+    return performThreadSafeUpdate(accountId, acc -> credit(amount, acc), amount);
+  }
+
+  @Override
+  public TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws InsufficientFundsException, AccountNotFoundException {
+    int fromStripe = locks.stripeOf(fromAccountId);
+    int toStripe = locks.stripeOf(toAccountId);
+    TransferResult result;
+    long waited = locks.lockBoth(fromStripe, toStripe);
+    try {
+      Hot fromEntry = promoted(fromAccountId);
+      Account from = fromEntry.account;
+      Account updatedFrom = debit(from, amount);
+      Hot toEntry = fromAccountId.equals(toAccountId) ? fromEntry : promoted(toAccountId);
+      Account to = fromAccountId.equals(toAccountId) ? updatedFrom : toEntry.account;
+      Account updatedTo = credit(amount, to);
+      publish(fromEntry, updatedFrom);
+      publish(toEntry, updatedTo);
+      aggregates.applied("transfer", aggregates.moved(from.getBalance(), updatedFrom.getBalance())
+              .add(aggregates.moved(to.getBalance(), updatedTo.getBalance())), BigDecimal.ZERO);
+      result = new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+    } finally {
+      locks.unlockBoth(fromStripe, toStripe);
+    }
+    recordContention(fromAccountId, toAccountId, waited);
+    return result;
+  }
+
+  @Override
+  public List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic) {
+    int[] stripes = new int[transfers.size() * 2];
+    for (int i = 0; i < transfers.size(); i++) {
+      stripes[2 * i] = locks.stripeOf(transfers.get(i).getFromAccountId());
+      stripes[2 * i + 1] = locks.stripeOf(transfers.get(i).getToAccountId());
+    }
+    stripes = StripedLocks.sortedDistinct(stripes);
+
+    List<TransferResult> results = new ArrayList<>(transfers.size());
+    locks.lockAll(stripes);
+    try {
+      Map<String, Account> updated = new HashMap<>();
+      for (TransferDto transfer : transfers) {
+        TransferResult result = applyTransfer(transfer, updated);
+        results.add(result);
+        if (atomic && !result.isApplied())
+          return BatchResults.abort(results, transfers.size());
+      }
+      BigDecimal change = BigDecimal.ZERO;
+      for (Account account : updated.values()) {
+        Hot entry = hot.get(account.getAccountId());
+        change = change.add(aggregates.moved(entry.account.getBalance(), account.getBalance()));
+        publish(entry, account);
+      }
+      aggregates.applied("transfer batch", change, BigDecimal.ZERO);
+    } finally {
+      locks.unlockAll(stripes);
+    }
+    return results;
+  }
+
+  /**
+   * Moves the least recently used accounts to a new run once there are more than {@code maxHotAccounts} hot ones,
+   * leaving a tenth of the limit free, and merges the runs once there are too many. Returns the number of accounts
+   * demoted. Every call also starts a new recency epoch, so the background pass defines how finely recency is told
+   * apart.
+   */
+  public synchronized int demote() {
+    long cutoff = epoch++;
+    int excess = hot.size() - (maxHotAccounts - maxHotAccounts / 10);
+    if (hot.size() <= maxHotAccounts || excess <= 0)
+      return 0;
+
+    // sorts on a copy of the recency, which readers keep raising while the sort runs
+    List<Candidate> candidates = new ArrayList<>(hot.size());
+    hot.forEach((accountId, entry) -> candidates.add(new Candidate(accountId, entry)));
+    candidates.sort(Comparator.comparingLong(candidate -> candidate.touched));
+    List<Candidate> coldest = new ArrayList<>(candidates.subList(0, Math.min(excess, candidates.size())));
+    coldest.sort(Comparator.comparing(candidate -> candidate.accountId));
+
+    Account[] written = new Account[coldest.size()];
+    SortedRun run;
+    try (SortedRun.Writer writer =
+                 new SortedRun.Writer(nextRunId, runPath(nextRunId), written.length, bloomBitsPerKey)) {
+      for (int i = 0; i < written.length; i++) {
+        String accountId = coldest.get(i).accountId;
+        int stripe = locks.stripeOf(accountId);
+        locks.lock(stripe);
+        try {
+          written[i] = coldest.get(i).entry.account;
+        } finally {
+          locks.unlock(stripe);
+        }
+        writer.add(accountId, written[i].getBalance());
+      }
+      run = writer.finish();
+    }
+    nextRunId++;
+    List<SortedRun> published = new ArrayList<>(runs.size() + 1);
+    published.add(run);
+    published.addAll(runs);
+    runs = Collections.unmodifiableList(published);
+
+    int demoted = 0;
+    for (int i = 0; i < written.length; i++) {
+      String accountId = coldest.get(i).accountId;
+      Hot entry = coldest.get(i).entry;
+      int stripe = locks.stripeOf(accountId);
+      locks.lock(stripe);
+      try {
+        if (entry.account == written[i] && entry.touched <= cutoff && hot.remove(accountId, entry))
+          demoted++;
+      } finally {
+        locks.unlock(stripe);
+      }
+    }
+    demotions.add(demoted);
+    if (runs.size() > maxRuns)
+      compact();
+    return demoted;
+  }
+
+  /**
+   * Whether the account is held on the heap right now.
+   */
+  public boolean isHot(String accountId) {
+    return hot.containsKey(accountId);
+  }
+
+  public int hotAccounts() {
+    return hot.size();
+  }
+
+  public int coldRuns() {
+    return runs.size();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<SortedRun> current = runs;
+    long entries = 0;
+    long bytes = 0;
+    for (SortedRun run : current) {
+      entries += run.entries();
+      bytes += run.sizeInBytes();
+    }
+    return Arrays.asList(
+            new Metric<>("accounts.tiered.hot", hot.size()),
+            new Metric<>("accounts.tiered.cold.runs", current.size()),
+            new Metric<>("accounts.tiered.cold.entries", entries),
+            new Metric<>("accounts.tiered.cold.bytes", bytes),
+            new Metric<>("accounts.tiered.promotions", promotions.sum()),
+            new Metric<>("accounts.tiered.demotions", demotions.sum()),
+            new Metric<>("accounts.tiered.cache.hits", cache.hits()),
+            new Metric<>("accounts.tiered.cache.misses", cache.misses()),
+            new Metric<>("accounts.tiered.bloom.rejections", bloomRejections.sum()));
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    demoter.shutdownNow();
+    List<SortedRun> closed = runs;
+    runs = Collections.emptyList();
+    closed.forEach(SortedRun::retire);
+  }
+
+  /**
+   * Merges every run into one. Only the demotion pass publishes runs and it holds this object's monitor, so no run
+   * can be published while the merged one is written.
+   */
+  private void compact() {
+    List<SortedRun> merging = runs;
+    long expected = 0;
+    for (SortedRun run : merging) {
+      expected += run.entries();
+    }
+    SortedRun merged;
+    try (SortedRun.Writer writer = new SortedRun.Writer(nextRunId, runPath(nextRunId), expected, bloomBitsPerKey)) {
+      SortedRun.merge(merging, writer::add);
+      merged = writer.finish();
+    }
+    nextRunId++;
+    runs = Collections.singletonList(merged);
+    merging.forEach(SortedRun::retire);
+    log.info("Merged {} sorted runs into one of {} accounts", merging.size(), merged.entries());
+  }
+
+  /**
+   * Visits the hot tier, then every cold account not met there with its newest stored balance.
+   */
+  private void visitTiers(BiConsumer<String, Hot> hotVisitor, BiConsumer<String, BigDecimal> coldVisitor) {
+    Set<String> visited = new HashSet<>();
+    for (Map.Entry<String, Hot> entry : hot.entrySet()) {
+      visited.add(entry.getKey());
+      hotVisitor.accept(entry.getKey(), entry.getValue());
+    }
+    List<SortedRun> retained = retainRuns();
+    try {
+      SortedRun.merge(retained, (accountId, balance) -> {
+        if (!visited.contains(accountId))
+          coldVisitor.accept(accountId, balance);
+      });
+    } finally {
+      retained.forEach(SortedRun::release);
+    }
+  }
+
+  private static void accept(Account account, Consumer<Account> consumer) {
+    if (account != null)
+      consumer.accept(account);
+  }
+
+  private List<SortedRun> retainRuns() {
+    for (;;) {
+      List<SortedRun> current = runs;
+      List<SortedRun> retained = new ArrayList<>(current.size());
+      for (SortedRun run : current) {
+        if (!run.retain())
+          break;
+        retained.add(run);
+      }
+      if (retained.size() == current.size())
+        return retained;
+      retained.forEach(SortedRun::release);
+    }
+  }
+
+  /**
+   * The current account for a balance found in a run: the hot one if the account has been promoted since.
+   */
+  private Account live(String accountId, BigDecimal coldBalance) {
+    Hot entry = hot.get(accountId);
+    return entry != null ? entry.account : new Account(accountId, coldBalance);
+  }
+
+  /**
+   * Returns the account from the runs, {@code null} if none holds it. Runs merged away meanwhile are skipped by
+   * starting over with the current ones.
+   */
+  private Account cold(String accountId) {
+    for (;;) {
+      boolean retired = false;
+      for (SortedRun run : runs) {
+        if (!run.mightContain(accountId)) {
+          bloomRejections.increment();
+          continue;
+        }
+        if (!run.retain()) {
+          retired = true;
+          break;
+        }
+        try {
+          BigDecimal balance = run.get(accountId, cache);
+          if (balance != null)
+            return new Account(accountId, balance);
+        } finally {
+          run.release();
+        }
+      }
+      if (!retired)
+        return null;
+    }
+  }
+
+  /**
+   * Must be called holding the account's stripe. Returns the hot entry, {@code null} if the account does not exist.
+   * The lookup of the runs has to happen under the stripe: a demotion drops an account from the hot tier under its
+   * stripe only after publishing the run, so a promotion cannot bring back an older balance.
+   */
+  private Hot promote(String accountId) {
+    Hot entry = hot.get(accountId);
+    if (entry == null) {
+      Account account = cold(accountId);
+      if (account == null)
+        return null;
+      entry = new Hot(account, epoch);
+      hot.put(accountId, entry);
+      promotions.increment();
+    }
+    return entry;
+  }
+
+  private Hot promoted(String accountId) {
+    Hot entry = promote(accountId);
+    if (entry == null)
+      throw accountNotFound(accountId);
+    touch(entry);
+    return entry;
+  }
+
+  private void touch(Hot entry) {
+    long current = epoch;
+    if (entry.touched != current)
+      entry.touched = current;
+  }
+
+  private boolean exists(String accountId) {
+    return hot.containsKey(accountId) || cold(accountId) != null;
+  }
+
+  private void insert(Account account) {
+    if (preImages.anyOpen())
+      preImages.beforeWrite(account.getAccountId(), null);
+    hot.put(account.getAccountId(), new Hot(account, epoch));
+    aggregates.created(account.getBalance());
+  }
+
+  private TransferResult applyTransfer(TransferDto transfer, Map<String, Account> updated) {
+    String fromAccountId = transfer.getFromAccountId();
+    String toAccountId = transfer.getToAccountId();
+    Account from = updated.containsKey(fromAccountId) ? updated.get(fromAccountId) : liveAccount(fromAccountId);
+    if (from == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    BigDecimal fromBalance = from.getBalance().subtract(transfer.getAmount());
+    if (!isBalanceGreaterThanZero(fromBalance))
+      return TransferResult.rejected(TransferStatus.INSUFFICIENT_FUNDS);
+    Account updatedFrom = new Account(fromAccountId, fromBalance);
+    Account to = fromAccountId.equals(toAccountId) ? updatedFrom
+            : updated.containsKey(toAccountId) ? updated.get(toAccountId) : liveAccount(toAccountId);
+    if (to == null)
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    Account updatedTo = credit(transfer.getAmount(), to);
+    updated.put(fromAccountId, updatedFrom);
+    updated.put(toAccountId, updatedTo);
+    return new TransferResult(fromAccountId.equals(toAccountId) ? updatedTo : updatedFrom, updatedTo);
+  }
+
+  /**
+   * Promotes the account, so that the batch can publish it in the hot tier. The caller holds its stripe.
+   */
+  private Account liveAccount(String accountId) {
+    Hot entry = promote(accountId);
+    if (entry == null)
+      return null;
+    touch(entry);
+    return entry.account;
+  }
+
+  private Account performThreadSafeUpdate(String accountId, UnaryOperator<Account> updateFunction,
+                                          BigDecimal expectedChange) throws AccountNotFoundException {
+    int stripe = locks.stripeOf(accountId);
+    Account account;
+    long waited = locks.lock(stripe);
+    try {
+      Hot entry = promoted(accountId);
+      Account current = entry.account;
+      account = updateFunction.apply(current);
+      publish(entry, account);
+      aggregates.applied(expectedChange.signum() < 0 ? "debit" : "credit",
+              aggregates.moved(current.getBalance(), account.getBalance()), expectedChange);
+    } finally {
+      locks.unlock(stripe);
+    }
+    recordContention(accountId, null, waited);
+    return account;
+  }
+
+  /**
+   * Replaces the account while the caller holds its stripe, keeping the old version for the open snapshots.
+   */
+  private void publish(Hot entry, Account account) {
+    if (preImages.anyOpen())
+      preImages.beforeWrite(account.getAccountId(), entry.account);
+    entry.account = account;
+  }
+
+  private void recordContention(String firstAccountId, String secondAccountId, long waited) {
+    if (waited > 0)
+      metrics.lockContended(firstAccountId, secondAccountId, waited);
+  }
+
+  private Path runPath(long runId) {
+    return directory.resolve(RUN_PREFIX + runId + RUN_SUFFIX);
+  }
+
+  /**
+   * Runs left behind by an earlier process are of no use: their accounts were never persisted anywhere else.
+   */
+  private void deleteRuns() {
+    try {
+      Files.createDirectories(directory);
+      try (DirectoryStream<Path> leftOver = Files.newDirectoryStream(directory, RUN_PREFIX + "*" + RUN_SUFFIX)) {
+        for (Path run : leftOver) {
+          Files.delete(run);
+        }
+      }
+    } catch (IOException e) {
+      throw new TieredStoreException("Could not prepare tiered store directory " + directory, e);
+    }
+  }
+
+  private AccountNotFoundException accountNotFound(String accountId) {
+    return new AccountNotFoundException(accountId, "AccountId " + accountId + " does not exist or is invalid");
+  }
+
+  private Account debit(Account acc, BigDecimal amount) {
+    BigDecimal balance = acc.getBalance().subtract(amount);
+    if (isBalanceGreaterThanZero(balance)) {
+      return new Account(acc.getAccountId(), balance);
+    }
+    throw new InsufficientFundsException("Overdrafts are not supported");
+  }
+
+  private boolean isBalanceGreaterThanZero(BigDecimal balance) {
+    return balance.compareTo(BigDecimal.ZERO) > 0;
+  }
+
+  private Account credit(BigDecimal amount, Account acc) {
+    return new Account(acc.getAccountId(), acc.getBalance().add(amount));
+  }
+
+  private static final class Hot {
+
+    private volatile Account account;
+
+    private volatile long touched;
+
+    private Hot(Account account, long touched) {
+      this.account = account;
+      this.touched = touched;
+    }
+  }
+
+  private static final class Candidate {
+
+    private final String accountId;
+
+    private final Hot entry;
+
+    private final long touched;
+
+    private Candidate(String accountId, Hot entry) {
+      this.accountId = accountId;
+      this.entry = entry;
+      this.touched = entry.touched;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.db.awmd.challenge.service.TransferService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+@Configuration
+@ConditionalOnProperty(name = "transfers.scheduled.enabled", havingValue = "true")
+@EnableConfigurationProperties(ScheduleProperties.class)
+public class ScheduleConfiguration {
+
+  @Bean(destroyMethod = "close")
+  public TransferScheduler transferScheduler(ScheduleProperties properties, TransferService transferService) {
+    TransferScheduler scheduler = new TransferScheduler(transferService, Paths.get(properties.getFile()),
+            properties.getTickMillis(), properties.getWheelSize(), properties.getBatchSize(),
+            properties.getCompactAfterRecords(), System.currentTimeMillis());
+    scheduler.start();
+    return scheduler;
+  }
+}
@@ -0,0 +1,260 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.ScheduleException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of changes to the scheduled transfers. Each record is {@code [int length][int crc32][payload]} with
+ * a payload of the following, where strings are an int length followed by UTF-8:
+ * <pre>
+ *   ADDED     byte 1, id, long next execution, long interval, from id, to id, int amount scale,
+ *             int unscaled length, unscaled amount in two's complement
+ *   ADVANCED  byte 2, id, long next execution
+ *   REMOVED   byte 3, id
+ * </pre>
+ * Appends only reach the file; {@link #force()} makes them durable. {@link #compact} rewrites the file with one
+ * {@code ADDED} record per live schedule and swaps it in atomically. Not thread-safe.
+ */
+@Slf4j
+final class ScheduleLog implements AutoCloseable {
+
+  private static final int HEADER_SIZE = 8;
+
+  private static final byte ADDED = 1;
+  private static final byte ADVANCED = 2;
+  private static final byte REMOVED = 3;
+
+  private final Path file;
+
+  private final CRC32 crc = new CRC32();
+
+  private final ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+
+  private final DataOutputStream payloadOut = new DataOutputStream(payload);
+
+  private FileChannel channel;
+
+  private int records;
+
+  private ScheduleLog(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Replays the file into {@code schedules}, then compacts it. Replay stops at the first torn or corrupt record, which
+   * a crash in the middle of an append leaves behind.
+   */
+  static ScheduleLog open(Path file, Map<String, ScheduledTransfer> schedules) {
+    ScheduleLog scheduleLog = new ScheduleLog(file);
+    try {
+      if (file.getParent() != null)
+        Files.createDirectories(file.getParent());
+      if (Files.exists(file))
+        replay(file, schedules);
+    } catch (IOException e) {
+      throw new ScheduleException("Could not read schedule file " + file, e);
+    }
+    scheduleLog.compact(schedules.values());
+    return scheduleLog;
+  }
+
+  int records() {
+    return records;
+  }
+
+  void added(ScheduledTransfer schedule) {
+    try {
+      payloadOut.writeByte(ADDED);
+      writeString(schedule.getId());
+      payloadOut.writeLong(schedule.getNextExecution());
+      payloadOut.writeLong(schedule.getIntervalMillis());
+      writeString(schedule.getFromAccountId());
+      writeString(schedule.getToAccountId());
+      byte[] unscaled = schedule.getAmount().unscaledValue().toByteArray();
+      payloadOut.writeInt(schedule.getAmount().scale());
+      payloadOut.writeInt(unscaled.length);
+      payloadOut.write(unscaled);
+    } catch (IOException e) {
+      throw new ScheduleException("Could not encode schedule " + schedule.getId(), e);
+    }
+    append();
+  }
+
+  void advanced(String id, long nextExecution) {
+    try {
+      payloadOut.writeByte(ADVANCED);
+      writeString(id);
+      payloadOut.writeLong(nextExecution);
+    } catch (IOException e) {
+      throw new ScheduleException("Could not encode schedule " + id, e);
+    }
+    append();
+  }
+
+  void removed(String id) {
+    try {
+      payloadOut.writeByte(REMOVED);
+      writeString(id);
+    } catch (IOException e) {
+      throw new ScheduleException("Could not encode schedule " + id, e);
+    }
+    append();
+  }
+
+  void force() {
+    try {
+      channel.force(false);
+    } catch (IOException e) {
+      throw new ScheduleException("Could not force schedule file " + file, e);
+    }
+  }
+
+  /**
+   * Replaces the file by one holding only {@code schedules}. The new file is forced before it is moved over the old
+   * one, so a crash leaves either of them complete.
+   */
+  void compact(Collection<ScheduledTransfer> schedules) {
+    Path compacted = file.resolveSibling(file.getFileName() + ".compacting");
+    FileChannel previous = channel;
+    int previousRecords = records;
+    boolean moved = false;
+    try {
+      channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE);
+      records = 0;
+      for (ScheduledTransfer schedule : schedules) {
+        added(schedule);
+      }
+      channel.force(true);
+      Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      moved = true;
+      if (previous != null)
+        previous.close();
+    } catch (IOException e) {
+      throw new ScheduleException("Could not compact schedule file " + file, e);
+    } finally {
+      if (!moved) {
+        closeQuietly(channel);
+        channel = previous;
+        records = previousRecords;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new ScheduleException("Could not close schedule file " + file, e);
+    }
+  }
+
+  private void append() {
+    byte[] bytes = payload.toByteArray();
+    payload.reset();
+    crc.reset();
+    crc.update(bytes, 0, bytes.length);
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bytes.length);
+    buffer.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new ScheduleException("Could not append to schedule file " + file, e);
+    }
+    records++;
+  }
+
+  private static void replay(Path file, Map<String, ScheduledTransfer> schedules) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length < 1 || length > buffer.remaining()) {
+        buffer.position(start);
+        break;
+      }
+      crc.reset();
+      crc.update(buffer.array(), buffer.position(), length);
+      if ((int) crc.getValue() != checksum) {
+        buffer.position(start);
+        break;
+      }
+      ByteBuffer record = ByteBuffer.wrap(buffer.array(), buffer.position(), length);
+      buffer.position(buffer.position() + length);
+      apply(record, schedules);
+    }
+    if (buffer.hasRemaining())
+      log.warn("Ignoring {} bytes at the end of schedule file {} that do not form a complete record",
+              buffer.remaining(), file);
+  }
+
+  private static void apply(ByteBuffer record, Map<String, ScheduledTransfer> schedules) {
+    byte type = record.get();
+    String id = readString(record);
+    if (type == ADDED) {
+      long next = record.getLong();
+      long interval = record.getLong();
+      String fromAccountId = readString(record);
+      String toAccountId = readString(record);
+      int scale = record.getInt();
+      byte[] unscaled = new byte[record.getInt()];
+      record.get(unscaled);
+      schedules.put(id, new ScheduledTransfer(id, fromAccountId, toAccountId,
+              new BigDecimal(new BigInteger(unscaled), scale), next, interval));
+    } else if (type == ADVANCED) {
+      long next = record.getLong();
+      ScheduledTransfer schedule = schedules.get(id);
+      if (schedule != null)
+        schedules.put(id, new ScheduledTransfer(id, schedule.getFromAccountId(), schedule.getToAccountId(),
+                schedule.getAmount(), next, schedule.getIntervalMillis()));
+    } else if (type == REMOVED) {
+      schedules.remove(id);
+    } else {
+      throw new ScheduleException("Unknown schedule record type " + type);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      if (channel != null)
+        channel.close();
+    } catch (IOException e) {
+      log.warn("Could not close schedule file", e);
+    }
+  }
+
+  private void writeString(String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    payloadOut.writeInt(bytes.length);
+    payloadOut.write(bytes);
+  }
+
+  private static String readString(ByteBuffer record) {
+    int length = record.getInt();
+    String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+    record.position(record.position() + length);
+    return value;
+  }
+}
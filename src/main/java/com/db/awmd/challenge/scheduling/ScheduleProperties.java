@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.scheduling;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "transfers.scheduled")
+public class ScheduleProperties {
+
+  private boolean enabled = false;
+
+  private String file = "schedules/transfers.log";
+
+  private long tickMillis = 100;
+
+  private int wheelSize = 512;
+
+  private int batchSize = 1000;
+
+  private int compactAfterRecords = 10000;
+}
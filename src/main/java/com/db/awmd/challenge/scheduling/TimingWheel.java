@@ -0,0 +1,120 @@
+package com.db.awmd.challenge.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. The lowest wheel has {@code wheelSize} slots of {@code tickMillis} each and holds the
+ * items due within {@code tickMillis * wheelSize} of its current time; later items go to an overflow wheel whose slots
+ * are as long as the whole lower wheel, created on first use. Adding an item and expiring a tick take constant time
+ * however many items are waiting. An item moves down one wheel each time the lower wheel's time reaches its slot, so it
+ * is touched once per level rather than on every tick.
+ * <p>
+ * Not thread-safe.
+ */
+final class TimingWheel<T> {
+
+  private final long tickMillis;
+
+  private final int wheelSize;
+
+  private final long interval;
+
+  private final List<Entry<T>>[] slots;
+
+  /**
+   * Start of the earliest tick that has not expired yet.
+   */
+  private long currentTime;
+
+  private TimingWheel<T> overflow;
+
+  TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+    if (tickMillis < 1 || wheelSize < 2)
+      throw new IllegalArgumentException("Tick must be positive and the wheel needs at least two slots");
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    this.interval = tickMillis > Long.MAX_VALUE / wheelSize ? Long.MAX_VALUE : tickMillis * wheelSize;
+    this.slots = newSlots(wheelSize);
+    this.currentTime = startMillis - startMillis % tickMillis;
+  }
+
+  long currentTime() {
+    return currentTime;
+  }
+
+  /**
+   * Returns {@code false} without adding the item if its tick has expired already.
+   */
+  boolean add(long dueMillis, T item) {
+    return add(new Entry<>(dueMillis, item));
+  }
+
+  /**
+   * Expires every tick that ended at or before {@code nowMillis}, handing their items to {@code due} in tick order.
+   */
+  void advance(long nowMillis, Consumer<T> due) {
+    expireUpTo(nowMillis - tickMillis, entry -> due.accept(entry.item));
+  }
+
+  private boolean add(Entry<T> entry) {
+    if (entry.dueMillis < currentTime)
+      return false;
+    if (entry.dueMillis - currentTime < interval) {
+      int slot = (int) ((entry.dueMillis / tickMillis) % wheelSize);
+      if (slots[slot] == null)
+        slots[slot] = new ArrayList<>();
+      slots[slot].add(entry);
+    } else {
+      if (overflow == null)
+        overflow = new TimingWheel<>(interval, wheelSize, currentTime);
+      overflow.add(entry);
+    }
+    return true;
+  }
+
+  /**
+   * Expires the ticks starting at or before {@code lastTickStart}.
+   */
+  private void expireUpTo(long lastTickStart, Consumer<Entry<T>> expired) {
+    while (currentTime <= lastTickStart) {
+      int slot = (int) ((currentTime / tickMillis) % wheelSize);
+      List<Entry<T>> entries = slots[slot];
+      slots[slot] = null;
+      long end = currentTime + tickMillis;
+      currentTime = end;
+      if (entries != null) {
+        for (Entry<T> entry : entries) {
+          // only a saturated top wheel holds items of a later turn in the same slot
+          if (entry.dueMillis >= end && add(entry))
+            continue;
+          expired.accept(entry);
+        }
+      }
+      if (overflow != null) {
+        overflow.expireUpTo(currentTime, entry -> {
+          if (!add(entry))
+            expired.accept(entry);
+        });
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> List<Entry<T>>[] newSlots(int wheelSize) {
+    return (List<Entry<T>>[]) new List<?>[wheelSize];
+  }
+
+  private static final class Entry<T> {
+
+    private final long dueMillis;
+
+    private final T item;
+
+    private Entry(long dueMillis, T item) {
+      this.dueMillis = dueMillis;
+      this.item = item;
+    }
+  }
+}
@@ -0,0 +1,231 @@
+package com.db.awmd.challenge.scheduling;
+
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferDto;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.service.TransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs future-dated and recurring transfers. Schedules wait in a {@link TimingWheel}; on every tick all transfers that
+ * have come due are sorted by account and run through {@link TransferService#transferBatch} in batches of
+ * {@code batchSize}, so a batch takes the lock of an account once for all of its transfers due in that tick.
+ * <p>
+ * Every change is written to the {@link ScheduleLog}, and creations and cancellations are forced before they return.
+ * Before a tick runs its transfers it records their next execution, or their removal, and forces the log once for all
+ * of them. Scheduled transfers therefore run at most once: after a crash in the middle of a tick the transfers of that
+ * tick are not repeated. Occurrences missed while the service was down run once on startup, and a recurring transfer
+ * then continues with its first occurrence after that.
+ * <p>
+ * Cancellation is lazy: the schedule is dropped from the map, and its entry in the wheel is ignored when it expires.
+ */
+@Slf4j
+public class TransferScheduler implements PublicMetrics, AutoCloseable {
+
+  private final TransferService transferService;
+
+  private final ScheduleLog scheduleLog;
+
+  private final TimingWheel<ScheduledTransfer> wheel;
+
+  private final Map<String, ScheduledTransfer> schedules = new HashMap<>();
+
+  private final List<ScheduledTransfer> overdue = new ArrayList<>();
+
+  private final long tickMillis;
+
+  private final int batchSize;
+
+  private final int compactAfterRecords;
+
+  private final LongAdder executed = new LongAdder();
+
+  private final LongAdder applied = new LongAdder();
+
+  private final LongAdder batches = new LongAdder();
+
+  private volatile long lastTickLagMillis;
+
+  private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "transfer-scheduler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public TransferScheduler(TransferService transferService, Path file, long tickMillis, int wheelSize, int batchSize,
+                           int compactAfterRecords, long startMillis) {
+    if (batchSize < 1)
+      throw new IllegalArgumentException("Batch size must be positive");
+    this.transferService = transferService;
+    this.tickMillis = tickMillis;
+    this.batchSize = batchSize;
+    this.compactAfterRecords = compactAfterRecords;
+    this.wheel = new TimingWheel<>(tickMillis, wheelSize, startMillis);
+    this.scheduleLog = ScheduleLog.open(file, schedules);
+    for (ScheduledTransfer schedule : schedules.values()) {
+      enqueue(schedule);
+    }
+    log.info("Loaded {} scheduled transfers from {}, {} of them overdue", schedules.size(), file, overdue.size());
+  }
+
+  public void start() {
+    ticker.scheduleAtFixedRate(() -> {
+      try {
+        tick(System.currentTimeMillis());
+      } catch (RuntimeException e) {
+        log.error("Scheduled transfers failed", e);
+      }
+    }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns once the schedule is durable. A recurring transfer needs an interval of at least one tick.
+   */
+  public synchronized ScheduledTransfer schedule(ScheduledTransferDto transfer) {
+    if (transfer.getIntervalMillis() > 0 && transfer.getIntervalMillis() < tickMillis)
+      throw new IllegalArgumentException("Interval must be at least " + tickMillis + " ms");
+    ScheduledTransfer schedule = new ScheduledTransfer(UUID.randomUUID().toString(), transfer.getFromAccountId(),
+            transfer.getToAccountId(), transfer.getAmount(), transfer.getExecuteAt(), transfer.getIntervalMillis());
+    scheduleLog.added(schedule);
+    scheduleLog.force();
+    schedules.put(schedule.getId(), schedule);
+    enqueue(schedule);
+    return schedule;
+  }
+
+  /**
+   * Returns {@code null} for unknown ids and for one-off transfers that have run.
+   */
+  public synchronized ScheduledTransfer get(String id) {
+    return schedules.get(id);
+  }
+
+  public synchronized boolean cancel(String id) {
+    if (schedules.remove(id) == null)
+      return false;
+    scheduleLog.removed(id);
+    scheduleLog.force();
+    return true;
+  }
+
+  /**
+   * Runs the transfers due at {@code nowMillis} and returns how many there were.
+   */
+  public int tick(long nowMillis) {
+    List<ScheduledTransfer> due = new ArrayList<>();
+    synchronized (this) {
+      List<ScheduledTransfer> expired = new ArrayList<>(overdue);
+      overdue.clear();
+      wheel.advance(nowMillis, expired::add);
+      for (ScheduledTransfer schedule : expired) {
+        // a cancelled or rescheduled transfer has left a stale entry behind
+        if (schedules.get(schedule.getId()) != schedule)
+          continue;
+        due.add(schedule);
+        if (schedule.getIntervalMillis() > 0) {
+          ScheduledTransfer next = following(schedule, nowMillis);
+          schedules.put(next.getId(), next);
+          scheduleLog.advanced(next.getId(), next.getNextExecution());
+          enqueue(next);
+        } else {
+          schedules.remove(schedule.getId());
+          scheduleLog.removed(schedule.getId());
+        }
+      }
+      if (due.isEmpty())
+        return 0;
+      scheduleLog.force();
+      if (scheduleLog.records() > compactAfterRecords && scheduleLog.records() > 2 * schedules.size())
+        scheduleLog.compact(schedules.values());
+    }
+    execute(due, nowMillis);
+    return due.size();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    int pending;
+    synchronized (this) {
+      pending = schedules.size();
+    }
+    return Arrays.asList(
+            new Metric<>("transfers.scheduled.pending", pending),
+            new Metric<>("transfers.scheduled.executed", executed.sum()),
+            new Metric<>("transfers.scheduled.applied", applied.sum()),
+            new Metric<>("transfers.scheduled.batches", batches.sum()),
+            new Metric<>("transfers.scheduled.lag-millis", lastTickLagMillis));
+  }
+
+  /**
+   * Lets a running tick finish before the log is closed. If interrupted while waiting, closes the log right away and
+   * keeps the interrupt flag set.
+   */
+  @Override
+  public void close() {
+    ticker.shutdown();
+    try {
+      ticker.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      scheduleLog.close();
+    }
+  }
+
+  private void enqueue(ScheduledTransfer schedule) {
+    if (!wheel.add(schedule.getNextExecution(), schedule))
+      overdue.add(schedule);
+  }
+
+  /**
+   * Occurrences that were missed, because the service was down or the tick ran late, are skipped.
+   */
+  private static ScheduledTransfer following(ScheduledTransfer schedule, long nowMillis) {
+    long interval = schedule.getIntervalMillis();
+    long next = schedule.getNextExecution() + interval;
+    if (next <= nowMillis)
+      next += ((nowMillis - next) / interval + 1) * interval;
+    return new ScheduledTransfer(schedule.getId(), schedule.getFromAccountId(), schedule.getToAccountId(),
+            schedule.getAmount(), next, interval);
+  }
+
+  private void execute(List<ScheduledTransfer> due, long nowMillis) {
+    due.sort(Comparator.comparing(ScheduledTransfer::getFromAccountId)
+            .thenComparing(ScheduledTransfer::getToAccountId));
+    long earliest = Long.MAX_VALUE;
+    int appliedNow = 0;
+    for (int from = 0; from < due.size(); from += batchSize) {
+      List<ScheduledTransfer> chunk = due.subList(from, Math.min(due.size(), from + batchSize));
+      List<TransferDto> transfers = new ArrayList<>(chunk.size());
+      for (ScheduledTransfer schedule : chunk) {
+        transfers.add(new TransferDto(schedule.getFromAccountId(), schedule.getToAccountId(), schedule.getAmount()));
+        earliest = Math.min(earliest, schedule.getNextExecution());
+      }
+      BatchTransferResult result = transferService.transferBatch(transfers, false);
+      appliedNow += result.getApplied();
+      batches.increment();
+    }
+    executed.add(due.size());
+    applied.add(appliedNow);
+    lastTickLagMillis = Math.max(0, nowMillis - earliest);
+    log.info("Executed {} scheduled transfers, {} applied", due.size(), appliedNow);
+  }
+}
@@ -0,0 +1,211 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.ImportSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads accounts from an NDJSON or CSV stream. Lines are parsed and validated one at a time and handed to the
+ * repository in chunks of {@code chunkSize}, which are created in parallel on {@code parallelism} threads. At most two
+ * chunks per thread are held at any time, so memory use does not depend on the size of the import.
+ * <p>
+ * CSV lines are {@code accountId,balance}, optionally preceded by that header line; quoting is not supported.
+ */
+@Slf4j
+@Service
+public class AccountImporter {
+
+  public enum Format {
+    NDJSON,
+    CSV
+  }
+
+  private static final String CSV_HEADER = "accountId,balance";
+
+  private final AccountsService accountsService;
+
+  private final ObjectReader accountReader;
+
+  private final Validator validator;
+
+  private final int chunkSize;
+
+  private final int parallelism;
+
+  private final int maxReportedProblems;
+
+  private final ExecutorService executor;
+
+  @Autowired
+  public AccountImporter(AccountsService accountsService, ObjectMapper objectMapper, Validator validator,
+                         @Value("${accounts.import.chunk-size:10000}") int chunkSize,
+                         @Value("${accounts.import.parallelism:0}") int parallelism,
+                         @Value("${accounts.import.max-reported-problems:100}") int maxReportedProblems) {
+    this.accountsService = accountsService;
+    this.accountReader = objectMapper.readerFor(Account.class);
+    this.validator = validator;
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.maxReportedProblems = maxReportedProblems;
+    AtomicInteger threads = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(this.parallelism, task -> {
+      Thread thread = new Thread(task, "account-import-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public ImportSummary importAccounts(InputStream in, Format format) throws IOException {
+    Import current = new Import();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    List<Account> chunk = new ArrayList<>(chunkSize);
+    long lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null && current.failure.get() == null) {
+      lineNumber++;
+      if (line.trim().isEmpty() || format == Format.CSV && lineNumber == 1 && line.trim().equals(CSV_HEADER))
+        continue;
+      Account account = parse(line, lineNumber, format, current);
+      if (account == null)
+        continue;
+      chunk.add(account);
+      if (chunk.size() == chunkSize) {
+        current.submit(chunk);
+        chunk = new ArrayList<>(chunkSize);
+      }
+    }
+    if (!chunk.isEmpty())
+      current.submit(chunk);
+    return current.await();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private Account parse(String line, long lineNumber, Format format, Import current) {
+    Account account;
+    try {
+      account = format == Format.NDJSON ? accountReader.readValue(line) : parseCsv(line);
+    } catch (IOException | IllegalArgumentException e) {
+      current.reject("line " + lineNumber + ": could not parse account");
+      return null;
+    }
+    if (account == null) {
+      current.reject("line " + lineNumber + ": no account");
+      return null;
+    }
+    Set<ConstraintViolation<Account>> violations = validator.validate(account);
+    if (!violations.isEmpty()) {
+      ConstraintViolation<Account> violation = violations.iterator().next();
+      current.reject("line " + lineNumber + ": " + violation.getPropertyPath() + " " + violation.getMessage());
+      return null;
+    }
+    return account;
+  }
+
+  private static Account parseCsv(String line) {
+    int comma = line.indexOf(',');
+    if (comma < 0)
+      throw new IllegalArgumentException("Expected " + CSV_HEADER);
+    return new Account(line.substring(0, comma).trim(), new BigDecimal(line.substring(comma + 1).trim()));
+  }
+
+  /**
+   * State of one running import, shared by the reading thread and the chunks it submitted.
+   */
+  private class Import {
+
+    private final Semaphore inFlight = new Semaphore(2 * parallelism);
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder duplicates = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final List<String> problems = new ArrayList<>();
+
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    void submit(List<Account> chunk) {
+      inFlight.acquireUninterruptibly();
+      executor.execute(() -> {
+        try {
+          create(chunk);
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+        } finally {
+          inFlight.release();
+        }
+      });
+    }
+
+    void create(List<Account> chunk) {
+      List<CreateAccountStatus> statuses = accountsService.createAccounts(chunk);
+      for (int i = 0; i < chunk.size(); i++) {
+        switch (statuses.get(i)) {
+          case CREATED:
+            created.increment();
+            break;
+          case DUPLICATE:
+            duplicates.increment();
+            report("duplicate account " + chunk.get(i).getAccountId());
+            break;
+          case AMOUNT_OUT_OF_RANGE:
+            reject("balance of account " + chunk.get(i).getAccountId() + " out of range");
+            break;
+        }
+      }
+    }
+
+    void reject(String problem) {
+      rejected.increment();
+      report(problem);
+    }
+
+    ImportSummary await() {
+      inFlight.acquireUninterruptibly(2 * parallelism);
+      inFlight.release(2 * parallelism);
+      if (failure.get() != null)
+        throw failure.get();
+      synchronized (problems) {
+        log.info("Imported {} accounts, {} duplicates, {} rejected", created.sum(), duplicates.sum(), rejected.sum());
+        return new ImportSummary(created.sum(), duplicates.sum(), rejected.sum(), new ArrayList<>(problems));
+      }
+    }
+
+    private void report(String problem) {
+      synchronized (problems) {
+        if (problems.size() < maxReportedProblems)
+          problems.add(problem);
+      }
+    }
+  }
+}
@@ -1,15 +1,31 @@
 package com.db.awmd.challenge.service;
 
+import com.db.awmd.challenge.cluster.AccountsCluster;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountBalances;
+import com.db.awmd.challenge.domain.BalanceTotal;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.ReadConsistency;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.ClusterException;
 import com.db.awmd.challenge.exception.CreditFailedException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsSnapshot;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class AccountsService {
@@ -17,19 +33,114 @@ public class AccountsService {
   @Getter
   private final AccountsRepository accountsRepository;
 
+  private AccountsCluster cluster = AccountsCluster.NONE;
+
   @Autowired
   public AccountsService(AccountsRepository accountsRepository) {
     this.accountsRepository = accountsRepository;
   }
 
+  /**
+   * Leaves the accounts this node does not own to the other nodes of the cluster.
+   */
+  @Autowired(required = false)
+  public void setAccountsCluster(AccountsCluster cluster) {
+    this.cluster = cluster;
+  }
+
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    if (this.cluster.isLocal(account.getAccountId())) {
+      this.accountsRepository.createAccount(account);
+      return;
+    }
+    CreateAccountStatus status = this.cluster.createAccounts(Collections.singletonList(account)).get(0);
+    if (status == CreateAccountStatus.DUPLICATE)
+      throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+    if (status == CreateAccountStatus.AMOUNT_OUT_OF_RANGE)
+      throw new AmountOutOfRangeException("Balance of account " + account.getAccountId() + " is out of range");
+  }
+
+  public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+    List<Account> local = new ArrayList<>(accounts.size());
+    List<Account> remote = new ArrayList<>();
+    for (Account account : accounts) {
+      (this.cluster.isLocal(account.getAccountId()) ? local : remote).add(account);
+    }
+    if (remote.isEmpty())
+      return this.accountsRepository.createAccounts(accounts);
+
+    List<CreateAccountStatus> localStatuses = this.accountsRepository.createAccounts(local);
+    List<CreateAccountStatus> remoteStatuses = this.cluster.createAccounts(remote);
+    List<CreateAccountStatus> statuses = new ArrayList<>(accounts.size());
+    int nextLocal = 0;
+    int nextRemote = 0;
+    for (Account account : accounts) {
+      statuses.add(this.cluster.isLocal(account.getAccountId())
+              ? localStatuses.get(nextLocal++) : remoteStatuses.get(nextRemote++));
+    }
+    return statuses;
   }
 
   public Account getAccount(String accountId) {
+    if (!this.cluster.isLocal(accountId))
+      return this.cluster.getAccount(accountId);
     return this.accountsRepository.getAccount(accountId);
   }
 
+  /**
+   * Reads all the given local accounts from one snapshot; accounts of other nodes are read one by one.
+   */
+  public AccountBalances getAccounts(List<String> accountIds) {
+    List<Account> accounts = new ArrayList<>(accountIds.size());
+    List<String> notFound = new ArrayList<>();
+    try (AccountsSnapshot snapshot = this.accountsRepository.openSnapshot()) {
+      for (String accountId : accountIds) {
+        Account account = this.cluster.isLocal(accountId) ? snapshot.get(accountId) : getRemoteAccount(accountId);
+        if (account != null)
+          accounts.add(account);
+        else
+          notFound.add(accountId);
+      }
+    }
+    return new AccountBalances(accounts, notFound);
+  }
+
+  private Account getRemoteAccount(String accountId) {
+    try {
+      return this.cluster.getAccount(accountId);
+    } catch (AccountNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Sums the balances of one snapshot, so transfers running meanwhile do not change the total. In a cluster this
+   * covers the accounts of this node only.
+   */
+  public BalanceTotal totalBalance() {
+    long[] count = new long[1];
+    BigDecimal[] total = {BigDecimal.ZERO};
+    forEachAccount(ReadConsistency.SNAPSHOT, account -> {
+      count[0]++;
+      total[0] = total[0].add(account.getBalance());
+    });
+    return new BalanceTotal(count[0], total[0]);
+  }
+
+  /**
+   * Visits all accounts one at a time; with {@link ReadConsistency#SNAPSHOT} the snapshot stays open until the last
+   * account has been consumed.
+   */
+  public void forEachAccount(ReadConsistency consistency, Consumer<Account> consumer) {
+    if (consistency == ReadConsistency.WEAK) {
+      this.accountsRepository.forEachAccount(consumer);
+      return;
+    }
+    try (AccountsSnapshot snapshot = this.accountsRepository.openSnapshot()) {
+      snapshot.forEach(consumer);
+    }
+  }
+
   public Account creditAccount(String accountId, BigDecimal amount) throws CreditFailedException {
     try {
       return this.accountsRepository.creditAccount(accountId, amount);
@@ -41,4 +152,61 @@ public class AccountsService {
   public Account debitAccount(String accountId, BigDecimal amount) throws AccountNotFoundException, InsufficientFundsException {
     return this.accountsRepository.debitAccount(accountId, amount);
   }
-}
\ No newline at end of file
+
+  /**
+   * The source account must be local. When the target account belongs to another node, the transfer is committed on
+   * both nodes or on neither; if that node cannot be reached the debit is undone and a {@link CreditFailedException}
+   * is thrown.
+   */
+  public TransferResult transfer(String fromAccountId, String toAccountId, BigDecimal amount)
+          throws CreditFailedException, AccountNotFoundException, InsufficientFundsException {
+    try {
+      if (!this.cluster.isLocal(toAccountId))
+        return this.cluster.transferOut(fromAccountId, toAccountId, amount);
+      return this.accountsRepository.transfer(fromAccountId, toAccountId, amount);
+    } catch (AccountNotFoundException e) {
+      if (!toAccountId.equals(e.getAccountId()) || fromAccountId.equals(toAccountId))
+        throw e;
+      throw new CreditFailedException("Could not credit amount to account " + toAccountId, e);
+    } catch (ClusterException e) {
+      throw new CreditFailedException("Could not credit amount to account " + toAccountId, e);
+    }
+  }
+
+  /**
+   * In a cluster, a batch whose accounts are all local runs as usual. Otherwise an atomic batch is aborted as a whole,
+   * and a non-atomic one runs its transfers one at a time, aborting those whose source account is not local.
+   */
+  public List<TransferResult> transferBatch(List<TransferDto> transfers, boolean atomic) {
+    boolean local = true;
+    for (TransferDto transfer : transfers) {
+      local &= this.cluster.isLocal(transfer.getFromAccountId()) && this.cluster.isLocal(transfer.getToAccountId());
+    }
+    if (local)
+      return this.accountsRepository.transferBatch(transfers, atomic);
+
+    List<TransferResult> results = new ArrayList<>(transfers.size());
+    for (TransferDto transfer : transfers) {
+      if (atomic || !this.cluster.isLocal(transfer.getFromAccountId()))
+        results.add(TransferResult.rejected(TransferStatus.ABORTED));
+      else
+        results.add(transferOrReject(transfer));
+    }
+    return results;
+  }
+
+  private TransferResult transferOrReject(TransferDto transfer) {
+    try {
+      return transfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+    } catch (InsufficientFundsException e) {
+      return TransferResult.rejected(TransferStatus.INSUFFICIENT_FUNDS);
+    } catch (AccountNotFoundException e) {
+      return TransferResult.rejected(TransferStatus.ACCOUNT_NOT_FOUND);
+    } catch (AmountOutOfRangeException e) {
+      return TransferResult.rejected(TransferStatus.AMOUNT_OUT_OF_RANGE);
+    } catch (CreditFailedException e) {
+      return TransferResult.rejected(e.getCause() instanceof AccountNotFoundException
+              ? TransferStatus.ACCOUNT_NOT_FOUND : TransferStatus.ABORTED);
+    }
+  }
+}
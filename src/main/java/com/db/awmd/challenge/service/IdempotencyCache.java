@@ -0,0 +1,177 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of recent requests by their idempotency key, so that a retried request is answered with the
+ * original outcome instead of being executed again. The first request of a key claims it with
+ * {@link ConcurrentHashMap#putIfAbsent}; concurrent retries of that key wait for its outcome, so a request is never
+ * executed twice while its key is remembered.
+ * <p>
+ * Keys are forgotten in insertion order once there are more than {@code maxKeys} of them or they are older than the
+ * TTL. Insertion order is kept in a lock-free queue, and every request evicts what is due, so eviction needs neither a
+ * global lock nor a background thread. Only completed outcomes are forgotten: the key of a request that is still
+ * running stays, past the capacity and the TTL if need be, so that a retry waits for it instead of running it again.
+ * The capacity should still be well above the number of requests in flight, otherwise a key can be evicted before its
+ * retry arrives.
+ */
+@Component
+public class IdempotencyCache implements PublicMetrics {
+
+  private final int maxKeys;
+
+  private final long ttlNanos;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final LongAdder replayed = new LongAdder();
+
+  private final LongAdder evicted = new LongAdder();
+
+  @Autowired
+  public IdempotencyCache(@Value("${transfers.idempotency.max-keys:100000}") int maxKeys,
+                          @Value("${transfers.idempotency.ttl-seconds:3600}") long ttlSeconds) {
+    if (maxKeys <= 0)
+      throw new IllegalArgumentException("Maximum number of keys must be positive but was " + maxKeys);
+    this.maxKeys = maxKeys;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+  }
+
+  /**
+   * Runs {@code action} unless {@code key} was already used, in which case the outcome of its first use is returned,
+   * waiting for it if necessary. If the action throws, the key is forgotten so the request can be retried.
+   *
+   * @throws IdempotencyKeyReusedException if the key was used for a different request
+   */
+  @SuppressWarnings("unchecked")
+  public <R> R execute(String key, Object request, Supplier<R> action) throws IdempotencyKeyReusedException {
+    long now = System.nanoTime();
+    evictExpired(now);
+
+    Entry entry = new Entry(key, request, now);
+    Entry existing;
+    while ((existing = entries.putIfAbsent(key, entry)) != null) {
+      if (!isExpired(existing, now)) {
+        if (!existing.request.equals(request))
+          throw new IdempotencyKeyReusedException("Idempotency key " + key + " was already used for another request");
+        replayed.increment();
+        return (R) existing.await();
+      }
+      if (entries.replace(key, existing, entry))
+        break;
+    }
+
+    insertionOrder.add(entry);
+    if (queued.incrementAndGet() > maxKeys)
+      evictOldest();
+
+    R outcome;
+    try {
+      outcome = action.get();
+    } catch (RuntimeException e) {
+      entries.remove(key, entry);
+      entry.outcome.completeExceptionally(e);
+      throw e;
+    }
+    entry.outcome.complete(outcome);
+    return outcome;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+            new Metric<>("transfers.idempotency.keys", entries.size()),
+            new Metric<>("transfers.idempotency.replayed", replayed.sum()),
+            new Metric<>("transfers.idempotency.evicted", evicted.sum()));
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return entry.outcome.isDone() && now - entry.createdNanos > ttlNanos;
+  }
+
+  private void evictExpired(long now) {
+    Entry oldest;
+    while ((oldest = insertionOrder.peek()) != null && isExpired(oldest, now)) {
+      evictHead(now);
+    }
+  }
+
+  /**
+   * Entries still running go back to the tail, so one pass over the queue is enough.
+   */
+  private void evictOldest() {
+    long now = System.nanoTime();
+    for (int polls = queued.get(); polls > 0 && queued.get() > maxKeys; polls--) {
+      if (!evictHead(now))
+        return;
+    }
+  }
+
+  /**
+   * Takes the head of the queue and forgets it if it has completed and is expired or the cache is over capacity. An
+   * entry that is still running goes back to the tail. So does a younger entry that was polled because a racing thread
+   * had taken the expired head first.
+   */
+  private boolean evictHead(long now) {
+    Entry oldest = insertionOrder.poll();
+    if (oldest == null)
+      return false;
+    if (!oldest.outcome.isDone() || !isExpired(oldest, now) && queued.get() <= maxKeys) {
+      insertionOrder.add(oldest);
+      return true;
+    }
+    queued.decrementAndGet();
+    if (entries.remove(oldest.key, oldest))
+      evicted.increment();
+    return true;
+  }
+
+  private static class Entry {
+
+    private final String key;
+
+    private final Object request;
+
+    private final long createdNanos;
+
+    private final CompletableFuture<Object> outcome = new CompletableFuture<>();
+
+    Entry(String key, Object request, long createdNanos) {
+      this.key = key;
+      this.request = request;
+      this.createdNanos = createdNanos;
+    }
+
+    Object await() {
+      try {
+        return outcome.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.db.awmd.challenge.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "notifications.dispatch")
+public class NotificationDispatchProperties {
+
+  public enum OverflowPolicy {
+    /**
+     * The transfer waits for space in the queue. The only policy that keeps each account's notifications in order.
+     */
+    BLOCK,
+    /**
+     * The new notification is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued notification is dropped to make room.
+     */
+    DROP_OLDEST,
+    /**
+     * The notification is sent on the transfer's own thread, ahead of those of the account still queued.
+     */
+    CALLER_RUNS
+  }
+
+  private boolean async = true;
+
+  private int workers = 2;
+
+  private int queueCapacity = 8192;
+
+  private int batchSize = 256;
+
+  private long coalesceWindowMillis = 0;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+}
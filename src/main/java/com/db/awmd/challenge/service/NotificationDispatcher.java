@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.NotificationDispatchProperties.OverflowPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves notifications off the transfer thread. Notifications are queued on one of a fixed number of bounded queues,
+ * chosen by account id, so each account's notifications stay in order. Each queue has one worker, which takes them
+ * in batches and merges the notifications for the same account within a batch into one message.
+ * <p>
+ * The order holds only as long as the queues have room, or with {@link OverflowPolicy#BLOCK}. On a full queue
+ * {@link OverflowPolicy#CALLER_RUNS}, the default, sends the notification ahead of those of the same account still
+ * queued, and {@link OverflowPolicy#DROP_OLDEST} drops a queued one.
+ */
+@Slf4j
+@Service
+public class NotificationDispatcher implements PublicMetrics {
+
+  private static final long POLL_TIMEOUT_MILLIS = 100;
+
+  private final NotificationService notificationService;
+
+  private final boolean async;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final int batchSize;
+
+  private final long coalesceWindowNanos;
+
+  private final List<BlockingQueue<Notification>> queues = new ArrayList<>();
+
+  private final List<Thread> workers = new ArrayList<>();
+
+  private final LongAdder delivered = new LongAdder();
+
+  private final LongAdder coalesced = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  private final LongAdder callerRuns = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private volatile boolean running = true;
+
+  @Autowired
+  public NotificationDispatcher(NotificationService notificationService, NotificationDispatchProperties properties) {
+    this.notificationService = notificationService;
+    this.async = properties.isAsync();
+    this.overflowPolicy = properties.getOverflowPolicy();
+    this.batchSize = Math.max(1, properties.getBatchSize());
+    this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(properties.getCoalesceWindowMillis());
+    if (async) {
+      if (properties.getWorkers() < 1)
+        throw new IllegalArgumentException("Workers must be positive but was " + properties.getWorkers());
+      for (int i = 0; i < properties.getWorkers(); i++) {
+        BlockingQueue<Notification> queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        Thread worker = new Thread(() -> drain(queue), "notification-dispatcher-" + i);
+        worker.setDaemon(true);
+        queues.add(queue);
+        workers.add(worker);
+        worker.start();
+      }
+    }
+  }
+
+  public void dispatch(Account account, String transferDescription) {
+    if (!async || !running) {
+      deliver(account, transferDescription);
+      return;
+    }
+    Notification notification = new Notification(account, transferDescription);
+    BlockingQueue<Notification> queue = queueFor(account.getAccountId());
+    if (queue.offer(notification))
+      return;
+
+    switch (overflowPolicy) {
+      case BLOCK:
+        try {
+          queue.put(notification);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          dropped.increment();
+        }
+        break;
+      case DROP_NEWEST:
+        dropped.increment();
+        break;
+      case DROP_OLDEST:
+        while (!queue.offer(notification)) {
+          if (queue.poll() != null)
+            dropped.increment();
+        }
+        break;
+      case CALLER_RUNS:
+        callerRuns.increment();
+        deliver(account, transferDescription);
+        break;
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    long depth = 0;
+    for (BlockingQueue<Notification> queue : queues) {
+      depth += queue.size();
+    }
+    return Arrays.asList(
+            new Metric<>("notifications.queue.depth", depth),
+            new Metric<>("notifications.delivered", delivered.sum()),
+            new Metric<>("notifications.coalesced", coalesced.sum()),
+            new Metric<>("notifications.dropped", dropped.sum()),
+            new Metric<>("notifications.caller-runs", callerRuns.sum()),
+            new Metric<>("notifications.failed", failed.sum()));
+  }
+
+  /**
+   * Stops accepting new notifications and gives the workers a moment to send what is already queued.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    running = false;
+    for (Thread worker : workers) {
+      worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  private BlockingQueue<Notification> queueFor(String accountId) {
+    int hash = accountId.hashCode();
+    return queues.get(((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % queues.size());
+  }
+
+  private void drain(BlockingQueue<Notification> queue) {
+    List<Notification> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        Notification first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null)
+          continue;
+        batch.add(first);
+        collectBatch(queue, batch);
+        deliverCoalesced(batch);
+      } catch (InterruptedException e) {
+        if (!running)
+          return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void collectBatch(BlockingQueue<Notification> queue, List<Notification> batch) throws InterruptedException {
+    if (coalesceWindowNanos == 0) {
+      queue.drainTo(batch, batchSize - batch.size());
+      return;
+    }
+    long deadline = System.nanoTime() + coalesceWindowNanos;
+    while (batch.size() < batchSize) {
+      Notification next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (next == null)
+        return;
+      batch.add(next);
+    }
+  }
+
+  private void deliverCoalesced(List<Notification> batch) {
+    Map<String, Notification> byAccount = new LinkedHashMap<>();
+    for (Notification notification : batch) {
+      byAccount.merge(notification.account.getAccountId(), notification, Notification::followedBy);
+    }
+    coalesced.add(batch.size() - byAccount.size());
+    for (Notification notification : byAccount.values()) {
+      deliver(notification.account, notification.description);
+    }
+  }
+
+  private void deliver(Account account, String description) {
+    try {
+      notificationService.notifyAboutTransfer(account, description);
+      delivered.increment();
+    } catch (RuntimeException e) {
+      failed.increment();
+      log.error("Could not notify owner of account " + account.getAccountId(), e);
+    }
+  }
+
+  private static class Notification {
+
+    private final Account account;
+
+    private final String description;
+
+    Notification(Account account, String description) {
+      this.account = account;
+      this.description = description;
+    }
+
+    /**
+     * One message for both notifications, carrying the account as of the later one.
+     */
+    Notification followedBy(Notification later) {
+      return new Notification(later.account, description + "\n" + later.description);
+    }
+  }
+}
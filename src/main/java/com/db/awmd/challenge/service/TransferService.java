@@ -1,12 +1,29 @@
 package com.db.awmd.challenge.service;
 
-import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.audit.AuditTrail;
+import com.db.awmd.challenge.cluster.AccountsCluster;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.ClusterException;
 import com.db.awmd.challenge.exception.CreditFailedException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Stage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.validation.Validator;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 @Service
 @Slf4j
@@ -14,35 +31,163 @@ public class TransferService {
 
   private AccountsService accountsService;
 
-  private NotificationService notificationService;
+  private NotificationDispatcher notificationDispatcher;
+
+  private Validator validator;
+
+  private TransferMetrics metrics;
+
+  private TransactionLedger ledger;
+
+  private AuditTrail audit = AuditTrail.NONE;
+
+  private AccountsCluster cluster = AccountsCluster.NONE;
 
   @Autowired
-  public TransferService(AccountsService accountsService, NotificationService notificationService) {
+  public TransferService(AccountsService accountsService, NotificationDispatcher notificationDispatcher,
+                         Validator validator, TransferMetrics metrics, TransactionLedger ledger) {
     this.accountsService = accountsService;
-    this.notificationService = notificationService;
+    this.notificationDispatcher = notificationDispatcher;
+    this.validator = validator;
+    this.metrics = metrics;
+    this.ledger = ledger;
   }
 
-  public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws CreditFailedException {
-    Account updatedFrom = accountsService.debitAccount(fromAccountId, amount);
-    Account updatedTo = tryTransferringToAccount(fromAccountId, toAccountId, amount);
+  @Autowired(required = false)
+  public void setAuditTrail(AuditTrail audit) {
+    this.audit = audit;
+  }
 
-    notificationService.notifyAboutTransfer(updatedFrom, "Transferred amount " + amount + " to account " + toAccountId);
-    notificationService.notifyAboutTransfer(updatedTo, "Received amount " + amount + " from account " + fromAccountId);
+  @Autowired(required = false)
+  public void setAccountsCluster(AccountsCluster cluster) {
+    this.cluster = cluster;
   }
 
-  private Account tryTransferringToAccount(String fromAccountId, String toAccountId, BigDecimal amount) throws CreditFailedException {
+  /**
+   * In a cluster, a transfer whose source account belongs to another node is run, recorded and notified there.
+   */
+  public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws CreditFailedException {
+    if (!cluster.isLocal(fromAccountId)) {
+      forward(fromAccountId, toAccountId, amount);
+      return;
+    }
+    long start = metrics.start();
+    TransferResult result;
     try {
-      return accountsService.creditAccount(toAccountId, amount);
-    } catch (CreditFailedException e) {
-      log.error("An error occurred trying to transfer money to account " + toAccountId + ". " +
-              "Reverting money deducted from account" + fromAccountId, e);
-      refundMoneyIntoFromAccount(fromAccountId, amount);
+      result = accountsService.transfer(fromAccountId, toAccountId, amount);
+    } catch (InsufficientFundsException e) {
+      metrics.insufficientFunds();
+      audit.transfer(fromAccountId, toAccountId, amount, TransferStatus.INSUFFICIENT_FUNDS);
+      throw e;
+    } catch (AccountNotFoundException | CreditFailedException e) {
+      if (e instanceof AccountNotFoundException || e.getCause() instanceof AccountNotFoundException) {
+        metrics.accountNotFound();
+        audit.transfer(fromAccountId, toAccountId, amount, TransferStatus.ACCOUNT_NOT_FOUND);
+      } else {
+        audit.transferFailed(fromAccountId, toAccountId, amount);
+      }
+      throw e;
+    } catch (AmountOutOfRangeException e) {
+      audit.transfer(fromAccountId, toAccountId, amount, TransferStatus.AMOUNT_OUT_OF_RANGE);
+      throw e;
+    } catch (RuntimeException e) {
+      audit.transferFailed(fromAccountId, toAccountId, amount);
       throw e;
+    } finally {
+      metrics.record(Stage.REPOSITORY, start);
     }
+    metrics.completed();
+    audit.transfer(fromAccountId, toAccountId, amount, TransferStatus.OK);
+    record(fromAccountId, toAccountId, amount);
+
+    start = metrics.start();
+    notifyAboutTransfer(result, fromAccountId, toAccountId, amount);
+    metrics.record(Stage.NOTIFICATION, start);
+  }
+
+  public BatchTransferResult transferBatch(List<TransferDto> transfers, boolean atomic) {
+    TransferStatus[] statuses = new TransferStatus[transfers.size()];
+    List<TransferDto> valid = new ArrayList<>(transfers.size());
+    for (int i = 0; i < transfers.size(); i++) {
+      TransferDto transfer = transfers.get(i);
+      if (transfer == null || !validator.validate(transfer).isEmpty())
+        statuses[i] = TransferStatus.INVALID;
+      else
+        valid.add(transfer);
+    }
+
+    if (atomic && valid.size() < transfers.size()) {
+      for (int i = 0; i < statuses.length; i++) {
+        if (statuses[i] == null)
+          statuses[i] = TransferStatus.ABORTED;
+      }
+      return new BatchTransferResult(0, Arrays.asList(statuses));
+    }
+
+    Iterator<TransferResult> results = accountsService.transferBatch(valid, atomic).iterator();
+    int applied = 0;
+    for (int i = 0; i < statuses.length; i++) {
+      if (statuses[i] != null)
+        continue;
+      TransferDto transfer = transfers.get(i);
+      TransferResult result = results.next();
+      statuses[i] = result.getStatus();
+      count(result.getStatus());
+      audit.transfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount(), result.getStatus());
+      if (result.isApplied()) {
+        applied++;
+        record(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+        notifyAboutTransfer(result, transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+      }
+    }
+    return new BatchTransferResult(applied, Arrays.asList(statuses));
+  }
+
+  /**
+   * The node owning the target account records the credit of a cross-shard transfer.
+   */
+  private void record(String fromAccountId, String toAccountId, BigDecimal amount) {
+    if (cluster.isLocal(toAccountId))
+      ledger.recordTransfer(fromAccountId, toAccountId, amount);
+    else
+      ledger.recordDebit(fromAccountId, toAccountId, amount);
+  }
+
+  private void forward(String fromAccountId, String toAccountId, BigDecimal amount) throws CreditFailedException {
+    TransferStatus status;
+    try {
+      status = cluster.forwardTransfer(fromAccountId, toAccountId, amount);
+    } catch (ClusterException e) {
+      throw new CreditFailedException("Could not forward the transfer from account " + fromAccountId, e);
+    }
+    switch (status) {
+      case OK:
+        return;
+      case INSUFFICIENT_FUNDS:
+        throw new InsufficientFundsException("Overdrafts are not supported");
+      case ACCOUNT_NOT_FOUND:
+        throw new AccountNotFoundException("AccountId " + fromAccountId + " or " + toAccountId
+                + " does not exist or is invalid");
+      case AMOUNT_OUT_OF_RANGE:
+        throw new AmountOutOfRangeException("Amount " + amount + " is out of range");
+      default:
+        throw new CreditFailedException("Transfer from account " + fromAccountId + " ended with " + status, null);
+    }
+  }
+
+  private void count(TransferStatus status) {
+    if (status == TransferStatus.OK)
+      metrics.completed();
+    else if (status == TransferStatus.INSUFFICIENT_FUNDS)
+      metrics.insufficientFunds();
+    else if (status == TransferStatus.ACCOUNT_NOT_FOUND)
+      metrics.accountNotFound();
   }
 
-  private void refundMoneyIntoFromAccount(String fromAccountId, BigDecimal amount) throws CreditFailedException {
-    accountsService.creditAccount(fromAccountId, amount);
-    log.info("Successfully reverted money to account " + fromAccountId);
+  private void notifyAboutTransfer(TransferResult result, String fromAccountId, String toAccountId, BigDecimal amount) {
+    notificationDispatcher.dispatch(result.getFrom(), "Transferred amount " + amount + " to account " + toAccountId);
+    // null while the target node of a cross-shard transfer has not confirmed the credit
+    if (result.getTo() != null)
+      notificationDispatcher.dispatch(result.getTo(), "Received amount " + amount + " from account " + fromAccountId);
   }
-}
\ No newline at end of file
+}
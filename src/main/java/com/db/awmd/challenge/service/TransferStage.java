@@ -0,0 +1,106 @@
+package com.db.awmd.challenge.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs transfers for the asynchronous endpoint on a fixed set of worker threads fed by one bounded queue, so a
+ * request thread only has to enqueue its transfer. When the queue is full the task is refused at once rather than
+ * waiting, which lets the caller answer {@code 503} while the workers catch up.
+ */
+@Service
+public class TransferStage implements PublicMetrics {
+
+  private final ThreadPoolExecutor executor;
+
+  private final long timeoutMillis;
+
+  private final LongAdder completed = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder timedOut = new LongAdder();
+
+  @Autowired
+  public TransferStage(@Value("${transfers.async.workers:0}") int workers,
+                       @Value("${transfers.async.queue-capacity:1024}") int queueCapacity,
+                       @Value("${transfers.async.timeout-millis:5000}") long timeoutMillis) {
+    int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    AtomicInteger counter = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), task -> {
+              Thread thread = new Thread(task, "transfer-stage-" + counter.getAndIncrement());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * How long a request may wait for its transfer, from enqueueing to completion.
+   */
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Queues the task and returns a future completed with its result on a worker thread. If the queue is full, the future
+   * is already completed with a {@link RejectedExecutionException}.
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        try {
+          future.complete(task.get());
+        } catch (Throwable ex) {
+          future.completeExceptionally(ex);
+        } finally {
+          completed.increment();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      rejected.increment();
+      future.completeExceptionally(ex);
+    }
+    return future;
+  }
+
+  public void timedOut() {
+    timedOut.increment();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+            new Metric<>("transfers.async.queue.depth", executor.getQueue().size()),
+            new Metric<>("transfers.async.active", executor.getActiveCount()),
+            new Metric<>("transfers.async.completed", completed.sum()),
+            new Metric<>("transfers.async.rejected", rejected.sum()),
+            new Metric<>("transfers.async.timed-out", timedOut.sum()));
+  }
+
+  /**
+   * Lets the workers finish the transfers already queued before the application stops.
+   */
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+}
@@ -1,17 +1,36 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountAggregates;
+import com.db.awmd.challenge.domain.AccountBalances;
+import com.db.awmd.challenge.domain.BalanceTotal;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.ReadConsistency;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.service.AccountImporter;
 import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/accounts")
@@ -20,9 +39,26 @@ public class AccountsController {
 
   private final AccountsService accountsService;
 
+  private final AccountImporter accountImporter;
+
+  private final TransactionLedger ledger;
+
+  private final BalanceAggregates aggregates;
+
+  private final ObjectMapper objectMapper;
+
+  private final int maxPageSize;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, AccountImporter accountImporter,
+                            TransactionLedger ledger, BalanceAggregates aggregates, ObjectMapper objectMapper,
+                            @Value("${ledger.max-page-size:1000}") int maxPageSize) {
     this.accountsService = accountsService;
+    this.accountImporter = accountImporter;
+    this.ledger = ledger;
+    this.aggregates = aggregates;
+    this.objectMapper = objectMapper;
+    this.maxPageSize = maxPageSize;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -31,13 +67,69 @@ public class AccountsController {
 
     try {
       this.accountsService.createAccount(account);
-    } catch (DuplicateAccountIdException daie) {
-      return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (DuplicateAccountIdException | AmountOutOfRangeException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * Creates one account per line of the request body, read as it arrives. Duplicates and invalid lines are counted
+   * in the summary instead of failing the import.
+   */
+  @PostMapping(path = "/import", consumes = "application/x-ndjson")
+  public ResponseEntity<Object> importNdjson(InputStream body) {
+    return importAccounts(body, AccountImporter.Format.NDJSON);
+  }
+
+  @PostMapping(path = "/import", consumes = "text/csv")
+  public ResponseEntity<Object> importCsv(InputStream body) {
+    return importAccounts(body, AccountImporter.Format.CSV);
+  }
+
+  /**
+   * Reads the accounts from one snapshot, so balances moved between them by a transfer are never counted twice or
+   * not at all.
+   */
+  @GetMapping
+  public ResponseEntity<AccountBalances> getAccounts(@RequestParam("ids") List<String> accountIds) {
+    log.info("Retrieving accounts {}", accountIds);
+    return new ResponseEntity<>(this.accountsService.getAccounts(accountIds), HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/total-balance")
+  public ResponseEntity<BalanceTotal> getTotalBalance() {
+    log.info("Summing the balances of all accounts");
+    return new ResponseEntity<>(this.accountsService.totalBalance(), HttpStatus.OK);
+  }
+
+  /**
+   * Returns the running totals the repository maintains, without reading any account.
+   */
+  @GetMapping(path = "/aggregates")
+  public ResponseEntity<AccountAggregates> getAggregates() {
+    return new ResponseEntity<>(this.aggregates.current(), HttpStatus.OK);
+  }
+
+  /**
+   * Streams every account as one JSON object per line. Nothing but the account being written is held in memory, and
+   * transfers are not blocked while the export runs.
+   */
+  @GetMapping(path = "/export", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> exportAccounts(
+          @RequestParam(defaultValue = "SNAPSHOT") ReadConsistency consistency) {
+    log.info("Exporting accounts with {} consistency", consistency);
+    StreamingResponseBody body = out -> {
+      try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+        json.setRootValueSeparator(new SerializedString("\n"));
+        this.accountsService.forEachAccount(consistency, account -> writeAccount(json, account));
+        json.writeRaw('\n');
+      }
+    };
+    return new ResponseEntity<>(body, HttpStatus.OK);
+  }
+
   @GetMapping(path = "/{accountId}")
   public ResponseEntity<Account> getAccount(@PathVariable String accountId) {
     log.info("Retrieving account for id {}", accountId);
@@ -48,4 +140,71 @@ public class AccountsController {
     }
   }
 
+  /**
+   * Streams the account's transfer legs, newest first. {@code nextCursor} in the response is the {@code cursor} of
+   * the next, older page; it is {@code null} on the last page.
+   */
+  @GetMapping(path = "/{accountId}/transactions", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getTransactions(@PathVariable String accountId,
+                                                               @RequestParam(required = false) Long cursor,
+                                                               @RequestParam(defaultValue = "100") int limit) {
+    log.info("Retrieving transactions for id {} before {}", accountId, cursor);
+    if (limit <= 0 || limit > maxPageSize) {
+      byte[] message = ("Limit must be between 1 and " + maxPageSize).getBytes(StandardCharsets.UTF_8);
+      return new ResponseEntity<>(out -> out.write(message), HttpStatus.BAD_REQUEST);
+    }
+    try {
+      this.accountsService.getAccount(accountId);
+    } catch (AccountNotFoundException e) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+
+    long before = cursor == null ? Long.MAX_VALUE : cursor;
+    StreamingResponseBody body = out -> {
+      try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+        json.writeStartObject();
+        json.writeStringField("accountId", accountId);
+        json.writeArrayFieldStart("transactions");
+        long next = ledger.readPage(accountId, before, limit, entry -> writeEntry(json, entry));
+        json.writeEndArray();
+        if (next > 0)
+          json.writeNumberField("nextCursor", next);
+        else
+          json.writeNullField("nextCursor");
+        json.writeEndObject();
+      }
+    };
+    return new ResponseEntity<>(body, HttpStatus.OK);
+  }
+
+  private ResponseEntity<Object> importAccounts(InputStream body, AccountImporter.Format format) {
+    log.info("Importing accounts from {}", format);
+    try {
+      return new ResponseEntity<>(this.accountImporter.importAccounts(body, format), HttpStatus.OK);
+    } catch (IOException e) {
+      return new ResponseEntity<>("Could not read import: " + e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  private static void writeAccount(JsonGenerator json, Account account) {
+    try {
+      json.writeObject(account);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeEntry(JsonGenerator json, LedgerEntry entry) {
+    try {
+      json.writeStartObject();
+      json.writeNumberField("sequence", entry.getSequence());
+      json.writeNumberField("timestamp", entry.getTimestamp());
+      json.writeStringField("type", entry.getType().name());
+      json.writeStringField("counterpartyId", entry.getCounterpartyId());
+      json.writeNumberField("amount", entry.getAmount());
+      json.writeEndObject();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 }
@@ -0,0 +1,144 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.CrossShardTransfers;
+import com.db.awmd.challenge.cluster.Decision;
+import com.db.awmd.challenge.cluster.PreparedCredit;
+import com.db.awmd.challenge.cluster.ShardedAccountsCluster;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ClusterStatus;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.ClusterException;
+import com.db.awmd.challenge.exception.CreditFailedException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Endpoints the nodes of a cluster call on each other. Each acts on this node's own accounts only and refuses with
+ * {@code 409} what belongs to another node, so a request is never forwarded twice.
+ */
+@RestController
+@RequestMapping("/v1/cluster")
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Slf4j
+public class ClusterController {
+
+  private final ShardedAccountsCluster cluster;
+
+  private final CrossShardTransfers transfers;
+
+  private final AccountsService accountsService;
+
+  private final TransferService transferService;
+
+  @Autowired
+  public ClusterController(ShardedAccountsCluster cluster, CrossShardTransfers transfers,
+                           AccountsService accountsService, TransferService transferService) {
+    this.cluster = cluster;
+    this.transfers = transfers;
+    this.accountsService = accountsService;
+    this.transferService = transferService;
+  }
+
+  /**
+   * Once no transfer is running anywhere and every node reports nothing pending, the balances of all nodes add up to
+   * all the money ever put into accounts.
+   */
+  @GetMapping
+  public ResponseEntity<ClusterStatus> getStatus() {
+    return new ResponseEntity<>(this.cluster.status(), HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/accounts/{accountId}")
+  public ResponseEntity<Object> getAccount(@PathVariable String accountId) {
+    if (!this.cluster.isLocal(accountId))
+      return notOwner(accountId);
+    try {
+      return new ResponseEntity<>(this.accountsService.getAccount(accountId), HttpStatus.OK);
+    } catch (AccountNotFoundException e) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+  }
+
+  @PostMapping(path = "/accounts", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> createAccounts(@RequestBody List<Account> accounts) {
+    for (Account account : accounts) {
+      if (!this.cluster.isLocal(account.getAccountId()))
+        return notOwner(account.getAccountId());
+    }
+    List<CreateAccountStatus> statuses = this.accountsService.createAccounts(accounts);
+    return new ResponseEntity<>(statuses, HttpStatus.OK);
+  }
+
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transfer(@RequestBody TransferDto transfer) {
+    if (!this.cluster.isLocal(transfer.getFromAccountId()))
+      return notOwner(transfer.getFromAccountId());
+    TransferStatus status;
+    try {
+      this.transferService.transfer(transfer.getFromAccountId(), transfer.getToAccountId(), transfer.getAmount());
+      status = TransferStatus.OK;
+    } catch (InsufficientFundsException ex) {
+      status = TransferStatus.INSUFFICIENT_FUNDS;
+    } catch (AccountNotFoundException ex) {
+      status = TransferStatus.ACCOUNT_NOT_FOUND;
+    } catch (AmountOutOfRangeException ex) {
+      status = TransferStatus.AMOUNT_OUT_OF_RANGE;
+    } catch (CreditFailedException ex) {
+      if (!(ex.getCause() instanceof AccountNotFoundException))
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+      status = TransferStatus.ACCOUNT_NOT_FOUND;
+    }
+    return new ResponseEntity<>(status, HttpStatus.OK);
+  }
+
+  @PostMapping(path = "/prepare", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> prepare(@RequestBody PreparedCredit credit) {
+    if (!this.cluster.isLocal(credit.getAccountId()))
+      return notOwner(credit.getAccountId());
+    return new ResponseEntity<>(this.transfers.prepare(credit), HttpStatus.OK);
+  }
+
+  @PostMapping(path = "/commit/{transactionId}")
+  public ResponseEntity<Object> commit(@PathVariable String transactionId) {
+    try {
+      return new ResponseEntity<>(this.transfers.commit(transactionId), HttpStatus.OK);
+    } catch (ClusterException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+  }
+
+  @PostMapping(path = "/abort/{transactionId}")
+  public ResponseEntity<Object> abort(@PathVariable String transactionId) {
+    this.transfers.abort(transactionId);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/decisions/{transactionId}")
+  public ResponseEntity<Decision> getDecision(@PathVariable String transactionId) {
+    return new ResponseEntity<>(this.transfers.decision(transactionId), HttpStatus.OK);
+  }
+
+  private static ResponseEntity<Object> notOwner(String accountId) {
+    log.warn("Refusing a request for account {}, which this node does not own", accountId);
+    return new ResponseEntity<>("Account " + accountId + " belongs to another node", HttpStatus.CONFLICT);
+  }
+}
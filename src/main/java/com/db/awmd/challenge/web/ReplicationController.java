@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.replication.ReplicationManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/v1/replication")
+@ConditionalOnExpression("!'${accounts.replication.role:none}'.equalsIgnoreCase('none')")
+@Slf4j
+public class ReplicationController {
+
+  private final ReplicationManager replicationManager;
+
+  @Autowired
+  public ReplicationController(ReplicationManager replicationManager) {
+    this.replicationManager = replicationManager;
+  }
+
+  @GetMapping
+  public ResponseEntity<ReplicationStatus> getStatus() {
+    return new ResponseEntity<>(this.replicationManager.status(), HttpStatus.OK);
+  }
+
+  /**
+   * Turns this follower into a primary. The old primary must have been stopped first.
+   */
+  @PostMapping(path = "/promote")
+  public ResponseEntity<Object> promote() {
+    log.info("Promoting this follower to primary");
+    try {
+      return new ResponseEntity<>(this.replicationManager.promote(), HttpStatus.OK);
+    } catch (ReplicationException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferDto;
+import com.db.awmd.challenge.scheduling.TransferScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+
+@RestController
+@RequestMapping("/v1/transfer/scheduled")
+@ConditionalOnProperty(name = "transfers.scheduled.enabled", havingValue = "true")
+@Slf4j
+public class ScheduledTransferController {
+
+  private final TransferScheduler transferScheduler;
+
+  @Autowired
+  public ScheduledTransferController(TransferScheduler transferScheduler) {
+    this.transferScheduler = transferScheduler;
+  }
+
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> schedule(@RequestBody @Valid ScheduledTransferDto transfer) {
+    log.info("Scheduling transfer {}", transfer);
+    try {
+      return new ResponseEntity<>(this.transferScheduler.schedule(transfer), HttpStatus.CREATED);
+    } catch (IllegalArgumentException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  @GetMapping(path = "/{id}")
+  public ResponseEntity<ScheduledTransfer> get(@PathVariable String id) {
+    ScheduledTransfer schedule = this.transferScheduler.get(id);
+    if (schedule == null)
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    return new ResponseEntity<>(schedule, HttpStatus.OK);
+  }
+
+  @DeleteMapping(path = "/{id}")
+  public ResponseEntity<Object> cancel(@PathVariable String id) {
+    log.info("Cancelling scheduled transfer {}", id);
+    if (!this.transferScheduler.cancel(id))
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+}
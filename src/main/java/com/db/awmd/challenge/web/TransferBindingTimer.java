@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Stage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Times reading a {@link TransferDto} request body, which happens before the controller is called.
+ */
+@ControllerAdvice
+public class TransferBindingTimer extends RequestBodyAdviceAdapter {
+
+  private static final ThreadLocal<long[]> START = ThreadLocal.withInitial(() -> new long[1]);
+
+  private final TransferMetrics metrics;
+
+  @Autowired
+  public TransferBindingTimer(TransferMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public boolean supports(MethodParameter methodParameter, Type targetType,
+                          Class<? extends HttpMessageConverter<?>> converterType) {
+    return targetType == TransferDto.class;
+  }
+
+  @Override
+  public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                         Class<? extends HttpMessageConverter<?>> converterType) {
+    START.get()[0] = metrics.start();
+    return inputMessage;
+  }
+
+  @Override
+  public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                              Class<? extends HttpMessageConverter<?>> converterType) {
+    metrics.record(Stage.BINDING, START.get()[0]);
+    return body;
+  }
+}
@@ -1,21 +1,36 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.domain.BatchTransferResult;
 import com.db.awmd.challenge.domain.TransferDto;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
 import com.db.awmd.challenge.exception.CreditFailedException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.metrics.TransferMetrics.Stage;
+import com.db.awmd.challenge.service.IdempotencyCache;
 import com.db.awmd.challenge.service.TransferService;
+import com.db.awmd.challenge.service.TransferStage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.validation.Valid;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 @RestController
 @RequestMapping("/v1/transfer")
@@ -24,18 +39,106 @@ public class TransferController {
 
   private final TransferService transferService;
 
+  private final int maxBatchSize;
+
+  private final TransferMetrics metrics;
+
+  private final IdempotencyCache idempotencyCache;
+
+  private final TransferStage transferStage;
+
+  private final int logSampleRate;
+
   @Autowired
-  public TransferController(TransferService transferService) {
+  public TransferController(TransferService transferService,
+                            @Value("${transfers.batch.max-size:10000}") int maxBatchSize,
+                            TransferMetrics metrics, IdempotencyCache idempotencyCache, TransferStage transferStage,
+                            @Value("${transfers.logging.sample-rate:1}") int logSampleRate) {
     this.transferService = transferService;
+    this.maxBatchSize = maxBatchSize;
+    this.metrics = metrics;
+    this.idempotencyCache = idempotencyCache;
+    this.transferStage = transferStage;
+    this.logSampleRate = logSampleRate;
   }
 
+  /**
+   * With an {@code Idempotency-Key} header a retried request gets the response of the first one without moving the
+   * money again. Reusing a key for a different transfer is rejected with {@code 422}.
+   */
   @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> transfer(@RequestBody @Valid TransferDto transferDto) {
-    log.info("Executing transfer {}", transferDto);
+  public ResponseEntity<Object> transfer(@RequestBody @Valid TransferDto transferDto,
+                                         @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+    long start = metrics.start();
+    try {
+      return executeIdempotently(transferDto, idempotencyKey);
+    } finally {
+      metrics.record(Stage.REQUEST, start);
+    }
+  }
+
+  /**
+   * Answers like {@link #transfer}, but frees the request thread while the transfer waits for and runs on a worker of
+   * the {@link TransferStage}. A full queue is answered with {@code 503} at once. A transfer that has not completed
+   * within the stage's timeout is answered with {@code 503} as well; if it had not started by then it is not applied,
+   * otherwise it may still complete, which a retry with the same {@code Idempotency-Key} reveals.
+   */
+  @PutMapping(path = "/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public DeferredResult<ResponseEntity<Object>> transferAsync(
+          @RequestBody @Valid TransferDto transferDto,
+          @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+    long start = metrics.start();
+    DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>(transferStage.getTimeoutMillis(),
+            new ResponseEntity<>("Transfer did not complete within " + transferStage.getTimeoutMillis() + " ms",
+                    HttpStatus.SERVICE_UNAVAILABLE));
+    result.onTimeout(transferStage::timedOut);
+    transferStage.submit(() -> result.isSetOrExpired() ? null : executeIdempotently(transferDto, idempotencyKey))
+            .whenComplete((response, failure) -> {
+              metrics.record(Stage.REQUEST, start);
+              if (failure instanceof RejectedExecutionException)
+                result.setResult(new ResponseEntity<>("Too many transfers queued", HttpStatus.SERVICE_UNAVAILABLE));
+              else if (failure != null)
+                result.setErrorResult(failure);
+              else if (response != null)
+                result.setResult(response);
+            });
+    return result;
+  }
+
+  @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transferBatch(@RequestBody List<TransferDto> transfers,
+                                              @RequestParam(defaultValue = "false") boolean atomic) {
+    log.info("Executing batch of {} transfers, atomic {}", transfers.size(), atomic);
+
+    if (transfers.size() > maxBatchSize)
+      return new ResponseEntity<>("Batch size " + transfers.size() + " exceeds the limit of " + maxBatchSize,
+              HttpStatus.BAD_REQUEST);
+
+    BatchTransferResult result = transferService.transferBatch(transfers, atomic);
+    if (atomic && result.getApplied() < transfers.size())
+      return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+    return new ResponseEntity<>(result, HttpStatus.OK);
+  }
+
+  private ResponseEntity<Object> executeIdempotently(TransferDto transferDto, String idempotencyKey) {
+    try {
+      if (idempotencyKey == null)
+        return executeTransfer(transferDto);
+      return idempotencyCache.execute(idempotencyKey, transferDto, () -> executeTransfer(transferDto));
+    } catch (IdempotencyKeyReusedException ex) {
+      return new ResponseEntity<>(ex.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+  }
+
+  private ResponseEntity<Object> executeTransfer(TransferDto transferDto) {
+    long start = metrics.start();
+    if (logSampleRate == 1 || logSampleRate > 1 && ThreadLocalRandom.current().nextInt(logSampleRate) == 0)
+      log.info("Executing transfer {}", transferDto);
+    metrics.record(Stage.LOGGING, start);
 
     try {
       transferService.transfer(transferDto.getFromAccountId(), transferDto.getToAccountId(), transferDto.getAmount());
-    } catch (AccountNotFoundException | InsufficientFundsException ex) {
+    } catch (AccountNotFoundException | InsufficientFundsException | AmountOutOfRangeException ex) {
       return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     } catch (CreditFailedException ex) {
       if (ex.getCause() instanceof AccountNotFoundException)
@@ -46,4 +149,4 @@ public class TransferController {
 
     return new ResponseEntity<>(HttpStatus.OK);
   }
-}
\ No newline at end of file
+}
@@ -1,29 +1,44 @@
 package com.db.awmd.challenge;
 
+import com.db.awmd.challenge.admission.AdaptiveLimit;
+import com.db.awmd.challenge.admission.AdmissionControl;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferService;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = "ledger.directory=${java.io.tmpdir}/ledger-${random.uuid}")
 @WebAppConfiguration
 public class AccountsControllerTest {
 
@@ -32,6 +47,12 @@ public class AccountsControllerTest {
   @Autowired
   private AccountsService accountsService;
 
+  @Autowired
+  private TransferService transferService;
+
+  @Autowired
+  private AdmissionControl admissionControl;
+
   @Autowired
   private WebApplicationContext webApplicationContext;
 
@@ -92,6 +113,107 @@ public class AccountsControllerTest {
             .content("{\"accountId\":\"\",\"balance\":1000}")).andExpect(status().isBadRequest());
   }
 
+  @Test
+  public void importAccountsFromNdjson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-existing", BigDecimal.ONE));
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("application/x-ndjson")
+            .content("{\"accountId\":\"Id-1\",\"balance\":100}\n" +
+                    "{\"accountId\":\"Id-existing\",\"balance\":5}\n" +
+                    "\n" +
+                    "{\"accountId\":\"Id-2\",\"balance\":-1}\n" +
+                    "not json\n" +
+                    "{\"accountId\":\"Id-3\",\"balance\":0.5}\n"))
+            .andExpect(status().isOk())
+            .andExpect(content().json("{\"created\":2,\"duplicates\":1,\"rejected\":2,\"problems\":[" +
+                    "\"line 4: balance Initial balance must be positive.\",\"line 5: could not parse account\"," +
+                    "\"duplicate account Id-existing\"]}"));
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("0.5");
+    assertThat(accountsService.getAccount("Id-existing").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void importAccountsFromCsv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/import").contentType("text/csv")
+            .content("accountId,balance\nId-1, 100\nId-2,12.5\nId-1,7\n"))
+            .andExpect(status().isOk())
+            .andExpect(content().json("{\"created\":2,\"duplicates\":1,\"rejected\":0}"));
+
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("12.5");
+  }
+
+  @Test
+  public void getSeveralAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+
+    String accounts = this.mockMvc.perform(get("/v1/accounts?ids=Id-2,Id-unknown,Id-1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts[*].accountId", contains("Id-2", "Id-1")))
+            .andExpect(jsonPath("$.notFound", contains("Id-unknown")))
+            .andReturn().getResponse().getContentAsString();
+    assertThat(new BigDecimal(JsonPath.read(accounts, "$.accounts[0].balance").toString())).isEqualByComparingTo("50");
+  }
+
+  @Test
+  public void getTotalBalance() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.5")));
+
+    String total = this.mockMvc.perform(get("/v1/accounts/total-balance"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts").value(2))
+            .andReturn().getResponse().getContentAsString();
+    assertThat(new BigDecimal(JsonPath.read(total, "$.totalBalance").toString())).isEqualByComparingTo("100.5");
+  }
+
+  @Test
+  public void getAggregates() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal(5)));
+    this.transferService.transfer("Id-1", "Id-2", BigDecimal.TEN);
+
+    String aggregates = this.mockMvc.perform(get("/v1/accounts/aggregates"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accounts").value(2))
+            .andExpect(jsonPath("$.balanceDistribution.<10").value(0))
+            .andExpect(jsonPath("$.balanceDistribution.<100").value(2))
+            .andExpect(jsonPath("$.conservationViolations").value(0))
+            .andReturn().getResponse().getContentAsString();
+    assertThat(new BigDecimal(JsonPath.read(aggregates, "$.totalBalance").toString())).isEqualByComparingTo("105");
+  }
+
+  @Test
+  public void exportAccountsAsNdjson() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal("12.5")));
+
+    for (String consistency : new String[]{"WEAK", "SNAPSHOT"}) {
+      MvcResult result = this.mockMvc.perform(get("/v1/accounts/export?consistency=" + consistency))
+              .andExpect(status().isOk())
+              .andExpect(request().asyncStarted())
+              .andReturn();
+      result.getAsyncResult();
+
+      Map<String, BigDecimal> balances = new HashMap<>();
+      for (String line : result.getResponse().getContentAsString().split("\n")) {
+        DocumentContext account = JsonPath.parse(line);
+        balances.put(account.read("$.accountId"), new BigDecimal(account.read("$.balance").toString()));
+      }
+      assertThat(balances).containsOnlyKeys("Id-1", "Id-2");
+      assertThat(balances.get("Id-1")).isEqualByComparingTo("100");
+      assertThat(balances.get("Id-2")).isEqualByComparingTo("12.5");
+    }
+  }
+
+  @Test
+  public void exportAccountsWithUnknownConsistency() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/export?consistency=STRONG"))
+            .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void getAccount() throws Exception {
     String uniqueAccountId = "Id-" + System.currentTimeMillis();
@@ -109,4 +231,55 @@ public class AccountsControllerTest {
     this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId))
             .andExpect(status().isNotFound());
   }
+
+  @Test
+  public void getTransactionsPageByPage() throws Exception {
+    String from = "Id-ledger-from-" + System.nanoTime();
+    String to = "Id-ledger-to-" + System.nanoTime();
+    this.accountsService.createAccount(new Account(from, new BigDecimal(100)));
+    this.accountsService.createAccount(new Account(to, new BigDecimal(100)));
+    for (int amount = 1; amount <= 3; amount++) {
+      this.transferService.transfer(from, to, new BigDecimal(amount));
+    }
+
+    DocumentContext firstPage = transactions("/v1/accounts/" + from + "/transactions?limit=2");
+    assertThat(firstPage.<List<Integer>>read("$.transactions[*].sequence")).containsExactly(2, 1);
+    assertThat(firstPage.<String>read("$.transactions[0].type")).isEqualTo("DEBIT");
+    assertThat(firstPage.<String>read("$.transactions[0].counterpartyId")).isEqualTo(to);
+    assertThat(firstPage.<Integer>read("$.transactions[0].amount")).isEqualTo(3);
+    assertThat(firstPage.<Integer>read("$.nextCursor")).isEqualTo(1);
+
+    DocumentContext lastPage = transactions("/v1/accounts/" + from + "/transactions?limit=2&cursor=1");
+    assertThat(lastPage.<List<Integer>>read("$.transactions[*].sequence")).containsExactly(0);
+    assertThat(lastPage.<Integer>read("$.nextCursor")).isNull();
+  }
+
+  @Test
+  public void getTransactionsGivesItsAdmissionPermitBack() throws Exception {
+    String id = "Id-ledger-" + System.nanoTime();
+    this.accountsService.createAccount(new Account(id, new BigDecimal(100)));
+    AdaptiveLimit reads = this.admissionControl.limitFor("GET");
+    int inFlight = reads.getInFlight();
+
+    for (int i = 0; i < 3; i++) {
+      transactions("/v1/accounts/" + id + "/transactions");
+    }
+
+    assertThat(reads.getInFlight()).isEqualTo(inFlight);
+  }
+
+  @Test
+  public void getTransactionsOfUnknownAccount() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/Id-unknown/transactions"))
+            .andExpect(status().isNotFound());
+  }
+
+  private DocumentContext transactions(String url) throws Exception {
+    MvcResult result = this.mockMvc.perform(get(url))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk());
+    return JsonPath.parse(result.getResponse().getContentAsString());
+  }
 }
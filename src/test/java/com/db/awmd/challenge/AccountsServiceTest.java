@@ -1,6 +1,7 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
 import com.db.awmd.challenge.exception.CreditFailedException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
@@ -11,6 +12,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
@@ -20,6 +22,7 @@ import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = "ledger.directory=${java.io.tmpdir}/ledger-${random.uuid}")
 public class AccountsServiceTest {
 
   @Autowired
@@ -102,4 +105,35 @@ public class AccountsServiceTest {
     Account currentStatus = accountsService.getAccount(accountId);
     assertThat(currentStatus.getBalance()).isEqualByComparingTo("1000");
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldMoveAmountBetweenAccounts() throws CreditFailedException {
+    String fromAccountId = "From-" + System.currentTimeMillis();
+    String toAccountId = "To-" + System.currentTimeMillis();
+    accountsService.createAccount(new Account(fromAccountId, new BigDecimal(1000)));
+    accountsService.createAccount(new Account(toAccountId, new BigDecimal(10)));
+
+    TransferResult result = accountsService.transfer(fromAccountId, toAccountId, new BigDecimal(100));
+
+    assertThat(result.getFrom().getBalance()).isEqualByComparingTo("900");
+    assertThat(result.getTo().getBalance()).isEqualByComparingTo("110");
+    assertThat(accountsService.getAccount(fromAccountId)).isEqualTo(result.getFrom());
+    assertThat(accountsService.getAccount(toAccountId)).isEqualTo(result.getTo());
+  }
+
+  @Test
+  public void shouldWrapMissingTargetAccountInCreditFailedException() {
+    String fromAccountId = "From-" + System.currentTimeMillis();
+    String toAccountId = "To-" + System.currentTimeMillis();
+    accountsService.createAccount(new Account(fromAccountId, new BigDecimal(1000)));
+
+    try {
+      accountsService.transfer(fromAccountId, toAccountId, new BigDecimal(100));
+      fail("should not reach here");
+    } catch (CreditFailedException e) {
+      assertThat(e.getCause()).isInstanceOf(AccountNotFoundException.class);
+    }
+
+    assertThat(accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("1000");
+  }
+}
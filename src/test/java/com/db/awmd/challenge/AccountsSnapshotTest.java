@@ -0,0 +1,148 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsSnapshot;
+import com.db.awmd.challenge.repository.FixedPointAccountsRepository;
+import com.db.awmd.challenge.repository.PartitionedAccountsRepository;
+import com.db.awmd.challenge.repository.TieredAccountsRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class AccountsSnapshotTest {
+
+  private static final int ACCOUNTS = 64;
+
+  @Parameters(name = "{0}")
+  public static List<Object[]> repositories() {
+    return Arrays.asList(
+            new Object[]{"in-memory", (Supplier<AccountsRepository>) AccountsRepositoryInMemory::new},
+            new Object[]{"fixed-point", (Supplier<AccountsRepository>) () -> new FixedPointAccountsRepository(2)},
+            new Object[]{"partitioned", (Supplier<AccountsRepository>) () -> new PartitionedAccountsRepository(4)},
+            // at most 16 of the accounts on the heap, demoted every millisecond while the snapshots are read
+            new Object[]{"tiered", (Supplier<AccountsRepository>) () ->
+                    new TieredAccountsRepository(temporaryDirectory(), 16, 1 << 20, 10, 2, 1)});
+  }
+
+  private final AccountsRepository repository;
+
+  public AccountsSnapshotTest(String name, Supplier<AccountsRepository> repository) {
+    this.repository = repository.get();
+  }
+
+  @After
+  public void shutdown() throws InterruptedException {
+    if (repository instanceof PartitionedAccountsRepository)
+      ((PartitionedAccountsRepository) repository).shutdown();
+    if (repository instanceof TieredAccountsRepository)
+      ((TieredAccountsRepository) repository).shutdown();
+  }
+
+  @Test
+  public void shouldSeeBalancesAsTheyWereWhenOpened() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-2", new BigDecimal(100)));
+
+    try (AccountsSnapshot snapshot = repository.openSnapshot()) {
+      repository.transfer("Id-1", "Id-2", BigDecimal.TEN);
+      repository.creditAccount("Id-2", BigDecimal.ONE);
+      repository.createAccount(new Account("Id-3", BigDecimal.ONE));
+
+      Map<String, BigDecimal> balances = balances(snapshot);
+      assertThat(balances).containsOnlyKeys("Id-1", "Id-2");
+      assertThat(balances.get("Id-1")).isEqualByComparingTo("100");
+      assertThat(balances.get("Id-2")).isEqualByComparingTo("100");
+      assertThat(snapshot.get("Id-1").getBalance()).isEqualByComparingTo("100");
+      assertThat(snapshot.get("Id-3")).isNull();
+    }
+
+    Map<String, BigDecimal> current = new HashMap<>();
+    repository.forEachAccount(account -> current.put(account.getAccountId(), account.getBalance()));
+    assertThat(current.get("Id-1")).isEqualByComparingTo("90");
+    assertThat(current.get("Id-2")).isEqualByComparingTo("111");
+    assertThat(current.get("Id-3")).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void shouldSeeTheTotalConservedWhileTransfersRun() throws Exception {
+    for (int i = 0; i < ACCOUNTS; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+    BigDecimal total = new BigDecimal(1000 * ACCOUNTS);
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<?>[] transfers = new Future<?>[4];
+      for (int t = 0; t < transfers.length; t++) {
+        transfers[t] = executor.submit(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          while (running.get()) {
+            try {
+              repository.transfer("Id-" + random.nextInt(ACCOUNTS), "Id-" + random.nextInt(ACCOUNTS), BigDecimal.ONE);
+            } catch (InsufficientFundsException e) {
+              // an account ran dry, which does not change the total
+            }
+          }
+          return null;
+        });
+      }
+
+      for (int i = 0; i < 200; i++) {
+        try (AccountsSnapshot snapshot = repository.openSnapshot()) {
+          BigDecimal[] sum = {BigDecimal.ZERO};
+          snapshot.forEach(account -> sum[0] = sum[0].add(account.getBalance()));
+          assertThat(sum[0]).isEqualByComparingTo(total);
+        }
+      }
+
+      running.set(false);
+      for (Future<?> transfer : transfers) {
+        transfer.get();
+      }
+    } finally {
+      running.set(false);
+      executor.shutdownNow();
+    }
+  }
+
+  private static Map<String, BigDecimal> balances(AccountsSnapshot snapshot) {
+    Map<String, BigDecimal> balances = new HashMap<>();
+    snapshot.forEach(account -> balances.put(account.getAccountId(), account.getBalance()));
+    return balances;
+  }
+
+  private static String temporaryDirectory() {
+    try {
+      File directory = Files.createTempDirectory("tiered").toFile();
+      directory.deleteOnExit();
+      return directory.getPath();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
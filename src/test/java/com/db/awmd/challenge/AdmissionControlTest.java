@@ -0,0 +1,112 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.admission.AdaptiveLimit;
+import com.db.awmd.challenge.admission.AdmissionControl;
+import com.db.awmd.challenge.admission.AdmissionInterceptor;
+import com.db.awmd.challenge.admission.AdmissionProperties;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdmissionControlTest {
+
+  @Test
+  public void shouldRefuseWritesBeyondTheirLimitWithoutTouchingReads() throws Exception {
+    AdmissionProperties properties = new AdmissionProperties();
+    properties.getWrites().setInitialLimit(2);
+    properties.getWrites().setMinLimit(1);
+    HandlerInterceptor interceptor = interceptor(properties);
+
+    MockHttpServletRequest first = new MockHttpServletRequest("PUT", "/v1/transfer");
+    MockHttpServletRequest second = new MockHttpServletRequest("PUT", "/v1/transfer");
+    assertThat(interceptor.preHandle(first, new MockHttpServletResponse(), null)).isTrue();
+    assertThat(interceptor.preHandle(second, new MockHttpServletResponse(), null)).isTrue();
+
+    MockHttpServletResponse refused = new MockHttpServletResponse();
+    assertThat(interceptor.preHandle(new MockHttpServletRequest("PUT", "/v1/transfer"), refused, null)).isFalse();
+    assertThat(refused.getStatus()).isEqualTo(503);
+    assertThat(refused.getHeader("Retry-After")).isEqualTo("1");
+
+    MockHttpServletRequest read = new MockHttpServletRequest("GET", "/v1/accounts/Id-1");
+    assertThat(interceptor.preHandle(read, new MockHttpServletResponse(), null)).isTrue();
+
+    interceptor.afterCompletion(first, new MockHttpServletResponse(), null, null);
+    assertThat(interceptor.preHandle(new MockHttpServletRequest("POST", "/v1/accounts"),
+            new MockHttpServletResponse(), null)).isTrue();
+  }
+
+  @Test
+  public void shouldAnswerWithConfiguredStatus() throws Exception {
+    AdmissionProperties properties = new AdmissionProperties();
+    properties.setRejectionStatus(429);
+    properties.setRetryAfterSeconds(3);
+    properties.getReads().setInitialLimit(1);
+    properties.getReads().setMinLimit(1);
+    HandlerInterceptor interceptor = interceptor(properties);
+
+    interceptor.preHandle(new MockHttpServletRequest("GET", "/v1/accounts"), new MockHttpServletResponse(), null);
+    MockHttpServletResponse refused = new MockHttpServletResponse();
+    assertThat(interceptor.preHandle(new MockHttpServletRequest("GET", "/v1/accounts"), refused, null)).isFalse();
+    assertThat(refused.getStatus()).isEqualTo(429);
+    assertThat(refused.getHeader("Retry-After")).isEqualTo("3");
+  }
+
+  @Test
+  public void shouldGrowWhileLatencyHoldsAndShrinkWhenItRises() {
+    AdaptiveLimit limit = new AdaptiveLimit(limitProperties());
+
+    complete(limit, 5, 1, 80);
+    int grown = limit.getLimit();
+    assertThat(grown).isGreaterThan(100);
+
+    complete(limit, 5, 10, 80);
+    assertThat(limit.getLimit()).isLessThan(grown * 3 / 4);
+    assertThat(limit.getLimit()).isGreaterThanOrEqualTo(10);
+
+    int shrunk = limit.getLimit();
+    complete(limit, 40, 1, 200);
+    assertThat(limit.getLimit()).isGreaterThan(shrunk);
+  }
+
+  @Test
+  public void shouldNotGrowBeyondWhatTheTrafficUses() {
+    AdaptiveLimit limit = new AdaptiveLimit(limitProperties());
+
+    complete(limit, 20, 1, 3);
+
+    assertThat(limit.getLimit()).isEqualTo(100);
+    assertThat(limit.getAdmitted()).isEqualTo(200);
+    assertThat(limit.getInFlight()).isZero();
+  }
+
+  /**
+   * Completes {@code windows} windows of 10 requests, each taking {@code millis} with {@code inFlight} requests in
+   * progress.
+   */
+  private static void complete(AdaptiveLimit limit, int windows, long millis, int inFlight) {
+    for (int i = 0; i < windows * 10; i++) {
+      assertThat(limit.tryAcquire()).isPositive();
+      limit.release(TimeUnit.MILLISECONDS.toNanos(millis), inFlight);
+    }
+  }
+
+  private static AdmissionProperties.Limit limitProperties() {
+    AdmissionProperties.Limit properties = new AdmissionProperties.Limit();
+    properties.setInitialLimit(100);
+    properties.setMinLimit(10);
+    properties.setMaxLimit(1000);
+    properties.setWindowSamples(10);
+    properties.setWindowMillis(0);
+    return properties;
+  }
+
+  private static HandlerInterceptor interceptor(AdmissionProperties properties) {
+    return new AdmissionInterceptor(new AdmissionControl(properties), properties.getRejectionStatus(),
+            properties.getRetryAfterSeconds());
+  }
+}
@@ -0,0 +1,76 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountAggregates;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.FixedPointAccountsRepository;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceAggregatesTest {
+
+  private final BalanceAggregates aggregates = new BalanceAggregates(true);
+
+  @Test
+  public void shouldFollowCreatesAndTransfers() {
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    repository.setBalanceAggregates(aggregates);
+    repository.createAccount(new Account("Id-1", new BigDecimal("0.5")));
+    repository.createAccount(new Account("Id-2", new BigDecimal(150)));
+
+    repository.transfer("Id-2", "Id-1", new BigDecimal(60));
+    repository.creditAccount("Id-2", new BigDecimal("0.25"));
+
+    AccountAggregates current = aggregates.current();
+    assertThat(current.getAccounts()).isEqualTo(2);
+    assertThat(current.getTotalBalance()).isEqualByComparingTo("150.75");
+    assertThat(current.getBalanceDistribution())
+            .containsEntry("<1", 0L).containsEntry("<100", 2L).containsEntry("<1000", 0L);
+    assertThat(current.getConservationViolations()).isZero();
+  }
+
+  @Test
+  public void shouldFollowFixedPointUnits() {
+    FixedPointAccountsRepository repository = new FixedPointAccountsRepository(2);
+    repository.setBalanceAggregates(aggregates);
+    repository.createAccount(new Account("Id-1", new BigDecimal("0.5")));
+    repository.createAccount(new Account("Id-2", new BigDecimal(1500)));
+
+    repository.transfer("Id-2", "Id-1", new BigDecimal(600));
+    repository.debitAccount("Id-2", new BigDecimal("0.25"));
+
+    AccountAggregates current = aggregates.current();
+    assertThat(current.getTotalBalance()).isEqualByComparingTo("1500.25");
+    assertThat(current.getBalanceDistribution()).containsEntry("<1000", 2L).containsEntry("<10000", 0L);
+    assertThat(current.getConservationViolations()).isZero();
+  }
+
+  @Test
+  public void shouldCountTransfersThatDoNotConserveTheTotal() {
+    aggregates.created(BigDecimal.TEN);
+    aggregates.created(BigDecimal.TEN);
+
+    BigDecimal change = aggregates.moved(BigDecimal.TEN, new BigDecimal(9))
+            .add(aggregates.moved(BigDecimal.TEN, new BigDecimal(12)));
+    aggregates.applied("transfer", change, BigDecimal.ZERO);
+
+    assertThat(aggregates.current().getConservationViolations()).isEqualTo(1);
+    assertThat(aggregates.current().getTotalBalance()).isEqualByComparingTo("21");
+  }
+
+  @Test
+  public void shouldBucketBalancesByMagnitude() {
+    aggregates.created(new BigDecimal("0.99"));
+    aggregates.created(new BigDecimal("1.00"));
+    aggregates.created(new BigDecimal("1E+3"));
+    aggregates.created(new BigDecimal("5000000000"));
+
+    assertThat(aggregates.current().getBalanceDistribution())
+            .containsEntry("<1", 1L).containsEntry("<10", 1L).containsEntry("<10000", 1L)
+            .containsEntry(">=1000000000", 1L).hasSize(11);
+  }
+}
@@ -0,0 +1,330 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.cluster.AccountsCluster;
+import com.db.awmd.challenge.cluster.ClusterClient;
+import com.db.awmd.challenge.cluster.CrossShardTransfers;
+import com.db.awmd.challenge.cluster.Decision;
+import com.db.awmd.challenge.cluster.HashRing;
+import com.db.awmd.challenge.cluster.PreparedCredit;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.ClusterException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.NotificationDispatchProperties;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.TransferService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.validation.Validation;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CrossShardTransfersTest {
+
+  private final AccountsRepositoryInMemory repositoryA = new AccountsRepositoryInMemory();
+
+  private final AccountsRepositoryInMemory repositoryB = new AccountsRepositoryInMemory();
+
+  @Rule
+  public TemporaryFolder folderA = new TemporaryFolder();
+
+  @Rule
+  public TemporaryFolder folderB = new TemporaryFolder();
+
+  private TransactionLedger ledgerA;
+
+  private TransactionLedger ledgerB;
+
+  private final LoopbackClient client = new LoopbackClient();
+
+  private CrossShardTransfers nodeA;
+
+  private CrossShardTransfers nodeB;
+
+  @Before
+  public void setUp() {
+    ledgerA = new TransactionLedger(folderA.getRoot().getPath(), 256, 1000000);
+    ledgerB = new TransactionLedger(folderB.getRoot().getPath(), 256, 1000000);
+    nodeA = new CrossShardTransfers("a", repositoryA, ledgerA, client, 0, 60000);
+    nodeB = new CrossShardTransfers("b", repositoryB, ledgerB, client, 0, 60000);
+    client.nodes.put("a", nodeA);
+    client.nodes.put("b", nodeB);
+    repositoryA.createAccount(new Account("Id-A", new BigDecimal("100")));
+    repositoryB.createAccount(new Account("Id-B", new BigDecimal("10")));
+  }
+
+  @After
+  public void close() throws IOException {
+    ledgerA.close();
+    ledgerB.close();
+  }
+
+  @Test
+  public void shouldMoveMoneyBetweenNodes() {
+    TransferResult result = nodeA.transfer("Id-A", "Id-B", "b", new BigDecimal("40"));
+
+    assertThat(result.getFrom().getBalance()).isEqualByComparingTo("60");
+    assertThat(result.getTo().getBalance()).isEqualByComparingTo("50");
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("50");
+    assertThat(nodeA.pendingDebits().getCount()).isZero();
+    assertThat(nodeB.pendingCredits().getCount()).isZero();
+    List<LedgerEntry> credits = new ArrayList<>();
+    ledgerB.readPage("Id-B", Long.MAX_VALUE, 10, credits::add);
+    assertThat(credits).hasSize(1);
+    assertThat(credits.get(0).getType()).isEqualTo(LedgerEntry.Type.CREDIT);
+    assertThat(credits.get(0).getCounterpartyId()).isEqualTo("Id-A");
+    assertThat(ledgerA.readPage("Id-B", Long.MAX_VALUE, 10, entry -> fail("Credit recorded on the source node")))
+            .isZero();
+  }
+
+  @Test
+  public void shouldRecordOnlyTheDebitOfABatchTransferToAnotherNode() throws InterruptedException {
+    AccountsCluster cluster = new ClusterOfA();
+    AccountsService accountsService = new AccountsService(repositoryA);
+    accountsService.setAccountsCluster(cluster);
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setAsync(false);
+    NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) -> { }, properties);
+    TransferService transferService = new TransferService(accountsService, dispatcher,
+            Validation.buildDefaultValidatorFactory().getValidator(), new TransferMetrics(true, 10, 6, 8), ledgerA);
+    transferService.setAccountsCluster(cluster);
+
+    BatchTransferResult result = transferService.transferBatch(
+            Collections.singletonList(new TransferDto("Id-A", "Id-B", new BigDecimal("40"))), false);
+
+    assertThat(result.getApplied()).isEqualTo(1);
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("50");
+    List<LedgerEntry> debits = new ArrayList<>();
+    ledgerA.readPage("Id-A", Long.MAX_VALUE, 10, debits::add);
+    assertThat(debits).extracting(LedgerEntry::getType).containsExactly(LedgerEntry.Type.DEBIT);
+    assertThat(ledgerA.readPage("Id-B", Long.MAX_VALUE, 10, entry -> fail("Credit recorded on the source node")))
+            .isZero();
+    List<LedgerEntry> credits = new ArrayList<>();
+    ledgerB.readPage("Id-B", Long.MAX_VALUE, 10, credits::add);
+    assertThat(credits).extracting(LedgerEntry::getType).containsExactly(LedgerEntry.Type.CREDIT);
+    dispatcher.shutdown();
+  }
+
+  @Test
+  public void shouldUndoDebitWhenTargetAccountIsMissing() {
+    try {
+      nodeA.transfer("Id-A", "Id-missing", "b", new BigDecimal("40"));
+      fail("Should have failed because the target account does not exist");
+    } catch (AccountNotFoundException ex) {
+      assertThat(ex.getAccountId()).isEqualTo("Id-missing");
+    }
+    assertThat(repositoryA.getAccount("Id-A").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  public void shouldNotAskTargetNodeWithoutFunds() {
+    try {
+      nodeA.transfer("Id-A", "Id-B", "b", new BigDecimal("100.01"));
+      fail("Should have failed because of insufficient funds");
+    } catch (InsufficientFundsException ex) {
+      assertThat(client.prepares).isZero();
+    }
+  }
+
+  @Test
+  public void shouldUndoDebitAndDropCreditWhenPrepareIsNotAnswered() {
+    client.loseAnswerToPrepare = true;
+    try {
+      nodeA.transfer("Id-A", "Id-B", "b", new BigDecimal("40"));
+      fail("Should have failed because the target node did not answer");
+    } catch (ClusterException ex) {
+      assertThat(ex.getMessage()).contains("lost");
+    }
+    assertThat(repositoryA.getAccount("Id-A").getBalance()).isEqualByComparingTo("100");
+    assertThat(nodeB.pendingCredits().getCount()).isZero();
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void shouldApplyCreditAfterAskingForDecisionWhenCommitIsLost() {
+    client.loseCommit = true;
+    nodeA.transfer("Id-A", "Id-B", "b", new BigDecimal("40"));
+    assertThat(nodeB.pendingCredits().getAmount()).isEqualByComparingTo("40");
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("10");
+
+    nodeB.resolve();
+
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("50");
+    assertThat(nodeB.pendingCredits().getCount()).isZero();
+    assertThat(repositoryA.getAccount("Id-A").getBalance()).isEqualByComparingTo("60");
+  }
+
+  @Test
+  public void shouldResendCommitUntilTargetNodeConfirmsIt() throws InterruptedException {
+    nodeA = new CrossShardTransfers("a", repositoryA, ledgerA, client, 60000, 0);
+    client.nodes.put("a", nodeA);
+    client.loseCommit = true;
+    TransferResult result = nodeA.transfer("Id-A", "Id-B", "b", new BigDecimal("40"));
+    assertThat(result.getTo()).isNull();
+
+    // a decision that is not confirmed outlives the retention
+    nodeA.resolve();
+    assertThat(nodeA.decision(client.lastTransactionId)).isEqualTo(Decision.COMMITTED);
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("10");
+
+    client.loseCommit = false;
+    nodeA.resolve();
+    assertThat(repositoryB.getAccount("Id-B").getBalance()).isEqualByComparingTo("50");
+    assertThat(nodeB.pendingCredits().getCount()).isZero();
+    assertThat(nodeB.commit(client.lastTransactionId).getBalance()).isEqualByComparingTo("50");
+    Thread.sleep(1);
+
+    nodeA.resolve();
+    assertThat(nodeA.decision(client.lastTransactionId)).isEqualTo(Decision.ABORTED);
+    assertThat(repositoryA.getAccount("Id-A").getBalance()).isEqualByComparingTo("60");
+  }
+
+  @Test
+  public void shouldPresumeAbortOnlyForTransactionsOfTheCoordinatorsCurrentRun() {
+    try {
+      nodeA.transfer("Id-A", "Id-missing", "b", new BigDecimal("40"));
+      fail("Should have failed because the target account does not exist");
+    } catch (AccountNotFoundException ex) {
+      assertThat(nodeA.decision(client.lastTransactionId)).isEqualTo(Decision.ABORTED);
+    }
+    assertThat(nodeA.decision(client.lastTransactionId + "0")).isEqualTo(Decision.ABORTED);
+    assertThat(nodeA.decision("a-earlier-run-1")).isEqualTo(Decision.PENDING);
+
+    nodeB.abort("a-unknown-2");
+    assertThat(nodeB.prepare(new PreparedCredit("a-unknown-2", "a", "Id-A", "Id-B", BigDecimal.ONE)))
+            .isEqualTo(TransferStatus.ABORTED);
+  }
+
+  @Test
+  public void shouldSpreadAccountsEvenlyAndMoveFewWhenNodeIsAdded() {
+    HashRing three = new HashRing(Arrays.asList("a", "b", "c"), 128);
+    HashRing four = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+    Map<String, Integer> counts = new HashMap<>();
+    int moved = 0;
+    for (int i = 0; i < 30000; i++) {
+      String owner = three.ownerOf("Id-" + i);
+      counts.merge(owner, 1, Integer::sum);
+      String newOwner = four.ownerOf("Id-" + i);
+      if (!newOwner.equals(owner)) {
+        moved++;
+        assertThat(newOwner).isEqualTo("d");
+      }
+    }
+    for (int count : counts.values()) {
+      assertThat(count).isBetween(8000, 12000);
+    }
+    assertThat(moved).isBetween(5000, 10000);
+  }
+
+  /**
+   * The cluster as node a sees it: it owns {@code Id-A} and moves money to the other accounts through node b.
+   */
+  private class ClusterOfA implements AccountsCluster {
+
+    @Override
+    public boolean isLocal(String accountId) {
+      return accountId.equals("Id-A");
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+      return repositoryB.getAccount(accountId);
+    }
+
+    @Override
+    public List<CreateAccountStatus> createAccounts(List<Account> accounts) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransferStatus forwardTransfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransferResult transferOut(String fromAccountId, String toAccountId, BigDecimal amount) {
+      return nodeA.transfer(fromAccountId, toAccountId, "b", amount);
+    }
+  }
+
+  /**
+   * Delivers calls straight to the other node's {@link CrossShardTransfers}, losing some on request.
+   */
+  private static class LoopbackClient implements ClusterClient {
+
+    private final Map<String, CrossShardTransfers> nodes = new HashMap<>();
+
+    private boolean loseAnswerToPrepare;
+
+    private boolean loseCommit;
+
+    private int prepares;
+
+    private String lastTransactionId;
+
+    @Override
+    public Account getAccount(String nodeId, String accountId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<CreateAccountStatus> createAccounts(String nodeId, List<Account> accounts) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransferStatus transfer(String nodeId, TransferDto transfer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransferStatus prepare(String nodeId, PreparedCredit credit) {
+      prepares++;
+      lastTransactionId = credit.getTransactionId();
+      TransferStatus status = nodes.get(nodeId).prepare(credit);
+      if (loseAnswerToPrepare)
+        throw new ClusterException("Answer lost");
+      return status;
+    }
+
+    @Override
+    public Account commit(String nodeId, String transactionId) {
+      if (loseCommit)
+        throw new ClusterException("Commit lost");
+      return nodes.get(nodeId).commit(transactionId);
+    }
+
+    @Override
+    public void abort(String nodeId, String transactionId) {
+      nodes.get(nodeId).abort(transactionId);
+    }
+
+    @Override
+    public Decision decision(String nodeId, String transactionId) {
+      return nodes.get(nodeId).decision(transactionId);
+    }
+  }
+}
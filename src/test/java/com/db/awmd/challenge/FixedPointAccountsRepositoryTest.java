@@ -0,0 +1,214 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.CreateAccountStatus;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.AmountOutOfRangeException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.repository.FixedPointAccountsRepository;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FixedPointAccountsRepositoryTest {
+
+  private final FixedPointAccountsRepository repository = new FixedPointAccountsRepository(2);
+
+  @Test
+  public void shouldReportStatusPerAccountOfBulkCreate() {
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+
+    List<CreateAccountStatus> statuses = repository.createAccounts(Arrays.asList(
+            new Account("Id-1", BigDecimal.TEN),
+            new Account("Id-2", new BigDecimal("0.001")),
+            new Account("Id-3", new BigDecimal("2.50"))));
+
+    assertThat(statuses).containsExactly(
+            CreateAccountStatus.DUPLICATE, CreateAccountStatus.AMOUNT_OUT_OF_RANGE, CreateAccountStatus.CREATED);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("1");
+    assertThat(repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("2.5");
+  }
+
+  @Test
+  public void shouldFindEveryIdAfterTheIndexGrew() {
+    int accounts = 150_000;
+    for (int i = 0; i < accounts; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(i + 1)));
+    }
+    repository.createAccount(new Account("Konto-\u00e4\u00f6\u00fc-\u20ac", BigDecimal.TEN));
+
+    for (int i = 0; i < accounts; i += 7) {
+      assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(new BigDecimal(i + 1));
+    }
+    assertThat(repository.getAccount("Konto-\u00e4\u00f6\u00fc-\u20ac").getBalance()).isEqualByComparingTo("10");
+    try {
+      repository.getAccount("Konto-\u00e4\u00f6\u00fc-");
+      fail("Should have failed for a prefix of an existing id");
+    } catch (AccountNotFoundException ex) {
+      assertThat(ex.getAccountId()).isEqualTo("Konto-\u00e4\u00f6\u00fc-");
+    }
+
+    Set<String> ids = new HashSet<>();
+    repository.forEachAccount(account -> ids.add(account.getAccountId()));
+    assertThat(ids).hasSize(accounts + 1).contains("Id-0", "Id-149999", "Konto-\u00e4\u00f6\u00fc-\u20ac");
+  }
+
+  @Test
+  public void shouldReturnBalanceAtConfiguredScale() {
+    repository.createAccount(new Account("Id-1", new BigDecimal("123.4")));
+
+    Account account = repository.getAccount("Id-1");
+
+    assertThat(account.getAccountId()).isEqualTo("Id-1");
+    assertThat(account.getBalance()).isEqualTo(new BigDecimal("123.40"));
+  }
+
+  @Test
+  public void shouldDebitAndCreditExactAmounts() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+
+    repository.debitAccount("Id-1", new BigDecimal("0.01"));
+    Account updated = repository.creditAccount("Id-1", new BigDecimal("10.5"));
+
+    assertThat(updated.getBalance()).isEqualByComparingTo("1010.49");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("1010.49");
+  }
+
+  @Test
+  public void shouldFailOnDuplicateId() {
+    repository.createAccount(new Account("Id-1"));
+
+    try {
+      repository.createAccount(new Account("Id-1"));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-1 already exists!");
+    }
+  }
+
+  @Test(expected = AccountNotFoundException.class)
+  public void shouldThrowException_whenAccountDoesNotExist() {
+    repository.debitAccount("Id-1", BigDecimal.ONE);
+  }
+
+  @Test
+  public void shouldNotAllowOverdraft() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+    try {
+      repository.debitAccount("Id-1", new BigDecimal(100));
+      fail("should not reach here");
+    } catch (InsufficientFundsException e) {
+      assertThat(e.getMessage()).isEqualTo("Overdrafts are not supported");
+    }
+
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test(expected = AmountOutOfRangeException.class)
+  public void shouldRejectAmountsThatNeedRounding() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+    repository.creditAccount("Id-1", new BigDecimal("0.001"));
+  }
+
+  @Test
+  public void shouldRejectCreditThatOverflows() {
+    BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+    repository.createAccount(new Account("Id-1", max));
+
+    try {
+      repository.creditAccount("Id-1", new BigDecimal("0.01"));
+      fail("should not reach here");
+    } catch (AmountOutOfRangeException e) {
+      assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo(max);
+    }
+  }
+
+  @Test
+  public void shouldForgetAccountsWhenCleared() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+    repository.clearAccounts();
+    repository.createAccount(new Account("Id-2", new BigDecimal(5)));
+
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("5");
+    try {
+      repository.getAccount("Id-1");
+      fail("should not reach here");
+    } catch (AccountNotFoundException e) {
+      assertThat(e.getMessage()).isEqualTo("AccountId Id-1 does not exist or is invalid");
+    }
+  }
+
+  @Test
+  public void shouldApplyBothLegsOfTransfer() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-2", new BigDecimal(5)));
+
+    TransferResult result = repository.transfer("Id-1", "Id-2", new BigDecimal("10.25"));
+
+    assertThat(result.getFrom().getBalance()).isEqualByComparingTo("89.75");
+    assertThat(result.getTo().getBalance()).isEqualByComparingTo("15.25");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("89.75");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("15.25");
+  }
+
+  @Test
+  public void shouldNotDebit_whenTransferTargetDoesNotExist() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+
+    try {
+      repository.transfer("Id-1", "Id-2", BigDecimal.TEN);
+      fail("should not reach here");
+    } catch (AccountNotFoundException e) {
+      assertThat(e.getAccountId()).isEqualTo("Id-2");
+    }
+
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  public void shouldApplyBatchInOrder() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-2", new BigDecimal(5)));
+
+    List<TransferResult> results = repository.transferBatch(Arrays.asList(
+            new TransferDto("Id-2", "Id-1", new BigDecimal(10)),
+            new TransferDto("Id-1", "Id-2", new BigDecimal(60)),
+            new TransferDto("Id-2", "Id-1", new BigDecimal(10)),
+            new TransferDto("Id-1", "Id-3", new BigDecimal(1))), false);
+
+    assertThat(results).extracting(TransferResult::getStatus).containsExactly(
+            TransferStatus.INSUFFICIENT_FUNDS, TransferStatus.OK, TransferStatus.OK, TransferStatus.ACCOUNT_NOT_FOUND);
+    assertThat(results.get(2).getTo().getBalance()).isEqualByComparingTo("50");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("50");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("55");
+  }
+
+  @Test
+  public void shouldLeaveBalancesUntouched_whenAtomicBatchIsRejected() {
+    repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+    repository.createAccount(new Account("Id-2", new BigDecimal(5)));
+
+    List<TransferResult> results = repository.transferBatch(Arrays.asList(
+            new TransferDto("Id-1", "Id-2", new BigDecimal(60)),
+            new TransferDto("Id-1", "Id-2", new BigDecimal("0.001"))), true);
+
+    assertThat(results).extracting(TransferResult::getStatus).containsExactly(
+            TransferStatus.ABORTED, TransferStatus.AMOUNT_OUT_OF_RANGE);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("5");
+  }
+}
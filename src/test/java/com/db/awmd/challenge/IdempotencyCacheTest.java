@@ -0,0 +1,102 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IdempotencyCacheTest {
+
+  @Test
+  public void shouldExecuteOnceForConcurrentRetries() throws Exception {
+    IdempotencyCache cache = new IdempotencyCache(100, 60);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<String>> outcomes = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      outcomes.add(executor.submit(() -> {
+        start.await();
+        return cache.execute("key", "request", () -> "outcome-" + executions.incrementAndGet());
+      }));
+    }
+    start.countDown();
+
+    for (Future<String> outcome : outcomes) {
+      assertThat(outcome.get()).isEqualTo("outcome-1");
+    }
+    assertThat(executions.get()).isEqualTo(1);
+    executor.shutdown();
+  }
+
+  @Test
+  public void shouldRejectKeyReusedForAnotherRequest() {
+    IdempotencyCache cache = new IdempotencyCache(100, 60);
+    cache.execute("key", "request", () -> "outcome");
+
+    try {
+      cache.execute("key", "other request", () -> "other outcome");
+      fail("Should have rejected the reused key");
+    } catch (IdempotencyKeyReusedException ex) {
+      assertThat(ex.getMessage()).contains("key");
+    }
+  }
+
+  @Test
+  public void shouldForgetOldestKeysBeyondCapacity() {
+    IdempotencyCache cache = new IdempotencyCache(2, 60);
+    cache.execute("key-1", "request", () -> "first");
+    cache.execute("key-2", "request", () -> "first");
+    cache.execute("key-3", "request", () -> "first");
+
+    assertThat(cache.execute("key-1", "request", () -> "second")).isEqualTo("second");
+    assertThat(cache.execute("key-3", "request", () -> "second")).isEqualTo("first");
+  }
+
+  @Test
+  public void shouldKeepKeysOfRunningRequestsBeyondCapacity() {
+    IdempotencyCache cache = new IdempotencyCache(1, 60);
+    AtomicInteger executions = new AtomicInteger();
+
+    cache.execute("key-1", "request", () -> {
+      executions.incrementAndGet();
+      // over capacity while key-1 is still running
+      return cache.execute("key-2", "request", () -> "second");
+    });
+
+    assertThat(cache.execute("key-1", "request", () -> "again-" + executions.incrementAndGet())).isEqualTo("second");
+    assertThat(executions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldForgetExpiredKeys() throws InterruptedException {
+    IdempotencyCache cache = new IdempotencyCache(100, 0);
+    cache.execute("key", "request", () -> "first");
+    Thread.sleep(1);
+
+    assertThat(cache.execute("key", "request", () -> "second")).isEqualTo("second");
+  }
+
+  @Test
+  public void shouldForgetKeyWhenActionFails() {
+    IdempotencyCache cache = new IdempotencyCache(100, 60);
+    try {
+      cache.execute("key", "request", () -> {
+        throw new IllegalStateException("failed");
+      });
+      fail("Should have propagated the failure");
+    } catch (IllegalStateException ex) {
+      assertThat(cache.execute("key", "request", () -> "retried")).isEqualTo("retried");
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldReportPercentilesWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MINUTES.toNanos(1), 2);
+    for (long nanos = 1; nanos <= 100_000; nanos++) {
+      histogram.record(nanos * 1000);
+    }
+
+    long[] values = histogram.countAndPercentiles(50, 99, 99.9);
+
+    assertThat(values[0]).isEqualTo(100_000);
+    assertThat((double) values[1]).isCloseTo(50_000_000, within(50_000_000 * 0.04));
+    assertThat((double) values[2]).isCloseTo(99_000_000, within(99_000_000 * 0.04));
+    assertThat((double) values[3]).isCloseTo(99_900_000, within(99_900_000 * 0.04));
+  }
+
+  @Test
+  public void shouldCountSmallValuesExactly() {
+    LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MINUTES.toNanos(1), 1);
+    histogram.record(3);
+    histogram.record(7);
+    histogram.record(63);
+
+    assertThat(histogram.countAndPercentiles(0, 50, 100)).containsExactly(3, 3, 7, 63);
+  }
+
+  @Test
+  public void shouldForgetValuesOutsideTheWindow() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MILLISECONDS.toNanos(20), 2);
+    histogram.record(Long.MAX_VALUE);
+
+    Thread.sleep(100);
+    histogram.record(1000);
+
+    assertThat(histogram.countAndPercentiles(100)).containsExactly(1, 1000);
+  }
+}
@@ -0,0 +1,108 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.audit.AuditReader;
+import com.db.awmd.challenge.audit.AuditRecord;
+import com.db.awmd.challenge.audit.MappedAuditRing;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AuditException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedAuditRingTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldDecodeRecordsAndContinueAfterReopening() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("audit/transfers.ring");
+    try (MappedAuditRing ring = MappedAuditRing.open(file, 16)) {
+      ring.transfer("Id-1", "Id-2", new BigDecimal("100.25"), TransferStatus.OK);
+      ring.transfer("Id-2", "Id-1", new BigDecimal("1E+3"), TransferStatus.INSUFFICIENT_FUNDS);
+      ring.transferFailed("Id-1", "Id-3", BigDecimal.ONE);
+    }
+    try (MappedAuditRing ring = MappedAuditRing.open(file, 16)) {
+      ring.transfer("Kont\u00f8-\u20ac-\ud834\udd1e", "Id-2", new BigDecimal("12345678901234567890.5"),
+              TransferStatus.ACCOUNT_NOT_FOUND);
+    }
+
+    List<AuditRecord> records = AuditReader.read(file);
+    assertThat(records).extracting(AuditRecord::getSequence).containsExactly(1L, 2L, 3L, 4L);
+    assertThat(records.get(0).getFromAccountId()).isEqualTo("Id-1");
+    assertThat(records.get(0).getToAccountId()).isEqualTo("Id-2");
+    assertThat(records.get(0).getAmount()).isEqualByComparingTo("100.25");
+    assertThat(records.get(0).getOutcome()).isEqualTo("OK");
+    assertThat(records.get(1).getAmount()).isEqualByComparingTo("1000");
+    assertThat(records.get(1).getOutcome()).isEqualTo("INSUFFICIENT_FUNDS");
+    assertThat(records.get(2).getOutcome()).isEqualTo("FAILED");
+    assertThat(records.get(3).getFromAccountId()).isEqualTo("Kont\u00f8-\u20ac-\ud834\udd1e");
+    assertThat(records.get(3).getAmount()).isNull();
+    assertThat(records.get(0).getTimestamp()).isNotNull();
+  }
+
+  @Test
+  public void shouldOverwriteOldestRecordsAndTruncateLongIds() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("transfers.ring");
+    String longId = new String(new char[60]).replace('\0', 'x');
+    try (MappedAuditRing ring = MappedAuditRing.open(file, 4)) {
+      for (int i = 1; i <= 10; i++) {
+        ring.transfer("Id-" + i, longId, BigDecimal.valueOf(i), TransferStatus.OK);
+      }
+    }
+
+    List<AuditRecord> records = AuditReader.read(file);
+    assertThat(records).extracting(AuditRecord::getSequence).containsExactly(7L, 8L, 9L, 10L);
+    assertThat(records.get(3).getFromAccountId()).isEqualTo("Id-10");
+    assertThat(records.get(3).getToAccountId()).isEqualTo(longId.substring(0, 48) + "...");
+  }
+
+  @Test
+  public void shouldRejectReopeningWithDifferentCapacity() {
+    Path file = folder.getRoot().toPath().resolve("transfers.ring");
+    MappedAuditRing.open(file, 4).close();
+    try {
+      MappedAuditRing.open(file, 8);
+      fail("Should have failed because the capacity differs");
+    } catch (AuditException ex) {
+      assertThat(ex.getMessage()).contains("capacity of 4");
+    }
+  }
+
+  @Test
+  public void shouldKeepEveryRecordOfConcurrentWriters() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("transfers.ring");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (MappedAuditRing ring = MappedAuditRing.open(file, 1 << 14)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        String from = "Id-" + t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 2000; i++) {
+            ring.transfer(from, "Id-to", new BigDecimal("0.01"), TransferStatus.OK);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    executor.shutdown();
+
+    List<AuditRecord> records = AuditReader.read(file);
+    assertThat(records).hasSize(8000);
+    assertThat(records.get(7999).getSequence()).isEqualTo(8000);
+    assertThat(records).extracting(AuditRecord::getAmount).containsOnly(new BigDecimal("0.01"));
+  }
+}
@@ -0,0 +1,175 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.journal.AccountsRecovery;
+import com.db.awmd.challenge.journal.Durability;
+import com.db.awmd.challenge.journal.JournalVisitor;
+import com.db.awmd.challenge.journal.MappedFileJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedFileJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldReplayRecordsAfterReopening() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 1024 * 1024, Durability.SYNC, 1)) {
+      journal.awaitDurable(journal.appendCreate("Id-1", new BigDecimal("100.50")));
+      journal.appendCreate("Id-2", BigDecimal.ZERO);
+      journal.appendTransfer("Id-1", "Id-2", new BigDecimal("0.25"));
+      journal.appendDebit("Id-1", BigDecimal.ONE);
+      journal.appendCredit("Id-2", new BigDecimal("12345678901234567890.123"));
+      journal.awaitDurable(journal.appendClear());
+    }
+
+    List<String> records = new ArrayList<>();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 1024 * 1024, Durability.SYNC, 1)) {
+      journal.replay(new RecordingVisitor(records));
+    }
+
+    assertThat(records).containsExactly(
+            "create Id-1 100.50",
+            "create Id-2 0",
+            "transfer Id-1 Id-2 0.25",
+            "debit Id-1 1",
+            "credit Id-2 12345678901234567890.123",
+            "clear");
+  }
+
+  @Test
+  public void shouldRollOverToNewSegments() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 1024, Durability.ASYNC, 1)) {
+      for (int i = 0; i < 200; i++) {
+        journal.appendTransfer("From-" + i, "To-" + i, BigDecimal.valueOf(i));
+      }
+      assertThat(journal.position()).isGreaterThan(1024 * 5);
+    }
+
+    List<String> records = new ArrayList<>();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 1024, Durability.ASYNC, 1)) {
+      journal.replay(new RecordingVisitor(records));
+    }
+
+    assertThat(folder.getRoot().list().length).isGreaterThan(5);
+    assertThat(records).hasSize(200);
+    assertThat(records.get(199)).isEqualTo("transfer From-199 To-199 199");
+  }
+
+  @Test
+  public void shouldIgnoreTornRecordAndAppendAfterLastCompleteOne() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    long end;
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 4096, Durability.SYNC, 0)) {
+      journal.appendCreate("Id-1", BigDecimal.TEN);
+      end = journal.appendCreate("Id-2", BigDecimal.TEN);
+      journal.appendCreate("Id-3", BigDecimal.TEN);
+    }
+    File segment = folder.getRoot().listFiles()[0];
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(end + 10);
+      file.write(0x7f);
+    }
+
+    List<String> records = new ArrayList<>();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 4096, Durability.SYNC, 0)) {
+      assertThat(journal.position()).isEqualTo(end);
+      journal.appendCreate("Id-4", BigDecimal.ONE);
+      journal.replay(new RecordingVisitor(records));
+    }
+
+    assertThat(records).containsExactly("create Id-1 10", "create Id-2 10", "create Id-4 1");
+  }
+
+  @Test
+  public void shouldRestoreRepositoryFromConcurrentlyWrittenJournal() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 64 * 1024, Durability.SYNC, 1)) {
+      repository.attachJournal(journal);
+      for (int i = 0; i < 10; i++) {
+        repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        tasks.add(executor.submit(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int i = 0; i < 500; i++) {
+            try {
+              repository.transfer("Id-" + random.nextInt(10), "Id-" + random.nextInt(10),
+                      BigDecimal.valueOf(random.nextInt(300)));
+            } catch (RuntimeException e) {
+              // insufficient funds are expected and leave no record
+            }
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+      executor.shutdown();
+    }
+
+    AccountsRepositoryInMemory restored = new AccountsRepositoryInMemory();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, 64 * 1024, Durability.SYNC, 1)) {
+      new AccountsRecovery().recover(directory, journal, restored);
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(restored.getAccount("Id-" + i)).isEqualTo(repository.getAccount("Id-" + i));
+    }
+  }
+
+  private static class RecordingVisitor implements JournalVisitor {
+
+    private final List<String> records;
+
+    RecordingVisitor(List<String> records) {
+      this.records = records;
+    }
+
+    @Override
+    public void onCreate(long position, String accountId, BigDecimal balance) {
+      records.add("create " + accountId + " " + balance.toPlainString());
+    }
+
+    @Override
+    public void onDebit(long position, String accountId, BigDecimal amount) {
+      records.add("debit " + accountId + " " + amount.toPlainString());
+    }
+
+    @Override
+    public void onCredit(long position, String accountId, BigDecimal amount) {
+      records.add("credit " + accountId + " " + amount.toPlainString());
+    }
+
+    @Override
+    public void onTransfer(long position, String fromAccountId, String toAccountId, BigDecimal amount) {
+      records.add("transfer " + fromAccountId + " " + toAccountId + " " + amount.toPlainString());
+    }
+
+    @Override
+    public void onClear(long position) {
+      records.add("clear");
+    }
+  }
+}
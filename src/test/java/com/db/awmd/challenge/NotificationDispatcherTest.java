@@ -0,0 +1,142 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.NotificationDispatchProperties;
+import com.db.awmd.challenge.service.NotificationDispatchProperties.OverflowPolicy;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+public class NotificationDispatcherTest {
+
+  private final NotificationService notificationService = Mockito.mock(NotificationService.class);
+
+  private NotificationDispatcher dispatcher;
+
+  @After
+  public void shutdown() throws InterruptedException {
+    if (dispatcher != null)
+      dispatcher.shutdown();
+  }
+
+  @Test
+  public void shouldRejectAsyncConfigurationWithoutWorkers() {
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setWorkers(0);
+    try {
+      new NotificationDispatcher(notificationService, properties);
+      fail("Should have rejected a dispatcher without workers");
+    } catch (IllegalArgumentException ex) {
+      assertThat(ex.getMessage()).contains("Workers");
+    }
+  }
+
+  @Test
+  public void shouldIgnoreWorkersWhenSendingOnTheTransferThread() {
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setAsync(false);
+    properties.setWorkers(0);
+    dispatcher = new NotificationDispatcher(notificationService, properties);
+    Account account = new Account("Id-1", BigDecimal.TEN);
+
+    dispatcher.dispatch(account, "inline");
+
+    verify(notificationService).notifyAboutTransfer(account, "inline");
+  }
+
+  @Test
+  public void shouldCoalesceNotificationsForOneAccountWithinAWindow() {
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setWorkers(1);
+    properties.setCoalesceWindowMillis(200);
+    dispatcher = new NotificationDispatcher(notificationService, properties);
+    Account account = new Account("Id-1", BigDecimal.TEN);
+
+    dispatcher.dispatch(account, "first");
+    dispatcher.dispatch(account, "second");
+
+    verify(notificationService, Mockito.timeout(2000)).notifyAboutTransfer(account, "first\nsecond");
+    assertThat(metric("notifications.coalesced")).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldRunOnCallerWhenQueueIsFull() throws InterruptedException {
+    CountDownLatch release = blockWorker();
+    dispatcher = new NotificationDispatcher(notificationService, singleSlot(OverflowPolicy.CALLER_RUNS));
+    Account account = new Account("Id-1", BigDecimal.TEN);
+
+    dispatcher.dispatch(account, "taken by worker");
+    waitUntilQueueIsEmpty();
+    dispatcher.dispatch(account, "queued");
+    dispatcher.dispatch(new Account("Id-2", BigDecimal.ONE), "overflow");
+    release.countDown();
+
+    assertThat(metric("notifications.caller-runs")).isEqualTo(1L);
+    verify(notificationService, Mockito.timeout(2000).times(3)).notifyAboutTransfer(any(Account.class), anyString());
+  }
+
+  @Test
+  public void shouldCountDroppedNotifications() throws InterruptedException {
+    CountDownLatch release = blockWorker();
+    dispatcher = new NotificationDispatcher(notificationService, singleSlot(OverflowPolicy.DROP_NEWEST));
+    Account account = new Account("Id-1", BigDecimal.TEN);
+
+    dispatcher.dispatch(account, "taken by worker");
+    waitUntilQueueIsEmpty();
+    dispatcher.dispatch(account, "queued");
+    dispatcher.dispatch(account, "dropped");
+    release.countDown();
+
+    assertThat(metric("notifications.dropped")).isEqualTo(1L);
+    verify(notificationService, Mockito.timeout(2000)).notifyAboutTransfer(account, "queued");
+    verify(notificationService, Mockito.never()).notifyAboutTransfer(account, "dropped");
+  }
+
+  private NotificationDispatchProperties singleSlot(OverflowPolicy policy) {
+    NotificationDispatchProperties properties = new NotificationDispatchProperties();
+    properties.setWorkers(1);
+    properties.setQueueCapacity(1);
+    properties.setOverflowPolicy(policy);
+    return properties;
+  }
+
+  private CountDownLatch blockWorker() {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      if (!Thread.currentThread().getName().startsWith("notification-dispatcher"))
+        return null;
+      release.await(2, TimeUnit.SECONDS);
+      return null;
+    }).when(notificationService).notifyAboutTransfer(any(Account.class), anyString());
+    return release;
+  }
+
+  private void waitUntilQueueIsEmpty() throws InterruptedException {
+    while (metric("notifications.queue.depth") > 0) {
+      Thread.sleep(5);
+    }
+    Thread.sleep(50);
+  }
+
+  private long metric(String name) {
+    for (Metric<?> metric : dispatcher.metrics()) {
+      if (metric.getName().equals(name))
+        return metric.getValue().longValue();
+    }
+    throw new IllegalArgumentException(name);
+  }
+}
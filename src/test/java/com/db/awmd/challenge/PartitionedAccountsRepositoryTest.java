@@ -0,0 +1,136 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.repository.PartitionedAccountsRepository;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class PartitionedAccountsRepositoryTest {
+
+  private static final int ACCOUNTS = 32;
+
+  private final PartitionedAccountsRepository repository = new PartitionedAccountsRepository(4);
+
+  @After
+  public void shutdown() throws InterruptedException {
+    repository.shutdown();
+  }
+
+  @Test
+  public void shouldTransferWithinAndAcrossPartitions() {
+    createAccounts(100);
+
+    for (int i = 1; i < ACCOUNTS; i++) {
+      TransferResult result = repository.transfer("Id-0", "Id-" + i, BigDecimal.ONE);
+      assertThat(result.getTo().getBalance()).isEqualByComparingTo("101");
+    }
+
+    assertThat(repository.getAccount("Id-0").getBalance()).isEqualByComparingTo("69");
+  }
+
+  @Test
+  public void shouldRejectDuplicateAccount() {
+    repository.createAccount(new Account("Id-1", BigDecimal.TEN));
+    try {
+      repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    }
+  }
+
+  @Test
+  public void shouldLeaveBalancesUntouchedWhenTransferIsRejected() {
+    createAccounts(10);
+
+    for (int i = 1; i < ACCOUNTS; i++) {
+      try {
+        repository.transfer("Id-0", "Id-" + i, BigDecimal.TEN);
+        fail("Should have failed because of insufficient funds");
+      } catch (InsufficientFundsException ex) {
+        assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("10");
+      }
+    }
+    try {
+      repository.transfer("Id-0", "Id-Unknown", BigDecimal.ONE);
+      fail("Should have failed because the target does not exist");
+    } catch (AccountNotFoundException ex) {
+      assertThat(ex.getAccountId()).isEqualTo("Id-Unknown");
+    }
+    assertThat(repository.getAccount("Id-0").getBalance()).isEqualByComparingTo("10");
+  }
+
+  @Test
+  public void shouldAbortAtomicBatchAcrossPartitions() {
+    createAccounts(10);
+
+    List<TransferResult> results = repository.transferBatch(Arrays.asList(
+            new TransferDto("Id-0", "Id-1", new BigDecimal(5)),
+            new TransferDto("Id-2", "Id-3", new BigDecimal(5)),
+            new TransferDto("Id-4", "Id-5", new BigDecimal(50))), true);
+
+    assertThat(results).extracting(TransferResult::getStatus).containsExactly(
+            TransferStatus.ABORTED, TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_FUNDS);
+    for (int i = 0; i < 6; i++) {
+      assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("10");
+    }
+  }
+
+  @Test
+  public void shouldConserveMoneyUnderConcurrentTransfers() throws Exception {
+    createAccounts(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(executor.submit(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 2000; i++) {
+          String from = "Id-" + random.nextInt(ACCOUNTS);
+          String to = "Id-" + random.nextInt(ACCOUNTS);
+          try {
+            if (i % 100 == 0)
+              repository.transferBatch(Arrays.asList(new TransferDto(from, to, BigDecimal.ONE),
+                      new TransferDto(to, from, BigDecimal.TEN)), false);
+            else
+              repository.transfer(from, to, new BigDecimal(random.nextInt(1, 20)));
+          } catch (InsufficientFundsException ignored) {
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < ACCOUNTS; i++) {
+      total = total.add(repository.getAccount("Id-" + i).getBalance());
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+  }
+
+  private void createAccounts(int balance) {
+    for (int i = 0; i < ACCOUNTS; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(balance)));
+    }
+  }
+}
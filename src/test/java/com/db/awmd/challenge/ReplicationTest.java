@@ -0,0 +1,177 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ReplicationStatus;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ReplicationException;
+import com.db.awmd.challenge.journal.AccountsJournal;
+import com.db.awmd.challenge.replication.ReplicationClient;
+import com.db.awmd.challenge.replication.ReplicationLog;
+import com.db.awmd.challenge.replication.ReplicationManager;
+import com.db.awmd.challenge.replication.ReplicationProperties;
+import com.db.awmd.challenge.replication.ReplicationRole;
+import com.db.awmd.challenge.replication.ReplicationServer;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ReplicationTest {
+
+  private final List<AutoCloseable> closeables = new ArrayList<>();
+
+  @After
+  public void close() throws Exception {
+    for (AutoCloseable closeable : closeables) {
+      closeable.close();
+    }
+  }
+
+  @Test
+  public void shouldShipSnapshotAndLaterChangesToFollower() throws Exception {
+    AccountsRepositoryInMemory primary = new AccountsRepositoryInMemory();
+    ReplicationLog log = new ReplicationLog(AccountsJournal.NONE);
+    primary.attachJournal(log);
+    primary.createAccount(new Account("Id-1", new BigDecimal("100")));
+    primary.createAccount(new Account("Id-2", new BigDecimal("50")));
+    ReplicationServer server = closeLater(new ReplicationServer(primary, log, 2, 1000));
+    server.start(0);
+
+    AccountsRepositoryInMemory follower = new AccountsRepositoryInMemory();
+    follower.createAccount(new Account("Stale", BigDecimal.ONE));
+    ReplicationClient client = closeLater(new ReplicationClient(follower, "localhost", server.getPort(), 50));
+    client.start();
+    await(() -> client.getState() == ReplicationClient.State.STREAMING);
+
+    primary.transfer("Id-1", "Id-2", new BigDecimal("30.5"));
+    primary.createAccount(new Account("Id-3", BigDecimal.TEN));
+    primary.creditAccount("Id-3", BigDecimal.ONE);
+    primary.debitAccount("Id-2", new BigDecimal("0.5"));
+    await(() -> client.getAppliedSequence() == log.sequence());
+
+    assertThat(balances(follower)).isEqualTo(balances(primary));
+    assertThat(follower.getAccount("Id-2").getBalance()).isEqualByComparingTo("80");
+    assertThat(client.getLagRecords()).isZero();
+    await(() -> server.followers().get(0).getLagRecords() == 0);
+    assertThat(server.followers().get(0).getAcknowledgedSequence()).isEqualTo(log.sequence());
+  }
+
+  @Test
+  public void shouldConvergeWhenFollowerJoinsDuringTransfers() throws Exception {
+    AccountsRepositoryInMemory primary = new AccountsRepositoryInMemory();
+    ReplicationLog log = new ReplicationLog(AccountsJournal.NONE);
+    primary.attachJournal(log);
+    for (int i = 0; i < 100; i++) {
+      primary.createAccount(new Account("Id-" + i, new BigDecimal("1000")));
+    }
+    ReplicationServer server = closeLater(new ReplicationServer(primary, log, 64, 1 << 20));
+    server.start(0);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(executor.submit(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 5000; i++) {
+          try {
+            primary.transfer("Id-" + random.nextInt(100), "Id-" + random.nextInt(100), new BigDecimal("7.25"));
+          } catch (InsufficientFundsException ex) {
+            // the follower must reach the same balances all the same
+          }
+        }
+      }));
+    }
+    AccountsRepositoryInMemory follower = new AccountsRepositoryInMemory();
+    ReplicationClient client = closeLater(new ReplicationClient(follower, "localhost", server.getPort(), 50));
+    client.start();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    await(() -> client.getState() == ReplicationClient.State.STREAMING
+            && client.getAppliedSequence() == log.sequence());
+    assertThat(balances(follower)).isEqualTo(balances(primary));
+  }
+
+  @Test
+  public void shouldPromoteFollowerAndServeItsOwnFollowers() throws Exception {
+    AccountsRepositoryInMemory primary = new AccountsRepositoryInMemory();
+    ReplicationManager primaryManager = new ReplicationManager(primary, AccountsJournal.NONE,
+            properties(ReplicationRole.PRIMARY, 0));
+    primaryManager.start();
+    primary.createAccount(new Account("Id-1", new BigDecimal("100")));
+
+    AccountsRepositoryInMemory follower = new AccountsRepositoryInMemory();
+    ReplicationManager followerManager = closeLater(new ReplicationManager(follower, AccountsJournal.NONE,
+            properties(ReplicationRole.FOLLOWER, primaryManager.getPort())));
+    followerManager.start();
+    primary.creditAccount("Id-1", BigDecimal.TEN);
+    await(() -> followerManager.status().getState().equals("STREAMING")
+            && followerManager.status().getSequence() == primaryManager.status().getSequence());
+    assertThat(follower.getAccount("Id-1").getBalance()).isEqualByComparingTo("110");
+    assertThat(followerManager.acceptsWrites()).isFalse();
+    try {
+      primaryManager.promote();
+      fail("Should have refused to promote a primary");
+    } catch (ReplicationException ex) {
+      assertThat(ex.getMessage()).contains("PRIMARY");
+    }
+
+    primaryManager.close();
+    ReplicationStatus promoted = followerManager.promote();
+    assertThat(promoted.getRole()).isEqualTo("PRIMARY");
+    assertThat(followerManager.acceptsWrites()).isTrue();
+    follower.debitAccount("Id-1", new BigDecimal("60"));
+
+    AccountsRepositoryInMemory second = new AccountsRepositoryInMemory();
+    ReplicationClient client = closeLater(new ReplicationClient(second, "localhost", followerManager.getPort(), 50));
+    client.start();
+    await(() -> client.getState() == ReplicationClient.State.STREAMING);
+    assertThat(second.getAccount("Id-1").getBalance()).isEqualByComparingTo("50");
+    await(() -> followerManager.status().getFollowers().size() == 1);
+  }
+
+  private static ReplicationProperties properties(ReplicationRole role, int port) {
+    ReplicationProperties properties = new ReplicationProperties();
+    properties.setRole(role);
+    properties.setPort(role == ReplicationRole.PRIMARY ? port : 0);
+    properties.setPrimary("localhost:" + port);
+    properties.setReconnectMillis(50);
+    return properties;
+  }
+
+  private static Map<String, BigDecimal> balances(AccountsRepositoryInMemory repository) {
+    Map<String, BigDecimal> balances = new HashMap<>();
+    repository.forEachAccount(account -> balances.put(account.getAccountId(), account.getBalance()));
+    return balances;
+  }
+
+  private <T extends AutoCloseable> T closeLater(T closeable) {
+    closeables.add(closeable);
+    return closeable;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline)
+        fail("Condition not met within 10 seconds");
+      Thread.sleep(10);
+    }
+  }
+}
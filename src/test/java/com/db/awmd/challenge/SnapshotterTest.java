@@ -0,0 +1,115 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.journal.AccountsRecovery;
+import com.db.awmd.challenge.journal.Durability;
+import com.db.awmd.challenge.journal.MappedFileJournal;
+import com.db.awmd.challenge.journal.Snapshotter;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.boot.actuate.metrics.GaugeService;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnapshotterTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldRecoverFromSnapshotsTakenDuringTransfers() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, SEGMENT_SIZE, Durability.ASYNC, 1);
+         Snapshotter snapshotter = new Snapshotter(directory, repository, journal, 2, 3, Mockito.mock(GaugeService.class))) {
+      repository.attachJournal(journal);
+      for (int i = 0; i < 10; i++) {
+        repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+      }
+
+      AtomicBoolean running = new AtomicBoolean(true);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        tasks.add(executor.submit(() -> {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          while (running.get()) {
+            try {
+              repository.transfer("Id-" + random.nextInt(10), "Id-" + random.nextInt(10),
+                      new BigDecimal(random.nextInt(30000)).movePointLeft(2));
+            } catch (RuntimeException e) {
+              // insufficient funds are expected and leave no record
+            }
+          }
+        }));
+      }
+      for (int i = 0; i < 5; i++) {
+        snapshotter.takeSnapshot();
+      }
+      running.set(false);
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+      executor.shutdown();
+      repository.createAccount(new Account("Id-after-snapshot", BigDecimal.ONE));
+    }
+
+    assertThat(folder.getRoot().list((dir, name) -> name.endsWith(".snapshot"))).hasSize(2);
+
+    AccountsRepositoryInMemory restored = new AccountsRepositoryInMemory();
+    AccountsRecovery recovery = new AccountsRecovery();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, SEGMENT_SIZE, Durability.ASYNC, 1)) {
+      recovery.recover(directory, journal, restored);
+    }
+
+    assertThat(recovery.getSnapshotPosition()).isGreaterThan(0);
+    assertThat(recovery.getSnapshotAccounts()).isEqualTo(10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(restored.getAccount("Id-" + i)).isEqualTo(repository.getAccount("Id-" + i));
+    }
+    assertThat(restored.getAccount("Id-after-snapshot").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void shouldDeleteJournalSegmentsCoveredByRetainedSnapshots() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, SEGMENT_SIZE, Durability.ASYNC, 1);
+         Snapshotter snapshotter = new Snapshotter(directory, repository, journal, 1, 100, Mockito.mock(GaugeService.class))) {
+      repository.attachJournal(journal);
+      repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+      repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+      for (int i = 0; i < 1000; i++) {
+        repository.transfer("Id-1", "Id-2", BigDecimal.ONE);
+        repository.transfer("Id-2", "Id-1", BigDecimal.ONE);
+      }
+      assertThat(folder.getRoot().list((dir, name) -> name.endsWith(".journal")).length).isGreaterThan(10);
+
+      snapshotter.takeSnapshot();
+    }
+
+    assertThat(folder.getRoot().list((dir, name) -> name.endsWith(".journal"))).hasSize(1);
+
+    AccountsRepositoryInMemory restored = new AccountsRepositoryInMemory();
+    try (MappedFileJournal journal = MappedFileJournal.open(directory, SEGMENT_SIZE, Durability.ASYNC, 1)) {
+      new AccountsRecovery().recover(directory, journal, restored);
+    }
+    assertThat(restored.getAccount("Id-1").getBalance()).isEqualByComparingTo("1000");
+    assertThat(restored.getAccount("Id-2").getBalance()).isEqualByComparingTo("1000");
+  }
+}
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountAggregates;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.metrics.BalanceAggregates;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class StripedAccountsTest {
+
+  private static final int ACCOUNTS = 16;
+
+  private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+  private final BalanceAggregates aggregates = new BalanceAggregates(true);
+
+  @Before
+  public void setUp() {
+    repository.setBalanceAggregates(aggregates);
+    repository.setStripedAccounts(new String[] {"Hot"}, 8);
+    repository.createAccount(new Account("Hot", new BigDecimal(100)));
+    for (int i = 0; i < ACCOUNTS; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+  }
+
+  @Test
+  public void shouldSumCreditsFromManyThreads() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1000; i++) {
+          repository.creditAccount("Hot", new BigDecimal("0.01"));
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(repository.getAccount("Hot").getBalance()).isEqualByComparingTo("180");
+  }
+
+  @Test
+  public void shouldBorrowAcrossCellsWithoutOverdraft() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      futures.add(executor.submit(() -> repository.creditAccount("Hot", BigDecimal.TEN)));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(repository.debitAccount("Hot", new BigDecimal("179.99")).getBalance()).isEqualByComparingTo("0.01");
+    try {
+      repository.debitAccount("Hot", new BigDecimal("0.01"));
+      fail("Should have failed because of insufficient funds");
+    } catch (InsufficientFundsException ex) {
+      assertThat(repository.getAccount("Hot").getBalance()).isEqualByComparingTo("0.01");
+    }
+  }
+
+  @Test
+  public void shouldRejectDuplicateStripedAccount() {
+    try {
+      repository.createAccount(new Account("Hot", BigDecimal.ONE));
+      fail("Should have failed when adding duplicate account");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(repository.getAccount("Hot").getBalance()).isEqualByComparingTo("100");
+    }
+  }
+
+  @Test
+  public void shouldApplyBatchToStripedAccount() {
+    List<TransferResult> results = repository.transferBatch(Arrays.asList(
+            new TransferDto("Id-0", "Hot", new BigDecimal(50)),
+            new TransferDto("Hot", "Id-1", new BigDecimal(120)),
+            new TransferDto("Hot", "Id-2", new BigDecimal(100))), false);
+
+    assertThat(results).extracting(TransferResult::getStatus).containsExactly(
+            TransferStatus.OK, TransferStatus.OK, TransferStatus.INSUFFICIENT_FUNDS);
+    assertThat(repository.getAccount("Hot").getBalance()).isEqualByComparingTo("30");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("1120");
+  }
+
+  @Test
+  public void shouldConserveMoneyAndAggregatesUnderConcurrentTransfers() throws Exception {
+    AccountsSnapshot snapshot = repository.openSnapshot();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(executor.submit(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 2000; i++) {
+          String other = "Id-" + random.nextInt(ACCOUNTS);
+          BigDecimal amount = new BigDecimal(random.nextInt(1, 20));
+          try {
+            if (i % 100 == 0)
+              repository.transferBatch(Arrays.asList(new TransferDto("Hot", other, amount),
+                      new TransferDto(other, "Hot", BigDecimal.ONE)), false);
+            else if (i % 2 == 0)
+              repository.transfer("Hot", other, amount);
+            else
+              repository.transfer(other, "Hot", amount);
+          } catch (InsufficientFundsException ignored) {
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    BigDecimal expected = new BigDecimal(100 + 1000 * ACCOUNTS);
+    assertThat(total(repository::forEachAccount)).isEqualByComparingTo(expected);
+    assertThat(total(snapshot::forEach)).isEqualByComparingTo(expected);
+    assertThat(snapshot.get("Hot").getBalance()).isEqualByComparingTo("100");
+    snapshot.close();
+
+    AccountAggregates current = aggregates.current();
+    assertThat(current.getTotalBalance()).isEqualByComparingTo(expected);
+    assertThat(current.getConservationViolations()).isZero();
+    assertThat(current.getBalanceDistribution().values().stream().mapToLong(Long::longValue).sum())
+            .isEqualTo(ACCOUNTS + 1);
+  }
+
+  private static BigDecimal total(Consumer<Consumer<Account>> forEach) {
+    BigDecimal[] total = {BigDecimal.ZERO};
+    forEach.accept(account -> total[0] = total[0].add(account.getBalance()));
+    return total[0];
+  }
+}
@@ -0,0 +1,196 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsSnapshot;
+import com.db.awmd.challenge.repository.TieredAccountsRepository;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TieredAccountsRepositoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TieredAccountsRepository repository;
+
+  @After
+  public void tearDown() {
+    if (repository != null)
+      repository.shutdown();
+  }
+
+  @Test
+  public void shouldDemoteLeastRecentlyUsedAccountsAndPromoteThemOnAccess() {
+    repository = repository(10, 8);
+    for (int i = 0; i < 10; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(100 + i)));
+    }
+    assertThat(repository.demote()).isZero();
+    for (int i = 0; i < 3; i++) {
+      repository.getAccount("Id-" + i);
+    }
+    repository.demote();
+    for (int i = 10; i < 15; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(100 + i)));
+    }
+
+    assertThat(repository.demote()).isEqualTo(6);
+    assertThat(repository.hotAccounts()).isEqualTo(9);
+    assertThat(repository.coldRuns()).isEqualTo(1);
+    for (String recent : Arrays.asList("Id-0", "Id-1", "Id-2", "Id-10", "Id-14")) {
+      assertThat(repository.isHot(recent)).isTrue();
+    }
+
+    String cold = null;
+    for (int i = 3; i < 10 && cold == null; i++) {
+      if (!repository.isHot("Id-" + i))
+        cold = "Id-" + i;
+    }
+    assertThat(cold).isNotNull();
+    repository.creditAccount(cold, BigDecimal.ONE);
+    assertThat(repository.isHot(cold)).isTrue();
+    for (int i = 0; i < 15; i++) {
+      BigDecimal expected = new BigDecimal(100 + i).add(("Id-" + i).equals(cold) ? BigDecimal.ONE : BigDecimal.ZERO);
+      assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(expected);
+    }
+    assertThat(metric("accounts.tiered.promotions")).isEqualTo(6);
+    try {
+      repository.createAccount(new Account("Id-3", BigDecimal.ONE));
+      fail("Should have failed because the demoted account exists");
+    } catch (DuplicateAccountIdException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id Id-3 already exists!");
+    }
+  }
+
+  @Test
+  public void shouldRejectUnknownAccountsWithoutReadingBlocks() {
+    repository = repository(100, 8);
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 1000; i++) {
+        repository.createAccount(new Account("Id-" + round + "-" + i, BigDecimal.TEN));
+      }
+      repository.demote();
+    }
+    assertThat(repository.coldRuns()).isEqualTo(5);
+    long blocksRead = metric("accounts.tiered.cache.misses") + metric("accounts.tiered.cache.hits");
+    long rejections = metric("accounts.tiered.bloom.rejections");
+
+    for (int i = 0; i < 1000; i++) {
+      try {
+        repository.getAccount("Missing-" + i);
+        fail("Should have failed because the account does not exist");
+      } catch (AccountNotFoundException ex) {
+        assertThat(ex.getAccountId()).isEqualTo("Missing-" + i);
+      }
+    }
+
+    // five filters of 10 bits per id let through about one in a hundred lookups each
+    assertThat(metric("accounts.tiered.cache.misses") + metric("accounts.tiered.cache.hits") - blocksRead)
+            .isLessThan(150);
+    assertThat(metric("accounts.tiered.bloom.rejections") - rejections).isGreaterThan(4850);
+  }
+
+  @Test
+  public void shouldKeepSnapshotAndTotalsAcrossDemotionAndCompaction() {
+    repository = repository(20, 2);
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      accounts.add(new Account("Id-" + i, new BigDecimal("50.00")));
+    }
+    repository.createAccounts(accounts);
+    repository.demote();
+
+    BigDecimal[] expected = new BigDecimal[200];
+    Arrays.fill(expected, new BigDecimal("50.00"));
+    try (AccountsSnapshot snapshot = repository.openSnapshot()) {
+      for (int round = 0; round < 4; round++) {
+        for (int i = round; i < 200; i += 7) {
+          int to = (i + 100) % 200;
+          repository.transfer("Id-" + i, "Id-" + to, new BigDecimal("1.25"));
+          expected[i] = expected[i].subtract(new BigDecimal("1.25"));
+          expected[to] = expected[to].add(new BigDecimal("1.25"));
+        }
+        repository.demote();
+      }
+      repository.createAccount(new Account("Id-new", BigDecimal.ONE));
+      repository.demote();
+      assertThat(repository.coldRuns()).isLessThanOrEqualTo(2);
+
+      List<Account> seen = new ArrayList<>();
+      snapshot.forEach(seen::add);
+      assertThat(seen).hasSize(200);
+      assertThat(seen).extracting(Account::getBalance).containsOnly(new BigDecimal("50.00"));
+      assertThat(snapshot.get("Id-new")).isNull();
+      assertThat(snapshot.get("Id-3").getBalance()).isEqualByComparingTo("50");
+    }
+
+    List<Account> live = new ArrayList<>();
+    repository.forEachAccount(live::add);
+    assertThat(live).hasSize(201);
+    BigDecimal total = BigDecimal.ZERO;
+    for (Account account : live) {
+      total = total.add(account.getBalance());
+    }
+    assertThat(total).isEqualByComparingTo("10001");
+    for (int i = 0; i < 200; i++) {
+      assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(expected[i]);
+    }
+  }
+
+  @Test
+  public void shouldAbortBatchOverColdAccountsAndForgetThemOnClear() {
+    repository = repository(1, 8);
+    repository.createAccount(new Account("Id-1", new BigDecimal("10")));
+    repository.createAccount(new Account("Id-2", new BigDecimal("10")));
+    repository.createAccount(new Account("Id-3", new BigDecimal("10")));
+    repository.demote();
+
+    List<TransferResult> results = repository.transferBatch(Arrays.asList(
+            new TransferDto("Id-1", "Id-2", new BigDecimal("5")),
+            new TransferDto("Id-3", "Id-2", new BigDecimal("10"))), true);
+
+    assertThat(results).extracting(TransferResult::getStatus)
+            .containsExactly(TransferStatus.ABORTED, TransferStatus.INSUFFICIENT_FUNDS);
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("10");
+
+    repository.demote();
+    repository.clearAccounts();
+    assertThat(repository.coldRuns()).isZero();
+    assertThat(folder.getRoot().listFiles()).isEmpty();
+    try {
+      repository.getAccount("Id-1");
+      fail("Should have failed because the accounts were cleared");
+    } catch (AccountNotFoundException ex) {
+      assertThat(ex.getAccountId()).isEqualTo("Id-1");
+    }
+  }
+
+  private TieredAccountsRepository repository(int maxHotAccounts, int maxRuns) {
+    return new TieredAccountsRepository(folder.getRoot().getPath(), maxHotAccounts, 1 << 20, 10, maxRuns, 0);
+  }
+
+  private long metric(String name) {
+    for (Metric<?> metric : repository.metrics()) {
+      if (metric.getName().equals(name))
+        return metric.getValue().longValue();
+    }
+    throw new IllegalArgumentException("No metric " + name);
+  }
+}
@@ -0,0 +1,92 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.LedgerEntry;
+import com.db.awmd.challenge.ledger.TransactionLedger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionLedgerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TransactionLedger ledger;
+
+  @After
+  public void close() throws IOException {
+    ledger.close();
+  }
+
+  @Test
+  public void shouldRecordBothLegsOfATransfer() throws IOException {
+    ledger = new TransactionLedger(folder.getRoot().getPath(), 4, 1000);
+    ledger.recordTransfer("Id-1", "Id-2", new BigDecimal("12.50"));
+
+    List<LedgerEntry> debits = page("Id-1", Long.MAX_VALUE, 10);
+    List<LedgerEntry> credits = page("Id-2", Long.MAX_VALUE, 10);
+
+    assertThat(debits).hasSize(1);
+    assertThat(debits.get(0).getType()).isEqualTo(LedgerEntry.Type.DEBIT);
+    assertThat(debits.get(0).getCounterpartyId()).isEqualTo("Id-2");
+    assertThat(debits.get(0).getAmount()).isEqualTo(new BigDecimal("12.50"));
+    assertThat(credits.get(0).getType()).isEqualTo(LedgerEntry.Type.CREDIT);
+    assertThat(credits.get(0).getCounterpartyId()).isEqualTo("Id-1");
+  }
+
+  @Test
+  public void shouldPageNewestFirstAcrossChunks() throws IOException {
+    ledger = new TransactionLedger(folder.getRoot().getPath(), 4, 1000);
+    for (int i = 0; i < 10; i++) {
+      ledger.recordTransfer("Id-1", "Id-2", new BigDecimal(i));
+    }
+
+    List<LedgerEntry> entries = new ArrayList<>();
+    long cursor = ledger.readPage("Id-1", Long.MAX_VALUE, 3, entries::add);
+    assertThat(cursor).isEqualTo(7);
+    cursor = ledger.readPage("Id-1", cursor, 100, entries::add);
+
+    assertThat(cursor).isEqualTo(0);
+    assertThat(entries).extracting(LedgerEntry::getSequence).containsExactly(9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L, 0L);
+    assertThat(entries.get(0).getAmount()).isEqualByComparingTo("9");
+  }
+
+  @Test
+  public void shouldReadSpilledChunksBack() throws IOException {
+    ledger = new TransactionLedger(folder.getRoot().getPath(), 4, 8);
+    BigDecimal huge = new BigDecimal("123456789012345678901234567890.123");
+    for (int i = 0; i < 20; i++) {
+      ledger.recordTransfer("Id-1", "Id-2", i == 0 ? huge : new BigDecimal(i).movePointLeft(2));
+    }
+
+    assertThat(metric("ledger.spilled-chunks")).isGreaterThan(0);
+    assertThat(metric("ledger.resident-entries")).isLessThanOrEqualTo(8);
+    List<LedgerEntry> entries = page("Id-2", Long.MAX_VALUE, 100);
+    assertThat(entries).extracting(LedgerEntry::getSequence).hasSize(20).startsWith(19L).endsWith(0L);
+    assertThat(entries.get(0).getAmount()).isEqualTo(new BigDecimal("0.19"));
+    assertThat(entries.get(19).getAmount()).isEqualTo(huge);
+  }
+
+  private List<LedgerEntry> page(String accountId, long before, int limit) {
+    List<LedgerEntry> entries = new ArrayList<>();
+    ledger.readPage(accountId, before, limit, entries::add);
+    return entries;
+  }
+
+  private long metric(String name) {
+    for (Metric<?> metric : ledger.metrics()) {
+      if (metric.getName().equals(name))
+        return metric.getValue().longValue();
+    }
+    throw new IllegalArgumentException(name);
+  }
+}
@@ -1,27 +1,36 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.TransferMetrics;
 import com.db.awmd.challenge.service.AccountsService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = "ledger.directory=${java.io.tmpdir}/ledger-${random.uuid}")
 @WebAppConfiguration
 public class TransferControllerTest {
 
@@ -33,6 +42,9 @@ public class TransferControllerTest {
   @Autowired
   private WebApplicationContext webApplicationContext;
 
+  @Autowired
+  private TransferMetrics transferMetrics;
+
   private final String fromAccountId = "Id-from-123";
   private final String toAccountId = "Id-to-123";
 
@@ -98,4 +110,99 @@ public class TransferControllerTest {
                     "\"amount\":2000" +
                     "}")).andExpect(status().isBadRequest());
   }
+
+  @Test
+  public void shouldApplyEachTransferOfBatchIndependently() throws Exception {
+    this.mockMvc.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+            .content("[" +
+                    transferJson(fromAccountId, toAccountId, "100") + "," +
+                    transferJson(fromAccountId, "Id-123", "100") + "," +
+                    transferJson(toAccountId, fromAccountId, "5000") + "," +
+                    transferJson(toAccountId, fromAccountId, "-1") + "," +
+                    transferJson(toAccountId, fromAccountId, "50") +
+                    "]"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"applied\":2,\"results\":" +
+                    "[\"OK\",\"ACCOUNT_NOT_FOUND\",\"INSUFFICIENT_FUNDS\",\"INVALID\",\"OK\"]}"));
+
+    assertThat(accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("950");
+    assertThat(accountsService.getAccount(toAccountId).getBalance()).isEqualByComparingTo("550");
+  }
+
+  @Test
+  public void shouldNotApplyAnyTransferOfAtomicBatch_WhenOneIsRejected() throws Exception {
+    this.mockMvc.perform(post("/v1/transfer/batch?atomic=true").contentType(MediaType.APPLICATION_JSON)
+            .content("[" +
+                    transferJson(fromAccountId, toAccountId, "100") + "," +
+                    transferJson(toAccountId, fromAccountId, "5000") + "," +
+                    transferJson(toAccountId, fromAccountId, "50") +
+                    "]"))
+            .andExpect(status().isBadRequest())
+            .andExpect(content().string("{\"applied\":0,\"results\":" +
+                    "[\"ABORTED\",\"INSUFFICIENT_FUNDS\",\"ABORTED\"]}"));
+
+    assertThat(accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("1000");
+    assertThat(accountsService.getAccount(toAccountId).getBalance()).isEqualByComparingTo("500");
+  }
+
+  @Test
+  public void shouldApplyRetriedTransferOnce() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      this.mockMvc.perform(put("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+              .header("Idempotency-Key", "retried-transfer")
+              .content(transferJson(fromAccountId, toAccountId, "100"))).andExpect(status().isOk());
+    }
+    this.mockMvc.perform(put("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+            .header("Idempotency-Key", "retried-transfer")
+            .content(transferJson(fromAccountId, toAccountId, "200"))).andExpect(status().isUnprocessableEntity());
+
+    assertThat(accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("900");
+    assertThat(accountsService.getAccount(toAccountId).getBalance()).isEqualByComparingTo("600");
+  }
+
+  @Test
+  public void shouldTransferAsynchronously() throws Exception {
+    MvcResult result = this.mockMvc.perform(put("/v1/transfer/async").contentType(MediaType.APPLICATION_JSON)
+            .content(transferJson(fromAccountId, toAccountId, "100"))).andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+    result = this.mockMvc.perform(put("/v1/transfer/async").contentType(MediaType.APPLICATION_JSON)
+            .content(transferJson(fromAccountId, toAccountId, "5000"))).andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest())
+            .andExpect(content().string("Overdrafts are not supported"));
+
+    assertThat(accountsService.getAccount(fromAccountId).getBalance()).isEqualByComparingTo("900");
+    assertThat(accountsService.getAccount(toAccountId).getBalance()).isEqualByComparingTo("600");
+  }
+
+  @Test
+  public void shouldPublishStageLatencies() throws Exception {
+    long before = metric("transfers.latency.repository.count");
+
+    this.mockMvc.perform(put("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+            .content(transferJson(fromAccountId, toAccountId, "100"))).andExpect(status().isOk());
+    this.mockMvc.perform(put("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+            .content(transferJson(fromAccountId, toAccountId, "5000"))).andExpect(status().isBadRequest());
+
+    assertThat(metric("transfers.latency.repository.count")).isEqualTo(before + 2);
+    assertThat(metric("transfers.latency.binding.count")).isGreaterThanOrEqualTo(2);
+    assertThat(metric("transfers.latency.request.count")).isGreaterThanOrEqualTo(2);
+    assertThat(metric("transfers.insufficient-funds")).isGreaterThanOrEqualTo(1);
+  }
+
+  private long metric(String name) {
+    for (Metric<?> metric : transferMetrics.metrics()) {
+      if (metric.getName().equals(name))
+        return metric.getValue().longValue();
+    }
+    throw new IllegalArgumentException(name);
+  }
+
+  private String transferJson(String from, String to, String amount) {
+    return "{" +
+            "\"fromAccountId\":\"" + from + "\"," +
+            "\"toAccountId\":\"" + to + "\"," +
+            "\"amount\":" + amount +
+            "}";
+  }
 }
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransferDto;
+import com.db.awmd.challenge.domain.TransferDto;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.scheduling.TransferScheduler;
+import com.db.awmd.challenge.service.TransferService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferSchedulerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final TransferService transferService = Mockito.mock(TransferService.class);
+
+  private final List<List<TransferDto>> batches = new ArrayList<>();
+
+  private Path file;
+
+  private TransferScheduler scheduler;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    file = folder.getRoot().toPath().resolve("transfers.log");
+    Mockito.when(transferService.transferBatch(Mockito.anyList(), Mockito.eq(false))).thenAnswer(invocation -> {
+      List<TransferDto> transfers = new ArrayList<>((List<TransferDto>) invocation.getArguments()[0]);
+      batches.add(transfers);
+      return new BatchTransferResult(transfers.size(),
+              Collections.nCopies(transfers.size(), TransferStatus.OK));
+    });
+  }
+
+  @After
+  public void tearDown() {
+    if (scheduler != null)
+      scheduler.close();
+  }
+
+  @Test
+  public void shouldRunTransfersOnceTheirTickHasPassedOnEveryWheelLevel() {
+    scheduler = scheduler(1_000);
+    long[] dueTimes = {1_005, 1_075, 1_500, 10_000, 1_000_000};
+    for (int i = 0; i < dueTimes.length; i++) {
+      scheduler.schedule(transfer("Id-" + i, dueTimes[i], 0));
+    }
+
+    assertThat(scheduler.tick(1_009)).isZero();
+    assertThat(scheduler.tick(1_010)).isEqualTo(1);
+    assertThat(scheduler.tick(1_079)).isZero();
+    assertThat(scheduler.tick(1_080)).isEqualTo(1);
+    assertThat(scheduler.tick(1_499)).isZero();
+    assertThat(scheduler.tick(1_510)).isEqualTo(1);
+    assertThat(scheduler.tick(9_999)).isZero();
+    assertThat(scheduler.tick(10_010)).isEqualTo(1);
+    assertThat(scheduler.tick(999_999)).isZero();
+    assertThat(scheduler.tick(1_000_010)).isEqualTo(1);
+
+    assertThat(batches).extracting(batch -> batch.get(0).getFromAccountId())
+            .containsExactly("Id-0", "Id-1", "Id-2", "Id-3", "Id-4");
+  }
+
+  @Test
+  public void shouldRunTransfersDueInOneTickInBatchesSortedByAccount() {
+    scheduler = scheduler(1_000);
+    for (String from : new String[] {"Id-3", "Id-1", "Id-2", "Id-1", "Id-3"}) {
+      scheduler.schedule(transfer(from, 1_200, 0));
+    }
+    scheduler.schedule(transfer("Id-0", 1_300, 0));
+
+    assertThat(scheduler.tick(1_250)).isEqualTo(5);
+
+    assertThat(batches).hasSize(3);
+    List<String> sources = new ArrayList<>();
+    for (List<TransferDto> batch : batches) {
+      assertThat(batch.size()).isLessThanOrEqualTo(2);
+      for (TransferDto transfer : batch) {
+        sources.add(transfer.getFromAccountId());
+      }
+    }
+    assertThat(sources).containsExactly("Id-1", "Id-1", "Id-2", "Id-3", "Id-3");
+  }
+
+  @Test
+  public void shouldKeepRecurringAndCancelledSchedulesAcrossRestarts() {
+    scheduler = scheduler(1_000);
+    ScheduledTransfer recurring = scheduler.schedule(transfer("Id-1", 1_100, 100));
+    ScheduledTransfer cancelled = scheduler.schedule(transfer("Id-2", 1_200, 0));
+    ScheduledTransfer oneOff = scheduler.schedule(transfer("Id-3", 5_000, 0));
+    assertThat(scheduler.cancel(cancelled.getId())).isTrue();
+    assertThat(scheduler.cancel(cancelled.getId())).isFalse();
+
+    assertThat(scheduler.tick(1_110)).isEqualTo(1);
+    assertThat(scheduler.tick(1_210)).isEqualTo(1);
+    assertThat(scheduler.get(recurring.getId()).getNextExecution()).isEqualTo(1_300);
+    scheduler.close();
+
+    // down from 1 210 to 1 655: the missed occurrences at 1 300 ... 1 600 run once
+    scheduler = scheduler(1_655);
+    assertThat(scheduler.get(cancelled.getId())).isNull();
+    assertThat(scheduler.get(oneOff.getId()).getNextExecution()).isEqualTo(5_000);
+    assertThat(scheduler.tick(1_660)).isEqualTo(1);
+    assertThat(scheduler.get(recurring.getId()).getNextExecution()).isEqualTo(1_700);
+    assertThat(scheduler.tick(1_710)).isEqualTo(1);
+    assertThat(scheduler.tick(5_010)).isEqualTo(2);
+    assertThat(scheduler.get(oneOff.getId())).isNull();
+    assertThat(scheduler.get(recurring.getId()).getNextExecution()).isEqualTo(5_100);
+
+    assertThat(batches).hasSize(5);
+    assertThat(batches).extracting(batch -> batch.get(0).getFromAccountId()).containsOnly("Id-1");
+    assertThat(batches.get(4)).extracting(TransferDto::getFromAccountId).containsExactly("Id-1", "Id-3");
+  }
+
+  @Test
+  public void shouldIgnoreTornRecordAtTheEndOfTheFile() throws Exception {
+    scheduler = scheduler(1_000);
+    ScheduledTransfer first = scheduler.schedule(transfer("Id-1", 2_000, 0));
+    ScheduledTransfer second = scheduler.schedule(transfer("Id-\u00e9\ud83d\ude00", 3_000, 500));
+    scheduler.close();
+    Files.write(file, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    scheduler = scheduler(1_000);
+
+    assertThat(scheduler.get(first.getId())).isEqualTo(first);
+    assertThat(scheduler.get(second.getId())).isEqualTo(second);
+    assertThat(scheduler.tick(3_010)).isEqualTo(2);
+    assertThat(batches.get(0)).containsExactly(
+            new TransferDto("Id-1", "Id-2", new BigDecimal("12.50")),
+            new TransferDto("Id-\u00e9\ud83d\ude00", "Id-2", new BigDecimal("12.50")));
+  }
+
+  private TransferScheduler scheduler(long startMillis) {
+    return new TransferScheduler(transferService, file, 10, 8, 2, 4, startMillis);
+  }
+
+  private static ScheduledTransferDto transfer(String fromAccountId, long executeAt, long intervalMillis) {
+    return new ScheduledTransferDto(fromAccountId, "Id-2", new BigDecimal("12.50"), executeAt, intervalMillis);
+  }
+}
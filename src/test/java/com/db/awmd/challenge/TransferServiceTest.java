@@ -14,6 +14,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
@@ -25,6 +26,7 @@ import static org.mockito.Mockito.verify;
 @ActiveProfiles("test")
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = "ledger.directory=${java.io.tmpdir}/ledger-${random.uuid}")
 public class TransferServiceTest {
 
   @Autowired
@@ -56,8 +58,8 @@ public class TransferServiceTest {
     assertThat(new BigDecimal(990)).isEqualByComparingTo("990");
     assertThat(new BigDecimal(20)).isEqualByComparingTo("20");
 
-    verify(notificationService, Mockito.times(1)).notifyAboutTransfer(from, "Transferred amount 10 to account " + toAccountId);
-    verify(notificationService, Mockito.times(1)).notifyAboutTransfer(to, "Received amount 10 from account " + fromAccountId);
+    verify(notificationService, Mockito.timeout(1000).times(1)).notifyAboutTransfer(from, "Transferred amount 10 to account " + toAccountId);
+    verify(notificationService, Mockito.timeout(1000).times(1)).notifyAboutTransfer(to, "Received amount 10 from account " + fromAccountId);
   }
 
   @Test
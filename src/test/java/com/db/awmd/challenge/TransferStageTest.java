@@ -0,0 +1,65 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.service.TransferStage;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TransferStageTest {
+
+  @Test
+  public void shouldRefuseTasksBeyondQueueCapacity() throws Exception {
+    TransferStage stage = new TransferStage(1, 1, 1000);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> first = stage.submit(() -> {
+      running.countDown();
+      await(release);
+      return "first";
+    });
+    running.await();
+    CompletableFuture<String> queued = stage.submit(() -> "queued");
+    CompletableFuture<String> refused = stage.submit(() -> "refused");
+
+    assertThat(refused.isCompletedExceptionally()).isTrue();
+    try {
+      refused.get();
+      fail("Should have been refused because the queue is full");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(RejectedExecutionException.class);
+    }
+    release.countDown();
+    assertThat(first.get()).isEqualTo("first");
+    assertThat(queued.get()).isEqualTo("queued");
+    stage.shutdown();
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyWhenTaskFails() throws Exception {
+    TransferStage stage = new TransferStage(1, 1, 1000);
+    CompletableFuture<String> failed = stage.submit(() -> {
+      throw new IllegalStateException("failed");
+    });
+    try {
+      failed.get();
+      fail("Should have failed");
+    } catch (ExecutionException ex) {
+      assertThat(ex.getCause()).isInstanceOf(IllegalStateException.class);
+    }
+    stage.shutdown();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}